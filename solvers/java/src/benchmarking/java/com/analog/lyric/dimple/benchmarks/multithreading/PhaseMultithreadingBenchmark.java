@@ -0,0 +1,94 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.benchmarks.multithreading;
+
+import java.util.Random;
+
+import com.analog.lyric.benchmarking.Benchmark;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingMode;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+
+/**
+ * Compares the phase multithreading modes on a grid graph with cheap updates, where
+ * the cost of synchronizing between phases dominates.
+ */
+public class PhaseMultithreadingBenchmark
+{
+	private final int gridSize = 32;
+	private final int numIterations = 200;
+
+	@Benchmark(warmupIterations = 1, iterations = 3)
+	public boolean phaseMultithreadingSumProduct()
+	{
+		solve(MultithreadingMode.Phase);
+		return false;
+	}
+
+	@Benchmark(warmupIterations = 1, iterations = 3)
+	public boolean persistentPhaseMultithreadingSumProduct()
+	{
+		solve(MultithreadingMode.PersistentPhase);
+		return false;
+	}
+
+	private void solve(MultithreadingMode mode)
+	{
+		FactorGraph fg = createGraph();
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		sfg.getMultithreadingManager().setMode(mode);
+		sfg.useMultithreading(true);
+		fg.solve();
+		sfg.useMultithreading(false);
+	}
+
+	private FactorGraph createGraph()
+	{
+		final Random rand = new Random(42);
+		final int N = gridSize;
+
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		fg.getSolver().setNumIterations(numIterations);
+
+		Discrete[][] vars = new Discrete[N][N];
+		for (int i = 0; i < N; ++i)
+		{
+			for (int j = 0; j < N; ++j)
+			{
+				vars[i][j] = new Discrete(0, 1);
+				vars[i][j].setInput(new double[] { rand.nextDouble() + .1, rand.nextDouble() + .1 });
+			}
+		}
+
+		int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		double[] weights = new double[] { 1.0, 0.5, 0.5, 1.0 };
+		for (int i = 0; i < N; ++i)
+		{
+			for (int j = 0; j < N; ++j)
+			{
+				if (j + 1 < N)
+					fg.addFactor(indices, weights, vars[i][j], vars[i][j+1]);
+				if (i + 1 < N)
+					fg.addFactor(indices, weights, vars[i][j], vars[i+1][j]);
+			}
+		}
+
+		return fg;
+	}
+}
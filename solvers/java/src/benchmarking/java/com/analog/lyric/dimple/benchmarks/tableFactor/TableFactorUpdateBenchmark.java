@@ -0,0 +1,108 @@
+/*******************************************************************************
+ *   Copyright 2014 Analog Devices, Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ ********************************************************************************/
+
+package com.analog.lyric.dimple.benchmarks.tableFactor;
+
+import java.util.Random;
+
+import com.analog.lyric.benchmarking.Benchmark;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+
+/**
+ * Compares the per-port and single pass sum-product table factor updates on
+ * a graph of high degree factors with large sparse tables.
+ */
+public class TableFactorUpdateBenchmark
+{
+	private final int numVariables = 24;
+	private final int domainSize = 4;
+	private final int factorDegree = 10;
+	private final int numFactors = 12;
+	private final int rowsPerFactor = 40000;
+	private final int numIterations = 20;
+	
+	@Benchmark(warmupIterations = 1, iterations = 3)
+	public boolean tableFactorUpdatePerPortSumProduct()
+	{
+		FactorGraph fg = createGraph();
+		((SFactorGraph)fg.getSolver()).setOptimizedUpdate(false);
+		fg.solve();
+		return false;
+	}
+	
+	@Benchmark(warmupIterations = 1, iterations = 3)
+	public boolean tableFactorUpdateOptimizedSumProduct()
+	{
+		FactorGraph fg = createGraph();
+		((SFactorGraph)fg.getSolver()).setOptimizedUpdate(true);
+		fg.solve();
+		return false;
+	}
+	
+	private FactorGraph createGraph()
+	{
+		final Random rand = new Random(42);
+		
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		fg.getSolver().setNumIterations(numIterations);
+		
+		Object[] domain = new Object[domainSize];
+		for (int i = 0; i < domainSize; ++i)
+			domain[i] = i;
+		
+		Discrete[] vars = new Discrete[numVariables];
+		for (int i = 0; i < numVariables; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			double[] input = new double[domainSize];
+			for (int j = 0; j < domainSize; ++j)
+				input[j] = rand.nextDouble() + .1;
+			vars[i].setInput(input);
+		}
+
+		// Fill each table with a random subset of the joint domain by striding through
+		// joint indices with a step that is relatively prime to the joint size.
+		final int jointSize = (int)Math.pow(domainSize, factorDegree);
+		final int stride = jointSize / rowsPerFactor | 1;
+		
+		for (int f = 0; f < numFactors; ++f)
+		{
+			Discrete[] factorVars = new Discrete[factorDegree];
+			int first = f * numVariables / numFactors;
+			for (int i = 0; i < factorDegree; ++i)
+				factorVars[i] = vars[(first + i) % numVariables];
+			
+			int[][] indices = new int[rowsPerFactor][];
+			double[] weights = new double[rowsPerFactor];
+			int offset = rand.nextInt(jointSize);
+			for (int row = 0; row < rowsPerFactor; ++row)
+			{
+				int joint = (int)(((long)row * stride + offset) % jointSize);
+				int[] rowIndices = indices[row] = new int[factorDegree];
+				for (int i = factorDegree; --i >= 0; joint /= domainSize)
+					rowIndices[i] = joint % domainSize;
+				weights[row] = rand.nextDouble() + .01;
+			}
+			
+			fg.addFactor(indices, weights, factorVars);
+		}
+		
+		return fg;
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+
+/**
+ * Measures conversions between {@link FactorTable} representations. Each benchmark converts
+ * the table to a representation and back again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class FactorTableConversionBenchmark
+{
+	@Param({"3", "5"})
+	public int dimensions;
+
+	@Param({"4", "10"})
+	public int domainSize;
+
+	// Fraction of the joint domain with non-zero weight
+	@Param({"1.0", "0.1"})
+	public double density;
+
+	private IFactorTable _table;
+
+	@Setup
+	public void setup()
+	{
+		Random rand = new Random(42);
+		DiscreteDomain[] domains = new DiscreteDomain[dimensions];
+		for (int i = 0; i < dimensions; ++i)
+			domains[i] = DiscreteDomain.range(0, domainSize - 1);
+
+		_table = FactorTable.create(domains);
+		double[] weights = new double[_table.getDomainIndexer().getCardinality()];
+		for (int i = 0; i < weights.length; ++i)
+			if (rand.nextDouble() < density)
+				weights[i] = rand.nextDouble() + .01;
+		_table.setWeightsDense(weights);
+	}
+
+	@Benchmark
+	public IFactorTable denseToSparseWeights()
+	{
+		_table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT);
+		_table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		return _table;
+	}
+
+	@Benchmark
+	public IFactorTable denseWeightsToEnergies()
+	{
+		_table.setRepresentation(FactorTableRepresentation.DENSE_ENERGY);
+		_table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		return _table;
+	}
+
+	@Benchmark
+	public IFactorTable denseToSparseEnergies()
+	{
+		_table.setRepresentation(FactorTableRepresentation.SPARSE_ENERGY);
+		_table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		return _table;
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.VariableList;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+
+/**
+ * Measures Gibbs sampling of discrete variables, as one sweep over all the variables
+ * of a grid, i.e. one {@code SDiscreteVariable.update} call per variable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class GibbsDiscreteVariableBenchmark
+{
+	@Param({"10", "50"})
+	public int gridSize;
+
+	@Param({"2", "16"})
+	public int domainSize;
+
+	private ISolverVariable[] _variables;
+
+	@Setup
+	public void setup()
+	{
+		FactorGraph fg = JmhGraphs.grid(gridSize, domainSize, JmhGraphs.solverFactory("gibbs"), new Random(42));
+		fg.initialize();
+
+		VariableList vars = fg.getVariablesFlat();
+		_variables = new ISolverVariable[vars.size()];
+		for (int i = 0; i < _variables.length; ++i)
+			_variables[i] = vars.getByIndex(i).getSolver();
+	}
+
+	@Benchmark
+	public void sweep()
+	{
+		for (ISolverVariable var : _variables)
+			var.update();
+	}
+}
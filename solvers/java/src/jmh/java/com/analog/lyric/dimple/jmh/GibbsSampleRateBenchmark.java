@@ -0,0 +1,139 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+
+/**
+ * Measures the number of Gibbs samples of discrete variables per second on large models,
+ * sweeping over all of the variables once per invocation.
+ * <p>
+ * The "grid" model is a square grid of pairwise table factors with about {@code numVariables}
+ * variables. The "sum" model is a chain of variables in which each adjacent pair is summed into
+ * a deterministic dependent with an input of its own, so that sampling a chain variable also
+ * recomputes and scores its dependents. Like the Gibbs schedule, the sweep only samples the
+ * chain variables, so the dependents are not counted as samples.
+ * <p>
+ * The sample rate is reported by the {@code samples} counter. Run with {@code -prof gc} to see
+ * the number of garbage collections during measurement, which should be zero, e.g.
+ * <pre>
+ * gradle runJmhBenchmarks -PjmhArgs="-prof gc GibbsSampleRate"
+ * </pre>
+ * and run the same command on an earlier revision to compare.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class GibbsSampleRateBenchmark
+{
+	@Param({"grid", "sum"})
+	public String model;
+
+	@Param({"10000", "100000"})
+	public int numVariables;
+
+	@Param({"4"})
+	public int domainSize;
+
+	private ISolverVariable[] _variables;
+
+	/**
+	 * Number of variable samples drawn, reported as a rate.
+	 */
+	@AuxCounters
+	@State(Scope.Thread)
+	public static class Counters
+	{
+		public long samples;
+	}
+
+	@Setup
+	public void setup()
+	{
+		final Random rand = new Random(42);
+		final FactorGraph fg;
+		if (model.equals("grid"))
+			fg = JmhGraphs.grid((int)Math.round(Math.sqrt(numVariables)), domainSize, JmhGraphs.solverFactory("gibbs"), rand);
+		else if (model.equals("sum"))
+			fg = sumChain(numVariables / 2, rand);
+		else
+			throw new IllegalArgumentException("Unknown model " + model);
+		fg.initialize();
+
+		// Deterministic outputs are never sampled by the Gibbs schedule, since they are recomputed
+		// whenever one of their inputs is sampled, so leave them out of the sweep and the count.
+		List<ISolverVariable> sampled = new ArrayList<ISolverVariable>();
+		for (VariableBase var : fg.getVariablesFlat())
+			if (!var.isDeterministicOutput())
+				sampled.add(var.getSolver());
+		_variables = sampled.toArray(new ISolverVariable[sampled.size()]);
+	}
+
+	@Benchmark
+	public void sweep(Counters counters)
+	{
+		for (ISolverVariable var : _variables)
+			var.update();
+		counters.samples += _variables.length;
+	}
+
+	/*
+	 * A chain of {@code length} variables, and a deterministic sum of each adjacent pair.
+	 */
+	private FactorGraph sumChain(int length, Random rand)
+	{
+		FactorGraph fg = new FactorGraph(new VariableBase[0], "", JmhGraphs.solverFactory("gibbs"));
+		Discrete[] chain = JmhGraphs.variables(length, domainSize, rand);
+		DiscreteDomain sumDomain = DiscreteDomain.range(0, 2 * domainSize - 2);
+		for (int i = 0; i + 1 < length; ++i)
+		{
+			Discrete sum = new Discrete(sumDomain);
+			double[] input = new double[sumDomain.size()];
+			for (int j = 0; j < input.length; ++j)
+				input[j] = rand.nextDouble() + .1;
+			sum.setInput(input);
+			fg.addFactor(new Sum(), sum, chain[i], chain[i + 1]);
+		}
+		return fg;
+	}
+}
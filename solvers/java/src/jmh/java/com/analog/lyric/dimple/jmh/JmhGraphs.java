@@ -0,0 +1,126 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+
+/**
+ * Graph construction helpers shared by the JMH benchmarks.
+ */
+final class JmhGraphs
+{
+	private JmhGraphs()
+	{
+	}
+
+	/**
+	 * Returns the solver factory for the given solver name, which is one of
+	 * "sumproduct", "minsum" or "gibbs".
+	 */
+	static IFactorGraphFactory<?> solverFactory(String solver)
+	{
+		if (solver.equals("sumproduct"))
+			return new com.analog.lyric.dimple.solvers.sumproduct.Solver();
+		else if (solver.equals("minsum"))
+			return new com.analog.lyric.dimple.solvers.minsum.Solver();
+		else if (solver.equals("gibbs"))
+			return new com.analog.lyric.dimple.solvers.gibbs.Solver();
+		throw new IllegalArgumentException("Unknown solver " + solver);
+	}
+
+	/**
+	 * Creates discrete variables over the range [0, domainSize-1] with random inputs.
+	 */
+	static Discrete[] variables(int count, int domainSize, Random rand)
+	{
+		DiscreteDomain domain = DiscreteDomain.range(0, domainSize - 1);
+		Discrete[] vars = new Discrete[count];
+		for (int i = 0; i < count; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			double[] input = new double[domainSize];
+			for (int j = 0; j < domainSize; ++j)
+				input[j] = rand.nextDouble() + .1;
+			vars[i].setInput(input);
+		}
+		return vars;
+	}
+
+	/**
+	 * Adds a table factor over {@code vars} containing a random subset of about {@code density}
+	 * of the joint domain. The "diagonal" entries are always included so that no message will be
+	 * all zero.
+	 */
+	static void addRandomTableFactor(FactorGraph fg, double density, Random rand, Discrete ... vars)
+	{
+		final int degree = vars.length;
+		final int domainSize = vars[0].getDomain().size();
+		int jointSize = 1;
+		for (int i = 0; i < degree; ++i)
+			jointSize *= domainSize;
+
+		List<int[]> rows = new ArrayList<int[]>();
+		for (int joint = 0; joint < jointSize; ++joint)
+		{
+			int[] row = new int[degree];
+			boolean diagonal = true;
+			for (int i = degree, j = joint; --i >= 0; j /= domainSize)
+			{
+				row[i] = j % domainSize;
+				diagonal &= row[i] == row[degree - 1];
+			}
+			if (diagonal || rand.nextDouble() < density)
+				rows.add(row);
+		}
+
+		int[][] indices = rows.toArray(new int[rows.size()][]);
+		double[] weights = new double[indices.length];
+		for (int i = 0; i < weights.length; ++i)
+			weights[i] = rand.nextDouble() + .01;
+
+		fg.addFactor(indices, weights, vars);
+	}
+
+	/**
+	 * Creates a {@code size} by {@code size} grid of variables with pairwise table factors
+	 * between horizontal and vertical neighbors, using given {@code solver}, which may be null.
+	 */
+	static FactorGraph grid(int size, int domainSize, IFactorGraphFactory<?> solver, Random rand)
+	{
+		FactorGraph fg = new FactorGraph(new VariableBase[0], "", solver);
+		Discrete[] vars = variables(size * size, domainSize, rand);
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				if (j + 1 < size)
+					addRandomTableFactor(fg, 1.0, rand, vars[i*size + j], vars[i*size + j + 1]);
+				if (i + 1 < size)
+					addRandomTableFactor(fg, 1.0, rand, vars[i*size + j], vars[(i+1)*size + j]);
+			}
+		}
+		return fg;
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+
+/**
+ * Measures {@link JointDomainIndexer} conversions between joint indices and per-domain
+ * indices, over every joint index of the domain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class JointDomainIndexerBenchmark
+{
+	@Param({"3", "6"})
+	public int dimensions;
+
+	@Param({"4", "8"})
+	public int domainSize;
+
+	private JointDomainIndexer _indexer;
+	private int[] _indices;
+
+	@Setup
+	public void setup()
+	{
+		DiscreteDomain[] domains = new DiscreteDomain[dimensions];
+		for (int i = 0; i < dimensions; ++i)
+			domains[i] = DiscreteDomain.range(0, domainSize - 1);
+		_indexer = JointDomainIndexer.create(domains);
+		_indices = new int[dimensions];
+	}
+
+	@Benchmark
+	public int jointIndexToIndices()
+	{
+		final JointDomainIndexer indexer = _indexer;
+		final int[] indices = _indices;
+		int sum = 0;
+		for (int joint = 0, end = indexer.getCardinality(); joint < end; ++joint)
+		{
+			indexer.jointIndexToIndices(joint, indices);
+			sum += indices[0];
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int jointIndexFromIndices()
+	{
+		final JointDomainIndexer indexer = _indexer;
+		final int[] indices = _indices;
+		int sum = 0;
+		for (int joint = 0, end = indexer.getCardinality(); joint < end; ++joint)
+		{
+			indices[joint % indices.length] = joint % domainSize;
+			sum += indexer.jointIndexFromIndices(indices);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int jointIndexToElementIndex()
+	{
+		final JointDomainIndexer indexer = _indexer;
+		final int last = dimensions - 1;
+		int sum = 0;
+		for (int joint = 0, end = indexer.getCardinality(); joint < end; ++joint)
+			sum += indexer.jointIndexToElementIndex(joint, joint % last);
+		return sum;
+	}
+}
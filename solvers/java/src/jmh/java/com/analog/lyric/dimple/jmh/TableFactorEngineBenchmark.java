@@ -0,0 +1,95 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+
+/**
+ * Measures sum-product and min-sum table factor updates, which are done by the
+ * solvers' {@code TableFactorEngine}, for a single factor of varying size and sparsity.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class TableFactorEngineBenchmark
+{
+	@Param({"sumproduct", "minsum"})
+	public String solver;
+
+	@Param({"3", "6"})
+	public int degree;
+
+	@Param({"4", "8"})
+	public int domainSize;
+
+	// Fraction of the joint domain present in the table
+	@Param({"1.0", "0.1"})
+	public double density;
+
+	private ISolverFactor _factor;
+
+	@Setup
+	public void setup()
+	{
+		Random rand = new Random(42);
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(JmhGraphs.solverFactory(solver));
+		Discrete[] vars = JmhGraphs.variables(degree, domainSize, rand);
+		JmhGraphs.addRandomTableFactor(fg, density, rand, vars);
+		fg.initialize();
+
+		Factor factor = fg.getNonGraphFactors().getByIndex(0);
+		_factor = factor.getSolver();
+
+		// Propagate the variable inputs to the factor.
+		for (Discrete var : vars)
+			var.getSolver().update();
+	}
+
+	@Benchmark
+	public void update()
+	{
+		_factor.update();
+	}
+
+	@Benchmark
+	public void updateEdge()
+	{
+		_factor.updateEdge(0);
+	}
+}
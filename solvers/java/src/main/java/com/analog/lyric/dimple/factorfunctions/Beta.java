@@ -19,6 +19,7 @@ package com.analog.lyric.dimple.factorfunctions;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.model.values.Value;
 
 /**
  * Gamma distribution. The variables in the argument list are ordered as follows:
@@ -60,20 +61,22 @@ public class Beta extends FactorFunction
 	public double evalEnergy(Object... arguments)
 	{
 		int index = 0;
+		double alpha = _alpha, beta = _beta;
+		double alphaMinusOne = _alphaMinusOne, betaMinusOne = _betaMinusOne, logBetaAlphaBeta = _logBetaAlphaBeta;
 		if (!_parametersConstant)
 		{
-			_alpha = FactorFunctionUtilities.toDouble(arguments[index++]);	// First input is alpha parameter (must be non-negative)
-			_beta = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second input is beta parameter (must be non-negative)
-			_alphaMinusOne = _alpha - 1;
-			_betaMinusOne = _beta - 1;
-			_logBetaAlphaBeta = org.apache.commons.math3.special.Beta.logBeta(_alpha, _beta);
-			if (_alpha < 0) return Double.POSITIVE_INFINITY;
-			if (_beta < 0) return Double.POSITIVE_INFINITY;
+			alpha = FactorFunctionUtilities.toDouble(arguments[index++]);	// First input is alpha parameter (must be non-negative)
+			beta = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second input is beta parameter (must be non-negative)
+			alphaMinusOne = alpha - 1;
+			betaMinusOne = beta - 1;
+			logBetaAlphaBeta = org.apache.commons.math3.special.Beta.logBeta(alpha, beta);
+			if (alpha < 0) return Double.POSITIVE_INFINITY;
+			if (beta < 0) return Double.POSITIVE_INFINITY;
 		}
     	int length = arguments.length;
     	int N = length - index;			// Number of non-parameter variables
     	double sum = 0;
-    	if (_alpha == 1 && _beta == 1)
+    	if (alpha == 1 && beta == 1)
     	{
     		for (; index < length; index++)
     		{
@@ -83,37 +86,97 @@ public class Beta extends FactorFunction
     		}
     		return 0;	// Uniform within 0 <= x <= 1
     	}
-    	else if (_alpha == 1)
+    	else if (alpha == 1)
     	{
     		for (; index < length; index++)
     		{
     			double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Beta variables
     			sum += Math.log(1 - x);
     		}
-    		return N * _logBetaAlphaBeta - sum * _betaMinusOne;
+    		return N * logBetaAlphaBeta - sum * betaMinusOne;
     	}
-		else if (_beta == 1)
+		else if (beta == 1)
 		{
     		for (; index < length; index++)
     		{
     			double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Beta variables
     			sum += Math.log(x);
     		}
-    		return N * _logBetaAlphaBeta - sum * _alphaMinusOne;
+    		return N * logBetaAlphaBeta - sum * alphaMinusOne;
 		}
 		else
 		{
     		for (; index < length; index++)
     		{
     			double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Beta variables
-    			sum += _alphaMinusOne * Math.log(x) + _betaMinusOne * Math.log(1 - x);
+    			sum += alphaMinusOne * Math.log(x) + betaMinusOne * Math.log(1 - x);
     		}
-    		return N * _logBetaAlphaBeta - sum;
+    		return N * logBetaAlphaBeta - sum;
+		}
+	}
+
+	@Override
+	public double evalEnergy(Value[] values)
+	{
+		int index = 0;
+		double alpha = _alpha, beta = _beta;
+		double alphaMinusOne = _alphaMinusOne, betaMinusOne = _betaMinusOne, logBetaAlphaBeta = _logBetaAlphaBeta;
+		if (!_parametersConstant)
+		{
+			alpha = values[index++].getDouble();	// First input is alpha parameter (must be non-negative)
+			beta = values[index++].getDouble();	// Second input is beta parameter (must be non-negative)
+			alphaMinusOne = alpha - 1;
+			betaMinusOne = beta - 1;
+			logBetaAlphaBeta = org.apache.commons.math3.special.Beta.logBeta(alpha, beta);
+			if (alpha < 0) return Double.POSITIVE_INFINITY;
+			if (beta < 0) return Double.POSITIVE_INFINITY;
+		}
+    	int length = values.length;
+    	int N = length - index;			// Number of non-parameter variables
+    	double sum = 0;
+    	if (alpha == 1 && beta == 1)
+    	{
+    		for (; index < length; index++)
+    		{
+    			double x = values[index].getDouble();				// Remaining inputs are Beta variables
+        		if (x < 0 || x > 1)
+        			return Double.POSITIVE_INFINITY;
+    		}
+    		return 0;	// Uniform within 0 <= x <= 1
+    	}
+    	else if (alpha == 1)
+    	{
+    		for (; index < length; index++)
+    		{
+    			double x = values[index].getDouble();				// Remaining inputs are Beta variables
+    			sum += Math.log(1 - x);
+    		}
+    		return N * logBetaAlphaBeta - sum * betaMinusOne;
+    	}
+		else if (beta == 1)
+		{
+    		for (; index < length; index++)
+    		{
+    			double x = values[index].getDouble();				// Remaining inputs are Beta variables
+    			sum += Math.log(x);
+    		}
+    		return N * logBetaAlphaBeta - sum * alphaMinusOne;
+		}
+		else
+		{
+    		for (; index < length; index++)
+    		{
+    			double x = values[index].getDouble();				// Remaining inputs are Beta variables
+    			sum += alphaMinusOne * Math.log(x) + betaMinusOne * Math.log(1 - x);
+    		}
+    		return N * logBetaAlphaBeta - sum;
 		}
 	}
 
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
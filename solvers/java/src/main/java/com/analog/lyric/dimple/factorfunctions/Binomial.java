@@ -61,19 +61,21 @@ public class Binomial extends FactorFunction
 	public double evalEnergy(Object... arguments)
     {
     	int index = 0;
+    	int N = _N;
+    	double negativeLogFactorialN = _negativeLogFactorialN;
     	if (!_NParameterConstant)
     	{
-    		_N = FactorFunctionUtilities.toInteger(arguments[index++]);				// First argument is N parameter
-    		_negativeLogFactorialN = -org.apache.commons.math3.special.Gamma.logGamma((double)(_N + 1));
-    		if (_N < 0) return Double.POSITIVE_INFINITY;
+    		N = FactorFunctionUtilities.toInteger(arguments[index++]);				// First argument is N parameter
+    		negativeLogFactorialN = -org.apache.commons.math3.special.Gamma.logGamma((double)(N + 1));
+    		if (N < 0) return Double.POSITIVE_INFINITY;
     	}
     	
     	double p = FactorFunctionUtilities.toDouble(arguments[index++]);			// Next argument is the probability parameter
 		if (p < 0 || p > 1) return Double.POSITIVE_INFINITY;
 
 		int numOnes = FactorFunctionUtilities.toInteger(arguments[index++]);		// Next argument is the one-count
-		if (numOnes < 0 || numOnes > _N) return Double.POSITIVE_INFINITY;
-		int numZeros = _N - numOnes;
+		if (numOnes < 0 || numOnes > N) return Double.POSITIVE_INFINITY;
+		int numZeros = N - numOnes;
 		
 
     	if (p == 0)
@@ -88,13 +90,15 @@ public class Binomial extends FactorFunction
     			return 0;
     	else
     		return -(numOnes * Math.log(p) + numZeros * Math.log(1-p))
-    				+ _negativeLogFactorialN 
+    				+ negativeLogFactorialN 
     				+ org.apache.commons.math3.special.Gamma.logGamma(numOnes + 1)
     				+ org.apache.commons.math3.special.Gamma.logGamma(numZeros + 1);
 	}
     
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
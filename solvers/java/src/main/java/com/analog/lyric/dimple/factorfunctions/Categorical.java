@@ -75,15 +75,16 @@ public class Categorical extends FactorFunction
 	public double evalEnergy(Object... arguments)
     {
     	int index = 0;
+    	double[] alpha = _alpha;
     	if (!_parametersConstant)
-    		_alpha = (double[])arguments[index++];		// First argument is the parameter vector, if not constant
+    		alpha = (double[])arguments[index++];		// First argument is the parameter vector, if not constant
 
     	final int length = arguments.length;
     	double sum = 0;
     	for (; index < length; index++)
     	{
     		int x = FactorFunctionUtilities.toInteger(arguments[index]);		// Remaining arguments are Categorical variables
-    		sum += -Math.log(_alpha[x]);
+    		sum += -Math.log(alpha[x]);
     	}
     	return sum;
 	}
@@ -92,21 +93,24 @@ public class Categorical extends FactorFunction
 	public double evalEnergy(Value[] values)
     {
     	int index = 0;
+    	double[] alpha = _alpha;
     	if (!_parametersConstant)
-    		_alpha = (double[])values[index++].getObject();		// First argument is the parameter vector, if not constant
+    		alpha = (double[])values[index++].getObject();		// First argument is the parameter vector, if not constant
 
     	final int length = values.length;
     	double sum = 0;
     	for (; index < length; index++)
     	{
-    		int x = FactorFunctionUtilities.toInteger(values[index].getObject());		// Remaining arguments are Categorical variables
-    		sum += -Math.log(_alpha[x]);
+    		int x = values[index].getInt();		// Remaining arguments are Categorical variables
+    		sum += -Math.log(alpha[x]);
     	}
     	return sum;
 	}
     
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
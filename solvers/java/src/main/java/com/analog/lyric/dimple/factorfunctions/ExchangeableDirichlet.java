@@ -74,12 +74,13 @@ public class ExchangeableDirichlet extends FactorFunction
 	public double evalEnergy(Object ... arguments)
 	{
     	int index = 0;
+    	double alpha = _alpha, logBetaAlpha = _logBetaAlpha;
     	if (!_parametersConstant)
     	{
-    		_alpha = (Double)arguments[index++];		// First variable is parameter value
-    		if (_alpha <= 0)
+    		alpha = (Double)arguments[index++];		// First variable is parameter value
+    		if (alpha <= 0)
     			return Double.POSITIVE_INFINITY;
-    		_logBetaAlpha = logBeta(_alpha);
+    		logBetaAlpha = logBeta(alpha);
     	}
 
     	double sum = 0;
@@ -105,19 +106,20 @@ public class ExchangeableDirichlet extends FactorFunction
     			return Double.POSITIVE_INFINITY;
     	}
 
-    	return sum * (_alpha - 1) + N * _logBetaAlpha;
+    	return sum * (alpha - 1) + N * logBetaAlpha;
 	}
     
     @Override
     public double evalEnergy(Value[] values)
     {
     	int index = 0;
+    	double alpha = _alpha, logBetaAlpha = _logBetaAlpha;
     	if (!_parametersConstant)
     	{
-    		_alpha = values[index++].getDouble();		// First variable is parameter value
-    		if (_alpha <= 0)
+    		alpha = values[index++].getDouble();		// First variable is parameter value
+    		if (alpha <= 0)
     			return Double.POSITIVE_INFINITY;
-    		_logBetaAlpha = logBeta(_alpha);
+    		logBetaAlpha = logBeta(alpha);
     	}
 
     	double sum = 0;
@@ -143,7 +145,7 @@ public class ExchangeableDirichlet extends FactorFunction
     			return Double.POSITIVE_INFINITY;
     	}
 
-    	return sum * (_alpha - 1) + N * _logBetaAlpha;
+    	return sum * (alpha - 1) + N * logBetaAlpha;
     }
     
     private final double logBeta(double alpha)
@@ -158,6 +160,8 @@ public class ExchangeableDirichlet extends FactorFunction
     
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
@@ -62,18 +62,19 @@ public class Gamma extends FactorFunction
     public double evalEnergy(Object... arguments)
     {
     	int index = 0;
+    	double alpha = _alpha, beta = _beta, logBeta = _logBeta;
     	if (!_parametersConstant)
     	{
-    		_alpha = FactorFunctionUtilities.toDouble(arguments[index++]);	// First input is alpha parameter (must be non-negative)
-    		if (_alpha <= 0) return Double.POSITIVE_INFINITY;
-    		_beta = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second input is beta parameter (must be non-negative)
-    		if (_beta <= 0) return Double.POSITIVE_INFINITY;
-    		_logBeta = Math.log(_beta);
+    		alpha = FactorFunctionUtilities.toDouble(arguments[index++]);	// First input is alpha parameter (must be non-negative)
+    		if (alpha <= 0) return Double.POSITIVE_INFINITY;
+    		beta = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second input is beta parameter (must be non-negative)
+    		if (beta <= 0) return Double.POSITIVE_INFINITY;
+    		logBeta = Math.log(beta);
     	}
     	int length = arguments.length;
     	int N = length - index;			// Number of non-parameter variables
     	double sum = 0;
-    	if (_alpha == 1)
+    	if (alpha == 1)
     	{
     		for (; index < length; index++)
     		{
@@ -83,14 +84,15 @@ public class Gamma extends FactorFunction
     			else
     				sum += x;
     		}
-    		return sum * _beta - N * _logBeta;
+    		return sum * beta - N * logBeta;
     	}
     	else
     	{
+    		double alphaMinusOne = _alphaMinusOne, logGammaAlphaMinusAlphaLogBeta = _logGammaAlphaMinusAlphaLogBeta;
     		if (!_parametersConstant)
     		{
-        		_alphaMinusOne = _alpha - 1;
-        		_logGammaAlphaMinusAlphaLogBeta = org.apache.commons.math3.special.Gamma.logGamma(_alpha) - _alpha * _logBeta;
+        		alphaMinusOne = alpha - 1;
+        		logGammaAlphaMinusAlphaLogBeta = org.apache.commons.math3.special.Gamma.logGamma(alpha) - alpha * logBeta;
     		}
         	for (; index < length; index++)
         	{
@@ -98,9 +100,9 @@ public class Gamma extends FactorFunction
             	if (x < 0)
             		return Double.POSITIVE_INFINITY;
             	else
-            		sum += x * _beta - Math.log(x) * _alphaMinusOne;
+            		sum += x * beta - Math.log(x) * alphaMinusOne;
         	}
-        	return sum + N * _logGammaAlphaMinusAlphaLogBeta;
+        	return sum + N * logGammaAlphaMinusAlphaLogBeta;
     	}
 	}
     
@@ -108,18 +110,19 @@ public class Gamma extends FactorFunction
     public double evalEnergy(Value[] values)
     {
     	int index = 0;
+    	double alpha = _alpha, beta = _beta, logBeta = _logBeta;
     	if (!_parametersConstant)
     	{
-    		_alpha = values[index++].getDouble();	// First input is alpha parameter (must be non-negative)
-    		if (_alpha <= 0) return Double.POSITIVE_INFINITY;
-    		_beta = values[index++].getDouble();	// Second input is beta parameter (must be non-negative)
-    		if (_beta <= 0) return Double.POSITIVE_INFINITY;
-    		_logBeta = Math.log(_beta);
+    		alpha = values[index++].getDouble();	// First input is alpha parameter (must be non-negative)
+    		if (alpha <= 0) return Double.POSITIVE_INFINITY;
+    		beta = values[index++].getDouble();	// Second input is beta parameter (must be non-negative)
+    		if (beta <= 0) return Double.POSITIVE_INFINITY;
+    		logBeta = Math.log(beta);
     	}
     	int length = values.length;
     	int N = length - index;			// Number of non-parameter variables
     	double sum = 0;
-    	if (_alpha == 1)
+    	if (alpha == 1)
     	{
     		for (; index < length; index++)
     		{
@@ -129,14 +132,15 @@ public class Gamma extends FactorFunction
     			else
     				sum += x;
     		}
-    		return sum * _beta - N * _logBeta;
+    		return sum * beta - N * logBeta;
     	}
     	else
     	{
+    		double alphaMinusOne = _alphaMinusOne, logGammaAlphaMinusAlphaLogBeta = _logGammaAlphaMinusAlphaLogBeta;
     		if (!_parametersConstant)
     		{
-        		_alphaMinusOne = _alpha - 1;
-        		_logGammaAlphaMinusAlphaLogBeta = org.apache.commons.math3.special.Gamma.logGamma(_alpha) - _alpha * _logBeta;
+        		alphaMinusOne = alpha - 1;
+        		logGammaAlphaMinusAlphaLogBeta = org.apache.commons.math3.special.Gamma.logGamma(alpha) - alpha * logBeta;
     		}
         	for (; index < length; index++)
         	{
@@ -144,14 +148,16 @@ public class Gamma extends FactorFunction
             	if (x < 0)
             		return Double.POSITIVE_INFINITY;
             	else
-            		sum += x * _beta - Math.log(x) * _alphaMinusOne;
+            		sum += x * beta - Math.log(x) * alphaMinusOne;
         	}
-        	return sum + N * _logGammaAlphaMinusAlphaLogBeta;
+        	return sum + N * logGammaAlphaMinusAlphaLogBeta;
     	}
 	}
     
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
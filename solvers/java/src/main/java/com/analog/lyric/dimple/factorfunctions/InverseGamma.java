@@ -59,14 +59,15 @@ public class InverseGamma extends FactorFunction
 	public double evalEnergy(Object... arguments)
     {
     	int index = 0;
+    	double beta = _beta, alphaPlusOne = _alphaPlusOne, logGammaAlphaMinusAlphaLogBeta = _logGammaAlphaMinusAlphaLogBeta;
     	if (!_parametersConstant)
     	{
-    		_alpha = FactorFunctionUtilities.toDouble(arguments[index++]);	// First input is alpha parameter (must be non-negative)
-    		if (_alpha <= 0) return Double.POSITIVE_INFINITY;
-    		_beta = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second input is beta parameter (must be non-negative)
-    		if (_beta <= 0) return Double.POSITIVE_INFINITY;
-    		_alphaPlusOne = _alpha + 1;
-    		_logGammaAlphaMinusAlphaLogBeta = org.apache.commons.math3.special.Gamma.logGamma(_alpha) - _alpha * Math.log(_beta);
+    		final double alpha = FactorFunctionUtilities.toDouble(arguments[index++]);	// First input is alpha parameter (must be non-negative)
+    		if (alpha <= 0) return Double.POSITIVE_INFINITY;
+    		beta = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second input is beta parameter (must be non-negative)
+    		if (beta <= 0) return Double.POSITIVE_INFINITY;
+    		alphaPlusOne = alpha + 1;
+    		logGammaAlphaMinusAlphaLogBeta = org.apache.commons.math3.special.Gamma.logGamma(alpha) - alpha * Math.log(beta);
     	}
     	int length = arguments.length;
     	int N = length - index;			// Number of non-parameter variables
@@ -77,13 +78,15 @@ public class InverseGamma extends FactorFunction
         	if (x < 0)
         		return Double.POSITIVE_INFINITY;
         	else
-        		sum += _beta/x + _alphaPlusOne * Math.log(x);
+        		sum += beta/x + alphaPlusOne * Math.log(x);
     	}
-		return sum + N * _logGammaAlphaMinusAlphaLogBeta;
+		return sum + N * logGammaAlphaMinusAlphaLogBeta;
 	}
     
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
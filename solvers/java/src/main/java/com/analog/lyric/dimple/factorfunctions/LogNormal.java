@@ -19,6 +19,7 @@ package com.analog.lyric.dimple.factorfunctions;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.model.values.Value;
 
 
 /**
@@ -59,13 +60,14 @@ public class LogNormal extends FactorFunction
 	public double evalEnergy(Object... arguments)
     {
     	int index = 0;
+    	double mean = _mean, logSqrtPrecisionOver2Pi = _logSqrtPrecisionOver2Pi, precisionOverTwo = _precisionOverTwo;
     	if (!_parametersConstant)
     	{
-    		_mean = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is mean parameter
-    		_precision = FactorFunctionUtilities.toDouble(arguments[index++]);			// Second variable is precision (must be non-negative)
-    		_logSqrtPrecisionOver2Pi = Math.log(_precision)*0.5 - _logSqrt2pi;
-    		_precisionOverTwo = _precision*0.5;
-    		if (_precision < 0) return Double.POSITIVE_INFINITY;
+    		mean = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is mean parameter
+    		final double precision = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second variable is precision (must be non-negative)
+    		logSqrtPrecisionOver2Pi = Math.log(precision)*0.5 - _logSqrt2pi;
+    		precisionOverTwo = precision*0.5;
+    		if (precision < 0) return Double.POSITIVE_INFINITY;
     	}
     	int length = arguments.length;
     	int N = length - index;			// Number of non-parameter variables
@@ -78,15 +80,48 @@ public class LogNormal extends FactorFunction
         	else
         	{
         		double logX = Math.log(x);
-        		double relLogX = logX - _mean;
-        		sum += logX + relLogX*relLogX*_precisionOverTwo;
+        		double relLogX = logX - mean;
+        		sum += logX + relLogX*relLogX*precisionOverTwo;
         	}
     	}
-    	return sum - N * _logSqrtPrecisionOver2Pi;
+    	return sum - N * logSqrtPrecisionOver2Pi;
+	}
+
+    @Override
+	public double evalEnergy(Value[] values)
+    {
+    	int index = 0;
+    	double mean = _mean, logSqrtPrecisionOver2Pi = _logSqrtPrecisionOver2Pi, precisionOverTwo = _precisionOverTwo;
+    	if (!_parametersConstant)
+    	{
+    		mean = values[index++].getDouble();				// First variable is mean parameter
+    		final double precision = values[index++].getDouble();	// Second variable is precision (must be non-negative)
+    		logSqrtPrecisionOver2Pi = Math.log(precision)*0.5 - _logSqrt2pi;
+    		precisionOverTwo = precision*0.5;
+    		if (precision < 0) return Double.POSITIVE_INFINITY;
+    	}
+    	int length = values.length;
+    	int N = length - index;			// Number of non-parameter variables
+    	double sum = 0;
+    	for (; index < length; index++)
+    	{
+    		double x = values[index].getDouble();				// Remaining inputs are LogNormal variables
+        	if (x <= 0)
+        		return Double.POSITIVE_INFINITY;
+        	else
+        	{
+        		double logX = Math.log(x);
+        		double relLogX = logX - mean;
+        		sum += logX + relLogX*relLogX*precisionOverTwo;
+        	}
+    	}
+    	return sum - N * logSqrtPrecisionOver2Pi;
 	}
     
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
@@ -16,6 +16,8 @@
 
 package com.analog.lyric.dimple.factorfunctions;
 
+import java.util.Arrays;
+
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
@@ -72,51 +74,98 @@ public class Normal extends FactorFunction
 	public double evalEnergy(Object ... arguments)
 	{
     	int index = 0;
+    	double mean = _mean, logSqrtPrecisionOver2Pi = _logSqrtPrecisionOver2Pi, precisionOverTwo = _precisionOverTwo;
     	if (!_parametersConstant)
     	{
-    		_mean = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is mean parameter
-    		_precision = FactorFunctionUtilities.toDouble(arguments[index++]);			// Second variable is precision (must be non-negative)
-    		_logSqrtPrecisionOver2Pi = Math.log(_precision)*0.5 - _logSqrt2pi;
-    		_precisionOverTwo = _precision*0.5;
-    		if (_precision < 0) return Double.POSITIVE_INFINITY;
+    		mean = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is mean parameter
+    		final double precision = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second variable is precision (must be non-negative)
+    		logSqrtPrecisionOver2Pi = Math.log(precision)*0.5 - _logSqrt2pi;
+    		precisionOverTwo = precision*0.5;
+    		if (precision < 0) return Double.POSITIVE_INFINITY;
     	}
     	int length = arguments.length;
     	int N = length - index;			// Number of non-parameter variables
     	double sum = 0;
     	for (; index < length; index++)
     	{
-    		double relInput = FactorFunctionUtilities.toDouble(arguments[index]) - _mean;	// Remaining inputs are Normal variables
+    		double relInput = FactorFunctionUtilities.toDouble(arguments[index]) - mean;	// Remaining inputs are Normal variables
     		sum += relInput*relInput;
     	}
-    	return sum * _precisionOverTwo - N * _logSqrtPrecisionOver2Pi;
+    	return sum * precisionOverTwo - N * logSqrtPrecisionOver2Pi;
 	}
     
     @Override
 	public double evalEnergy(Value[] values)
 	{
     	int index = 0;
+    	double mean = _mean, logSqrtPrecisionOver2Pi = _logSqrtPrecisionOver2Pi, precisionOverTwo = _precisionOverTwo;
     	if (!_parametersConstant)
     	{
-    		_mean = values[index++].getDouble();				// First variable is mean parameter
-    		_precision = values[index++].getDouble();			// Second variable is precision (must be non-negative)
-    		_logSqrtPrecisionOver2Pi = Math.log(_precision)*0.5 - _logSqrt2pi;
-    		_precisionOverTwo = _precision*0.5;
-    		if (_precision < 0) return Double.POSITIVE_INFINITY;
+    		mean = values[index++].getDouble();				// First variable is mean parameter
+    		final double precision = values[index++].getDouble();	// Second variable is precision (must be non-negative)
+    		logSqrtPrecisionOver2Pi = Math.log(precision)*0.5 - _logSqrt2pi;
+    		precisionOverTwo = precision*0.5;
+    		if (precision < 0) return Double.POSITIVE_INFINITY;
     	}
     	int length = values.length;
     	int N = length - index;			// Number of non-parameter variables
     	double sum = 0;
     	for (; index < length; index++)
     	{
-    		double relInput = values[index].getDouble() - _mean;	// Remaining inputs are Normal variables
+    		double relInput = values[index].getDouble() - mean;	// Remaining inputs are Normal variables
     		sum += relInput*relInput;
     	}
-    	return sum * _precisionOverTwo - N * _logSqrtPrecisionOver2Pi;
+    	return sum * precisionOverTwo - N * logSqrtPrecisionOver2Pi;
 	}
-    
-    
+
+    @Override
+	public void evalEnergies(Value[] values, int batchIndex, double[] batch, double[] energies)
+	{
+    	if (batchIndex < _firstDirectedToIndex)
+    	{
+    		// Varying a parameter changes every term
+    		super.evalEnergies(values, batchIndex, batch, energies);
+    		return;
+    	}
+
+    	int index = 0;
+    	double mean = _mean, logSqrtPrecisionOver2Pi = _logSqrtPrecisionOver2Pi, precisionOverTwo = _precisionOverTwo;
+    	if (!_parametersConstant)
+    	{
+    		mean = values[index++].getDouble();
+    		final double precision = values[index++].getDouble();
+    		logSqrtPrecisionOver2Pi = Math.log(precision)*0.5 - _logSqrt2pi;
+    		precisionOverTwo = precision*0.5;
+    		if (precision < 0)
+    		{
+    			Arrays.fill(energies, 0, batch.length, Double.POSITIVE_INFINITY);
+    			return;
+    		}
+    	}
+    	int length = values.length;
+    	int N = length - index;			// Number of non-parameter variables
+    	double sum = 0;					// Sum over all but the batch variable
+    	for (; index < length; index++)
+    	{
+    		if (index != batchIndex)
+    		{
+    			double relInput = values[index].getDouble() - mean;
+    			sum += relInput*relInput;
+    		}
+    	}
+    	final double normalization = N * logSqrtPrecisionOver2Pi;
+    	for (int i = 0, end = batch.length; i < end; ++i)
+    	{
+    		double relInput = batch[i] - mean;
+    		energies[i] = (sum + relInput*relInput) * precisionOverTwo - normalization;
+    	}
+	}
+
+
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
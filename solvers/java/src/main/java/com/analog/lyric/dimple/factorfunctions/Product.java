@@ -18,6 +18,7 @@ package com.analog.lyric.dimple.factorfunctions;
 
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.model.values.Value;
 
 
 /**
@@ -71,6 +72,27 @@ public class Product extends FactorFunction
     		return (product == out) ? 0 : Double.POSITIVE_INFINITY;
     	}
     }
+
+    @Override
+    public double evalEnergy(Value[] values)
+    {
+    	int length = values.length;
+    	double out = values[0].getDouble();
+    	double product = 1;
+    	for (int i = 1; i < length; i++)
+    		product *= values[i].getDouble();
+
+    	if (_smoothingSpecified)
+    	{
+    		double diff = product - out;
+    		double potential = diff*diff;
+    		return potential*_beta;
+    	}
+    	else
+    	{
+    		return (product == out) ? 0 : Double.POSITIVE_INFINITY;
+    	}
+    }
     
     
     @Override
@@ -79,6 +101,8 @@ public class Product extends FactorFunction
 	public final int[] getDirectedToIndices() {return new int[]{0};}
     @Override
 	public final boolean isDeterministicDirected() {return !_smoothingSpecified;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final void evalDeterministic(Object[] arguments)
     {
@@ -55,12 +55,13 @@ public class Rayleigh extends FactorFunction
 	public double evalEnergy(Object... arguments)
     {
     	int index = 0;
+    	double inverseSigmaSquared = _inverseSigmaSquared, halfInverseSigmaSquared = _halfInverseSigmaSquared;
     	if (!_parametersConstant)
     	{
-    		_sigma = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is sigma
-    		_inverseSigmaSquared = 1/(_sigma*_sigma);
-    		_halfInverseSigmaSquared = _inverseSigmaSquared * 0.5;
-    		if (_sigma < 0) return Double.POSITIVE_INFINITY;
+    		final double sigma = FactorFunctionUtilities.toDouble(arguments[index++]);	// First variable is sigma
+    		inverseSigmaSquared = 1/(sigma*sigma);
+    		halfInverseSigmaSquared = inverseSigmaSquared * 0.5;
+    		if (sigma < 0) return Double.POSITIVE_INFINITY;
     	}
     	int length = arguments.length;
     	double sum = 0;
@@ -70,13 +71,15 @@ public class Rayleigh extends FactorFunction
         	if (x < 0)
         		return Double.POSITIVE_INFINITY;
         	else
-        		sum += x*x*_halfInverseSigmaSquared - Math.log(x*_inverseSigmaSquared);
+        		sum += x*x*halfInverseSigmaSquared - Math.log(x*inverseSigmaSquared);
     	}
     	return sum;
 	}
     
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
@@ -81,6 +81,8 @@ public class Subtract extends FactorFunction
 	public final int[] getDirectedToIndices() {return new int[]{0};}
     @Override
 	public final boolean isDeterministicDirected() {return !_smoothingSpecified;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final void evalDeterministic(Object[] arguments)
     {
@@ -0,0 +1,47 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.factorfunctions;
+
+import com.analog.lyric.dimple.factorfunctions.core.DistanceFactorFunction;
+
+/**
+ * Truncated linear smoothness function of two numeric variables, whose energy is
+ * {@code min(scale * |x - y|, truncation)}.
+ * <p>
+ * The variables are ordered as follows in the argument list:
+ * 
+ * 1) First value (double or integer)
+ * 2) Second value (double or integer)
+ * 
+ * @since 0.05
+ */
+public class TruncatedLinear extends DistanceFactorFunction
+{
+	public TruncatedLinear(double scale, double truncation)
+	{
+		super(1, scale, truncation);
+	}
+	
+	/**
+	 * Constructs function without truncation.
+	 */
+	public TruncatedLinear(double scale)
+	{
+		this(scale, Double.POSITIVE_INFINITY);
+	}
+}
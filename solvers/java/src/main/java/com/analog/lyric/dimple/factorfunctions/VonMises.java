@@ -61,12 +61,13 @@ public class VonMises extends FactorFunction
 	public double evalEnergy(Object... arguments)
     {
     	int index = 0;
+    	double mean = _mean, precision = _precision, log2piBesseli0Precision = _log2piBesseli0Precision;
     	if (!_parametersConstant)
     	{
-    		_mean = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is mean parameter
-    		_precision = FactorFunctionUtilities.toDouble(arguments[index++]);			// Second variable is precision (must be non-negative)
-    		_log2piBesseli0Precision = Math.log(Bessel.i0(_precision)) + _log2pi;
-    		if (_precision < 0) return Double.POSITIVE_INFINITY;
+    		mean = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is mean parameter
+    		precision = FactorFunctionUtilities.toDouble(arguments[index++]);			// Second variable is precision (must be non-negative)
+    		log2piBesseli0Precision = Math.log(Bessel.i0(precision)) + _log2pi;
+    		if (precision < 0) return Double.POSITIVE_INFINITY;
     	}
     	int length = arguments.length;
     	int N = length - index;			// Number of non-parameter variables
@@ -76,13 +77,15 @@ public class VonMises extends FactorFunction
     		double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are VonMises variables
     		if (x < MINUS_PI || x > PI)
     			return Double.POSITIVE_INFINITY;
-        	sum -= Math.cos(x - _mean);
+        	sum -= Math.cos(x - mean);
     	}
-    	return sum * _precision + N * _log2piBesseli0Precision;
+    	return sum * precision + N * log2piBesseli0Precision;
 	}
     
     @Override
     public final boolean isDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final int[] getDirectedToIndices(int numEdges)
 	{
@@ -54,6 +54,8 @@ public class Xor extends FactorFunction
 	public final int[] getDirectedToIndices() {return new int[]{0};}
     @Override
 	public final boolean isDeterministicDirected() {return true;}
+    @Override
+	public boolean isEvaluationThreadSafe() {return true;}
     @Override
 	public final void evalDeterministic(Object[] arguments)
     {
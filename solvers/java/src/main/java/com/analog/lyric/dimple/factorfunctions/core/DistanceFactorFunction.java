@@ -0,0 +1,132 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Base class for implementations of {@link IDistanceFactorFunction}.
+ * <p>
+ * The function takes exactly two numeric arguments.
+ *
+ * @since 0.05
+ */
+public abstract class DistanceFactorFunction extends FactorFunction implements IDistanceFactorFunction
+{
+	/*-------
+	 * State
+	 */
+
+	private final int _power;
+	private final double _scale;
+	private final double _truncation;
+
+	/*--------------
+	 * Construction
+	 */
+
+	protected DistanceFactorFunction(int power, double scale, double truncation)
+	{
+		if (power < 0 || power > 2)
+			throw new DimpleException("Distance power must be 0, 1 or 2: %d", power);
+		if (!(scale >= 0) || Double.isInfinite(scale))
+			throw new DimpleException("Distance scale must be non-negative and finite: %g", scale);
+		if (!(truncation >= 0))
+			throw new DimpleException("Distance truncation must be non-negative: %g", truncation);
+
+		_power = power;
+		_scale = scale;
+		_truncation = truncation;
+	}
+
+	/*------------------------
+	 * FactorFunction methods
+	 */
+
+	@Override
+	public double evalEnergy(Object... arguments)
+	{
+		if (arguments.length != 2)
+			throw new DimpleException("%s requires exactly two arguments", getName());
+		return distanceEnergy(FactorFunctionUtilities.toDouble(arguments[0]) - FactorFunctionUtilities.toDouble(arguments[1]));
+	}
+
+	@Override
+	public double evalEnergy(Value[] values)
+	{
+		if (values.length != 2)
+			throw new DimpleException("%s requires exactly two arguments", getName());
+		return distanceEnergy(values[0].getDouble() - values[1].getDouble());
+	}
+
+	@Override
+	public String getTableCacheVersion()
+	{
+		return String.format("%d:%s:%s", _power, Double.toString(_scale), Double.toString(_truncation));
+	}
+
+	@Override
+	public boolean isEvaluationThreadSafe()
+	{
+		return true;
+	}
+
+	/*---------------------------------
+	 * IDistanceFactorFunction methods
+	 */
+
+	@Override
+	public int getDistancePower()
+	{
+		return _power;
+	}
+
+	@Override
+	public double getDistanceScale()
+	{
+		return _scale;
+	}
+
+	@Override
+	public double getTruncation()
+	{
+		return _truncation;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private double distanceEnergy(double difference)
+	{
+		final double energy;
+		switch (_power)
+		{
+		case 0:
+			energy = difference == 0 ? 0 : _scale;
+			break;
+		case 1:
+			energy = _scale * Math.abs(difference);
+			break;
+		default:
+			energy = _scale * difference * difference;
+			break;
+		}
+		return Math.min(energy, _truncation);
+	}
+}
@@ -16,15 +16,12 @@
 
 package com.analog.lyric.dimple.factorfunctions.core;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.jcip.annotations.ThreadSafe;
-import cern.colt.list.DoubleArrayList;
-import cern.colt.list.IntArrayList;
 
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.MatrixProduct;
@@ -33,6 +30,7 @@ import com.analog.lyric.dimple.model.domains.DomainList;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.IndexedValue;
+import com.analog.lyric.dimple.model.values.RealValue;
 import com.analog.lyric.dimple.model.values.Value;
 
 @ThreadSafe
@@ -45,6 +43,9 @@ public abstract class FactorFunction
 	// Cache of factor tables for this function by domain.
 	private AtomicReference<ConcurrentMap<JointDomainIndexer, IFactorTable>> _factorTables =
 		new AtomicReference<ConcurrentMap<JointDomainIndexer, IFactorTable>>();
+	// Locks held while creating factor tables by domain, so that each table is only created once.
+	private AtomicReference<ConcurrentMap<JointDomainIndexer, Object>> _factorTableLocks =
+		new AtomicReference<ConcurrentMap<JointDomainIndexer, Object>>();
 	private final String _name;
 	
 	/*--------------
@@ -76,7 +77,13 @@ public abstract class FactorFunction
     		if (tables != null)
     		{
     			IFactorTable table = tables.get(oldDomains);
-    			if (table != null)
+    			if (table instanceof OffHeapFactorTable)
+    			{
+    				// Read-only tables from the disk cache cannot be converted, so drop it and
+    				// let the table for the new domains be looked up separately.
+    				tables.remove(oldDomains, table);
+    			}
+    			else if (table != null)
     			{
     				table.setConditional(newDomains.getOutputSet());
     			}
@@ -114,6 +121,38 @@ public abstract class FactorFunction
 		return evalEnergy(objects);
 	}
 
+	/**
+	 * Evaluates the energy for a batch of values of one argument, holding the others fixed.
+	 * <p>
+	 * Sets {@code energies[i]} to the energy of {@code values} with the argument at {@code index}
+	 * replaced by {@code batch[i]}, for each element of {@code batch}. The contents of {@code values}
+	 * are the same on return as on entry.
+	 * <p>
+	 * The default implementation invokes {@link #evalEnergy(Value[])} once per element. It can be
+	 * overridden to compute the part of the energy that does not depend on the varying argument only once.
+	 *
+	 * @param energies must be at least as long as {@code batch}.
+	 * @since 0.05
+	 */
+	public void evalEnergies(Value[] values, int index, double[] batch, double[] energies)
+	{
+		final Value saved = values[index];
+		final Value value = RealValue.create();
+		values[index] = value;
+		try
+		{
+			for (int i = 0, end = batch.length; i < end; ++i)
+			{
+				value.setDouble(batch[i]);
+				energies[i] = evalEnergy(values);
+			}
+		}
+		finally
+		{
+			values[index] = saved;
+		}
+	}
+
 
 	/**
 	 * @since 0.05
@@ -221,11 +260,45 @@ public abstract class FactorFunction
     	
     	if (factorTable == null)
     	{
-    		IFactorTable newTable = createTableForDomains(domains);
-    		factorTable = factorTables.putIfAbsent(domains, newTable);
-    		if (factorTable == null)
+    		// Threads that race to create the same table wait on a common lock for the first one
+    		// to finish instead of each creating its own copy.
+    		ConcurrentMap<JointDomainIndexer, Object> locks = _factorTableLocks.get();
+    		if (locks == null)
     		{
-    			factorTable = newTable;
+    			_factorTableLocks.compareAndSet(null, new ConcurrentHashMap<JointDomainIndexer, Object>());
+    			locks = _factorTableLocks.get();
+    		}
+    		
+    		Object lock = new Object();
+    		Object existingLock = locks.putIfAbsent(domains, lock);
+    		if (existingLock != null)
+    		{
+    			lock = existingLock;
+    		}
+    		
+    		try
+    		{
+    			synchronized (lock)
+    			{
+    				factorTable = factorTables.get(domains);
+    				if (factorTable == null)
+    				{
+    					FactorTableDiskCache diskCache = FactorTableDiskCache.getDefault();
+    					if (diskCache != null)
+    					{
+    						factorTable = diskCache.getTable(this, domains);
+    					}
+    					if (factorTable == null)
+    					{
+    						factorTable = createTableForDomains(domains);
+    					}
+    					factorTables.put(domains, factorTable);
+    				}
+    			}
+    		}
+    		finally
+    		{
+    			locks.remove(domains, lock);
     		}
     	}
     	
@@ -270,9 +343,42 @@ public abstract class FactorFunction
 		return _name;
 	}
 
+	/**
+	 * Identifies the parameters and implementation of this function for {@link FactorTableDiskCache},
+	 * or null if its tables should not be stored on disk.
+	 * <p>
+	 * Tables are cached on disk by the class of the function, its constants, its domains and this
+	 * string, which should therefore include the value of any parameters that affect the function's
+	 * energy, and should be changed whenever the implementation changes the energy it computes.
+	 * <p>
+	 * Default implementation returns null.
+	 * 
+	 * @since 0.05
+	 */
+	public String getTableCacheVersion()
+	{
+		return null;
+	}
+
 	public boolean isDeterministicDirected()
 	{return false;}
 
+	/**
+	 * True if {@link #evalEnergy(Object...)} and {@link #evalDeterministic(Object[])} may be
+	 * invoked concurrently from multiple threads. If so, large factor tables for this function
+	 * will be created in parallel, and by default solver factors that use it report that they
+	 * {@linkplain com.analog.lyric.dimple.solvers.interfaces.ISolverFactor#isConcurrentlyEvaluable()
+	 * may be evaluated concurrently}.
+	 * <p>
+	 * Default implementation returns false, since many functions save intermediate values in
+	 * fields while evaluating. Functions whose evaluation only reads the state of the
+	 * function should override this to return true.
+	 * 
+	 * @since 0.05
+	 */
+	public boolean isEvaluationThreadSafe()
+	{return false;}
+
 	public boolean isDirected()
 	{return false;}
 
@@ -343,56 +449,13 @@ public abstract class FactorFunction
      * <p>
      * Invoked implicitly by {@link #getFactorTable(JointDomainIndexer)} the first time
      * a factor table is needed for specified domains.
+     * <p>
+     * The default implementation evaluates the function over the entire joint domain, which
+     * is split into chunks that are evaluated in parallel if {@link #isEvaluationThreadSafe()}.
      */
     protected IFactorTable createTableForDomains(JointDomainIndexer domains)
     {
-    	final FactorTable table = new FactorTable(domains);
-
-    	final Object[] elements = new Object[domains.size()];
-
-    	if (isDeterministicDirected() && domains.isDirected())
-    	{
-    		final int maxInput = domains.getInputCardinality();
-    		final int[] outputs = new int[maxInput];
-
-    		for (int inputIndex = 0; inputIndex < maxInput; ++inputIndex)
-    		{
-    			domains.inputIndexToElements(inputIndex, elements);
-    			evalDeterministic(elements);
-    			outputs[inputIndex] = domains.outputIndexFromElements(elements);
-    		}
-
-    		table.setDeterministicOutputIndices(outputs);
-    	}
-    	else
-    	{
-    		IntArrayList indexes = new IntArrayList();
-    		DoubleArrayList energies = new DoubleArrayList();
-
-    		final int maxJoint = domains.getCardinality();
-    		for (int jointIndex = 0; jointIndex < maxJoint; ++ jointIndex)
-    		{
-    			domains.jointIndexToElements(jointIndex, elements);
-    			double energy = evalEnergy(elements);
-    			if (!Double.isInfinite(energy))
-    			{
-    				indexes.add(jointIndex);
-    				energies.add(energy);
-    			}
-    		}
-
-    		if (indexes.size() == maxJoint)
-    		{
-    			table.setEnergiesDense(Arrays.copyOf(energies.elements(), maxJoint));
-    		}
-    		else
-    		{
-    			table.setEnergiesSparse(Arrays.copyOf(indexes.elements(), indexes.size()),
-    				Arrays.copyOf(energies.elements(), indexes.size()));
-    		}
-    	}
-
-    	return table;
+    	return new FactorTableBuilder(this, domains).build();
     }
     
     
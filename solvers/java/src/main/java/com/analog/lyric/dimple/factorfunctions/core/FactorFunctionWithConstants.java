@@ -35,6 +35,10 @@ public class FactorFunctionWithConstants extends FactorFunction
 	private FactorFunction _factorFunction;
 	private Object[] _constants;
 	private Value[] _constantValues;
+	/**
+	 * Per-thread argument array used by {@link #evalEnergy(Value[])} to hold the expanded values.
+	 */
+	private final ThreadLocal<Value[]> _expandedValues = new ThreadLocal<Value[]>();
 	private int[] _constantIndices;
 	private int[] _indexToEdgeOrConstant;
 	private int[] _edgeToIndex;
@@ -214,7 +218,14 @@ public class FactorFunctionWithConstants extends FactorFunction
 	@Override
 	public double evalEnergy(Value[] values)
 	{
-		return _factorFunction.evalEnergy(expandValues(values));
+		final int expandedLength = values.length + _constants.length;
+		Value[] expandedValues = _expandedValues.get();
+		if (expandedValues == null || expandedValues.length != expandedLength)
+		{
+			expandedValues = new Value[expandedLength];
+			_expandedValues.set(expandedValues);
+		}
+		return _factorFunction.evalEnergy(expandValues(values, expandedValues));
 	}
 	
 	@Override
@@ -255,6 +266,18 @@ public class FactorFunctionWithConstants extends FactorFunction
 		return _factorFunction.isDeterministicDirected();
 	}
 	
+	@Override
+	public boolean isEvaluationThreadSafe()
+	{
+		return _factorFunction.isEvaluationThreadSafe();
+	}
+	
+	@Override
+	public String getTableCacheVersion()
+	{
+		return _factorFunction.getTableCacheVersion();
+	}
+	
 	@Override
 	public void evalDeterministic(Object[] arguments)
 	{
@@ -383,11 +406,19 @@ public class FactorFunctionWithConstants extends FactorFunction
 	}
 	
 	protected Value[] expandValues(Value[] values)
+	{
+		return expandValues(values, new Value[values.length + _constants.length]);
+	}
+	
+	/**
+	 * Expand {@code values} to include the constants, writing the result into {@code expandedValues},
+	 * whose length must be the combined number of values and constants.
+	 * @since 0.05
+	 */
+	protected Value[] expandValues(Value[] values, Value[] expandedValues)
 	{
 		int inputLength = values.length;
 		int constantLength = _constants.length;
-		int expandedLength = inputLength + constantLength;
-		Value[] expandedValues = new Value[expandedLength];
 		
 		int ei = 0, vi = 0;
 		for (int ci = 0; ci < constantLength; ++ ci)
@@ -22,6 +22,7 @@ import static com.analog.lyric.math.Utilities.*;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -39,6 +40,7 @@ import com.analog.lyric.dimple.model.domains.JointDiscreteDomain;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer.Indices;
+import com.analog.lyric.dimple.model.serializerdetails.BinaryDeserializer;
 import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.math.Utilities;
@@ -738,6 +740,16 @@ public class FactorTable extends SparseFactorTableBase
 		return mct;
 	}
 
+	/**
+	 * Reads a table written by {@link IFactorTable#serializeToBinary(java.nio.channels.WritableByteChannel)}
+	 * from {@code channel}, which is not closed.
+	 * @since 0.05
+	 */
+	public static IFactorTable deserializeFromBinary(ReadableByteChannel channel) throws IOException
+	{
+		return BinaryDeserializer.deserializeFactorTable(channel);
+	}
+
 	/*----------------
 	 * Object methods
 	 */
@@ -1160,6 +1172,7 @@ public class FactorTable extends SparseFactorTableBase
 				_denseEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 				_denseWeights = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 				_representation = DETERMINISTIC | (_representation & SPARSE_INDICES);
+				structureChanged();
 				// deterministic directed is a special case of conditional
 				_computedMask |= CONDITIONAL|CONDITIONAL_COMPUTED;
 			}
@@ -1175,7 +1188,7 @@ public class FactorTable extends SparseFactorTableBase
 		final double prevEnergy = getEnergyForJointIndex(jointIndex);
 		if (prevEnergy != energy)
 		{
-			_computedMask = 0;
+			valuesChanged();
 			if ((_representation & ALL_VALUES) == DETERMINISTIC)
 			{
 				// If we have sparse indices, then presumably a sparse representation is still wanted.
@@ -1205,7 +1218,7 @@ public class FactorTable extends SparseFactorTableBase
 		final double prevEnergy = getEnergyForSparseIndex(sparseIndex);
 		if (prevEnergy != energy)
 		{
-			_computedMask = 0;
+			valuesChanged();
 			if ((_representation & ALL_VALUES) == DETERMINISTIC)
 			{
 				setRepresentation(_representation | SPARSE_ENERGY);
@@ -1234,7 +1247,7 @@ public class FactorTable extends SparseFactorTableBase
 		final double prevWeight = getWeightForJointIndex(jointIndex);
 		if (prevWeight != weight)
 		{
-			_computedMask = 0;
+			valuesChanged();
 			if ((_representation & ALL_VALUES) == DETERMINISTIC)
 			{
 				// If we have sparse indices, then presumably a sparse representation is still wanted.
@@ -1264,7 +1277,7 @@ public class FactorTable extends SparseFactorTableBase
 		final double prevWeight = getWeightForSparseIndex(sparseIndex);
 		if (prevWeight != weight)
 		{
-			_computedMask = 0;
+			valuesChanged();
 			if ((_representation & ALL_VALUES) == DETERMINISTIC)
 			{
 				setRepresentation(_representation | SPARSE_WEIGHT);
@@ -1325,6 +1338,22 @@ public class FactorTable extends SparseFactorTableBase
 		return sparseIndex;
 	}
 	
+	@Override
+	void addSparseRepresentation()
+	{
+		if (!hasSparseRepresentation())
+		{
+			if (hasDenseWeights())
+			{
+				setRepresentation(_representation | SPARSE_WEIGHT);
+			}
+			else
+			{
+				setRepresentation(_representation | SPARSE_ENERGY);
+			}
+		}
+	}
+	
 	@Override
 	public final int sparseIndexFromJointIndex(int jointIndex)
 	{
@@ -1499,6 +1528,7 @@ public class FactorTable extends SparseFactorTableBase
 				_sparseWeights = sparseWeights;
 				_sparseIndexToJointIndex = sparseToJoint;
 				_sparseIndices = sparseIndices;
+				structureChanged();
 			}
 		}
 		
@@ -1718,6 +1748,7 @@ public class FactorTable extends SparseFactorTableBase
 		
 		_sparseIndexToJointIndex = sparseToJoint;
 		_representation = DETERMINISTIC;
+		structureChanged();
 		_denseEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		_denseWeights = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		_sparseEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY;
@@ -1748,6 +1779,8 @@ public class FactorTable extends SparseFactorTableBase
 			return;
 		}
 		
+		structureChanged();
+		
 		//
 		// Disallow non-sparse rep combined with sparse indices
 		//
@@ -2117,6 +2150,8 @@ public class FactorTable extends SparseFactorTableBase
 			throw new DimpleException("Cannot copy from factor table with different domains");
 		}
 		
+		structureChanged();
+		
 		if (that instanceof FactorTable)
 		{
 			FactorTable other = (FactorTable)that;
@@ -2140,7 +2175,7 @@ public class FactorTable extends SparseFactorTableBase
 			_denseWeights = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 			_sparseIndexToJointIndex = ArrayUtil.EMPTY_INT_ARRAY;
 			_sparseIndices = ArrayUtil.EMPTY_INT_ARRAY_ARRAY;
-			_computedMask = 0;
+			valuesChanged();
 
 			if (that.hasSparseRepresentation())
 			{
@@ -2297,6 +2332,7 @@ public class FactorTable extends SparseFactorTableBase
 			}
 			_sparseIndexToJointIndex = ArrayUtil.copyArrayForInsert(_sparseIndexToJointIndex, sparseIndex, 1);
 			_sparseIndexToJointIndex[sparseIndex] = jointIndex;
+			structureChanged();
 		}
 		
 		return sparseIndex;
@@ -2733,7 +2769,7 @@ public class FactorTable extends SparseFactorTableBase
 				values.length, domains.getCardinality()));
 		}
 		
-		_computedMask = 0;
+		valuesChanged();
 		
 		switch(representation)
 		{
@@ -2753,6 +2789,7 @@ public class FactorTable extends SparseFactorTableBase
 		_sparseEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		_sparseWeights = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		_sparseIndexToJointIndex = ArrayUtil.EMPTY_INT_ARRAY;
+		structureChanged();
 		computeNonZeroWeights();
 	}
 
@@ -2784,7 +2821,8 @@ public class FactorTable extends SparseFactorTableBase
 		
 		try
 		{
-			_computedMask = 0;
+			valuesChanged();
+			structureChanged();
 			setDomainIndexer(newDomains);
 
 			if (!oldDomains.hasCanonicalDomainOrder() | !newDomains.hasCanonicalDomainOrder())
@@ -2947,7 +2985,8 @@ public class FactorTable extends SparseFactorTableBase
 		_representation = representation;
 		_sparseIndexToJointIndex = jointIndices2;
 		
-		_computedMask = 0;
+		valuesChanged();
+		structureChanged();
 		_denseWeights = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		_denseEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		computeNonZeroWeights();
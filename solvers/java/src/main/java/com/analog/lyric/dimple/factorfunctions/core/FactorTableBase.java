@@ -16,6 +16,8 @@
 
 package com.analog.lyric.dimple.factorfunctions.core;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.BitSet;
 import java.util.Random;
 
@@ -24,6 +26,7 @@ import net.jcip.annotations.NotThreadSafe;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
+import com.analog.lyric.dimple.model.serializerdetails.BinarySerializer;
 import com.analog.lyric.dimple.model.values.Value;
 
 @NotThreadSafe
@@ -186,6 +189,22 @@ public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
 		return _domains.jointIndexToElements(sparseIndexToJointIndex(sparseIndex), elements);
 	}
 	
+	@Override
+	public int sparseIndexFromLongJointIndex(long joint)
+	{
+		if (joint < 0 || joint > Integer.MAX_VALUE)
+		{
+			return joint < 0 ? -1 : -1 - sparseSize();
+		}
+		return sparseIndexFromJointIndex((int)joint);
+	}
+	
+	@Override
+	public long sparseIndexToLongJointIndex(int sparseIndex)
+	{
+		return sparseIndexToJointIndex(sparseIndex);
+	}
+	
 	@Override
 	public int[] sparseIndexToIndices(int sparseIndex, int[] indices)
 	{
@@ -280,4 +299,9 @@ public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
 		}
 	}
 
+	@Override
+	public void serializeToBinary(WritableByteChannel channel) throws IOException
+	{
+		BinarySerializer.serialize(this, channel);
+	}
 }
\ No newline at end of file
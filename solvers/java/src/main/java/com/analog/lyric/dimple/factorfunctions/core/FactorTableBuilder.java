@@ -0,0 +1,254 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+
+/**
+ * Evaluates a {@link FactorFunction} over all of the elements of a {@link JointDomainIndexer}
+ * to fill in a new {@link FactorTable}.
+ * <p>
+ * The index space is divided into fixed size chunks. When the function {@linkplain
+ * FactorFunction#isEvaluationThreadSafe() supports concurrent evaluation} and there is more
+ * than one chunk, the chunks are evaluated in parallel on the shared {@link ThreadPool}, or on
+ * the calling thread if it is one of the pool's threads.
+ * Each chunk uses its own element buffer and writes its results into its own slot, and the
+ * slots are then concatenated in order, so no locking is needed to combine them.
+ *
+ * @since 0.05
+ */
+final class FactorTableBuilder
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Number of joint or input indices evaluated by each task.
+	 */
+	static final int CHUNK_SIZE = 1 << 12;
+
+	private final FactorFunction _function;
+	private final JointDomainIndexer _domains;
+	private final boolean _parallel;
+
+	/*--------------
+	 * Construction
+	 */
+
+	FactorTableBuilder(FactorFunction function, JointDomainIndexer domains)
+	{
+		_function = function;
+		_domains = domains;
+		_parallel = function.isEvaluationThreadSafe();
+	}
+
+	/*----------------------------
+	 * FactorTableBuilder methods
+	 */
+
+	/**
+	 * Builds a table by evaluating the function's energy for every joint index, or when the
+	 * function is deterministic directed and the domains are directed, by evaluating the output
+	 * for every input index.
+	 */
+	FactorTable build()
+	{
+		final FactorTable table = new FactorTable(_domains);
+
+		if (_function.isDeterministicDirected() && _domains.isDirected())
+		{
+			final int[] outputs = new int[_domains.getInputCardinality()];
+			run(new DeterministicChunks(outputs), numChunks(outputs.length));
+			table.setDeterministicOutputIndices(outputs);
+		}
+		else
+		{
+			final int maxJoint = _domains.getCardinality();
+			final EnergyChunk[] chunks = new EnergyChunk[numChunks(maxJoint)];
+			run(new EnergyChunks(chunks), chunks.length);
+
+			int size = 0;
+			for (EnergyChunk chunk : chunks)
+				size += chunk._indexes.length;
+
+			final int[] indexes = new int[size];
+			final double[] energies = new double[size];
+			int offset = 0;
+			for (EnergyChunk chunk : chunks)
+			{
+				final int chunkSize = chunk._indexes.length;
+				System.arraycopy(chunk._indexes, 0, indexes, offset, chunkSize);
+				System.arraycopy(chunk._energies, 0, energies, offset, chunkSize);
+				offset += chunkSize;
+			}
+
+			if (size == maxJoint)
+			{
+				table.setEnergiesDense(energies);
+			}
+			else
+			{
+				table.setEnergiesSparse(indexes, energies);
+			}
+		}
+
+		return table;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static int numChunks(int size)
+	{
+		return Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+	}
+
+	/*
+	 * Computes chunks 0 to nChunks-1, concurrently if the function supports it.
+	 */
+	private void run(final Chunks chunks, int nChunks)
+	{
+		if (!_parallel || nChunks <= 1)
+		{
+			for (int chunk = 0; chunk < nChunks; ++chunk)
+				chunks.computeChunk(chunk);
+			return;
+		}
+
+		final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(nChunks);
+		for (int chunk = 0; chunk < nChunks; ++chunk)
+		{
+			final int thisChunk = chunk;
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call()
+				{
+					chunks.computeChunk(thisChunk);
+					return null;
+				}
+			});
+		}
+		ThreadPool.invokeAll(tasks);
+	}
+
+	/*--------
+	 * Chunks
+	 */
+
+	/**
+	 * Evaluates one chunk at a time. Different chunks may be evaluated concurrently.
+	 */
+	private abstract class Chunks
+	{
+		abstract void computeChunk(int chunk);
+	}
+
+	private final class DeterministicChunks extends Chunks
+	{
+		private final int[] _outputs;
+
+		DeterministicChunks(int[] outputs)
+		{
+			_outputs = outputs;
+		}
+
+		@Override
+		void computeChunk(int chunk)
+		{
+			final JointDomainIndexer domains = _domains;
+			final int[] outputs = _outputs;
+			final Object[] elements = new Object[domains.size()];
+
+			for (int inputIndex = chunk * CHUNK_SIZE, end = Math.min(inputIndex + CHUNK_SIZE, outputs.length);
+				inputIndex < end; ++inputIndex)
+			{
+				domains.inputIndexToElements(inputIndex, elements);
+				_function.evalDeterministic(elements);
+				outputs[inputIndex] = domains.outputIndexFromElements(elements);
+			}
+		}
+	}
+
+	private final class EnergyChunks extends Chunks
+	{
+		private final EnergyChunk[] _chunks;
+
+		EnergyChunks(EnergyChunk[] chunks)
+		{
+			_chunks = chunks;
+		}
+
+		@Override
+		void computeChunk(int chunk)
+		{
+			final JointDomainIndexer domains = _domains;
+			final int dimensions = domains.size();
+			final int[] elementIndices = new int[dimensions];
+			// Reused for every tuple in the chunk, so that evaluation does not box the arguments.
+			final Value[] values = new Value[dimensions];
+			for (int i = 0; i < dimensions; ++i)
+				values[i] = Value.create(domains.get(i));
+			final int start = chunk * CHUNK_SIZE;
+			final int end = Math.min(start + CHUNK_SIZE, domains.getCardinality());
+			final int[] indexes = new int[Math.max(0, end - start)];
+			final double[] energies = new double[indexes.length];
+
+			int size = 0;
+			for (int jointIndex = start; jointIndex < end; ++jointIndex)
+			{
+				domains.jointIndexToIndices(jointIndex, elementIndices);
+				for (int i = 0; i < dimensions; ++i)
+					values[i].setIndex(elementIndices[i]);
+				double energy = _function.evalEnergy(values);
+				if (!Double.isInfinite(energy))
+				{
+					indexes[size] = jointIndex;
+					energies[size] = energy;
+					++size;
+				}
+			}
+
+			// Keep only the entries that were found, so that a sparse table does not hold on to a
+			// full chunk of storage until all of the chunks have been merged.
+			_chunks[chunk] = new EnergyChunk(Arrays.copyOf(indexes, size), Arrays.copyOf(energies, size));
+		}
+	}
+
+	/**
+	 * The finite energies found in one chunk of joint indexes.
+	 */
+	private static final class EnergyChunk
+	{
+		private final int[] _indexes;
+		private final double[] _energies;
+
+		private EnergyChunk(int[] indexes, double[] energies)
+		{
+			_indexes = indexes;
+			_energies = energies;
+		}
+	}
+}
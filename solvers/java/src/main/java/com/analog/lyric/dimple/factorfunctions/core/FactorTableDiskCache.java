@@ -0,0 +1,311 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.jcip.annotations.ThreadSafe;
+
+import com.google.common.primitives.Primitives;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+
+/**
+ * Persistent cache of factor tables in a directory on disk, so that large tables created
+ * from a {@link FactorFunction} need not be recreated every time a process starts.
+ * <p>
+ * Each table is stored in its own file in the format written by {@link OffHeapFactorTable#write}, named
+ * by a hash of the function's class, its {@linkplain FactorFunction#getTableCacheVersion() cache version}
+ * and constants, and the elements and output set of the domains. Tables are only looked for when first
+ * needed and are {@linkplain OffHeapFactorTable#map memory-mapped} rather than read, so loading a table
+ * is fast no matter its size.
+ * <p>
+ * Only functions that return a non-null {@link FactorFunction#getTableCacheVersion()} are cached, since
+ * the class and constants alone do not identify the parameters of most functions. Nor are tables whose
+ * constants or domain elements are anything other than primitive wrappers, strings, or arrays of those,
+ * since other objects need not have a string form that identifies their value. The tables are
+ * read-only, so this should not be used for functions whose tables are modified after creation, as for
+ * parameter learning.
+ * <p>
+ * When a {@linkplain #setDefault default cache} has been set, {@link FactorFunction#getFactorTable(JointDomainIndexer)}
+ * uses it automatically. Several processes may share the same directory: new files are written under a
+ * temporary name and then renamed into place.
+ *
+ * @since 0.05
+ */
+@ThreadSafe
+public final class FactorTableDiskCache
+{
+	/*-----------
+	 * Constants
+	 */
+
+	/**
+	 * File name suffix of cached tables.
+	 */
+	public static final String SUFFIX = ".dft";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/*-------
+	 * State
+	 */
+
+	private static final AtomicReference<FactorTableDiskCache> _default = new AtomicReference<FactorTableDiskCache>();
+
+	private final File _directory;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Creates a cache that stores its tables in {@code directory}, which will be created if it does not exist.
+	 */
+	public FactorTableDiskCache(File directory)
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new DimpleException("Cannot create factor table cache directory '%s'", directory);
+		}
+		_directory = directory;
+	}
+
+	/**
+	 * The cache used by {@link FactorFunction#getFactorTable(JointDomainIndexer)}, or null if none.
+	 */
+	public static FactorTableDiskCache getDefault()
+	{
+		return _default.get();
+	}
+
+	/**
+	 * Sets the cache used by {@link FactorFunction#getFactorTable(JointDomainIndexer)}. This
+	 * only affects tables that have not already been created in this process. Null disables
+	 * the use of a disk cache, which is the initial setting.
+	 */
+	public static void setDefault(FactorTableDiskCache cache)
+	{
+		_default.set(cache);
+	}
+
+	/*------------------------------
+	 * FactorTableDiskCache methods
+	 */
+
+	/**
+	 * Deletes all of the cached tables in the directory. Tables that have already been mapped
+	 * remain usable on platforms that allow mapped files to be deleted.
+	 */
+	public void clear()
+	{
+		File[] files = _directory.listFiles();
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				if (file.getName().endsWith(SUFFIX))
+				{
+					file.delete();
+				}
+			}
+		}
+	}
+
+	public File getDirectory()
+	{
+		return _directory;
+	}
+
+	/**
+	 * The file that holds the table for {@code function} over {@code domains}, whether or not it exists,
+	 * or null if the table cannot be cached.
+	 */
+	public File getFile(FactorFunction function, JointDomainIndexer domains)
+	{
+		final String version = function.getTableCacheVersion();
+		if (version == null || !domains.supportsJointIndexing())
+		{
+			return null;
+		}
+
+		final MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new DimpleException(ex);
+		}
+
+		update(digest, function.getContainedFactorFunction().getClass().getName());
+		update(digest, version);
+		update(digest, Arrays.toString(function.getConstantIndices()));
+		if (!updateValue(digest, function.getConstants()))
+		{
+			return null;
+		}
+		update(digest, String.valueOf(domains.getOutputSet()));
+		for (int i = 0, n = domains.size(); i < n; ++i)
+		{
+			final DiscreteDomain domain = domains.get(i);
+			update(digest, domain.getClass().getName());
+			if (!updateValue(digest, domain.getElements()))
+			{
+				return null;
+			}
+		}
+
+		final StringBuilder name = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			name.append(String.format("%02x", b));
+		}
+		name.append(SUFFIX);
+
+		return new File(_directory, name.toString());
+	}
+
+	/**
+	 * Returns the table for {@code function} over {@code domains}, mapping it from its file if
+	 * it exists, and otherwise creating it, writing it to the cache and then mapping it.
+	 * Returns null if the table {@linkplain #getFile cannot be cached}.
+	 * <p>
+	 * If a file exists but cannot be read as a table for the domains, it is replaced. If the table
+	 * cannot be written, the newly created table is returned as is.
+	 * <p>
+	 * This does not add the table to the function's own cache.
+	 */
+	public IFactorTable getTable(FactorFunction function, JointDomainIndexer domains)
+	{
+		final File file = getFile(function, domains);
+		if (file == null)
+		{
+			return null;
+		}
+
+		if (file.exists())
+		{
+			try
+			{
+				return OffHeapFactorTable.map(file, domains);
+			}
+			catch (IOException ex)
+			{
+				file.delete();
+			}
+			catch (DimpleException ex)
+			{
+				file.delete();
+			}
+		}
+
+		final IFactorTable table = function.createTableForDomains(domains);
+		File temp = null;
+		try
+		{
+			temp = File.createTempFile("table", ".tmp", _directory);
+			OffHeapFactorTable.write(table, temp);
+			try
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (FileAlreadyExistsException ex)
+			{
+				// Another process wrote the same table first.
+			}
+			return OffHeapFactorTable.map(file, domains);
+		}
+		catch (IOException ex)
+		{
+			return table;
+		}
+		finally
+		{
+			if (temp != null)
+			{
+				temp.delete();
+			}
+		}
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Adds the type and value of {@code value} to the digest, so that values of different types
+	 * never collide. Returns false without completing the update if {@code value} is not null,
+	 * a primitive wrapper, a string, or an array of those.
+	 */
+	private static boolean updateValue(MessageDigest digest, Object value)
+	{
+		if (value == null)
+		{
+			update(digest, "null");
+			return true;
+		}
+
+		final Class<?> type = value.getClass();
+		if (type.isArray())
+		{
+			final int length = Array.getLength(value);
+			update(digest, type.getName());
+			update(digest, Integer.toString(length));
+			for (int i = 0; i < length; ++i)
+			{
+				if (!updateValue(digest, Array.get(value, i)))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		if (value instanceof String || Primitives.isWrapperType(type))
+		{
+			update(digest, type.getName());
+			update(digest, value.toString());
+			return true;
+		}
+
+		return false;
+	}
+
+	private static void update(MessageDigest digest, String s)
+	{
+		final byte[] bytes = s.getBytes(UTF8);
+		digest.update((byte)(bytes.length >>> 24));
+		digest.update((byte)(bytes.length >>> 16));
+		digest.update((byte)(bytes.length >>> 8));
+		digest.update((byte)bytes.length);
+		digest.update(bytes);
+	}
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+/**
+ * Interface for factor functions of two numeric arguments whose energy depends only on the
+ * distance between them, in the form:
+ * <blockquote>
+ * min({@linkplain #getDistanceScale() scale} * |x - y|<sup>{@linkplain #getDistancePower() power}</sup>,
+ * {@linkplain #getTruncation() truncation})
+ * </blockquote>
+ * where a power of zero denotes the Potts function, whose distance term is zero when the
+ * arguments are equal and one otherwise.
+ * <p>
+ * Solvers may detect factors using functions with this interface over a pair of variables
+ * with the same evenly spaced discrete domain and compute their messages using distance transforms
+ * in time linear in the domain size rather than iterating over the full factor table.
+ *
+ * @since 0.05
+ */
+public interface IDistanceFactorFunction
+{
+	/**
+	 * The power of the distance, either 0 (Potts), 1 (linear) or 2 (quadratic).
+	 */
+	public int getDistancePower();
+
+	/**
+	 * The non-negative multiplier of the distance term.
+	 */
+	public double getDistanceScale();
+
+	/**
+	 * The non-negative maximum value of the energy, which may be infinite.
+	 */
+	public double getTruncation();
+}
@@ -16,6 +16,8 @@
 
 package com.analog.lyric.dimple.factorfunctions.core;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.BitSet;
 import java.util.Random;
 
@@ -177,6 +179,38 @@ public interface IFactorTable extends IFactorTableBase
 	 */
 	public int[][] getIndicesSparseUnsafe();
 	
+	/**
+	 * Returns the sparse element indices packed into a single array in column-major order.
+	 * <p>
+	 * The element index for dimension {@code d} of sparse entry {@code si} is at offset
+	 * {@code d * sparseSize() + si}, so the array has length {@code getDimensions() * sparseSize()}.
+	 * This holds the same information as {@link #getIndicesSparseUnsafe()} but without a separate
+	 * array object for every entry, which makes it more compact and faster to iterate over.
+	 * <p>
+	 * <b>IMPORTANT</b>: modifying the contents of the array may put the factor table into
+	 * an invalid state. This should be treated as a read-only value.
+	 * <p>
+	 * The array is computed on demand and cached until the set of sparse entries changes. If
+	 * necessary, this method will implicitly add a sparse representation to the table as described
+	 * for {@link #getIndicesSparseUnsafe()}, but it will not add sparse indices.
+	 * 
+	 * @since 0.05
+	 */
+	public int[] getPackedIndicesSparseUnsafe();
+	
+	/**
+	 * Returns a number that changes whenever the weights or energies of the table are changed
+	 * through its methods, which may be used to tell whether values derived from the table are
+	 * out of date.
+	 * <p>
+	 * Changes made directly to an array returned by {@link #getWeightsSparseUnsafe()} or
+	 * {@link #getEnergiesSparseUnsafe()} are only counted once the array is passed back to
+	 * {@link #replaceWeightsSparse(double[])} or {@link #replaceEnergiesSparse(double[])}.
+	 * 
+	 * @since 0.05
+	 */
+	public int getModificationCount();
+	
 	/**
 	 * {@inheritDoc}
 	 * <p>
@@ -298,6 +332,15 @@ public interface IFactorTable extends IFactorTableBase
 	@Deprecated
 	public void serializeToXML(String serializeName, String targetDirectory);
 	
+	/**
+	 * Writes the table to {@code channel}, which is not closed, in a compact binary format that can be
+	 * read back using {@link FactorTable#deserializeFromBinary(java.nio.channels.ReadableByteChannel)}.
+	 * <p>
+	 * Indices and weights are written as raw little-endian blocks, without building an intermediate copy.
+	 * @since 0.05
+	 */
+	public void serializeToBinary(WritableByteChannel channel) throws IOException;
+	
 	/**
 	 * Sets representation to {@link FactorTableRepresentation#DETERMINISTIC} with given set of
 	 * outputs.
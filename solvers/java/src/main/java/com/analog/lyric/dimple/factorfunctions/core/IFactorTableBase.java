@@ -386,6 +386,27 @@ public interface IFactorTableBase extends Cloneable, Serializable, Iterable<Fact
 	 */
 	public abstract int sparseIndexToJointIndex(int sparseIndex);
 
+	/**
+	 * Like {@link #sparseIndexFromJointIndex(int)} but takes a {@code long} joint index as computed by
+	 * {@link JointDomainIndexer#longJointIndexFromIndices(int...)}.
+	 * <p>
+	 * Unlike the {@code int} version, this is supported for tables whose domains do not
+	 * {@link JointDomainIndexer#supportsJointIndexing()} as long as they
+	 * {@link JointDomainIndexer#supportsLongJointIndexing()}.
+	 * <p>
+	 * @since 0.05
+	 */
+	public abstract int sparseIndexFromLongJointIndex(long joint);
+	
+	/**
+	 * Like {@link #sparseIndexToJointIndex(int)} but returns a {@code long} joint index as computed by
+	 * {@link JointDomainIndexer#longJointIndexFromIndices(int...)}.
+	 * <p>
+	 * @see #sparseIndexFromLongJointIndex(long)
+	 * @since 0.05
+	 */
+	public abstract long sparseIndexToLongJointIndex(int sparseIndex);
+
 	/**
 	 * Computes domain indices corresponding to given sparse index.
 	 * 
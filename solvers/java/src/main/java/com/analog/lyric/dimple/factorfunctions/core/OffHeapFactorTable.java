@@ -0,0 +1,1108 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.BitSet;
+
+import net.jcip.annotations.ThreadSafe;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
+import com.analog.lyric.dimple.model.values.Value;
+import com.google.common.base.Objects;
+import com.google.common.math.DoubleMath;
+
+/**
+ * A read-only sparse factor table whose contents are stored outside of the Java heap, either in
+ * direct buffers or in a memory-mapped file.
+ * <p>
+ * Only entries with non-zero weight are stored, in increasing joint index order, together with both
+ * their energies and weights so that neither needs to be computed on lookup. Lookup by joint index is
+ * a binary search. Because the contents never change, one instance may be shared by any number of
+ * graphs, solvers and threads, and a file written by {@link #write} may be mapped by several processes
+ * at once. Since the contents are not on the heap they add nothing to garbage collection time.
+ * <p>
+ * Methods that would modify the table throw a {@link DimpleException} unless the modification would
+ * not change anything, except for {@link #setRepresentation}, which is ignored. Methods that derive
+ * new tables, such as {@link #convert}, return ordinary heap-based tables.
+ * <p>
+ * Lookups, slices and iteration read the buffers directly, and {@link #readEnergiesSparse} and
+ * {@link #readWeightsSparse} copy entries in blocks into arrays supplied by the caller. The sum-product
+ * and min-sum table factor message updates read the table through those block methods.
+ * <p>
+ * <b>Limitation:</b> the {@code ...SparseUnsafe} methods, whose contract requires them to return
+ * arrays, build full heap copies of the table on first use and hold them through soft references,
+ * so they may be rebuilt whenever the collector reclaims the copies. Factor beliefs, the compiled
+ * sum-product graph (which keeps its own copy for as long as it is compiled) and pseudo-likelihood
+ * learning still read tables through those methods.
+ * <p>
+ * The table's domains must support joint indexing.
+ *
+ * @since 0.05
+ */
+@ThreadSafe
+public final class OffHeapFactorTable extends FactorTableBase
+{
+	/*-----------
+	 * Constants
+	 */
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Suggested number of entries to read at a time with {@link #readEnergiesSparse} or
+	 * {@link #readWeightsSparse}, which keeps the scratch arrays small enough to stay in cache.
+	 */
+	public static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * "DMFT" read as a little-endian int.
+	 */
+	private static final int MAGIC = 0x54464D44;
+	private static final int VERSION = 1;
+
+	/**
+	 * Size of fixed portion of file header: magic, version, dimensions and number of entries. It is
+	 * followed by the size of each domain, and then by the joint index, energy and weight blocks, each
+	 * starting at a multiple of eight bytes.
+	 */
+	private static final int HEADER_SIZE = 16;
+
+	private static final int NORMALIZED = 0x01;
+	private static final int NORMALIZED_COMPUTED = 0x02;
+	private static final int CONDITIONAL = 0x04;
+	private static final int CONDITIONAL_COMPUTED = 0x08;
+	private static final int DETERMINISTIC = 0x10;
+	private static final int DETERMINISTIC_COMPUTED = 0x20;
+
+	/*-------
+	 * State
+	 */
+
+	private final int _size;
+	private final IntBuffer _jointIndices;
+	private final DoubleBuffer _energies;
+	private final DoubleBuffer _weights;
+
+	/**
+	 * Combination of the bits {@link #NORMALIZED}, {@link #CONDITIONAL}, {@link #DETERMINISTIC}
+	 * and their corresponding "COMPUTED" bits. Since the table does not change, these only need to
+	 * be computed once; a lost update merely causes a value to be computed again.
+	 */
+	private volatile int _computedMask = 0;
+
+	private transient volatile SoftReference<double[]> _energiesArray = null;
+	private transient volatile SoftReference<double[]> _weightsArray = null;
+	private transient volatile SoftReference<int[][]> _indicesArray = null;
+	private transient volatile SoftReference<int[]> _packedIndicesArray = null;
+
+	/*--------------
+	 * Construction
+	 */
+
+	private OffHeapFactorTable(JointDomainIndexer domains, IntBuffer jointIndices, DoubleBuffer energies, DoubleBuffer weights)
+	{
+		super(domains);
+		_size = jointIndices.limit();
+		_jointIndices = jointIndices;
+		_energies = energies;
+		_weights = weights;
+	}
+
+	private OffHeapFactorTable(OffHeapFactorTable that)
+	{
+		super(that);
+		_size = that._size;
+		_jointIndices = that._jointIndices;
+		_energies = that._energies;
+		_weights = that._weights;
+		_computedMask = that._computedMask;
+	}
+
+	/**
+	 * Returns a new table with the same contents as {@code table} stored in direct buffers.
+	 */
+	public static OffHeapFactorTable create(IFactorTable table)
+	{
+		final JointDomainIndexer domains = table.getDomainIndexer();
+		requireJointIndexing(domains);
+
+		final int size = countEntries(table);
+		final IntBuffer jointIndices = allocate(4L * size).asIntBuffer();
+		final DoubleBuffer energies = allocate(8L * size).asDoubleBuffer();
+		final DoubleBuffer weights = allocate(8L * size).asDoubleBuffer();
+		copyEntries(table, jointIndices, energies, weights);
+
+		return new OffHeapFactorTable(domains, jointIndices, energies, weights);
+	}
+
+	/**
+	 * Maps a table file written by {@link #write} into memory. The domains are not stored in the file,
+	 * so must be provided by the caller; their number and sizes must match those the file was written with.
+	 * <p>
+	 * The file is only read as its pages are accessed and may be larger than the Java heap. It must not
+	 * be modified while the table is in use.
+	 */
+	public static OffHeapFactorTable map(File file, JointDomainIndexer domains) throws IOException
+	{
+		requireJointIndexing(domains);
+
+		final int dimensions = domains.size();
+		final long indicesOffset = align(HEADER_SIZE + 4L * dimensions);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			// Mapped buffers remain valid after the channel is closed.
+			final FileChannel channel = raf.getChannel();
+			if (channel.size() < indicesOffset)
+			{
+				throw new DimpleException("'%s' is not a factor table file", file);
+			}
+
+			final ByteBuffer header = map(channel, MapMode.READ_ONLY, 0, indicesOffset);
+			if (header.getInt() != MAGIC)
+			{
+				throw new DimpleException("'%s' is not a factor table file", file);
+			}
+			final int version = header.getInt();
+			if (version != VERSION)
+			{
+				throw new DimpleException("Unsupported factor table file version %d in '%s'", version, file);
+			}
+			if (header.getInt() != dimensions)
+			{
+				throw new DimpleException("Number of domains in '%s' does not match", file);
+			}
+			final int size = header.getInt();
+			for (int i = 0; i < dimensions; ++i)
+			{
+				if (header.getInt() != domains.getDomainSize(i))
+				{
+					throw new DimpleException("Size of domain %d in '%s' does not match", i, file);
+				}
+			}
+
+			final long energiesOffset = align(indicesOffset + 4L * size);
+			final long weightsOffset = energiesOffset + 8L * size;
+			if (size < 0 || channel.size() < weightsOffset + 8L * size)
+			{
+				throw new DimpleException("Factor table file '%s' is truncated", file);
+			}
+
+			return new OffHeapFactorTable(domains,
+				map(channel, MapMode.READ_ONLY, indicesOffset, 4L * size).asIntBuffer(),
+				map(channel, MapMode.READ_ONLY, energiesOffset, 8L * size).asDoubleBuffer(),
+				map(channel, MapMode.READ_ONLY, weightsOffset, 8L * size).asDoubleBuffer());
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes the contents of {@code table} to {@code file} in the form read by {@link #map}, replacing
+	 * any existing contents. The data is written through a memory mapping, so {@code table} may be
+	 * larger than the Java heap if it is itself stored off heap.
+	 */
+	public static void write(IFactorTable table, File file) throws IOException
+	{
+		final JointDomainIndexer domains = table.getDomainIndexer();
+		requireJointIndexing(domains);
+
+		final int size = countEntries(table);
+		final int dimensions = domains.size();
+		final long indicesOffset = align(HEADER_SIZE + 4L * dimensions);
+		final long energiesOffset = align(indicesOffset + 4L * size);
+		final long weightsOffset = energiesOffset + 8L * size;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.setLength(weightsOffset + 8L * size);
+			final FileChannel channel = raf.getChannel();
+
+			final MappedByteBuffer header = map(channel, MapMode.READ_WRITE, 0, indicesOffset);
+			header.putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(size);
+			for (int i = 0; i < dimensions; ++i)
+			{
+				header.putInt(domains.getDomainSize(i));
+			}
+
+			final MappedByteBuffer jointIndices = map(channel, MapMode.READ_WRITE, indicesOffset, 4L * size);
+			final MappedByteBuffer energies = map(channel, MapMode.READ_WRITE, energiesOffset, 8L * size);
+			final MappedByteBuffer weights = map(channel, MapMode.READ_WRITE, weightsOffset, 8L * size);
+			copyEntries(table, jointIndices.asIntBuffer(), energies.asDoubleBuffer(), weights.asDoubleBuffer());
+
+			header.force();
+			jointIndices.force();
+			energies.force();
+			weights.force();
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/*----------------
+	 * Object methods
+	 */
+
+	/**
+	 * Returns a new instance that shares this table's storage.
+	 */
+	@Override
+	public OffHeapFactorTable clone()
+	{
+		return new OffHeapFactorTable(this);
+	}
+
+	/*------------------------------
+	 * OffHeapFactorTable methods
+	 */
+
+	/**
+	 * Copies the energies and element indices of the sparse entries starting at {@code start} into
+	 * {@code energies} and {@code packedIndices}, so that the table can be read in blocks of a fixed
+	 * size rather than through the heap copies made by {@link #getEnergiesSparseUnsafe()} and
+	 * {@link #getPackedIndicesSparseUnsafe()}.
+	 * <p>
+	 * Copies n = {@code min(energies.length, sparseSize() - start)} entries and returns n. The indices
+	 * are packed by dimension as in {@link #getPackedIndicesSparseUnsafe()}, but only for the entries
+	 * copied: the index for dimension d of the i'th entry copied is at {@code packedIndices[d * n + i]}.
+	 * 
+	 * @param packedIndices must have length at least {@code energies.length * getDimensions()}.
+	 */
+	public int readEnergiesSparse(int start, double[] energies, int[] packedIndices)
+	{
+		return readSparse(start, _energies, energies, packedIndices);
+	}
+
+	/**
+	 * Copies the weights and element indices of the sparse entries starting at {@code start}, in the
+	 * same way as {@link #readEnergiesSparse}.
+	 */
+	public int readWeightsSparse(int start, double[] weights, int[] packedIndices)
+	{
+		return readSparse(start, _weights, weights, packedIndices);
+	}
+
+	/*--------------------------
+	 * IFactorTableBase methods
+	 */
+
+	@Override
+	public IFactorTable convert(JointDomainReindexer converter)
+	{
+		return FactorTable.convert(this, converter);
+	}
+
+	@Override
+	public int countNonZeroWeights()
+	{
+		return _size;
+	}
+
+	@Override
+	public void evalDeterministic(Object[] arguments)
+	{
+		if (!isDeterministicDirected())
+		{
+			throw new DimpleException("Table is not deterministic");
+		}
+
+		// A deterministic table has exactly one entry per input, in input order.
+		final JointDomainIndexer domains = getDomainIndexer();
+		final int inputIndex = domains.inputIndexFromElements(arguments);
+		final int outputIndex = _jointIndices.get(inputIndex) - inputIndex * domains.getOutputCardinality();
+		domains.outputIndexToElements(outputIndex, arguments);
+	}
+
+	@Override
+	public double getEnergyForIndicesDense(int ... indices)
+	{
+		throw notDense("getEnergyForIndicesDense");
+	}
+
+	@Override
+	public double getEnergyForValuesDense(Value ... values)
+	{
+		throw notDense("getEnergyForValuesDense");
+	}
+
+	@Override
+	public double getWeightForIndicesDense(int ... indices)
+	{
+		throw notDense("getWeightForIndicesDense");
+	}
+
+	@Override
+	public double getWeightForValuesDense(Value ... values)
+	{
+		throw notDense("getWeightForValuesDense");
+	}
+
+	@Override
+	public double getEnergyForJointIndex(int jointIndex)
+	{
+		final int sparseIndex = sparseIndexFromJointIndex(jointIndex);
+		return sparseIndex >= 0 ? _energies.get(sparseIndex) : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public double getEnergyForSparseIndex(int sparseIndex)
+	{
+		return _energies.get(sparseIndex);
+	}
+
+	@Override
+	public double getWeightForJointIndex(int jointIndex)
+	{
+		final int sparseIndex = sparseIndexFromJointIndex(jointIndex);
+		return sparseIndex >= 0 ? _weights.get(sparseIndex) : 0.0;
+	}
+
+	@Override
+	public double getWeightForSparseIndex(int sparseIndex)
+	{
+		return _weights.get(sparseIndex);
+	}
+
+	@Override
+	public boolean hasDenseRepresentation()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean hasDenseEnergies()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean hasDenseWeights()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean hasMaximumDensity()
+	{
+		return _size == jointSize();
+	}
+
+	@Override
+	public boolean hasSparseRepresentation()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean hasSparseEnergies()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean hasSparseWeights()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean isConditional()
+	{
+		int mask = _computedMask;
+		if ((mask & CONDITIONAL_COMPUTED) == 0)
+		{
+			mask |= CONDITIONAL_COMPUTED;
+			if (isDirected() && computeConditional())
+			{
+				mask |= CONDITIONAL;
+			}
+			_computedMask |= mask;
+		}
+		return (mask & CONDITIONAL) != 0;
+	}
+
+	@Override
+	public boolean isDeterministicDirected()
+	{
+		int mask = _computedMask;
+		if ((mask & DETERMINISTIC_COMPUTED) == 0)
+		{
+			mask |= DETERMINISTIC_COMPUTED;
+			if (isDirected() && computeDeterministic())
+			{
+				mask |= DETERMINISTIC;
+			}
+			_computedMask |= mask;
+		}
+		return (mask & DETERMINISTIC) != 0;
+	}
+
+	@Override
+	public boolean isNormalized()
+	{
+		int mask = _computedMask;
+		if ((mask & NORMALIZED_COMPUTED) == 0)
+		{
+			mask |= NORMALIZED_COMPUTED;
+			if (!isDirected() && computeNormalized())
+			{
+				mask |= NORMALIZED;
+			}
+			_computedMask |= mask;
+		}
+		return (mask & NORMALIZED) != 0;
+	}
+
+	@Override
+	public void normalize()
+	{
+		if (isDirected())
+		{
+			throw new UnsupportedOperationException(
+				"normalize() not supported for directed factor table. Use normalizeConditional() instead");
+		}
+		if (!isNormalized())
+		{
+			throw readOnly("normalize");
+		}
+	}
+
+	@Override
+	public void normalizeConditional()
+	{
+		if (!isDirected())
+		{
+			throw new UnsupportedOperationException(
+				"normalizeConditional() not supported for undirected factor table. Use normalize() instead");
+		}
+		if (!isConditional())
+		{
+			throw readOnly("normalizeConditional");
+		}
+	}
+
+	@Override
+	public void setEnergyForJointIndex(double energy, int jointIndex)
+	{
+		throw readOnly("setEnergyForJointIndex");
+	}
+
+	@Override
+	public void setEnergyForSparseIndex(double energy, int sparseIndex)
+	{
+		throw readOnly("setEnergyForSparseIndex");
+	}
+
+	@Override
+	public void setWeightForJointIndex(double weight, int jointIndex)
+	{
+		throw readOnly("setWeightForJointIndex");
+	}
+
+	@Override
+	public void setWeightForSparseIndex(double weight, int sparseIndex)
+	{
+		throw readOnly("setWeightForSparseIndex");
+	}
+
+	@Override
+	public int sparseIndexFromJointIndex(int jointIndex)
+	{
+		return search(jointIndex, 0);
+	}
+
+	@Override
+	public int sparseIndexToJointIndex(int sparseIndex)
+	{
+		return _jointIndices.get(sparseIndex);
+	}
+
+	@Override
+	public int sparseSize()
+	{
+		return _size;
+	}
+
+	/*----------------------
+	 * IFactorTable methods
+	 */
+
+	/**
+	 * Does nothing, since entries with zero weight are never stored.
+	 */
+	@Override
+	public int compact()
+	{
+		return 0;
+	}
+
+	/**
+	 * Does nothing if {@code that} is this table, otherwise throws a {@link DimpleException}.
+	 */
+	@Override
+	public void copy(IFactorTable that)
+	{
+		if (that != this)
+		{
+			throw readOnly("copy");
+		}
+	}
+
+	@Override
+	public IFactorTable createTableWithNewVariables(DiscreteDomain[] additionalDomains)
+	{
+		final JointDomainIndexer domains = getDomainIndexer();
+		return FactorTable.convert(this, JointDomainReindexer.createAdder(domains, domains.size(), additionalDomains));
+	}
+
+	@Override
+	public FactorTableRepresentation getRepresentation()
+	{
+		return FactorTableRepresentation.ALL_SPARSE;
+	}
+
+	@Override
+	public IFactorTable joinVariablesAndCreateNewTable(
+		int[] varIndices,
+		int[] indexToJointIndex,
+		DiscreteDomain[] allDomains,
+		DiscreteDomain jointDomain)
+	{
+		return new FactorTable(this,
+			FactorTable.makeConverterForJoinVariables(getDomainIndexer(), varIndices, indexToJointIndex, allDomains, jointDomain));
+	}
+
+	@Override
+	public boolean hasDeterministicRepresentation()
+	{
+		return false;
+	}
+
+	/**
+	 * Returns a heap copy of the energies, which is retained only while memory permits.
+	 */
+	@Override
+	public double[] getEnergiesSparseUnsafe()
+	{
+		double[] energies = dereference(_energiesArray);
+		if (energies == null)
+		{
+			energies = new double[_size];
+			_energies.duplicate().get(energies);
+			_energiesArray = new SoftReference<double[]>(energies);
+		}
+		return energies;
+	}
+
+	@Override
+	public double[] getEnergySlice(int sliceDimension, int ... indices)
+	{
+		return getEnergySlice(null, sliceDimension, indices);
+	}
+
+	@Override
+	public double[] getEnergySlice(int sliceDimension, Value ... values)
+	{
+		return getEnergySlice(null, sliceDimension, values);
+	}
+
+	@Override
+	public double[] getEnergySlice(double[] slice, int sliceDimension, int ... indices)
+	{
+		return getSlice(slice, sliceDimension, sliceStart(sliceDimension, indices), _energies, Double.POSITIVE_INFINITY);
+	}
+
+	@Override
+	public double[] getEnergySlice(double[] slice, int sliceDimension, Value ... values)
+	{
+		return getSlice(slice, sliceDimension, sliceStart(sliceDimension, values), _energies, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Returns a heap copy of the indices, which is retained only while memory permits.
+	 */
+	@Override
+	public int[][] getIndicesSparseUnsafe()
+	{
+		int[][] indices = dereference(_indicesArray);
+		if (indices == null)
+		{
+			indices = new int[_size][];
+			for (int si = 0; si < _size; ++si)
+			{
+				indices[si] = sparseIndexToIndices(si);
+			}
+			_indicesArray = new SoftReference<int[][]>(indices);
+		}
+		return indices;
+	}
+
+	/**
+	 * Always zero, since the table cannot be modified.
+	 */
+	@Override
+	public int getModificationCount()
+	{
+		return 0;
+	}
+
+	/**
+	 * Returns a heap copy of the indices, which is retained only while memory permits.
+	 */
+	@Override
+	public int[] getPackedIndicesSparseUnsafe()
+	{
+		int[] packed = dereference(_packedIndicesArray);
+		if (packed == null)
+		{
+			final int size = _size;
+			final int dimensions = getDimensions();
+			final int[] indices = new int[dimensions];
+			packed = new int[size * dimensions];
+			for (int si = 0; si < size; ++si)
+			{
+				sparseIndexToIndices(si, indices);
+				for (int d = 0, i = si; d < dimensions; ++d, i += size)
+				{
+					packed[i] = indices[d];
+				}
+			}
+			_packedIndicesArray = new SoftReference<int[]>(packed);
+		}
+		return packed;
+	}
+
+	/**
+	 * Returns a heap copy of the weights, which is retained only while memory permits.
+	 */
+	@Override
+	public double[] getWeightsSparseUnsafe()
+	{
+		double[] weights = dereference(_weightsArray);
+		if (weights == null)
+		{
+			weights = new double[_size];
+			_weights.duplicate().get(weights);
+			_weightsArray = new SoftReference<double[]>(weights);
+		}
+		return weights;
+	}
+
+	@Override
+	public double[] getWeightSlice(int sliceDimension, int ... indices)
+	{
+		return getWeightSlice(null, sliceDimension, indices);
+	}
+
+	@Override
+	public double[] getWeightSlice(int sliceDimension, Value ... values)
+	{
+		return getWeightSlice(null, sliceDimension, values);
+	}
+
+	@Override
+	public double[] getWeightSlice(double[] slice, int sliceDimension, int ... indices)
+	{
+		return getSlice(slice, sliceDimension, sliceStart(sliceDimension, indices), _weights, 0.0);
+	}
+
+	@Override
+	public double[] getWeightSlice(double[] slice, int sliceDimension, Value ... values)
+	{
+		return getSlice(slice, sliceDimension, sliceStart(sliceDimension, values), _weights, 0.0);
+	}
+
+	@Override
+	public boolean hasSparseIndices()
+	{
+		return false;
+	}
+
+	@Override
+	public void makeConditional(BitSet outputSet)
+	{
+		setDirected(outputSet);
+		normalizeConditional();
+	}
+
+	@Override
+	public void replaceEnergiesSparse(double[] energies)
+	{
+		throw readOnly("replaceEnergiesSparse");
+	}
+
+	@Override
+	public void replaceWeightsSparse(double[] weights)
+	{
+		throw readOnly("replaceWeightsSparse");
+	}
+
+	@Deprecated
+	@Override
+	public void serializeToXML(String serializeName, String targetDirectory)
+	{
+		throw DimpleException.unsupportedMethod(getClass(), "serializeToXML");
+	}
+
+	@Override
+	public void setConditional(BitSet outputSet)
+	{
+		if (outputSet == null)
+		{
+			throw new IllegalArgumentException("setConditional(BitSet) requires non-null argument");
+		}
+		setDirected(outputSet);
+		if (!isConditional())
+		{
+			throw new DimpleException("weights must be normalized correctly for directed factors");
+		}
+	}
+
+	@Override
+	public void setDeterministicOutputIndices(int[] outputIndices)
+	{
+		throw readOnly("setDeterministicOutputIndices");
+	}
+
+	/**
+	 * Does nothing if {@code outputSet} is the same as the current {@link #getOutputSet()}, otherwise
+	 * throws a {@link DimpleException}.
+	 */
+	@Override
+	public void setDirected(BitSet outputSet)
+	{
+		if (!Objects.equal(outputSet, getOutputSet()))
+		{
+			throw readOnly("setDirected");
+		}
+	}
+
+	@Override
+	public void setEnergiesDense(double[] energies)
+	{
+		throw readOnly("setEnergiesDense");
+	}
+
+	@Override
+	public void setEnergiesSparse(int[] jointIndices, double[] energies)
+	{
+		throw readOnly("setEnergiesSparse");
+	}
+
+	@Override
+	public void setEnergiesSparse(int[][] indices, double[] energies)
+	{
+		throw readOnly("setEnergiesSparse");
+	}
+
+	/**
+	 * Does nothing. The representation is fixed, but since every method can be answered from it,
+	 * requests from solvers for a representation suited to their own access patterns are simply ignored.
+	 */
+	@Override
+	public void setRepresentation(FactorTableRepresentation representation)
+	{
+	}
+
+	@Override
+	public void setWeightsDense(double[] weights)
+	{
+		throw readOnly("setWeightsDense");
+	}
+
+	@Override
+	public void setWeightsSparse(int[] jointIndices, double[] weights)
+	{
+		throw readOnly("setWeightsSparse");
+	}
+
+	@Override
+	public void setWeightsSparse(int[][] indices, double[] weights)
+	{
+		throw readOnly("setWeightsSparse");
+	}
+
+	/*-----------------------
+	 * Serialization methods
+	 */
+
+	/**
+	 * Serializes as an equivalent heap-based {@link FactorTable}, since the buffers cannot be serialized.
+	 */
+	private Object writeReplace()
+	{
+		final JointDomainIndexer domains = getDomainIndexer();
+		return FactorTable.convert(this, JointDomainReindexer.createPermuter(domains, domains));
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static long align(long offset)
+	{
+		return (offset + 7) & ~7L;
+	}
+
+	private static ByteBuffer allocate(long nBytes)
+	{
+		if (nBytes > Integer.MAX_VALUE)
+		{
+			throw new DimpleException("Factor table is too large to store in a single buffer");
+		}
+		return ByteBuffer.allocateDirect((int)nBytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, MapMode mode, long offset, long nBytes) throws IOException
+	{
+		if (nBytes > Integer.MAX_VALUE)
+		{
+			throw new DimpleException("Factor table is too large to map in a single buffer");
+		}
+		MappedByteBuffer buffer = channel.map(mode, offset, nBytes);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static int countEntries(IFactorTable table)
+	{
+		int count = 0;
+		for (IFactorTableIterator iter = table.iterator(); iter.advance(); )
+		{
+			++count;
+		}
+		return count;
+	}
+
+	private static void copyEntries(IFactorTable table, IntBuffer jointIndices, DoubleBuffer energies, DoubleBuffer weights)
+	{
+		final IFactorTableIterator iter = table.iterator();
+		for (int si = 0; iter.advance(); ++si)
+		{
+			jointIndices.put(si, iter.jointIndex());
+			energies.put(si, iter.energy());
+			weights.put(si, iter.weight());
+		}
+	}
+
+	private static <T> T dereference(SoftReference<T> ref)
+	{
+		return ref != null ? ref.get() : null;
+	}
+
+	private static void requireJointIndexing(JointDomainIndexer domains)
+	{
+		if (!domains.supportsJointIndexing())
+		{
+			throw new DimpleException("OffHeapFactorTable requires domains that support joint indexing");
+		}
+	}
+
+	private boolean computeConditional()
+	{
+		final JointDomainIndexer domains = getDomainIndexer();
+		final int inputSize = domains.getInputCardinality();
+
+		// Outputs for the same input have consecutive joint indices.
+		double normalizedTotal = 0.0;
+		for (int ii = 0, si = 0; ii < inputSize; ++ii)
+		{
+			double totalForInput = 0.0;
+			for (; si < _size && domains.inputIndexFromJointIndex(_jointIndices.get(si)) == ii; ++si)
+			{
+				totalForInput += _weights.get(si);
+			}
+
+			if (totalForInput == 0.0)
+			{
+				return false;
+			}
+
+			if (ii == 0)
+			{
+				normalizedTotal = totalForInput;
+			}
+			else if (!DoubleMath.fuzzyEquals(totalForInput, normalizedTotal, 1e-12))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean computeDeterministic()
+	{
+		// Table can only be deterministic if there is exactly one entry for each
+		// input and all entries have the same weight.
+		final JointDomainIndexer domains = getDomainIndexer();
+		if (_size != domains.getInputCardinality())
+		{
+			return false;
+		}
+
+		final double weight = _size > 0 ? _weights.get(0) : 0.0;
+		for (int si = 0; si < _size; ++si)
+		{
+			if (domains.inputIndexFromJointIndex(_jointIndices.get(si)) != si ||
+				!DoubleMath.fuzzyEquals(_weights.get(si), weight, 1e-12))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean computeNormalized()
+	{
+		double total = 0.0;
+		for (int si = 0; si < _size; ++si)
+		{
+			total += _weights.get(si);
+		}
+		return DoubleMath.fuzzyEquals(total, 1.0, 1e-12);
+	}
+
+	private int readSparse(int start, DoubleBuffer values, double[] block, int[] packedIndices)
+	{
+		final JointDomainIndexer domains = getDomainIndexer();
+		final int dimensions = domains.size();
+		final int n = Math.min(block.length, _size - start);
+
+		for (int i = 0; i < n; ++i)
+		{
+			final int si = start + i;
+			final int jointIndex = _jointIndices.get(si);
+			block[i] = values.get(si);
+			for (int d = 0, j = i; d < dimensions; ++d, j += n)
+			{
+				packedIndices[j] = domains.jointIndexToElementIndex(jointIndex, d);
+			}
+		}
+
+		return n;
+	}
+
+	private double[] getSlice(double[] slice, int sliceDimension, int start, DoubleBuffer values, double missingValue)
+	{
+		final JointDomainIndexer indexer = getDomainIndexer();
+		final int size = indexer.getDomainSize(sliceDimension);
+		final int stride = indexer.getStride(sliceDimension);
+
+		if (slice == null || slice.length < size)
+		{
+			slice = new double[size];
+		}
+
+		// Joint indices increase along the slice, so each search can begin where the previous one ended.
+		for (int i = 0, ji = start, from = 0; i < size; ++i, ji += stride)
+		{
+			final int si = search(ji, from);
+			if (si >= 0)
+			{
+				slice[i] = values.get(si);
+				from = si + 1;
+			}
+			else
+			{
+				slice[i] = missingValue;
+				from = -1 - si;
+			}
+		}
+
+		return slice;
+	}
+
+	/**
+	 * Binary search for {@code jointIndex} among the entries starting at {@code fromIndex}, with
+	 * the same result convention as {@link java.util.Arrays#binarySearch(int[], int)}.
+	 */
+	private int search(int jointIndex, int fromIndex)
+	{
+		final IntBuffer jointIndices = _jointIndices;
+		int low = fromIndex;
+		int high = _size - 1;
+
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final int midJointIndex = jointIndices.get(mid);
+			if (midJointIndex < jointIndex)
+			{
+				low = mid + 1;
+			}
+			else if (midJointIndex > jointIndex)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+
+		return -1 - low;
+	}
+
+	/*
+	 * The joint index of the first element of the slice. Joint indices are linear in the element
+	 * indices, so this subtracts the slice dimension's contribution rather than temporarily zeroing
+	 * the caller's index, which another thread could be reading.
+	 */
+	private int sliceStart(int sliceDimension, int[] indices)
+	{
+		final JointDomainIndexer indexer = getDomainIndexer();
+		return indexer.jointIndexFromIndices(indices) - indices[sliceDimension] * indexer.getStride(sliceDimension);
+	}
+
+	private int sliceStart(int sliceDimension, Value[] values)
+	{
+		final JointDomainIndexer indexer = getDomainIndexer();
+		return indexer.jointIndexFromValues(values) - values[sliceDimension].getIndex() * indexer.getStride(sliceDimension);
+	}
+
+	private DimpleException notDense(String method)
+	{
+		return DimpleException.unsupportedMethod(getClass(), method, "dense representation not supported.");
+	}
+
+	private DimpleException readOnly(String method)
+	{
+		return DimpleException.unsupportedMethod(getClass(), method, "table is read-only.");
+	}
+}
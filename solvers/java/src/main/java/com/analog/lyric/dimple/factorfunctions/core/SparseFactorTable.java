@@ -37,6 +37,7 @@ import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer.Indices;
 import com.analog.lyric.dimple.model.values.Value;
 import com.google.common.math.DoubleMath;
+import com.google.common.primitives.Longs;
 
 /**
  * @since 0.05
@@ -65,16 +66,23 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		int[] _indices;
 		int _sparseIndex;
 		
-		private IndexEntry(int[] indices, int sparseIndex)
+		/**
+		 * The {@code long} joint index for {@link #_indices} if the table's domains
+		 * {@link JointDomainIndexer#supportsLongJointIndexing()}, otherwise -1.
+		 */
+		long _jointIndex;
+		
+		private IndexEntry(int[] indices, int sparseIndex, long jointIndex)
 		{
 			_indices = indices;
 			_sparseIndex = sparseIndex;
+			_jointIndex = jointIndex;
 		}
 		
 		@Override
 		protected IndexEntry clone()
 		{
-			return new IndexEntry(this._indices, this._sparseIndex);
+			return new IndexEntry(this._indices, this._sparseIndex, this._jointIndex);
 		}
 
 		@Override
@@ -106,9 +114,9 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		
 		private double _weight;
 		
-		private IndexEntryWithWeight(int[] indices, int sparseIndex, double weight)
+		private IndexEntryWithWeight(int[] indices, int sparseIndex, long jointIndex, double weight)
 		{
-			super(indices, sparseIndex);
+			super(indices, sparseIndex, jointIndex);
 			_weight = weight;
 		}
 	}
@@ -120,14 +128,25 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 
 		private final Comparator<int[]> _indicesComparator;
 		
+		/**
+		 * When true, compare entries by their precomputed {@link IndexEntry#_jointIndex} instead
+		 * of element-by-element comparison of their indices, which produces the same order.
+		 */
+		private final boolean _compareJointIndexes;
+		
 		IndexEntryComparator(JointDomainIndexer domains)
 		{
 			_indicesComparator = domains.getIndicesComparator();
+			_compareJointIndexes = domains.supportsLongJointIndexing();
 		}
 		
 		@Override
 		public int compare(IndexEntry entry1, IndexEntry entry2)
 		{
+			if (_compareJointIndexes)
+			{
+				return Longs.compare(entry1._jointIndex, entry2._jointIndex);
+			}
 			return _indicesComparator.compare(entry1._indices,  entry2._indices);
 		}
 	}
@@ -136,7 +155,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 	
 	private final Map<IndexEntry,IndexEntry> _indexSet;
 
-	private IndexEntry _scratchEntry = new IndexEntry(null, -1);
+	private IndexEntry _scratchEntry = new IndexEntry(null, -1, -1);
 	private final int[] _scratchIndices;
 	
 	/*--------------
@@ -220,7 +239,8 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 				converter.convertIndices(scratch);
 				if (scratch.toIndices[0] >= 0)
 				{
-					IndexEntryWithWeight entry = new IndexEntryWithWeight(scratch.toIndices.clone(), i, weight);
+					IndexEntryWithWeight entry =
+						new IndexEntryWithWeight(scratch.toIndices.clone(), i, longJointIndex(scratch.toIndices), weight);
 					IndexEntryWithWeight prevEntry = (IndexEntryWithWeight)_indexSet.put(entry, entry);
 					if (prevEntry != null)
 					{
@@ -247,7 +267,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 				++_nonZeroWeights;
 			}
 			weights[i] = weight;
-			IndexEntry newEntry = new IndexEntry(entry._indices, i);
+			IndexEntry newEntry = new IndexEntry(entry._indices, i, entry._jointIndex);
 			_indexArray[i] = newEntry;
 			_indexSet.put(newEntry, newEntry);
 		}
@@ -497,6 +517,12 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		return _indexArray[sparseIndex]._indices;
 	}
 	
+	@Override
+	void addSparseRepresentation()
+	{
+		// Always has a sparse representation
+	}
+	
 	@Override
 	public int sparseIndexFromJointIndex(int joint)
 	{
@@ -509,6 +535,47 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		throw notDense("sparseIndexToJointIndex");
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Unlike {@link #sparseIndexFromJointIndex(int)}, this is supported when the domains
+	 * {@link JointDomainIndexer#supportsLongJointIndexing()} and is implemented using a binary search
+	 * over the table entries.
+	 */
+	@Override
+	public int sparseIndexFromLongJointIndex(long joint)
+	{
+		assertSupportsLongJointIndexing("sparseIndexFromLongJointIndex");
+		
+		final IndexEntry[] indexArray = _indexArray;
+		int low = 0, high = indexArray.length - 1;
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final long midJoint = indexArray[mid]._jointIndex;
+			if (midJoint < joint)
+			{
+				low = mid + 1;
+			}
+			else if (midJoint > joint)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1 - low;
+	}
+	
+	@Override
+	public long sparseIndexToLongJointIndex(int sparseIndex)
+	{
+		assertSupportsLongJointIndexing("sparseIndexToLongJointIndex");
+		return _indexArray[sparseIndex]._jointIndex;
+	}
+
 	@Override
 	public int sparseSize()
 	{
@@ -584,6 +651,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 			_sparseWeights = sparseWeights;
 			_indexArray = indexArray;
 			recomputeSparseIndices();
+			structureChanged();
 		}
 		return nRemoved;
 	}
@@ -614,12 +682,13 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		for (int si = 0; si < sparseSize; ++si)
 		{
 			int[] indices = that.sparseIndexToIndices(si);
-			IndexEntry entry = new IndexEntry(indices, si);
+			IndexEntry entry = newIndexEntry(indices, si);
 			_indexArray[si] = entry;
 			_indexSet.put(entry, entry);
 		}
 		
-		_computedMask = 0;
+		valuesChanged();
+		structureChanged();
 		_sparseEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		_sparseWeights = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		_sparseIndices = ArrayUtil.EMPTY_INT_ARRAY_ARRAY;
@@ -807,7 +876,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		final double prevEnergy = getEnergyForSparseIndex(sparseIndex);
 		if (prevEnergy != energy)
 		{
-			_computedMask = 0;
+			valuesChanged();
 			double weight = hasSparseWeights() ? energyToWeight(energy) : 0.0;
 			setWeightEnergyForSparseIndex(weight, energy, sparseIndex);
 			
@@ -834,7 +903,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		final double prevWeight = getWeightForSparseIndex(sparseIndex);
 		if (prevWeight != weight)
 		{
-			_computedMask = 0;
+			valuesChanged();
 			double energy = hasSparseEnergies() ? weightToEnergy(weight) : Double.POSITIVE_INFINITY;
 			setWeightEnergyForSparseIndex(weight, energy, sparseIndex);
 			
@@ -886,9 +955,10 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		indices = Arrays.copyOf(indices, indices.length);
 		
 		// Find position by doing a binary search in _indexArray
+		scratchEntry._jointIndex = longJointIndex(indices);
 		int sparseIndex = -Arrays.binarySearch(_indexArray, scratchEntry, _entryComparator) - 1;
 		
-		entry = new IndexEntry(indices, sparseIndex);
+		entry = new IndexEntry(indices, sparseIndex, scratchEntry._jointIndex);
 
 		int newSize = _indexArray.length + 1;
 		IndexEntry[] indexArray = new IndexEntry[newSize];
@@ -949,6 +1019,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		_sparseIndices = sparseIndices;
 		_indexArray = indexArray;
 		_indexSet.put(entry, entry);
+		structureChanged();
 		
 		return sparseIndex;
 	}
@@ -971,12 +1042,34 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		_nonZeroWeights = count;
 	}
 	
+	/**
+	 * Returns {@code long} joint index for {@code indices} if domains support it, otherwise -1.
+	 */
+	private long longJointIndex(int[] indices)
+	{
+		final JointDomainIndexer domains = getDomainIndexer();
+		return domains.supportsLongJointIndexing() ? domains.longJointIndexFromIndices(indices) : -1;
+	}
+	
+	private IndexEntry newIndexEntry(int[] indices, int sparseIndex)
+	{
+		return new IndexEntry(indices, sparseIndex, longJointIndex(indices));
+	}
+	
 	private IndexEntry getScratchEntry(int[] indices)
 	{
 		_scratchEntry._indices = indices;
 		return _scratchEntry;
 	}
 	
+	private void assertSupportsLongJointIndexing(String method)
+	{
+		if (!getDomainIndexer().supportsLongJointIndexing())
+		{
+			throw DimpleException.unsupportedMethod(getClass(), method, "joint cardinality too large for long index.");
+		}
+	}
+	
 	private DimpleException notDense(String method)
 	{
 		return DimpleException.unsupportedMethod(getClass(), method, "dense representation not supported.");
@@ -1160,9 +1253,16 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 			return;
 		}
 
-		_computedMask = 0;
+		valuesChanged();
+		structureChanged();
 		setDomainIndexer(newDomains);
 		_entryComparator = new IndexEntryComparator(newDomains);
+		
+		// Joint index depends on the input/output designation, so update it in each entry.
+		for (IndexEntry entry : _indexArray)
+		{
+			entry._jointIndex = longJointIndex(entry._indices);
+		}
 
 		if (!oldDomains.hasCanonicalDomainOrder() | !newDomains.hasCanonicalDomainOrder())
 		{
@@ -1306,7 +1406,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		{
 			int[] indices = indicesArray[i];
 			domainIndexer.validateIndices(indices);
-			indexArray[i] = new IndexEntry(ArrayUtil.cloneArray(indices), i);
+			indexArray[i] = newIndexEntry(ArrayUtil.cloneArray(indices), i);
 		}
 		
 		boolean doSort = false;
@@ -1373,7 +1473,8 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 		_representation = representation;
 		recomputeSparseIndices();
 		
-		_computedMask = 0;
+		valuesChanged();
+		structureChanged();
 		computeNonZeroWeights();
 	}
 	
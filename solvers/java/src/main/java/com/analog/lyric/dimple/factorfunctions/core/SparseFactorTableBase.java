@@ -73,6 +73,17 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	 */
 	int[][] _sparseIndices = ArrayUtil.EMPTY_INT_ARRAY_ARRAY;
 	
+	/**
+	 * Same information as {@link #_sparseIndices} but packed into a single array in column-major
+	 * order. Computed lazily by {@link #getPackedIndicesSparseUnsafe()}.
+	 */
+	private transient int[] _packedSparseIndices = null;
+	
+	/**
+	 * The value of {@link #_structureCount} when {@link #_packedSparseIndices} was computed.
+	 */
+	private transient int _packedSparseIndicesCount = 0;
+	
 	/**
 	 * Information computed about the table based on its values. This field is zeroed out whenever
 	 * table weights or energies are changed.
@@ -81,6 +92,16 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	 * {@link #CONDITIONAL} and {@link #CONDITIONAL_COMPUTED}.
 	 */
 	int _computedMask = 0;
+	
+	/**
+	 * Incremented by {@link #valuesChanged()}.
+	 */
+	private int _modificationCount = 0;
+	
+	/**
+	 * Incremented by {@link #structureChanged()}.
+	 */
+	private transient int _structureCount = 0;
 
 	/*--------------
 	 * Construction
@@ -208,6 +229,39 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 		return getEnergySlice(null, sliceDimension, values);
 	}
 
+	@Override
+	public final int getModificationCount()
+	{
+		return _modificationCount;
+	}
+	
+	@Override
+	public final int[] getPackedIndicesSparseUnsafe()
+	{
+		addSparseRepresentation();
+		
+		int[] packed = _packedSparseIndices;
+		if (packed == null || _packedSparseIndicesCount != _structureCount)
+		{
+			final int size = sparseSize();
+			final int dimensions = getDimensions();
+			packed = new int[size * dimensions];
+			final int[] indices = new int[dimensions];
+			for (int si = 0; si < size; ++si)
+			{
+				sparseIndexToIndices(si, indices);
+				for (int d = 0, i = si; d < dimensions; ++d, i += size)
+				{
+					packed[i] = indices[d];
+				}
+			}
+			_packedSparseIndices = packed;
+			_packedSparseIndicesCount = _structureCount;
+		}
+		
+		return packed;
+	}
+	
 	@Override
 	public final FactorTableRepresentation getRepresentation()
 	{
@@ -240,6 +294,10 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 		{
 			setEnergyForSparseIndex(energies[si], si);
 		}
+		
+		// The array may be the one returned by getEnergiesSparseUnsafe(), in which case its
+		// contents have already been changed and the loop above will not have noticed.
+		valuesChanged();
 	}
 
 	@Override
@@ -256,6 +314,10 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 		{
 			setWeightForSparseIndex(weights[si], si);
 		}
+		
+		// The array may be the one returned by getWeightsSparseUnsafe(), in which case its
+		// contents have already been changed and the loop above will not have noticed.
+		valuesChanged();
 	}
 
 	@Override
@@ -338,9 +400,35 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	
 	abstract boolean normalizeUndirected(boolean justCheck);
 	
+	/**
+	 * Clears {@link #_computedMask} and increments the {@linkplain #getModificationCount() modification count}.
+	 * Must be invoked whenever the weights or energies of the table change.
+	 */
+	final void valuesChanged()
+	{
+		_computedMask = 0;
+		++_modificationCount;
+	}
+	
+	/**
+	 * Invalidates the array returned by {@link #getPackedIndicesSparseUnsafe()}. Must be invoked
+	 * whenever the set or order of the sparse entries or the indexing of the table's domains
+	 * changes, including when a sparse representation is added to or removed from the table.
+	 */
+	final void structureChanged()
+	{
+		++_structureCount;
+	}
+	
 	abstract void setDirected(BitSet outputSet, boolean assertConditional);
 
 	abstract void setRepresentation(int newRep);
 
 	abstract void setSparseValues(int[][] indices, double[] values, int representation);
+	
+	/**
+	 * Adds a sparse representation to the table if it does not already have one, so that
+	 * its sparse entries are defined.
+	 */
+	abstract void addSparseRepresentation();
 }
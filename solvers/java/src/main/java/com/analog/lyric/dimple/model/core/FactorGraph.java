@@ -17,6 +17,8 @@
 package com.analog.lyric.dimple.model.core;
 
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
@@ -58,6 +60,8 @@ import com.analog.lyric.dimple.model.repeated.BlastFromThePastFactor;
 import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
 import com.analog.lyric.dimple.model.repeated.IVariableStreamSlice;
 import com.analog.lyric.dimple.model.repeated.VariableStreamBase;
+import com.analog.lyric.dimple.model.serializerdetails.BinaryDeserializer;
+import com.analog.lyric.dimple.model.serializerdetails.BinarySerializer;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.VariableBase;
 import com.analog.lyric.dimple.model.variables.VariableList;
@@ -3027,6 +3031,40 @@ public class FactorGraph extends FactorBase
 		return x.deserializeFromXML(docName, solver);
 	}
 
+	/**
+	 * Writes the flattened graph to {@code channel}, which is not closed, in a compact binary format
+	 * that can be read back using {@link #deserializeFromBinary(ReadableByteChannel)}.
+	 * <p>
+	 * Unlike {@link #serializeToXML}, this writes the data as it goes rather than building a document
+	 * in memory, and writes each factor table only once however many factors share it. Like the XML
+	 * format, only discrete variables and factors are supported.
+	 * @since 0.05
+	 */
+	public void serializeToBinary(WritableByteChannel channel) throws IOException
+	{
+		BinarySerializer.serialize(this, channel);
+	}
+
+	/**
+	 * Reads a graph written by {@link #serializeToBinary(WritableByteChannel)} from {@code channel},
+	 * which is not closed, using the solver the graph was written with.
+	 * @since 0.05
+	 */
+	static public FactorGraph deserializeFromBinary(ReadableByteChannel channel) throws IOException
+	{
+		return deserializeFromBinary(channel, null);
+	}
+
+	/**
+	 * Reads a graph written by {@link #serializeToBinary(WritableByteChannel)} from {@code channel},
+	 * which is not closed, using {@code solver} if it is not null.
+	 * @since 0.05
+	 */
+	static public FactorGraph deserializeFromBinary(ReadableByteChannel channel, IFactorGraphFactory<?> solver) throws IOException
+	{
+		return BinaryDeserializer.deserializeFactorGraph(channel, solver);
+	}
+
 
 	/*********************
 	 * FactorGraphDiffs
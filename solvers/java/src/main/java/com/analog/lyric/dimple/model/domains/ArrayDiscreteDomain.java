@@ -17,7 +17,6 @@
 package com.analog.lyric.dimple.model.domains;
 
 import java.lang.reflect.Array;
-import java.util.Arrays;
 import java.util.HashMap;
 
 import com.analog.lyric.collect.Supers;
@@ -41,7 +40,7 @@ public class ArrayDiscreteDomain<Element> extends TypedDiscreteDomain<Element>
 	@SuppressWarnings("unchecked")
 	ArrayDiscreteDomain(Element firstElement, int offset, Object ... moreElements)
 	{
-		super(computeHashCode(firstElement, moreElements));
+		super(computeHashCode(firstElement, offset, moreElements));
 		
 		Class<?> eltClass = Supers.nearestCommonSuperClass(firstElement, moreElements);
 		Object[] elements = (Object[]) Array.newInstance(eltClass,  moreElements.length + 1 - offset);
@@ -97,12 +96,16 @@ public class ArrayDiscreteDomain<Element> extends TypedDiscreteDomain<Element>
 		_hasIntCompatibleValues = hasIntCompatibleValues;
 	}
 	
-	private static int computeHashCode(Object firstElement, Object[] elements)
+	// Equivalent to Arrays.hashCode of the domain's elements, regardless of offset.
+	private static int computeHashCode(Object firstElement, int offset, Object[] moreElements)
 	{
 		final int prime = 31;
-		int result = 1;
-		result = prime * result + Arrays.hashCode(elements);
-		return result;
+		int elementsHash = prime + firstElement.hashCode();
+		for (int i = offset, end = moreElements.length; i < end; ++i)
+		{
+			elementsHash = prime * elementsHash + moreElements[i].hashCode();
+		}
+		return prime + elementsHash;
 	}
 
 	/*----------------
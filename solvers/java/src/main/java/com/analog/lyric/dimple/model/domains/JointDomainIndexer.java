@@ -829,6 +829,99 @@ public abstract class JointDomainIndexer extends DomainList<DiscreteDomain>
 		return jointIndexToIndices(jointIndex, null);
 	}
 	
+	/**
+	 * The number of possible combinations of all domain elements as a {@code long}.
+	 * <p>
+	 * Same as {@link #getCardinality()} but also supported for indexers whose joint cardinality
+	 * does not fit in an {@code int}.
+	 * <p>
+	 * @throws DimpleException if not {@link #supportsLongJointIndexing()}.
+	 * @since 0.05
+	 */
+	public long getLongCardinality()
+	{
+		return getCardinality();
+	}
+	
+	/**
+	 * Returns amount by which joint index returned by {@link #longJointIndexFromIndices(int...)} changes
+	 * when ith element index changes by 1.
+	 * <p>
+	 * Same as {@link #getStride(int)} when {@link #supportsJointIndexing()}.
+	 * <p>
+	 * @throws DimpleException if not {@link #supportsLongJointIndexing()}.
+	 * @since 0.05
+	 */
+	public long getLongStride(int i)
+	{
+		return getStride(i);
+	}
+	
+	/**
+	 * Computes a unique {@code long} joint index associated with the specified domain elements.
+	 * <p>
+	 * @see #longJointIndexFromIndices(int...)
+	 * @since 0.05
+	 */
+	public long longJointIndexFromElements(Object ... elements)
+	{
+		return jointIndexFromElements(elements);
+	}
+	
+	/**
+	 * Computes a unique {@code long} joint index associated with the specified {@code indices}.
+	 * <p>
+	 * This is the same as {@link #jointIndexFromIndices(int...)} when {@link #supportsJointIndexing()}
+	 * but is also supported by indexers whose joint cardinality is greater than 2<sup>31</sup> as long as
+	 * {@link #supportsLongJointIndexing()}. The natural order of long joint indexes is the same as
+	 * the order produced by {@link #getIndicesComparator()}.
+	 * <p>
+	 * @throws DimpleException if not {@link #supportsLongJointIndexing()}.
+	 * @see #longJointIndexToIndices(long, int[])
+	 * @since 0.05
+	 */
+	public long longJointIndexFromIndices(int ... indices)
+	{
+		return jointIndexFromIndices(indices);
+	}
+	
+	/**
+	 * Computes a unique {@code long} joint index associated with the specified {@code values}.
+	 * <p>
+	 * @see #longJointIndexFromIndices(int...)
+	 * @since 0.05
+	 */
+	public long longJointIndexFromValues(Value ... values)
+	{
+		return jointIndexFromValues(values);
+	}
+	
+	/**
+	 * Computes domain values corresponding to given {@code long} joint index.
+	 * <p>
+	 * @see #longJointIndexToIndices(long, int[])
+	 * @since 0.05
+	 */
+	public <T> T[] longJointIndexToElements(long jointIndex, T[] elements)
+	{
+		return jointIndexToElements(checkedIntJointIndex(jointIndex), elements);
+	}
+	
+	/**
+	 * Computes domain indices corresponding to given {@code long} joint index.
+	 * <p>
+	 * @param jointIndex a unique joint index in the range [0,{@link #getLongCardinality()}).
+	 * @param indices if this is an array of length {@link #size()}, the computed values will
+	 * be placed in this array, otherwise a new array will be allocated.
+	 * @throws DimpleException if not {@link #supportsLongJointIndexing()}.
+	 * @see #longJointIndexFromIndices(int...)
+	 * @since 0.05
+	 */
+	public int[] longJointIndexToIndices(long jointIndex, int[] indices)
+	{
+		return jointIndexToIndices(checkedIntJointIndex(jointIndex), indices);
+	}
+	
 	/**
 	 * Computes a unique index for the subset of {@code elements} designated as outputs.
 	 * <p>
@@ -980,6 +1073,19 @@ public abstract class JointDomainIndexer extends DomainList<DiscreteDomain>
 	 */
 	public abstract boolean supportsJointIndexing();
 	
+	/**
+	 * Indicates whether class supports operations involving a single {@code long} joint index
+	 * representation, e.g. {@link #longJointIndexFromIndices(int...)}. This is true whenever
+	 * {@link #supportsJointIndexing()} is true and will only be false when the joint cardinality
+	 * of the component domains is larger than 2<sup>63</sup>.
+	 * 
+	 * @since 0.05
+	 */
+	public boolean supportsLongJointIndexing()
+	{
+		return supportsJointIndexing();
+	}
+	
 	/**
 	 * Indicates whether class supports operations involving single integer output index representation
 	 * of the subset of domains identified by {@link #getOutputSet()}. This will be false when the
@@ -1147,6 +1253,39 @@ public abstract class JointDomainIndexer extends DomainList<DiscreteDomain>
 		return product > Integer.MAX_VALUE;
 	}
 	
+	/**
+	 * Computes {@code long} strides for {@code domains} in which the domain at {@code order[0]} varies
+	 * fastest and the one at {@code order[order.length-1]} varies slowest.
+	 * <p>
+	 * Returns null if the joint cardinality of the domains does not fit in a {@code long}.
+	 */
+	static long[] computeLongStrides(DiscreteDomain[] domains, int[] order)
+	{
+		final long[] strides = new long[domains.length];
+		long product = 1;
+		for (int i : order)
+		{
+			strides[i] = product;
+			final int size = domains[i].size();
+			if (product > Long.MAX_VALUE / size)
+			{
+				return null;
+			}
+			product *= size;
+		}
+		return strides;
+	}
+	
+	private int checkedIntJointIndex(long jointIndex)
+	{
+		if (jointIndex < 0 || jointIndex >= getCardinality())
+		{
+			throw new IndexOutOfBoundsException(
+				String.format("Joint index %d out of bounds for cardinality %d", jointIndex, getCardinality()));
+		}
+		return (int)jointIndex;
+	}
+	
 	protected static boolean hasSameInputsImpl(int[] array1, int[] array2, int[] inputIndices)
 	{
 		for (int i : inputIndices)
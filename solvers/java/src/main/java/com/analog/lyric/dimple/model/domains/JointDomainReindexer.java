@@ -809,6 +809,33 @@ public abstract class JointDomainReindexer
 		return convertJointIndex(oldJointIndex, addedJointIndex, null);
 	}
 
+	/**
+	 * Like {@link #convertJointIndex(int, int)} but using {@code long} joint indexes for the
+	 * from and to domains so that it may be used with domains that do not
+	 * {@link JointDomainIndexer#supportsJointIndexing()}.
+	 * <p>
+	 * Returns -1 if the entry is dropped by the conversion.
+	 * <p>
+	 * @see JointDomainIndexer#longJointIndexFromIndices(int...)
+	 * @since 0.05
+	 */
+	public long convertLongJointIndex(long oldJointIndex, int addedJointIndex)
+	{
+		Indices scratch = getScratch();
+		
+		_fromDomains.longJointIndexToIndices(oldJointIndex, scratch.fromIndices);
+		if (scratch.addedIndices.length > 0)
+		{
+			_addedDomains.jointIndexToIndices(addedJointIndex, scratch.addedIndices);
+		}
+		convertIndices(scratch);
+		long newJointIndex = scratch.toIndices[0] < 0 ? -1 : _toDomains.longJointIndexFromIndices(scratch.toIndices);
+		
+		scratch.release();
+		
+		return newJointIndex;
+	}
+
 	public double[] convertSparseEnergies(double[] oldEnergies,
 		int[] oldSparseIndexToJointIndex, int[] sparseIndexToJointIndex)
 	{
@@ -46,7 +46,7 @@ public final class LargeDirectedJointDomainIndexer extends LargeJointDomainIndex
 	
 	LargeDirectedJointDomainIndexer(BitSet outputs, DiscreteDomain[] domains)
 	{
-		super(computeHashCode(outputs, domains), domains);
+		super(computeHashCode(outputs, domains), domains, longJointIndexOrder(outputs, domains.length));
 		_outputSet = (BitSet)outputs.clone();
 		
 		final int nDomains = domains.length;
@@ -16,6 +16,7 @@
 
 package com.analog.lyric.dimple.model.domains;
 
+import java.util.BitSet;
 import java.util.Comparator;
 
 import com.analog.lyric.collect.Comparators;
@@ -30,18 +31,76 @@ public class LargeJointDomainIndexer extends JointDomainIndexer
 	
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Strides for computing {@code long} joint indexes, or null if the joint cardinality
+	 * is too large to fit in a {@code long}.
+	 */
+	private final long[] _longStrides;
+	
+	/**
+	 * Domain indexes ordered from fastest to slowest varying in {@code long} joint index.
+	 */
+	private final int[] _longOrder;
+	
+	private final long _longCardinality;
+	
 	/*--------------
 	 * Construction
 	 */
 	
 	LargeJointDomainIndexer(DiscreteDomain[] domains)
 	{
-		super(domains);
+		this(computeHashCode(domains), domains, longJointIndexOrder(null, domains.length));
 	}
 	
-	LargeJointDomainIndexer(int hashCode, DiscreteDomain[] domains)
+	/**
+	 * @param order lists domain indexes from fastest to slowest varying in {@code long} joint index.
+	 * This must be consistent with {@link #getIndicesComparator()}.
+	 */
+	LargeJointDomainIndexer(int hashCode, DiscreteDomain[] domains, int[] order)
 	{
 		super(hashCode, domains);
+		_longOrder = order;
+		_longStrides = computeLongStrides(domains, order);
+		if (_longStrides != null)
+		{
+			final int last = order[order.length - 1];
+			_longCardinality = _longStrides[last] * domains[last].size();
+		}
+		else
+		{
+			_longCardinality = -1;
+		}
+	}
+	
+	/**
+	 * Orders domains so that {@code long} joint indexes have the same ordering as
+	 * {@link #getIndicesComparator()}: outputs vary fastest followed by inputs, and within
+	 * each group earlier domains vary faster. If {@code outputs} is null, all domains are treated
+	 * as outputs.
+	 */
+	static int[] longJointIndexOrder(BitSet outputs, int nDomains)
+	{
+		final int[] order = new int[nDomains];
+		if (outputs == null)
+		{
+			for (int i = 0; i < nDomains; ++i)
+			{
+				order[i] = i;
+			}
+			return order;
+		}
+		
+		int k = 0;
+		for (int i = outputs.nextSetBit(0); i >= 0 && i < nDomains; i = outputs.nextSetBit(i + 1))
+		{
+			order[k++] = i;
+		}
+		for (int i = outputs.nextClearBit(0); i < nDomains; i = outputs.nextClearBit(i + 1))
+		{
+			order[k++] = i;
+		}
+		return order;
 	}
 	
 	/*------------------
@@ -66,6 +125,114 @@ public class LargeJointDomainIndexer extends JointDomainIndexer
 		return false;
 	}
 
+	/*--------------------------------
+	 * Long joint index based methods
+	 */
+	
+	@Override
+	public boolean supportsLongJointIndexing()
+	{
+		return _longStrides != null;
+	}
+	
+	@Override
+	public long getLongCardinality()
+	{
+		assertSupportsLongJointIndexing("getLongCardinality");
+		return _longCardinality;
+	}
+	
+	@Override
+	public long getLongStride(int i)
+	{
+		assertSupportsLongJointIndexing("getLongStride");
+		return _longStrides[i];
+	}
+	
+	@Override
+	public long longJointIndexFromElements(Object ... elements)
+	{
+		assertSupportsLongJointIndexing("longJointIndexFromElements");
+		final DiscreteDomain[] domains = _domains;
+		final long[] strides = _longStrides;
+		long joint = 0;
+		for (int i = 0, end = strides.length; i != end; ++i)
+		{
+			joint += strides[i] * domains[i].getIndexOrThrow(elements[i]);
+		}
+		return joint;
+	}
+	
+	@Override
+	public long longJointIndexFromIndices(int ... indices)
+	{
+		assertSupportsLongJointIndexing("longJointIndexFromIndices");
+		final long[] strides = _longStrides;
+		long joint = 0;
+		for (int i = 0, end = strides.length; i != end; ++i) // != is slightly faster than < comparison
+		{
+			joint += strides[i] * indices[i];
+		}
+		return joint;
+	}
+	
+	@Override
+	public long longJointIndexFromValues(Value ... values)
+	{
+		assertSupportsLongJointIndexing("longJointIndexFromValues");
+		final long[] strides = _longStrides;
+		long joint = 0;
+		for (int i = 0, end = strides.length; i != end; ++i) // != is slightly faster than < comparison
+		{
+			joint += strides[i] * values[i].getIndex();
+		}
+		return joint;
+	}
+	
+	@Override
+	public <T> T[] longJointIndexToElements(long jointIndex, T[] elements)
+	{
+		assertSupportsLongJointIndexing("longJointIndexToElements");
+		final DiscreteDomain[] domains = _domains;
+		final long[] strides = _longStrides;
+		final int[] order = _longOrder;
+		
+		elements = allocateElements(elements);
+		// Stored through Object[] rather than casting each element to T, which would be unchecked.
+		// The array's component type is the element class, so the stores are still checked at runtime.
+		final Object[] objects = elements;
+		
+		for (int k = order.length; --k >= 0;)
+		{
+			final int i = order[k];
+			final long stride = strides[i];
+			final int index = (int)(jointIndex / stride);
+			objects[i] = domains[i].getElement(index);
+			jointIndex -= index * stride;
+		}
+		return elements;
+	}
+	
+	@Override
+	public int[] longJointIndexToIndices(long jointIndex, int[] indices)
+	{
+		assertSupportsLongJointIndexing("longJointIndexToIndices");
+		final long[] strides = _longStrides;
+		final int[] order = _longOrder;
+		
+		indices = allocateIndices(indices);
+		
+		for (int k = order.length; --k >= 0;)
+		{
+			final int i = order[k];
+			final long stride = strides[i];
+			final int index = (int)(jointIndex / stride);
+			indices[i] = index;
+			jointIndex -= index * stride;
+		}
+		return indices;
+	}
+
 	/*---------------------------------------
 	 * Unsupported joint index based methods
 	 */
@@ -130,6 +297,14 @@ public class LargeJointDomainIndexer extends JointDomainIndexer
 		throw noJointIndexing("undirectedJointIndexToIndices");
 	}
 
+	private void assertSupportsLongJointIndexing(String method)
+	{
+		if (_longStrides == null)
+		{
+			throw new DimpleException("%s' not supported for joint domain cardinality larger than 2^63", method);
+		}
+	}
+	
 	static DimpleException noJointIndexing(String method)
 	{
 		return new DimpleException("%s' not supported for very large joint domain cardinality", method);
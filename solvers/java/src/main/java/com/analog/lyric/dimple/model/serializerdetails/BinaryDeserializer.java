@@ -0,0 +1,346 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.serializerdetails;
+
+import static com.analog.lyric.dimple.model.serializerdetails.BinaryFormat.*;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.TableFactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.Model;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+
+/**
+ * Reads factor graphs and factor tables in the binary format described in {@link BinaryFormat}.
+ * <p>
+ * The data is read in a single pass through a fixed size buffer, and each record is added to the
+ * graph as soon as it is read, so the time taken is linear in the size of the data and the only
+ * memory used beyond the graph itself is the list of numbered domains, tables and variables.
+ * <p>
+ * Factors are created with a {@link TableFactorFunction} that has the serialized function name,
+ * shared by all factors that used the same table and function name.
+ *
+ * @since 0.05
+ */
+public class BinaryDeserializer
+{
+	/*-------
+	 * State
+	 */
+
+	private final BinaryInput _in;
+	private final ArrayList<DiscreteDomain> _domains = new ArrayList<DiscreteDomain>();
+	private final ArrayList<IFactorTable> _tables = new ArrayList<IFactorTable>();
+	private final ArrayList<TableFactorFunction> _tableFunctions = new ArrayList<TableFactorFunction>();
+	private final ArrayList<VariableBase> _variables = new ArrayList<VariableBase>();
+
+	/*--------------
+	 * Construction
+	 */
+
+	private BinaryDeserializer(ReadableByteChannel channel)
+	{
+		_in = new BinaryInput(channel);
+	}
+
+	/*----------------
+	 * Static methods
+	 */
+
+	/**
+	 * Reads a factor graph written by {@link BinarySerializer#serialize(FactorGraph, java.nio.channels.WritableByteChannel)}.
+	 *
+	 * @param solver is the solver to use for the graph. If null, the graph uses the solver it was
+	 * written with, or the default solver if that is not known.
+	 */
+	public static FactorGraph deserializeFactorGraph(ReadableByteChannel channel, IFactorGraphFactory<?> solver)
+		throws IOException
+	{
+		return new BinaryDeserializer(channel).readGraph(solver);
+	}
+
+	/**
+	 * Reads a factor table written by {@link BinarySerializer#serialize(IFactorTable, java.nio.channels.WritableByteChannel)}.
+	 */
+	public static IFactorTable deserializeFactorTable(ReadableByteChannel channel) throws IOException
+	{
+		BinaryDeserializer deserializer = new BinaryDeserializer(channel);
+		deserializer.readHeader(KIND_TABLE);
+		for (byte tag; (tag = deserializer._in.readByte()) != END; )
+		{
+			if (tag == DOMAIN)
+				deserializer.readDomain();
+			else if (tag == TABLE)
+				deserializer.readTable();
+			else
+				throw unexpectedRecord(tag);
+		}
+		if (deserializer._tables.size() != 1)
+			throw new DimpleException("Expected one factor table but found %d", deserializer._tables.size());
+		return deserializer._tables.get(0);
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void readHeader(byte expectedKind) throws IOException
+	{
+		byte[] magic = new byte[MAGIC.length];
+		_in.readBytes(magic);
+		if (!Arrays.equals(magic, MAGIC))
+			throw new DimpleException("Not a binary factor graph or factor table");
+		int version = _in.readInt();
+		if (version != VERSION)
+			throw new DimpleException("Unsupported binary format version %d", version);
+		byte kind = _in.readByte();
+		if (kind != expectedKind)
+			throw new DimpleException("Expected %s but found %s", kindName(expectedKind), kindName(kind));
+	}
+
+	private FactorGraph readGraph(IFactorGraphFactory<?> solver) throws IOException
+	{
+		readHeader(KIND_GRAPH);
+		final UUID uuid = _in.readUUID();
+		final String name = _in.readString();
+		final String solverClass = _in.readString();
+		final VariableBase[] boundaryVariables = new VariableBase[_in.readInt()];
+
+		if (solver == null)
+			solver = solverClass != null ? createSolver(solverClass) : Model.getInstance().getDefaultGraphFactory();
+
+		// The solver is set last, so that solver objects are created in one pass.
+		FactorGraph graph = null;
+		for (byte tag; (tag = _in.readByte()) != END; )
+		{
+			if (graph == null && tag != DOMAIN && _variables.size() == boundaryVariables.length)
+			{
+				graph = new FactorGraph(_variables.toArray(boundaryVariables), name, null);
+				graph.setUUID(uuid);
+			}
+
+			switch (tag)
+			{
+			case DOMAIN:
+				readDomain();
+				break;
+			case TABLE:
+				readTable();
+				break;
+			case VARIABLE:
+				VariableBase variable = readVariable();
+				if (graph != null)
+					graph.addVariables(variable);
+				break;
+			case FACTOR:
+				if (graph == null)
+					throw new DimpleException("Missing boundary variables");
+				readFactor(graph);
+				break;
+			default:
+				throw unexpectedRecord(tag);
+			}
+		}
+
+		if (graph == null)
+		{
+			if (_variables.size() != boundaryVariables.length)
+				throw new DimpleException("Missing boundary variables");
+			graph = new FactorGraph(_variables.toArray(boundaryVariables), name, null);
+			graph.setUUID(uuid);
+		}
+		graph.setSolverFactory(solver);
+
+		return graph;
+	}
+
+	private void readDomain() throws IOException
+	{
+		final Object[] elements = new Object[_in.readInt()];
+		for (int i = 0; i < elements.length; ++i)
+		{
+			byte type = _in.readByte();
+			switch (type)
+			{
+			case ELEMENT_DOUBLE:
+				elements[i] = _in.readDouble();
+				break;
+			case ELEMENT_INTEGER:
+				elements[i] = _in.readInt();
+				break;
+			case ELEMENT_STRING:
+				elements[i] = _in.readString();
+				break;
+			case ELEMENT_BOOLEAN:
+				elements[i] = _in.readByte() != 0;
+				break;
+			case ELEMENT_LONG:
+				elements[i] = _in.readLong();
+				break;
+			default:
+				throw new DimpleException("Unknown domain element type %d", type);
+			}
+		}
+		_domains.add(DiscreteDomain.create(elements));
+	}
+
+	private void readTable() throws IOException
+	{
+		final DiscreteDomain[] domains = new DiscreteDomain[_in.readInt()];
+		for (int i = 0; i < domains.length; ++i)
+			domains[i] = getDomain(_in.readInt());
+		final int[] outputs = new int[_in.readInt()];
+		_in.readInts(outputs, 0, outputs.length);
+		final byte layout = _in.readByte();
+		final boolean energies = _in.readByte() == VALUES_ENERGIES;
+		final int size = _in.readInt();
+
+		final IFactorTable table =
+			FactorTable.create(JointDomainIndexer.create(outputs.length > 0 ? outputs : null, domains));
+		final double[] values = new double[size];
+
+		switch (layout)
+		{
+		case LAYOUT_DENSE:
+			_in.readDoubles(values, 0, size);
+			if (energies)
+				table.setEnergiesDense(values);
+			else
+				table.setWeightsDense(values);
+			break;
+
+		case LAYOUT_JOINT:
+			final int[] jointIndices = new int[size];
+			_in.readInts(jointIndices, 0, size);
+			_in.readDoubles(values, 0, size);
+			if (energies)
+				table.setEnergiesSparse(jointIndices, values);
+			else
+				table.setWeightsSparse(jointIndices, values);
+			break;
+
+		case LAYOUT_INDICES:
+			final int[][] indices = new int[size][domains.length];
+			for (int[] row : indices)
+				_in.readInts(row, 0, row.length);
+			_in.readDoubles(values, 0, size);
+			if (energies)
+				table.setEnergiesSparse(indices, values);
+			else
+				table.setWeightsSparse(indices, values);
+			break;
+
+		default:
+			throw new DimpleException("Unknown factor table layout %d", layout);
+		}
+
+		_tables.add(table);
+		_tableFunctions.add(null);
+	}
+
+	private VariableBase readVariable() throws IOException
+	{
+		final UUID uuid = _in.readUUID();
+		final String name = _in.readString();
+		final Discrete variable = new Discrete(getDomain(_in.readInt()));
+		final int inputLength = _in.readInt();
+		if (inputLength >= 0)
+		{
+			double[] input = new double[inputLength];
+			_in.readDoubles(input, 0, inputLength);
+			variable.setInput(input);
+		}
+		if (name != null)
+			variable.setName(name);
+		variable.setUUID(uuid);
+
+		_variables.add(variable);
+		return variable;
+	}
+
+	private void readFactor(FactorGraph graph) throws IOException
+	{
+		final UUID uuid = _in.readUUID();
+		final String name = _in.readString();
+		final String functionName = _in.readString();
+		final int tableId = _in.readInt();
+		final VariableBase[] arguments = new VariableBase[_in.readInt()];
+		for (int i = 0; i < arguments.length; ++i)
+		{
+			int variableId = _in.readInt();
+			if (variableId < 0 || variableId >= _variables.size())
+				throw new DimpleException("Reference to unknown variable %d", variableId);
+			arguments[i] = _variables.get(variableId);
+		}
+
+		if (tableId < 0 || tableId >= _tables.size())
+			throw new DimpleException("Reference to unknown factor table %d", tableId);
+		TableFactorFunction function = _tableFunctions.get(tableId);
+		if (function == null || !function.getName().equals(functionName))
+		{
+			function = new TableFactorFunction(functionName, _tables.get(tableId));
+			_tableFunctions.set(tableId, function);
+		}
+
+		Factor factor = graph.addFactor(function, arguments);
+		if (name != null)
+			factor.setName(name);
+		factor.setUUID(uuid);
+	}
+
+	private DiscreteDomain getDomain(int id)
+	{
+		if (id < 0 || id >= _domains.size())
+			throw new DimpleException("Reference to unknown domain %d", id);
+		return _domains.get(id);
+	}
+
+	private static IFactorGraphFactory<?> createSolver(String solverClass)
+	{
+		try
+		{
+			return (IFactorGraphFactory<?>)Class.forName(solverClass).newInstance();
+		}
+		catch (Exception e)
+		{
+			throw new DimpleException(e);
+		}
+	}
+
+	private static DimpleException unexpectedRecord(byte tag)
+	{
+		return new DimpleException("Unexpected record type %d", tag);
+	}
+
+	private static String kindName(byte kind)
+	{
+		return kind == KIND_GRAPH ? "factor graph" : kind == KIND_TABLE ? "factor table" : "unknown data";
+	}
+}
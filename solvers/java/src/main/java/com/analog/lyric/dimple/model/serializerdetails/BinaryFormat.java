@@ -0,0 +1,85 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.serializerdetails;
+
+/**
+ * Constants for the binary graph and factor table format written by {@link BinarySerializer}
+ * and read by {@link BinaryDeserializer}.
+ * <p>
+ * All numbers are little-endian. Strings are written as an int byte count followed by that
+ * many bytes of UTF-8, with a count of -1 for null. A stream consists of:
+ * <ul>
+ * <li>the four {@link #MAGIC} bytes, an int {@link #VERSION} and a {@link #KIND_GRAPH} or
+ * {@link #KIND_TABLE} byte.
+ * <li>for a graph only, its UUID as two longs, its explicit name, its solver factory class name and
+ * an int count of boundary variables.
+ * <li>a sequence of records, each starting with a tag byte, ending with {@link #END}.
+ * </ul>
+ * Domains, tables and variables are numbered in the order their records appear, and later
+ * records refer to them by number, so each is written once however many times it is used.
+ * A record always follows the records it refers to, so the stream can be read in a single pass.
+ * The boundary variables of a graph are its first variable records, in order.
+ * <dl>
+ * <dt>{@link #DOMAIN}</dt><dd>int size, then each element as a type byte and value.</dd>
+ * <dt>{@link #TABLE}</dt><dd>int dimensions, a domain number per dimension, int count and
+ * indices of the output dimensions, a layout byte, a values byte, int number of entries,
+ * then a block of int indices (absent for {@link #LAYOUT_DENSE}, one per entry for
+ * {@link #LAYOUT_JOINT}, one per dimension per entry for {@link #LAYOUT_INDICES}) followed by a
+ * block of double weights or energies.</dd>
+ * <dt>{@link #VARIABLE}</dt><dd>UUID, explicit name, domain number, int input length (or -1) and
+ * the input weights.</dd>
+ * <dt>{@link #FACTOR}</dt><dd>UUID, explicit name, function name, table number, int number
+ * of edges and the variable number for each edge.</dd>
+ * </dl>
+ *
+ * @since 0.05
+ */
+final class BinaryFormat
+{
+	static final byte[] MAGIC = new byte[] { 'D', 'M', 'P', 'L' };
+	static final int VERSION = 1;
+
+	static final byte KIND_GRAPH = 1;
+	static final byte KIND_TABLE = 2;
+
+	// Record tags
+	static final byte END = 0;
+	static final byte DOMAIN = 1;
+	static final byte TABLE = 2;
+	static final byte VARIABLE = 3;
+	static final byte FACTOR = 4;
+
+	// Domain element types
+	static final byte ELEMENT_DOUBLE = 1;
+	static final byte ELEMENT_INTEGER = 2;
+	static final byte ELEMENT_STRING = 3;
+	static final byte ELEMENT_BOOLEAN = 4;
+	static final byte ELEMENT_LONG = 5;
+
+	// Factor table layouts
+	static final byte LAYOUT_DENSE = 1;
+	static final byte LAYOUT_JOINT = 2;
+	static final byte LAYOUT_INDICES = 3;
+
+	// Factor table values
+	static final byte VALUES_WEIGHTS = 1;
+	static final byte VALUES_ENERGIES = 2;
+
+	private BinaryFormat()
+	{
+	}
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.serializerdetails;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.UUID;
+
+/**
+ * Reads little-endian primitive values from a channel through a fixed size buffer.
+ *
+ * @since 0.05
+ */
+final class BinaryInput
+{
+	/*-------
+	 * State
+	 */
+
+	private final ReadableByteChannel _channel;
+	private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BinaryOutput.BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	/*--------------
+	 * Construction
+	 */
+
+	BinaryInput(ReadableByteChannel channel)
+	{
+		_channel = channel;
+		_buffer.limit(0);
+	}
+
+	/*---------
+	 * Methods
+	 */
+
+	byte readByte() throws IOException
+	{
+		require(1);
+		return _buffer.get();
+	}
+
+	int readInt() throws IOException
+	{
+		require(4);
+		return _buffer.getInt();
+	}
+
+	long readLong() throws IOException
+	{
+		require(8);
+		return _buffer.getLong();
+	}
+
+	double readDouble() throws IOException
+	{
+		require(8);
+		return _buffer.getDouble();
+	}
+
+	void readBytes(byte[] bytes) throws IOException
+	{
+		for (int offset = 0, end = bytes.length; offset < end; )
+		{
+			require(1);
+			int length = Math.min(end - offset, _buffer.remaining());
+			_buffer.get(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Reads {@code length} ints into {@code array} starting at {@code offset}.
+	 */
+	void readInts(int[] array, int offset, int length) throws IOException
+	{
+		while (length > 0)
+		{
+			require(4);
+			int n = Math.min(length, _buffer.remaining() / 4);
+			_buffer.asIntBuffer().get(array, offset, n);
+			_buffer.position(_buffer.position() + n * 4);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Reads {@code length} doubles into {@code array} starting at {@code offset}.
+	 */
+	void readDoubles(double[] array, int offset, int length) throws IOException
+	{
+		while (length > 0)
+		{
+			require(8);
+			int n = Math.min(length, _buffer.remaining() / 8);
+			_buffer.asDoubleBuffer().get(array, offset, n);
+			_buffer.position(_buffer.position() + n * 8);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	String readString() throws IOException
+	{
+		int length = readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		readBytes(bytes);
+		return new String(bytes, BinaryOutput.UTF8);
+	}
+
+	UUID readUUID() throws IOException
+	{
+		long mostSignificant = readLong();
+		return new UUID(mostSignificant, readLong());
+	}
+
+	// Ensures that at least nBytes bytes are buffered
+	private void require(int nBytes) throws IOException
+	{
+		if (_buffer.remaining() >= nBytes)
+			return;
+
+		_buffer.compact();
+		while (_buffer.position() < nBytes)
+		{
+			if (_channel.read(_buffer) < 0)
+			{
+				_buffer.flip();
+				throw new EOFException("Unexpected end of binary factor graph data");
+			}
+		}
+		_buffer.flip();
+	}
+}
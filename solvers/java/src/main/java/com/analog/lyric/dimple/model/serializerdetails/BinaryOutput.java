@@ -0,0 +1,128 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.serializerdetails;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+/**
+ * Writes little-endian primitive values to a channel through a fixed size buffer.
+ *
+ * @since 0.05
+ */
+final class BinaryOutput
+{
+	/*-------
+	 * State
+	 */
+
+	static final int BUFFER_SIZE = 1 << 16;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final WritableByteChannel _channel;
+	private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	/*--------------
+	 * Construction
+	 */
+
+	BinaryOutput(WritableByteChannel channel)
+	{
+		_channel = channel;
+	}
+
+	/*---------
+	 * Methods
+	 */
+
+	void writeByte(int value) throws IOException
+	{
+		reserve(1);
+		_buffer.put((byte)value);
+	}
+
+	void writeInt(int value) throws IOException
+	{
+		reserve(4);
+		_buffer.putInt(value);
+	}
+
+	void writeLong(long value) throws IOException
+	{
+		reserve(8);
+		_buffer.putLong(value);
+	}
+
+	void writeDouble(double value) throws IOException
+	{
+		reserve(8);
+		_buffer.putDouble(value);
+	}
+
+	void writeBytes(byte[] bytes) throws IOException
+	{
+		for (int offset = 0, end = bytes.length; offset < end; )
+		{
+			if (!_buffer.hasRemaining())
+				flush();
+			int length = Math.min(end - offset, _buffer.remaining());
+			_buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	void writeString(String value) throws IOException
+	{
+		if (value == null)
+		{
+			writeInt(-1);
+		}
+		else
+		{
+			byte[] bytes = value.getBytes(UTF8);
+			writeInt(bytes.length);
+			writeBytes(bytes);
+		}
+	}
+
+	void writeUUID(UUID uuid) throws IOException
+	{
+		writeLong(uuid.getMostSignificantBits());
+		writeLong(uuid.getLeastSignificantBits());
+	}
+
+	/**
+	 * Writes any buffered bytes to the channel.
+	 */
+	void flush() throws IOException
+	{
+		_buffer.flip();
+		while (_buffer.hasRemaining())
+			_channel.write(_buffer);
+		_buffer.clear();
+	}
+
+	private void reserve(int nBytes) throws IOException
+	{
+		if (_buffer.remaining() < nBytes)
+			flush();
+	}
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.serializerdetails;
+
+import static com.analog.lyric.dimple.model.serializerdetails.BinaryFormat.*;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.factors.FactorList;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.model.variables.VariableList;
+
+/**
+ * Writes factor graphs and factor tables in the binary format described in {@link BinaryFormat}.
+ * <p>
+ * Data is written through a fixed size buffer as it is produced, so apart from the numbering of the
+ * domains, tables and variables that have been written, no copy of the graph is built in memory.
+ * Factor tables shared by several factors are written once.
+ * <p>
+ * Like the XML serializer, this supports only discrete variables and factors.
+ *
+ * @since 0.05
+ */
+public class BinarySerializer
+{
+	/*-------
+	 * State
+	 */
+
+	private final BinaryOutput _out;
+	private final Map<DiscreteDomain, Integer> _domainIds = new HashMap<DiscreteDomain, Integer>();
+	private final Map<IFactorTable, Integer> _tableIds = new IdentityHashMap<IFactorTable, Integer>();
+	private final Map<VariableBase, Integer> _variableIds = new IdentityHashMap<VariableBase, Integer>();
+
+	/*--------------
+	 * Construction
+	 */
+
+	private BinarySerializer(WritableByteChannel channel)
+	{
+		_out = new BinaryOutput(channel);
+	}
+
+	/*----------------
+	 * Static methods
+	 */
+
+	/**
+	 * Writes the flattened contents of {@code graph} to {@code channel}, which is not closed.
+	 */
+	public static void serialize(FactorGraph graph, WritableByteChannel channel) throws IOException
+	{
+		new BinarySerializer(channel).writeGraph(graph);
+	}
+
+	/**
+	 * Writes {@code table} to {@code channel}, which is not closed.
+	 */
+	public static void serialize(IFactorTable table, WritableByteChannel channel) throws IOException
+	{
+		BinarySerializer serializer = new BinarySerializer(channel);
+		serializer.writeHeader(KIND_TABLE);
+		serializer.writeTable(table);
+		serializer.writeEnd();
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void writeHeader(byte kind) throws IOException
+	{
+		_out.writeBytes(MAGIC);
+		_out.writeInt(VERSION);
+		_out.writeByte(kind);
+	}
+
+	private void writeEnd() throws IOException
+	{
+		_out.writeByte(END);
+		_out.flush();
+	}
+
+	private void writeGraph(FactorGraph graph) throws IOException
+	{
+		final VariableList boundaryVariables = graph.getBoundaryVariables();
+
+		writeHeader(KIND_GRAPH);
+		_out.writeUUID(graph.getUUID());
+		_out.writeString(graph.getExplicitName());
+		_out.writeString(graph.getFactorGraphFactory() != null ? graph.getFactorGraphFactory().getClass().getName() : null);
+		_out.writeInt(boundaryVariables.size());
+
+		// Boundary variables come first so that the graph can be constructed as soon as they are read.
+		for (VariableBase variable : boundaryVariables)
+			writeVariable(variable);
+		for (VariableBase variable : graph.getVariablesFlat())
+			if (!_variableIds.containsKey(variable))
+				writeVariable(variable);
+
+		final FactorList factors = graph.getNonGraphFactorsFlat();
+		for (Factor factor : factors)
+			writeFactor(factor);
+
+		writeEnd();
+	}
+
+	private int writeDomain(DiscreteDomain domain) throws IOException
+	{
+		Integer id = _domainIds.get(domain);
+		if (id != null)
+			return id;
+
+		final int size = domain.size();
+		_out.writeByte(DOMAIN);
+		_out.writeInt(size);
+		for (int i = 0; i < size; ++i)
+		{
+			Object element = domain.getElement(i);
+			if (element instanceof Double)
+			{
+				_out.writeByte(ELEMENT_DOUBLE);
+				_out.writeDouble((Double)element);
+			}
+			else if (element instanceof Integer)
+			{
+				_out.writeByte(ELEMENT_INTEGER);
+				_out.writeInt((Integer)element);
+			}
+			else if (element instanceof String)
+			{
+				_out.writeByte(ELEMENT_STRING);
+				_out.writeString((String)element);
+			}
+			else if (element instanceof Boolean)
+			{
+				_out.writeByte(ELEMENT_BOOLEAN);
+				_out.writeByte((Boolean)element ? 1 : 0);
+			}
+			else if (element instanceof Long)
+			{
+				_out.writeByte(ELEMENT_LONG);
+				_out.writeLong((Long)element);
+			}
+			else
+			{
+				throw new DimpleException("Cannot serialize domain element of type %s",
+					element == null ? "null" : element.getClass().getName());
+			}
+		}
+
+		id = _domainIds.size();
+		_domainIds.put(domain, id);
+		return id;
+	}
+
+	private int writeTable(IFactorTable table) throws IOException
+	{
+		Integer id = _tableIds.get(table);
+		if (id != null)
+			return id;
+
+		final JointDomainIndexer domains = table.getDomainIndexer();
+		final int dimensions = domains.size();
+		final int[] domainIds = new int[dimensions];
+		for (int i = 0; i < dimensions; ++i)
+			domainIds[i] = writeDomain(domains.get(i));
+
+		final boolean dense = table.hasDenseRepresentation();
+		final boolean energies = dense ? !table.hasDenseWeights() : !table.hasSparseWeights();
+		final byte layout = dense ? LAYOUT_DENSE : domains.supportsJointIndexing() ? LAYOUT_JOINT : LAYOUT_INDICES;
+		final int size = dense ? table.jointSize() : table.sparseSize();
+
+		_out.writeByte(TABLE);
+		_out.writeInt(dimensions);
+		for (int domainId : domainIds)
+			_out.writeInt(domainId);
+		final int[] outputs = domains.getOutputDomainIndices();
+		if (outputs == null)
+		{
+			_out.writeInt(0);
+		}
+		else
+		{
+			_out.writeInt(outputs.length);
+			for (int output : outputs)
+				_out.writeInt(output);
+		}
+		_out.writeByte(layout);
+		_out.writeByte(energies ? VALUES_ENERGIES : VALUES_WEIGHTS);
+		_out.writeInt(size);
+
+		if (layout == LAYOUT_JOINT)
+		{
+			for (int si = 0; si < size; ++si)
+				_out.writeInt(table.sparseIndexToJointIndex(si));
+		}
+		else if (layout == LAYOUT_INDICES)
+		{
+			final int[] indices = new int[dimensions];
+			for (int si = 0; si < size; ++si)
+			{
+				table.sparseIndexToIndices(si, indices);
+				for (int index : indices)
+					_out.writeInt(index);
+			}
+		}
+
+		for (int i = 0; i < size; ++i)
+		{
+			if (dense)
+				_out.writeDouble(energies ? table.getEnergyForJointIndex(i) : table.getWeightForJointIndex(i));
+			else
+				_out.writeDouble(energies ? table.getEnergyForSparseIndex(i) : table.getWeightForSparseIndex(i));
+		}
+
+		id = _tableIds.size();
+		_tableIds.put(table, id);
+		return id;
+	}
+
+	private void writeVariable(VariableBase variable) throws IOException
+	{
+		if (!(variable instanceof Discrete))
+			throw new DimpleException("Binary serialization only supports discrete variables");
+
+		final Discrete discrete = (Discrete)variable;
+		final int domainId = writeDomain(discrete.getDiscreteDomain());
+		final double[] input = discrete.getInput();
+
+		_out.writeByte(VARIABLE);
+		_out.writeUUID(variable.getUUID());
+		_out.writeString(variable.getExplicitName());
+		_out.writeInt(domainId);
+		if (input == null)
+		{
+			_out.writeInt(-1);
+		}
+		else
+		{
+			_out.writeInt(input.length);
+			for (double weight : input)
+				_out.writeDouble(weight);
+		}
+
+		_variableIds.put(variable, _variableIds.size());
+	}
+
+	private void writeFactor(Factor factor) throws IOException
+	{
+		if (!factor.isDiscrete())
+			throw new DimpleException("Binary serialization only supports discrete factors");
+
+		final int tableId = writeTable(factor.getFactorTable());
+		final int nEdges = factor.getSiblingCount();
+
+		_out.writeByte(FACTOR);
+		_out.writeUUID(factor.getUUID());
+		_out.writeString(factor.getExplicitName());
+		_out.writeString(factor.getModelerFunctionName());
+		_out.writeInt(tableId);
+		_out.writeInt(nEdges);
+		for (int i = 0; i < nEdges; ++i)
+		{
+			Integer variableId = _variableIds.get(factor.getConnectedNodeFlat(i));
+			if (variableId == null)
+				throw new DimpleException("Factor [%s] is connected to a variable outside of the graph", factor.getLabel());
+			_out.writeInt(variableId);
+		}
+	}
+}
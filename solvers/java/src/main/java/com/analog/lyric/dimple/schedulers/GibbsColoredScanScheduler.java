@@ -0,0 +1,60 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsColoredScanSchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+
+/**
+ * Creates a {@link GibbsColoredScanSchedule}, a systematic scan for the Gibbs solver that
+ * updates the variables of each color class of a graph coloring concurrently.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph
+ * scheduler associations. That is, if any sub-graph already has an
+ * associated scheduler, that scheduler is ignored in creating this
+ * schedule.
+ *
+ * @since 0.05
+ */
+public class GibbsColoredScanScheduler implements IScheduler
+{
+	protected int _numWorkers = Runtime.getRuntime().availableProcessors();
+
+	@Override
+	public ISchedule createSchedule(FactorGraph g)
+	{
+		return new GibbsColoredScanSchedule(g, _numWorkers);
+	}
+
+	/**
+	 * Sets the maximum number of threads used to update a color class for schedules
+	 * subsequently created by this scheduler. Defaults to the number of available processors.
+	 */
+	public void setNumWorkers(int numWorkers)
+	{
+		if (numWorkers < 1)
+			throw new DimpleException("Number of workers must be greater than 0.");
+		_numWorkers = numWorkers;
+	}
+
+	public int getNumWorkers()
+	{
+		return _numWorkers;
+	}
+}
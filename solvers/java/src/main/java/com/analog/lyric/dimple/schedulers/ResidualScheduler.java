@@ -0,0 +1,60 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualSchedule;
+
+/**
+ * Creates a dynamic {@link ResidualSchedule}, which always updates the edge whose
+ * input messages have changed the most since it was last updated, and stops
+ * updating once all pending changes are below a tolerance.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph
+ * scheduler associations. That is, if any sub-graph already has an
+ * associated scheduler, that scheduler is ignored in creating this
+ * schedule.
+ *
+ * @since 0.05
+ */
+public class ResidualScheduler implements IScheduler
+{
+	protected double _tolerance = ResidualSchedule.DEFAULT_TOLERANCE;
+
+	@Override
+	public ISchedule createSchedule(FactorGraph g)
+	{
+		ResidualSchedule schedule = new ResidualSchedule(g);
+		schedule.setTolerance(_tolerance);
+		return schedule;
+	}
+
+	/**
+	 * Sets the residual below which edges are not updated for schedules subsequently
+	 * created by this scheduler.
+	 */
+	public void setTolerance(double tolerance)
+	{
+		_tolerance = tolerance;
+	}
+
+	public double getTolerance()
+	{
+		return _tolerance;
+	}
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ParallelNodesScheduleEntry;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+
+/**
+ * A Gibbs schedule that performs a systematic scan one color class at a time, where the
+ * classes come from a coloring of the graph in which no two variables of the same color
+ * share a factor. Variables of the same color are conditionally independent given the
+ * others, so each class is updated concurrently using a {@link ParallelNodesScheduleEntry},
+ * and one pass over the schedule is equivalent to a sequential scan of the variables in
+ * color order.
+ * <p>
+ * Variables connected to a deterministic directed factor are not colored, since updating
+ * an input of such a factor also modifies its outputs. The inputs are instead updated one
+ * at a time after all of the color classes, and the outputs are not updated directly.
+ * <p>
+ * Variables connected to a factor that may not be evaluated concurrently are also updated one
+ * at a time after the color classes, since different factors may share one instance of a
+ * {@link FactorFunction} that keeps intermediate values in its fields. Each factor's solver
+ * reports whether it {@linkplain ISolverFactor#isConcurrentlyEvaluable() may be evaluated concurrently};
+ * factors without a solver may be if their function {@linkplain FactorFunction#isEvaluationThreadSafe()
+ * is thread safe}.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph
+ * scheduler associations. That is, if any sub-graph already has an
+ * associated scheduler, that scheduler is ignored in creating this
+ * schedule.
+ *
+ * @since 0.05
+ */
+public class GibbsColoredScanSchedule extends ScheduleBase
+{
+	/*-------
+	 * State
+	 */
+
+	private final int _numWorkers;
+	private List<VariableBase[]> _colorClasses;
+	private List<IScheduleEntry> _entries;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * @param numWorkers is the maximum number of threads used to update a color class.
+	 */
+	public GibbsColoredScanSchedule(FactorGraph factorGraph, int numWorkers)
+	{
+		_factorGraph = factorGraph;
+		_numWorkers = numWorkers;
+		initialize();
+	}
+
+	@Override
+	public void attach(FactorGraph factorGraph)
+	{
+		super.attach(factorGraph);
+		initialize();
+	}
+
+	protected void initialize()
+	{
+		final List<VariableBase> variables = _factorGraph.getVariables().values();
+		final int nVars = variables.size();
+
+		final Map<VariableBase, Integer> indices = new HashMap<VariableBase, Integer>(nVars * 2);
+		for (int i = 0; i < nVars; ++i)
+			indices.put(variables.get(i), i);
+
+		// Adjacency of the variables to be colored, which are those not connected to a
+		// deterministic directed factor or to a factor that cannot be evaluated concurrently.
+		final boolean[] uncolored = new boolean[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			VariableBase var = variables.get(i);
+			for (int j = 0, end = var.getSiblingCount(); j < end; ++j)
+			{
+				Factor factor = var.getSibling(j);
+				if (factor.getFactorFunction().isDeterministicDirected() || !isConcurrentlyEvaluable(factor))
+				{
+					uncolored[i] = true;
+					break;
+				}
+			}
+		}
+
+		final int[][] neighbors = new int[nVars][];
+		final List<VariableBase> sequential = new ArrayList<VariableBase>();
+		final List<Integer> order = new ArrayList<Integer>(nVars);
+		for (int i = 0; i < nVars; ++i)
+		{
+			if (uncolored[i])
+			{
+				VariableBase var = variables.get(i);
+				if (!isDeterministicOutput(var))
+					sequential.add(var);
+				continue;
+			}
+
+			int[] adjacent = new int[16];
+			int count = 0;
+			VariableBase var = variables.get(i);
+			for (int j = 0, end = var.getSiblingCount(); j < end; ++j)
+			{
+				Factor factor = var.getSibling(j);
+				for (int k = 0, endk = factor.getSiblingCount(); k < endk; ++k)
+				{
+					Integer neighbor = indices.get(factor.getSibling(k));
+					if (neighbor != null && neighbor != i && !uncolored[neighbor])
+					{
+						if (count == adjacent.length)
+							adjacent = Arrays.copyOf(adjacent, count * 2);
+						adjacent[count++] = neighbor;
+					}
+				}
+			}
+			neighbors[i] = Arrays.copyOf(adjacent, count);
+			order.add(i);
+		}
+
+		// Greedy coloring, visiting the most connected variables first.
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				int diff = neighbors[b].length - neighbors[a].length;
+				return diff != 0 ? diff : a - b;
+			}
+		});
+
+		final int[] colors = new int[nVars];
+		Arrays.fill(colors, -1);
+		final List<List<VariableBase>> classes = new ArrayList<List<VariableBase>>();
+		boolean[] used = new boolean[0];
+		for (int i : order)
+		{
+			Arrays.fill(used, false);
+			for (int neighbor : neighbors[i])
+			{
+				int color = colors[neighbor];
+				if (color >= 0)
+					used[color] = true;
+			}
+			int color = 0;
+			while (color < used.length && used[color])
+				++color;
+			if (color == classes.size())
+			{
+				classes.add(new ArrayList<VariableBase>());
+				used = new boolean[classes.size()];
+			}
+			colors[i] = color;
+			classes.get(color).add(variables.get(i));
+		}
+
+		_colorClasses = new ArrayList<VariableBase[]>(classes.size());
+		_entries = new ArrayList<IScheduleEntry>(classes.size() + sequential.size());
+		for (List<VariableBase> colorClass : classes)
+		{
+			VariableBase[] members = colorClass.toArray(new VariableBase[colorClass.size()]);
+			_colorClasses.add(members);
+			_entries.add(new ParallelNodesScheduleEntry(members, _numWorkers));
+		}
+		for (VariableBase var : sequential)
+			_entries.add(new NodeScheduleEntry(var));
+	}
+
+	private static boolean isConcurrentlyEvaluable(Factor factor)
+	{
+		final ISolverFactor sfactor = factor.getSolver();
+		return sfactor != null ? sfactor.isConcurrentlyEvaluable() : factor.getFactorFunction().isEvaluationThreadSafe();
+	}
+
+	private static boolean isDeterministicOutput(VariableBase var)
+	{
+		for (int j = 0, end = var.getSiblingCount(); j < end; ++j)
+		{
+			Factor factor = var.getSibling(j);
+			if (factor.getFactorFunction().isDeterministicDirected() && factor.isDirectedTo(var.getSiblingPortIndex(j)))
+				return true;
+		}
+		return false;
+	}
+
+	/*------------------
+	 * ISchedule methods
+	 */
+
+	@Override
+	public Iterator<IScheduleEntry> iterator()
+	{
+		return _entries.iterator();
+	}
+
+	/*---------------
+	 * Local methods
+	 */
+
+	/**
+	 * Returns the variables of each color class, in the order in which they are updated.
+	 * No two variables in the same class share a factor.
+	 */
+	public List<VariableBase[]> getColorClasses()
+	{
+		List<VariableBase[]> classes = new ArrayList<VariableBase[]>(_colorClasses.size());
+		for (VariableBase[] colorClass : _colorClasses)
+			classes.add(colorClass.clone());
+		return classes;
+	}
+
+	public int getNumWorkers()
+	{
+		return _numWorkers;
+	}
+}
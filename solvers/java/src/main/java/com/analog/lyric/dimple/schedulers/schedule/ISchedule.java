@@ -40,4 +40,12 @@ public interface ISchedule extends Iterable<IScheduleEntry>
 	public FactorGraph getFactorGraph();
 	public ISchedule copy(Map<Node,Node> old2newObjs) ;
 	public ISchedule copyToRoot(Map<Node,Node> old2newObjs) ;
+	
+	/**
+	 * Discards any state that depends on the messages of the factor graph, such as tracked
+	 * message changes. Invoked when the solver for the root graph is initialized.
+	 * 
+	 * @since 0.05
+	 */
+	public void reset();
 }
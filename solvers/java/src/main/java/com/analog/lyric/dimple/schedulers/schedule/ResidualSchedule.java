@@ -0,0 +1,527 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.analog.lyric.collect.BinaryHeap;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+
+/**
+ * A dynamic schedule that always updates the edge with the largest pending residual.
+ * <p>
+ * The residual of an edge is an estimate of how much its output message will change
+ * if it is updated. When an edge from node A to node B is updated, the largest absolute
+ * change in its output message is propagated to every other outgoing edge of B, since
+ * those are the edges whose inputs just changed. Edges whose pending residual is below
+ * the {@linkplain #getTolerance() tolerance} are not updated, so once every residual falls
+ * below the tolerance the schedule is {@linkplain #isConverged() converged} and further
+ * iterations do nothing. Every edge is pending when the solver is initialized.
+ * <p>
+ * Each iteration performs at most one update per edge in the graph on average, i.e. the same
+ * number of updates as one iteration of a flooding schedule, but concentrates them on the
+ * parts of the graph that have not yet converged.
+ * <p>
+ * Residuals are only measured for messages represented as {@code double[]}, such as those
+ * of discrete variables in the sum-product and min-sum solvers. Other messages are treated
+ * as having changed by an infinite amount every time they are updated.
+ * <p>
+ * The schedule may be used concurrently through {@link #claimNext()}, which never hands out
+ * two edges that share a node at the same time. This is how the
+ * {@code MultithreadingMode.Residual} multithreading mode runs it.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph
+ * scheduler associations. That is, if any sub-graph already has an
+ * associated scheduler, that scheduler is ignored in creating this
+ * schedule.
+ *
+ * @since 0.05
+ */
+public class ResidualSchedule extends ScheduleBase
+{
+	/*-------
+	 * State
+	 */
+
+	public static final double DEFAULT_TOLERANCE = 1e-6;
+
+	private double _tolerance = DEFAULT_TOLERANCE;
+
+	private Edge [] _edges = new Edge[0];
+
+	// Indexed by node index, true while an update of an edge to or from that node is in progress.
+	private boolean [] _busy = new boolean[0];
+
+	// Pending edges with residual at least the tolerance, keyed by negated residual.
+	private final BinaryHeap<Edge> _heap = new BinaryHeap<Edge>();
+
+	// Busy edges removed from the heap while looking for one that can be claimed.
+	private final ArrayList<Edge> _skipped = new ArrayList<Edge>();
+
+	private boolean _needsReset = true;
+	private int _updatesRemaining;
+	private int _inFlight;
+	private long _updateCount;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public ResidualSchedule(FactorGraph factorGraph)
+	{
+		_factorGraph = factorGraph;
+		initialize();
+	}
+
+	@Override
+	public void attach(FactorGraph factorGraph)
+	{
+		super.attach(factorGraph);
+		initialize();
+	}
+
+	/*
+	 * Creates an edge for each direction of every connection between a factor and a variable
+	 * in the flattened graph.
+	 */
+	protected synchronized void initialize()
+	{
+		IdentityHashMap<INode,Integer> nodeIndex = new IdentityHashMap<INode,Integer>();
+		ArrayList<INode> nodes = new ArrayList<INode>();
+		for (Factor factor : _factorGraph.getNonGraphFactorsFlat())
+		{
+			addNode(factor, nodes, nodeIndex);
+			for (int i = 0, end = factor.getSiblingCount(); i < end; ++i)
+				addNode(factor.getSibling(i), nodes, nodeIndex);
+		}
+
+		// Edges leaving a node occupy consecutive indices in port order.
+		final int numNodes = nodes.size();
+		int [] edgeOffsets = new int[numNodes + 1];
+		for (int n = 0; n < numNodes; ++n)
+			edgeOffsets[n + 1] = edgeOffsets[n] + nodes.get(n).getSiblingCount();
+
+		Edge [] edges = new Edge[edgeOffsets[numNodes]];
+		for (int n = 0; n < numNodes; ++n)
+		{
+			INode node = nodes.get(n);
+			for (int port = 0, end = node.getSiblingCount(); port < end; ++port)
+			{
+				Integer target = nodeIndex.get(node.getSibling(port));
+				edges[edgeOffsets[n] + port] = new Edge(node, port, n, target != null ? target : -1);
+			}
+		}
+
+		// Updating edge A->B changes the inputs of all other edges leaving B.
+		for (Edge edge : edges)
+		{
+			if (edge._target < 0)
+			{
+				edge._dependents = new Edge[0];
+				continue;
+			}
+			INode target = nodes.get(edge._target);
+			int reversePort = edge.getNode().getSiblingPortIndex(edge.getPortNum());
+			int degree = target.getSiblingCount();
+			Edge [] dependents = new Edge[degree - 1];
+			for (int port = 0, i = 0; port < degree; ++port)
+				if (port != reversePort)
+					dependents[i++] = edges[edgeOffsets[edge._target] + port];
+			edge._dependents = dependents;
+		}
+
+		_edges = edges;
+		_busy = new boolean[numNodes];
+		_needsReset = true;
+	}
+
+	private static void addNode(INode node, ArrayList<INode> nodes, IdentityHashMap<INode,Integer> nodeIndex)
+	{
+		if (!nodeIndex.containsKey(node))
+		{
+			nodeIndex.put(node, nodes.size());
+			nodes.add(node);
+		}
+	}
+
+	/*------------------
+	 * Iterable methods
+	 */
+
+	/**
+	 * Starts a new iteration and returns an iterator over the edges updated by it.
+	 * <p>
+	 * Each edge must be updated before the iterator is advanced past it; an edge that is skipped
+	 * without being updated remains pending.
+	 */
+	@Override
+	public Iterator<IScheduleEntry> iterator()
+	{
+		beginIteration();
+
+		return new Iterator<IScheduleEntry>() {
+			private Edge _next = null;
+			private Edge _last = null;
+
+			@Override
+			public boolean hasNext()
+			{
+				if (_next == null)
+				{
+					if (_last != null && _last._claimed)
+					{
+						release(_last);
+					}
+					_last = null;
+					_next = claim(false);
+				}
+				return _next != null;
+			}
+
+			@Override
+			public IScheduleEntry next()
+			{
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				_last = _next;
+				_next = null;
+				return _last;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException("remove");
+			}
+		};
+	}
+
+	/*--------------------------
+	 * ResidualSchedule methods
+	 */
+
+	/**
+	 * Residual below which an edge will not be updated.
+	 * <p>
+	 * Default is {@link #DEFAULT_TOLERANCE}.
+	 */
+	public double getTolerance()
+	{
+		return _tolerance;
+	}
+
+	public synchronized void setTolerance(double tolerance)
+	{
+		if (tolerance < 0 || Double.isNaN(tolerance))
+			throw new DimpleException("Tolerance must be non-negative");
+		_tolerance = tolerance;
+		_needsReset = true;
+	}
+
+	/**
+	 * True if no edge has a pending residual of at least the tolerance.
+	 */
+	public synchronized boolean isConverged()
+	{
+		return !_needsReset && _inFlight == 0 && _heap.isEmpty();
+	}
+
+	/**
+	 * Total number of edge updates performed since the solver was last initialized.
+	 */
+	public synchronized long getUpdateCount()
+	{
+		return _updateCount;
+	}
+
+	/**
+	 * Marks every edge as pending. Invoked when the solver graph is initialized.
+	 */
+	@Override
+	public synchronized void reset()
+	{
+		_needsReset = true;
+	}
+
+	/**
+	 * Starts a new iteration, allowing another round of edge updates to be claimed.
+	 */
+	public synchronized void beginIteration()
+	{
+		if (_needsReset)
+		{
+			doReset();
+		}
+		_updatesRemaining = _edges.length;
+	}
+
+	/**
+	 * Returns the next edge to update in the current iteration, or null if the iteration
+	 * has done its share of updates or the schedule has converged.
+	 * <p>
+	 * The edge must be updated by invoking its {@link IScheduleEntry#update()} method, which
+	 * releases it again. While there are other edges being updated that could make more
+	 * edges available, this will wait for them to finish, so it is safe to call from
+	 * multiple threads at once.
+	 */
+	public IScheduleEntry claimNext()
+	{
+		return claim(true);
+	}
+
+	/*-----------------
+	 * Implementation
+	 */
+
+	private final class Edge extends EdgeScheduleEntry
+	{
+		private final int _source;
+		private final int _target;
+		private Edge [] _dependents;
+		private double _residual;
+		private double _claimedResidual;
+		private BinaryHeap.Entry<Edge> _entry;
+		private boolean _claimed;
+		private double [] _lastMessage;
+
+		private Edge(INode node, int portNum, int source, int target)
+		{
+			super(node, portNum);
+			_source = source;
+			_target = target;
+		}
+
+		@Override
+		public void update()
+		{
+			if (!_claimed)
+			{
+				// Not obtained through claim(), e.g. the caller held on to this entry from a
+				// previous iteration.
+				throw new DimpleException("Residual schedule entry updated out of order");
+			}
+
+			double residual = Double.POSITIVE_INFINITY;
+			try
+			{
+				super.update();
+				residual = computeResidual();
+			}
+			finally
+			{
+				completeUpdate(this, residual);
+			}
+		}
+
+		/*
+		 * Returns the largest change in the output message since the last time this was
+		 * called and remembers the current message.
+		 */
+		private double computeResidual()
+		{
+			final Object msg = getMessage();
+			if (!(msg instanceof double[]))
+			{
+				return Double.POSITIVE_INFINITY;
+			}
+
+			final double [] values = (double[])msg;
+			final double [] last = _lastMessage;
+			if (last == null || last.length != values.length)
+			{
+				_lastMessage = values.clone();
+				return Double.POSITIVE_INFINITY;
+			}
+
+			double residual = 0;
+			for (int i = 0; i < values.length; ++i)
+			{
+				residual = Math.max(residual, Math.abs(values[i] - last[i]));
+				last[i] = values[i];
+			}
+			return Double.isNaN(residual) ? Double.POSITIVE_INFINITY : residual;
+		}
+
+		private Object getMessage()
+		{
+			ISolverNode solver = getNode().getSolver();
+			return solver != null ? solver.getOutputMsg(getPortNum()) : null;
+		}
+
+		private void snapshotMessage()
+		{
+			final Object msg = getMessage();
+			if (msg instanceof double[])
+			{
+				final double [] values = (double[])msg;
+				if (_lastMessage == null || _lastMessage.length != values.length)
+					_lastMessage = values.clone();
+				else
+					System.arraycopy(values, 0, _lastMessage, 0, values.length);
+			}
+			else
+			{
+				_lastMessage = null;
+			}
+		}
+	}
+
+	private void doReset()
+	{
+		_heap.clear();
+		_skipped.clear();
+		_heap.deferOrderingForBulkAdd(_edges.length);
+		for (Edge edge : _edges)
+		{
+			edge.snapshotMessage();
+			edge._claimed = false;
+			edge._residual = Double.POSITIVE_INFINITY;
+			edge._entry = _heap.offer(edge, Double.NEGATIVE_INFINITY);
+		}
+		for (int i = 0; i < _busy.length; ++i)
+			_busy[i] = false;
+		_inFlight = 0;
+		_updateCount = 0;
+		_needsReset = false;
+	}
+
+	private synchronized Edge claim(boolean wait)
+	{
+		while (_updatesRemaining > 0)
+		{
+			Edge edge = pollAvailable();
+			if (edge != null)
+			{
+				--_updatesRemaining;
+				++_inFlight;
+				++_updateCount;
+				edge._claimed = true;
+				edge._claimedResidual = edge._residual;
+				edge._residual = 0;
+				_busy[edge._source] = true;
+				if (edge._target >= 0)
+					_busy[edge._target] = true;
+				return edge;
+			}
+
+			if (_inFlight == 0 || !wait)
+			{
+				// Converged, or nothing is available until the caller completes its update.
+				break;
+			}
+
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException ex)
+			{
+				throw new DimpleException(ex);
+			}
+		}
+
+		return null;
+	}
+
+	/*
+	 * Removes and returns the pending edge with the largest residual that does not share a node
+	 * with an edge that is currently being updated.
+	 */
+	private Edge pollAvailable()
+	{
+		final boolean [] busy = _busy;
+		Edge found = null;
+
+		BinaryHeap.Entry<Edge> entry;
+		while ((entry = _heap.pollEntry()) != null)
+		{
+			final Edge edge = entry.getElement();
+			edge._entry = null;
+			if (!busy[edge._source] && (edge._target < 0 || !busy[edge._target]))
+			{
+				found = edge;
+				break;
+			}
+			_skipped.add(edge);
+		}
+
+		releaseSkipped();
+		return found;
+	}
+
+	private void releaseSkipped()
+	{
+		for (int i = 0, end = _skipped.size(); i < end; ++i)
+		{
+			final Edge edge = _skipped.get(i);
+			edge._entry = _heap.offer(edge, -edge._residual);
+		}
+		_skipped.clear();
+	}
+
+	private void unclaim(Edge edge)
+	{
+		edge._claimed = false;
+		--_inFlight;
+		_busy[edge._source] = false;
+		if (edge._target >= 0)
+			_busy[edge._target] = false;
+	}
+
+	/*
+	 * Returns a claimed edge that was not updated to the pending edges.
+	 */
+	private synchronized void release(Edge edge)
+	{
+		unclaim(edge);
+		--_updateCount;
+		edge._residual = edge._claimedResidual;
+		edge._entry = _heap.offer(edge, -edge._residual);
+		notifyAll();
+	}
+
+	private synchronized void completeUpdate(Edge edge, double residual)
+	{
+		unclaim(edge);
+
+		final double tolerance = _tolerance;
+		for (Edge dependent : edge._dependents)
+		{
+			if (residual > dependent._residual)
+			{
+				dependent._residual = residual;
+				if (dependent._entry != null)
+					_heap.changePriority(dependent._entry, -residual);
+				else if (residual >= tolerance)
+					dependent._entry = _heap.offer(dependent, -residual);
+			}
+		}
+
+		notifyAll();
+	}
+}
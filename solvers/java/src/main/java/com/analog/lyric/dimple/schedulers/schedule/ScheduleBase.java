@@ -51,4 +51,14 @@ public abstract class ScheduleBase implements ISchedule
 	{
 		return null;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The default implementation does nothing.
+	 */
+	@Override
+	public void reset()
+	{
+	}
 }
@@ -0,0 +1,243 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.scheduleEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.core.Node;
+import com.analog.lyric.dimple.model.core.Port;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.math.XoroshiroRandom;
+
+/**
+ * A schedule entry that updates a set of nodes whose updates do not interact, such as
+ * the variables of one color class of a graph coloring in the Gibbs solver, by splitting
+ * them into contiguous slices that are updated concurrently.
+ * <p>
+ * Each slice is updated using its own random stream, split from the calling thread's
+ * generator, so the result depends only on that generator and the number of slices, not
+ * on how the slices are scheduled on threads. If the calling thread has itself been given
+ * its own random stream (for instance, it is running one of several concurrent Gibbs
+ * chains), the slices are updated in turn on the calling thread.
+ *
+ * @since 0.05
+ */
+public class ParallelNodesScheduleEntry implements IScheduleEntry
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Smallest number of nodes worth updating on a separate thread.
+	 */
+	public static final int MIN_NODES_PER_SLICE = 32;
+
+	private final INode[] _nodes;
+	private final int _numSlices;
+	private final int _minNodesPerSlice;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * @param nodes are the nodes to update. Updating any one of them must not read or modify state
+	 * modified by updating any of the others.
+	 * @param maxSlices is the maximum number of slices to update concurrently.
+	 */
+	public ParallelNodesScheduleEntry(INode[] nodes, int maxSlices)
+	{
+		this(nodes, maxSlices, MIN_NODES_PER_SLICE);
+	}
+
+	/**
+	 * @param nodes are the nodes to update. Updating any one of them must not read or modify state
+	 * modified by updating any of the others.
+	 * @param maxSlices is the maximum number of slices to update concurrently.
+	 * @param minNodesPerSlice is the smallest number of nodes worth updating on a separate thread, which
+	 * may be less than {@link #MIN_NODES_PER_SLICE} for nodes whose updates are expensive.
+	 */
+	public ParallelNodesScheduleEntry(INode[] nodes, int maxSlices, int minNodesPerSlice)
+	{
+		_nodes = nodes.clone();
+		_minNodesPerSlice = Math.max(1, minNodesPerSlice);
+		_numSlices = Math.max(1, Math.min(maxSlices, nodes.length / _minNodesPerSlice));
+	}
+
+	/*-----------------------
+	 * IScheduleEntry methods
+	 */
+
+	@Override
+	public void update()
+	{
+		final int numSlices = _numSlices;
+		if (numSlices == 1)
+		{
+			updateSlice(0, _nodes.length);
+			return;
+		}
+
+		final XoroshiroRandom rand = SolverRandomGenerator.getRand();
+		List<Slice> slices = new ArrayList<Slice>(numSlices);
+		for (int i = 0; i < numSlices; ++i)
+		{
+			slices.add(new Slice(this, sliceStart(i), sliceStart(i + 1), rand.split()));
+		}
+
+		if (SolverRandomGenerator.hasThreadRandom())
+		{
+			for (Slice slice : slices)
+				slice.call();
+			return;
+		}
+
+		try
+		{
+			List<Future<Object>> results = ThreadPool.getThreadPool().invokeAll(slices);
+			for (Future<Object> result : results)
+				result.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new DimpleException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			else if (cause instanceof Error)
+				throw (Error)cause;
+			throw new DimpleException(e);
+		}
+	}
+
+	@Override
+	public IScheduleEntry copy(Map<Node,Node> old2newObjs)
+	{
+		return copy(old2newObjs, false);
+	}
+
+	@Override
+	public IScheduleEntry copyToRoot(Map<Node,Node> old2newObjs)
+	{
+		return copy(old2newObjs, true);
+	}
+
+	public IScheduleEntry copy(Map<Node,Node> old2newObjs, boolean copyToRoot)
+	{
+		ArrayList<INode> newNodes = new ArrayList<INode>(_nodes.length);
+		for (INode node : _nodes)
+		{
+			IScheduleEntry entry = new NodeScheduleEntry(node).copy(old2newObjs, copyToRoot);
+			if (entry != null)
+				newNodes.add(((NodeScheduleEntry)entry).getNode());
+		}
+		return new ParallelNodesScheduleEntry(newNodes.toArray(new INode[newNodes.size()]), _numSlices, _minNodesPerSlice);
+	}
+
+	@Override
+	public Iterable<Port> getPorts()
+	{
+		ArrayList<Port> ports = new ArrayList<Port>();
+		for (INode node : _nodes)
+			for (int index = 0, end = node.getSiblingCount(); index < end; index++)
+				ports.add(new Port(node,index));
+		return ports;
+	}
+
+	/*---------------
+	 * Local methods
+	 */
+
+	public INode[] getNodes()
+	{
+		return _nodes.clone();
+	}
+
+	public int getNodeCount()
+	{
+		return _nodes.length;
+	}
+
+	public int getNumSlices()
+	{
+		return _numSlices;
+	}
+
+	private int sliceStart(int slice)
+	{
+		return (int)((long)_nodes.length * slice / _numSlices);
+	}
+
+	/**
+	 * Updates a single node. The default implementation invokes {@link INode#update()}, but this
+	 * can be overridden to run some other node operation with the same independence requirements.
+	 */
+	protected void updateNode(INode node)
+	{
+		node.update();
+	}
+
+	private void updateSlice(int start, int end)
+	{
+		final INode[] nodes = _nodes;
+		for (int i = start; i < end; ++i)
+			updateNode(nodes[i]);
+	}
+
+	private static final class Slice implements Callable<Object>
+	{
+		private final ParallelNodesScheduleEntry _entry;
+		private final int _start;
+		private final int _end;
+		private final XoroshiroRandom _rand;
+
+		private Slice(ParallelNodesScheduleEntry entry, int start, int end, XoroshiroRandom rand)
+		{
+			_entry = entry;
+			_start = start;
+			_end = end;
+			_rand = rand;
+		}
+
+		@Override
+		public Object call()
+		{
+			final XoroshiroRandom previous = SolverRandomGenerator.setThreadRandom(_rand);
+			try
+			{
+				_entry.updateSlice(_start, _end);
+			}
+			finally
+			{
+				SolverRandomGenerator.setThreadRandom(previous);
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,475 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.IDistanceFactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.domains.DoubleRangeDomain;
+import com.analog.lyric.dimple.model.domains.IntRangeDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+
+/**
+ * Computes the messages of a factor whose function is an {@link IDistanceFactorFunction}
+ * in time linear in the size of the variable domain.
+ * <p>
+ * Because the factor energy depends only on the distance between the element indices of
+ * its two variables, the outgoing message for either port is a convolution of the incoming
+ * message on the other port with the factor, which can be computed without iterating over
+ * all pairs of elements:
+ * <ul>
+ * <li>{@link #minConvolve} computes the min-sum message using the distance transforms of
+ * Felzenszwalb and Huttenlocher for all of the supported powers.
+ * <li>{@link #convolve} computes the sum-product message for the Potts and linear functions
+ * (see {@link #canConvolve()}) using running sums of the exponentially weighted inputs.
+ * </ul>
+ *
+ * @since 0.05
+ */
+@NotThreadSafe
+public final class DistanceTransform
+{
+	/*-------
+	 * State
+	 */
+
+	private final Factor _factor;
+	private final FactorFunction _function;
+	
+	/*
+	 * The factor's table, once it has been created, and its modification count when it was first seen.
+	 * The table is built from the function, but its weights may be changed, e.g. by parameter learning,
+	 * after which the messages must be computed from the table instead.
+	 */
+	private IFactorTable _table;
+	private int _tableModificationCount;
+	private boolean _tableMatches;
+	
+	private final int _size;
+	private final int _power;
+
+	/**
+	 * Multiplier of distance measured in element indices.
+	 */
+	private final double _scale;
+	private final double _truncation;
+
+	/*
+	 * Scratch space, allocated when first needed.
+	 */
+
+	private int[] _envelopeLocations;
+	private double[] _envelopeBoundaries;
+	private double[] _powers;
+	private double[] _sums;
+	private double[] _outsideSums;
+
+	/*--------------
+	 * Construction
+	 */
+
+	private DistanceTransform(Factor factor, int size, int power, double scale, double truncation)
+	{
+		_factor = factor;
+		_function = factor.getFactorFunction();
+		_size = size;
+		_power = power;
+		_scale = scale;
+		_truncation = truncation;
+	}
+
+	/**
+	 * Returns a transform for computing the messages of {@code factor} or null if the factor
+	 * does not have this form.
+	 * <p>
+	 * This requires that the factor be undirected, that its function be an {@link IDistanceFactorFunction}
+	 * without any constant arguments, and that the factor connect two variables with the same discrete
+	 * domain. Unless the function is a Potts function, the domain must also be an evenly
+	 * spaced {@link IntRangeDomain} or {@link DoubleRangeDomain}.
+	 */
+	public static DistanceTransform forFactor(Factor factor)
+	{
+		final FactorFunction function = factor.getFactorFunction();
+		if (function.hasConstants() || factor.getSiblingCount() != 2 || factor.isDirected())
+			return null;
+
+		final FactorFunction contained = function.getContainedFactorFunction();
+		if (!(contained instanceof IDistanceFactorFunction))
+			return null;
+
+		final Domain domain = factor.getSibling(0).getDomain();
+		if (!(domain instanceof DiscreteDomain) || !domain.equals(factor.getSibling(1).getDomain()))
+			return null;
+
+		final IDistanceFactorFunction distanceFunction = (IDistanceFactorFunction)contained;
+		final int power = distanceFunction.getDistancePower();
+		double scale = distanceFunction.getDistanceScale();
+		if (power > 0)
+		{
+			final double interval;
+			if (domain instanceof IntRangeDomain)
+				interval = ((IntRangeDomain)domain).getInterval();
+			else if (domain instanceof DoubleRangeDomain)
+				interval = ((DoubleRangeDomain)domain).getInterval();
+			else
+				return null;
+			scale *= power == 1 ? interval : interval * interval;
+		}
+
+		return new DistanceTransform(factor, ((DiscreteDomain)domain).size(), power, scale, distanceFunction.getTruncation());
+	}
+
+	/*---------------------------
+	 * DistanceTransform methods
+	 */
+
+	/**
+	 * True if the factor still has the same function, is still undirected and its table, if it has one,
+	 * still holds the values of the function, so that its messages may be computed using this transform.
+	 * Directed factors are excluded because their tables are normalized separately for each value
+	 * of the inputs.
+	 * <p>
+	 * The first time the table is seen, its values are compared with the function, and after that it is
+	 * assumed to match for as long as its {@linkplain IFactorTable#getModificationCount() modification count}
+	 * does not change.
+	 */
+	public boolean isCurrent()
+	{
+		if (_factor.getFactorFunction() != _function || _factor.isDirected())
+			return false;
+
+		IFactorTable table = _table;
+		if (table == null)
+		{
+			// Nothing can have changed the table before it was created.
+			if (!_factor.hasFactorTable())
+				return true;
+			table = _table = _factor.getFactorTable();
+			_tableModificationCount = table.getModificationCount();
+			_tableMatches = matches(table);
+		}
+
+		return _tableMatches && table.getModificationCount() == _tableModificationCount;
+	}
+	
+	/**
+	 * True if {@link #convolve} is supported, which is the case for all but quadratic functions.
+	 */
+	public boolean canConvolve()
+	{
+		return _power < 2;
+	}
+
+	/**
+	 * Computes {@code out[x] = min over y of in[y] + energy(x,y)}.
+	 * <p>
+	 * The input may contain infinite values.
+	 */
+	public void minConvolve(double[] in, double[] out)
+	{
+		final int size = _size;
+
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < size; ++i)
+			min = Math.min(min, in[i]);
+
+		double truncation = _truncation;
+		switch (_power)
+		{
+		case 0:
+			System.arraycopy(in, 0, out, 0, size);
+			truncation = Math.min(_scale, truncation);
+			break;
+
+		case 1:
+		{
+			final double scale = _scale;
+			out[0] = in[0];
+			for (int i = 1; i < size; ++i)
+				out[i] = Math.min(in[i], out[i - 1] + scale);
+			for (int i = size - 1; --i >= 0;)
+				out[i] = Math.min(out[i], out[i + 1] + scale);
+			break;
+		}
+
+		default:
+			minConvolveQuadratic(in, out, min);
+			break;
+		}
+
+		final double truncated = min + truncation;
+		for (int i = 0; i < size; ++i)
+			if (out[i] > truncated)
+				out[i] = truncated;
+	}
+
+	/**
+	 * Computes {@code out[x] = sum over y of in[y] * exp(-energy(x,y))}.
+	 * <p>
+	 * The input values must be non-negative.
+	 *
+	 * @throws DimpleException if not {@link #canConvolve()}.
+	 */
+	public void convolve(double[] in, double[] out)
+	{
+		final int size = _size;
+
+		switch (_power)
+		{
+		case 0:
+		{
+			final double offWeight = Math.exp(-Math.min(_scale, _truncation));
+			double sum = 0;
+			for (int i = 0; i < size; ++i)
+				sum += in[i];
+			final double offSum = sum * offWeight, onWeight = 1 - offWeight;
+			for (int i = 0; i < size; ++i)
+				out[i] = offSum + onWeight * in[i];
+			break;
+		}
+
+		case 1:
+			convolveLinear(in, out);
+			break;
+
+		default:
+			throw DimpleException.unsupportedMethod(getClass(), "convolve", "not supported for quadratic distance");
+		}
+	}
+
+	/**
+	 * The number of elements in the variable domains.
+	 */
+	public int size()
+	{
+		return _size;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/*
+	 * The energy for elements with indices i and j.
+	 */
+	private double energy(int i, int j)
+	{
+		final int distance = Math.abs(i - j);
+		final double energy;
+		switch (_power)
+		{
+		case 0:
+			energy = distance == 0 ? 0 : _scale;
+			break;
+		case 1:
+			energy = _scale * distance;
+			break;
+		default:
+			energy = _scale * distance * distance;
+			break;
+		}
+		return Math.min(energy, _truncation);
+	}
+
+	/*
+	 * True if every entry of the table has the energy of the function, up to the constant offset
+	 * that normalizing the table would add.
+	 */
+	private boolean matches(IFactorTable table)
+	{
+		final int size = _size;
+		if (table.sparseSize() != size * size)
+			return false;
+
+		final int[] indices = new int[2];
+		double offset = Double.NaN;
+		for (int si = 0, end = table.sparseSize(); si < end; ++si)
+		{
+			table.sparseIndexToIndices(si, indices);
+			final double expected = energy(indices[0], indices[1]);
+			final double difference = table.getEnergyForSparseIndex(si) - expected;
+			if (si == 0)
+				offset = difference;
+			else if (!(Math.abs(difference - offset) <= 1e-9 * (1 + Math.abs(expected))))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Lower envelope of the parabolas rooted at each finite input value.
+	 */
+	private void minConvolveQuadratic(double[] in, double[] out, double min)
+	{
+		final int size = _size;
+		final double scale = _scale;
+
+		if (scale == 0 || min == Double.POSITIVE_INFINITY)
+		{
+			Arrays.fill(out, 0, size, min);
+			return;
+		}
+
+		int[] v = _envelopeLocations;
+		double[] z = _envelopeBoundaries;
+		if (v == null)
+		{
+			v = _envelopeLocations = new int[size];
+			z = _envelopeBoundaries = new double[size + 1];
+		}
+
+		int k = -1;
+		for (int q = 0; q < size; ++q)
+		{
+			final double fq = in[q];
+			if (fq == Double.POSITIVE_INFINITY)
+				continue;
+
+			final double hq = fq + scale * q * q;
+			double s = Double.NEGATIVE_INFINITY;
+			while (k >= 0)
+			{
+				final int p = v[k];
+				s = (hq - (in[p] + scale * p * p)) / (2 * scale * (q - p));
+				if (s > z[k])
+					break;
+				--k;
+			}
+			if (k < 0)
+				s = Double.NEGATIVE_INFINITY;
+			++k;
+			v[k] = q;
+			z[k] = s;
+			z[k + 1] = Double.POSITIVE_INFINITY;
+		}
+
+		for (int x = 0, j = 0; x < size; ++x)
+		{
+			while (z[j + 1] < x)
+				++j;
+			final int p = v[j];
+			final double d = x - p;
+			out[x] = in[p] + scale * d * d;
+		}
+	}
+
+	/*
+	 * With weights w(d) = max(r^|d|, t), where r = exp(-scale) and t = exp(-truncation), the weight
+	 * is r^|d| for distances less than some window size K and t beyond that. The sum is computed as
+	 * the windowed exponential sums from each side plus t times the sum of the inputs outside the window.
+	 *
+	 * The exponential sums are computed by splitting the elements into blocks of size K, so that
+	 * each window lies within two adjacent blocks, and combining the running sums from the start of
+	 * the window's last block with the running sums to the end of its first block. Unlike a sliding
+	 * window, this never subtracts values from the sum, which would lose precision when the inputs
+	 * span a wide range.
+	 */
+	private void convolveLinear(double[] in, double[] out)
+	{
+		final int size = _size;
+		final double scale = _scale, truncation = _truncation;
+
+		int window = size;
+		if (scale > 0 && truncation < scale * size)
+			window = Math.max(1, (int)Math.ceil(truncation / scale));
+
+		double[] powers = _powers;
+		double[] sums = _sums;
+		double[] outsideSums = _outsideSums;
+		if (powers == null)
+		{
+			powers = _powers = new double[size + 1];
+			sums = _sums = new double[size];
+			outsideSums = _outsideSums = new double[size + 1];
+		}
+		final double ratio = Math.exp(-scale);
+		powers[0] = 1;
+		for (int i = 1; i <= window; ++i)
+			powers[i] = powers[i - 1] * ratio;
+
+		// Forward: sum over y in [x-K+1, x] of r^(x-y) in[y]
+		windowedSums(in, out, sums, powers, window, ratio, false);
+		// Backward: sum over y in [x, x+K-1] of r^(y-x) in[y], minus the shared in[x] term
+		windowedSums(in, sums, outsideSums, powers, window, ratio, true);
+		for (int x = 0; x < size; ++x)
+			out[x] += sums[x] - in[x];
+
+		if (window < size)
+		{
+			// outsideSums[i] = sum of in[y] for y < i
+			outsideSums[0] = 0;
+			for (int i = 0; i < size; ++i)
+				outsideSums[i + 1] = outsideSums[i] + in[i];
+			final double total = outsideSums[size];
+			final double weight = Math.exp(-truncation);
+			for (int x = 0; x < size; ++x)
+			{
+				double outside = 0;
+				if (x - window + 1 > 0)
+					outside += outsideSums[x - window + 1];
+				if (x + window < size)
+					outside += total - outsideSums[x + window];
+				out[x] += weight * outside;
+			}
+		}
+	}
+
+	/*
+	 * Computes the sum over the window of size K ending at each element (or starting at each
+	 * element if reverse), weighting each input by r raised to its distance from the element.
+	 */
+	private void windowedSums(double[] in, double[] out, double[] scratch, double[] powers, int window, double ratio,
+		boolean reverse)
+	{
+		final int size = _size;
+		final int last = size - 1;
+
+		// scratch[i] = sum over y from i to the end of its block of r^(end-y) in[y]
+		for (int blockStart = 0; blockStart < size; blockStart += window)
+		{
+			final int blockEnd = Math.min(blockStart + window, size) - 1;
+			double sum = 0;
+			for (int i = blockEnd; i >= blockStart; --i)
+			{
+				sum += powers[blockEnd - i] * in[reverse ? last - i : i];
+				scratch[i] = sum;
+			}
+		}
+
+		for (int blockStart = 0; blockStart < size; blockStart += window)
+		{
+			final int blockEnd = Math.min(blockStart + window, size) - 1;
+			double sum = 0;
+			for (int x = blockStart; x <= blockEnd; ++x)
+			{
+				sum = sum * ratio + in[reverse ? last - x : x];
+				double value = sum;
+				final int windowStart = x - window + 1;
+				if (windowStart < blockStart && blockStart > 0)
+					value += powers[x - blockStart + 1] * scratch[windowStart];
+				out[reverse ? last - x : x] = value;
+			}
+		}
+	}
+}
@@ -62,6 +62,11 @@ public abstract class ParameterEstimator
 		_r = r;
 	}
 	
+	public Random getRandom()
+	{
+		return _r;
+	}
+	
 	public HashMap<IFactorTable,ArrayList<Factor>> getTable2Factors()
 	{
 		return _table2factors;
@@ -113,6 +113,12 @@ public class SBlastFromThePast extends AbstractOptionHolder implements ISolverBl
 		throw new DimpleException("Not implemented");
 	}
 
+	@Override
+	public boolean isConcurrentlyEvaluable()
+	{
+		return _factor.getFactorFunction().isEvaluationThreadSafe();
+	}
+
 	@Override
 	public void update()
 	{
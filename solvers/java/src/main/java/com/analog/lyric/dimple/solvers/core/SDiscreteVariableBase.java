@@ -57,6 +57,21 @@ public abstract class SDiscreteVariableBase extends SVariableBase implements IDi
 	@Override
 	public abstract double[] getBelief();
 	
+	/**
+	 * Returns the belief, which may be written into {@code belief} if it is non-null and
+	 * has the same length as the variable's domain.
+	 * <p>
+	 * The default implementation ignores {@code belief} and returns {@link #getBelief()}.
+	 * Solvers can override this to avoid allocating a new array on frequent calls, such as
+	 * the convergence checks made by {@link SFactorGraphBase#iterate(int)}.
+	 * 
+	 * @since 0.05
+	 */
+	public double[] getBelief(double[] belief)
+	{
+		return getBelief();
+	}
+	
 	@Override
 	public Object getValue()
 	{
@@ -149,5 +149,18 @@ public abstract class SFactorBase extends SNode implements ISolverFactor
 		
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Default implementation returns true if the factor function
+	 * {@linkplain com.analog.lyric.dimple.factorfunctions.core.FactorFunction#isEvaluationThreadSafe()
+	 * is thread safe}.
+	 */
+	@Override
+	public boolean isConcurrentlyEvaluable()
+	{
+		return _factor.getFactorFunction().isEvaluationThreadSafe();
+	}
+
 
 }
@@ -34,6 +34,7 @@ import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.math.XoroshiroRandom;
 
 public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGraph
 {
@@ -41,6 +42,19 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	protected int _numIterations = 1;		// Default number of iterations unless otherwise specified
 	private MultiThreadingManager _multithreader; // = new MultiThreadingManager();
 	private boolean _useMultithreading = false;
+	
+	// Convergence monitoring, disabled when tolerance is not positive
+	private double _convergenceTolerance = 0;
+	private int _convergenceCheckInterval = 1;
+	private int _numIterationsRun = 0;
+	private boolean _converged = false;
+	private double [][] _previousBeliefs = new double[0][];
+	private double [][] _currentBeliefs = new double[0][];
+	
+	// Random number generator used while solving, created on first use unless seeded explicitly
+	private XoroshiroRandom _rand = null;
+	private boolean _seeded = false;
+	private int _randGeneration;
 
 	public SFactorGraphBase(FactorGraph fg)
 	{
@@ -168,6 +182,61 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 
 	@Override
 	public void iterate(int numIters)
+	{
+		final boolean randomStarted = startRandom();
+		try
+		{
+			iterateUntilConverged(numIters);
+		}
+		finally
+		{
+			finishRandom(randomStarted);
+		}
+	}
+	
+	private void iterateUntilConverged(int numIters)
+	{
+		_numIterationsRun = 0;
+		_converged = false;
+		
+		final boolean singleThread = _multithreader == null || ! _useMultithreading;
+		if (singleThread)
+			startIterations();
+		try
+		{
+			if (_convergenceTolerance <= 0)
+			{
+				iterateUnchecked(numIters);
+				return;
+			}
+
+			// Stop early once no belief has changed by more than the tolerance since the last check
+			updateBeliefChange();
+			while (_numIterationsRun < numIters)
+			{
+				int n = Math.min(_convergenceCheckInterval, numIters - _numIterationsRun);
+				if (!iterateUnchecked(n))
+					return;
+
+				if (updateBeliefChange() <= _convergenceTolerance)
+				{
+					_converged = true;
+					return;
+				}
+			}
+		}
+		finally
+		{
+			if (singleThread)
+				finishIterations();
+		}
+	}
+	
+	/*
+	 * Runs numIters iterations, adding them to _numIterationsRun. Returns false if
+	 * interrupted before completing.
+	 */
+	private boolean iterateUnchecked(int numIters)
 	{
 		if (_multithreader == null || ! _useMultithreading)
 		{
@@ -175,17 +244,194 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 			for (int iterNum = 0; iterNum < numIters; iterNum++)
 			{
 				update();
-				
+				++_numIterationsRun;
+
 				// Allow interruption (if the solver is run as a thread); currently interruption is allowed only between iterations, not within a single iteration
 				if (Thread.interrupted())
-					return;
+					return false;
 			}
 		}
 		else
 		{
 			// *** Multiple threads
 			_multithreader.iterate(numIters);
+			_numIterationsRun += numIters;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Called before a run of consecutive single-threaded calls to {@link #update()} from
+	 * {@link #iterate(int)}, including those separated by convergence checks. Subclasses may
+	 * override this to move the solver state into a more efficient representation for the
+	 * duration of the run, in which case they must also override {@link #updateBeliefChange()}.
+	 * <p>
+	 * The default implementation does nothing.
+	 * 
+	 * @since 0.05
+	 */
+	protected void startIterations()
+	{
+	}
+	
+	/**
+	 * Called after the run of calls to {@link #update()} started by {@link #startIterations()},
+	 * including when the run is interrupted or fails. Beliefs must be valid after this returns.
+	 * <p>
+	 * The default implementation does nothing.
+	 * 
+	 * @since 0.05
+	 */
+	protected void finishIterations()
+	{
+	}
+	
+	/**
+	 * Returns the largest absolute change in any element of a variable belief since
+	 * the previous call and saves the current beliefs. Beliefs that are not represented as
+	 * a double array cannot be compared, so any such variable makes the change infinite.
+	 * <p>
+	 * Discrete variables compute their beliefs through {@link SDiscreteVariableBase#getBelief(double[])}
+	 * into a buffer that is swapped with the saved belief, so solvers that support it do not allocate.
+	 * <p>
+	 * Called by {@link #iterate(int)} to check for convergence, between the calls to
+	 * {@link #startIterations()} and {@link #finishIterations()}.
+	 * 
+	 * @since 0.05
+	 */
+	protected double updateBeliefChange()
+	{
+		final VariableList variables = _factorGraph.getVariablesFlat();
+		final int size = variables.size();
+		if (_previousBeliefs.length != size)
+		{
+			_previousBeliefs = new double[size][];
+			_currentBeliefs = new double[size][];
 		}
+		
+		double maxChange = 0;
+		for (int i = 0; i < size; ++i)
+		{
+			final ISolverVariable solver = variables.getByIndex(i).getSolver();
+			final double [] buffer = _currentBeliefs[i];
+			final Object belief =
+				solver instanceof SDiscreteVariableBase ? ((SDiscreteVariableBase)solver).getBelief(buffer) : solver.getBelief();
+			final double [] previous = _previousBeliefs[i];
+			
+			if (!(belief instanceof double[]))
+			{
+				maxChange = Double.POSITIVE_INFINITY;
+				_previousBeliefs[i] = null;
+				_currentBeliefs[i] = null;
+				continue;
+			}
+			
+			final double [] values = (double[])belief;
+			if (previous == null || previous.length != values.length)
+			{
+				maxChange = Double.POSITIVE_INFINITY;
+				_previousBeliefs[i] = values.clone();
+				_currentBeliefs[i] = new double[values.length];
+				continue;
+			}
+			
+			for (int j = 0; j < values.length; ++j)
+			{
+				double change = Math.abs(values[j] - previous[j]);
+				if (!(change <= maxChange))
+					maxChange = Double.isNaN(change) ? Double.POSITIVE_INFINITY : change;
+			}
+			
+			if (values == buffer)
+			{
+				// The belief was written into our buffer, so it becomes the saved belief.
+				_previousBeliefs[i] = values;
+				_currentBeliefs[i] = previous;
+			}
+			else
+			{
+				System.arraycopy(values, 0, previous, 0, values.length);
+			}
+		}
+		
+		return maxChange;
+	}
+	
+	/**
+	 * Sets the tolerance used to stop {@link #iterate(int)} early.
+	 * <p>
+	 * When positive, variable beliefs are compared every {@link #getConvergenceCheckInterval()}
+	 * iterations, and iteration stops as soon as no element of any belief has changed by more
+	 * than the tolerance since the previous comparison. When zero, which is the default,
+	 * exactly the requested number of iterations is always run.
+	 * <p>
+	 * Only beliefs represented as a {@code double[]} can be compared, so graphs containing
+	 * variables with other belief representations will never stop early.
+	 * 
+	 * @see #getNumIterationsRun()
+	 * @since 0.05
+	 */
+	public void setConvergenceTolerance(double tolerance)
+	{
+		if (tolerance < 0 || Double.isNaN(tolerance))
+			throw new DimpleException("Convergence tolerance must be non-negative");
+		_convergenceTolerance = tolerance;
+	}
+	
+	/**
+	 * @see #setConvergenceTolerance(double)
+	 * @since 0.05
+	 */
+	public double getConvergenceTolerance()
+	{
+		return _convergenceTolerance;
+	}
+	
+	/**
+	 * Sets the number of iterations between convergence checks. Checking less often reduces the
+	 * cost of computing the beliefs but may run up to {@code interval - 1} unnecessary iterations.
+	 * Default is one.
+	 * 
+	 * @see #setConvergenceTolerance(double)
+	 * @since 0.05
+	 */
+	public void setConvergenceCheckInterval(int interval)
+	{
+		if (interval < 1)
+			throw new DimpleException("Convergence check interval must be at least one");
+		_convergenceCheckInterval = interval;
+	}
+	
+	/**
+	 * @see #setConvergenceCheckInterval(int)
+	 * @since 0.05
+	 */
+	public int getConvergenceCheckInterval()
+	{
+		return _convergenceCheckInterval;
+	}
+	
+	/**
+	 * The number of iterations actually run by the most recent call to {@link #iterate(int)},
+	 * which will be less than requested if it converged or was interrupted.
+	 * 
+	 * @since 0.05
+	 */
+	public int getNumIterationsRun()
+	{
+		return _numIterationsRun;
+	}
+	
+	/**
+	 * True if the most recent call to {@link #iterate(int)} stopped because the beliefs converged
+	 * to within the {@linkplain #getConvergenceTolerance() convergence tolerance}.
+	 * 
+	 * @since 0.05
+	 */
+	public boolean hasConverged()
+	{
+		return _converged;
 	}
 	
 	@Override
@@ -198,32 +444,115 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	@Override
 	public void solve()
 	{
-			
-		_factorGraph.initialize();
-		
-		solveOneStep();
-		continueSolve();
+		final boolean randomStarted = startRandom();
+		try
+		{
+			_factorGraph.initialize();
 
+			solveOneStep();
+			continueSolve();
+		}
+		finally
+		{
+			finishRandom(randomStarted);
+		}
 	}
 
 	@Override
 	public void continueSolve()
 	{
-		
-		int i = 0;
-		int maxSteps = _factorGraph.getNumSteps();
-		boolean infinite = _factorGraph.getNumStepsInfinite();
-		
-		while (getModel().hasNext())
+		final boolean randomStarted = startRandom();
+		try
 		{
-			if (!infinite && i >= maxSteps)
-				break;
-			
-			getModel().advance();
-			solveOneStep();
-			
-			i++;
+			int i = 0;
+			int maxSteps = _factorGraph.getNumSteps();
+			boolean infinite = _factorGraph.getNumStepsInfinite();
+
+			while (getModel().hasNext())
+			{
+				if (!infinite && i >= maxSteps)
+					break;
+
+				getModel().advance();
+				solveOneStep();
+
+				i++;
+			}
+		}
+		finally
+		{
+			finishRandom(randomStarted);
+		}
+	}
+	
+	/***********************************************
+	 * 
+	 * Random numbers
+	 * 
+	 ***********************************************/
+
+	/**
+	 * Seeds the random number generator used when solving this graph, which makes runs of the
+	 * solver repeatable. The generator is the first stream derived from {@code seed}, that is
+	 * {@code XoroshiroRandom.forStream(seed, 0)}.
+	 * 
+	 * @see #getRandomGenerator()
+	 * @since 0.05
+	 */
+	public void setSeed(long seed)
+	{
+		_rand = XoroshiroRandom.forStream(seed, 0);
+		_seeded = true;
+	}
+	
+	/**
+	 * Returns the random number generator used by the thread that solves this graph, which
+	 * {@link SolverRandomGenerator#getRand()} returns while this graph is being solved. Streams for
+	 * work that is done on other threads, such as Gibbs chains or multithreading workers, are derived
+	 * from it.
+	 * <p>
+	 * Unless a seed has been set by {@link #setSeed(long)}, the generator is derived from the root seed
+	 * set by {@link SolverRandomGenerator#setSeed(long)} and the graph on first use, and again after
+	 * the root seed changes, so it does not depend on which thread solves the graph.
+	 * 
+	 * @since 0.05
+	 */
+	public XoroshiroRandom getRandomGenerator()
+	{
+		if (!_seeded && (_rand == null || _randGeneration != SolverRandomGenerator.getGeneration()))
+		{
+			_randGeneration = SolverRandomGenerator.getGeneration();
+			_rand = SolverRandomGenerator.forGraph(getModelObject());
 		}
+		return _rand;
+	}
+	
+	/**
+	 * Installs {@link #getRandomGenerator()} as the calling thread's generator, unless the thread already
+	 * has one installed, as it does while another graph that contains or drives this one is solved, or
+	 * within a Gibbs chain. Must be matched by a call to {@link #finishRandom(boolean)} in a finally block.
+	 * 
+	 * @return true if the generator was installed.
+	 * @since 0.05
+	 */
+	protected final boolean startRandom()
+	{
+		if (SolverRandomGenerator.hasThreadRandom())
+			return false;
+		SolverRandomGenerator.setThreadRandom(getRandomGenerator());
+		return true;
+	}
+	
+	/**
+	 * Uninstalls this graph's generator if {@code started}, the value returned by the matching call to
+	 * {@link #startRandom()}.
+	 * 
+	 * @since 0.05
+	 */
+	protected final void finishRandom(boolean started)
+	{
+		if (started)
+			SolverRandomGenerator.setThreadRandom(null);
 	}
 
 
@@ -451,8 +780,10 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	{
 		if (_multithreader == null)
 			throw new DimpleException("Multithreading is not currently supported by this solver.");
-		else
-			_useMultithreading = use;
+		
+		if (!use && _useMultithreading)
+			_multithreader.shutdown();
+		_useMultithreading = use;
 	}
 	
 	@Override
@@ -485,21 +816,33 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	public void initialize()
 	{
 		FactorGraph fg = _factorGraph;
-		for (int i = 0, end = fg.getOwnedVariableCount(); i < end; ++i)
-		{
-			fg.getOwnedVariable(i).getSolver().initialize();
-		}
-		if (!fg.hasParentGraph())
+		final boolean randomStarted = startRandom();
+		try
 		{
-			for (int i = 0, end = fg.getBoundaryVariableCount(); i <end; ++i)
+			for (int i = 0, end = fg.getOwnedVariableCount(); i < end; ++i)
+			{
+				fg.getOwnedVariable(i).getSolver().initialize();
+			}
+			if (!fg.hasParentGraph())
 			{
-				fg.getBoundaryVariable(i).getSolver().initialize();
+				for (int i = 0, end = fg.getBoundaryVariableCount(); i <end; ++i)
+				{
+					fg.getBoundaryVariable(i).getSolver().initialize();
+				}
 			}
+			for (Factor f : fg.getNonGraphFactorsTop())
+				f.getSolver().initialize();
+			for (FactorGraph g : fg.getNestedGraphs())
+				g.getSolver().initialize();
 		}
-		for (Factor f : fg.getNonGraphFactorsTop())
-			f.getSolver().initialize();
-		for (FactorGraph g : fg.getNestedGraphs())
-			g.getSolver().initialize();
+		finally
+		{
+			finishRandom(randomStarted);
+		}
+		
+		// Dynamic schedules that track message changes must start over
+		if (!fg.hasParentGraph() && fg.isUpToDateSchedulePresent())
+			fg.getSchedule().reset();
 	}
 	
 	/***********************************************
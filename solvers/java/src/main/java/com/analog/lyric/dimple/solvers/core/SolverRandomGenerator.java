@@ -16,32 +16,130 @@
 
 package com.analog.lyric.dimple.solvers.core;
 
-import org.apache.commons.math3.random.RandomGenerator;
-
-import cern.jet.random.engine.RandomEngine;
-
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.math.XoroshiroRandom;
 
+/**
+ * Provides the random number generators used by the solvers.
+ * <p>
+ * Every thread draws from its own {@link XoroshiroRandom} stream, returned by {@link #getRand()},
+ * so there is no shared generator state. While a solver graph is being solved, the solving thread
+ * uses the graph's own generator (see {@link SFactorGraphBase#getRandomGenerator()}), which unless the
+ * graph has its own seed is derived from the root seed and the graph, so two graphs solved on the same
+ * thread draw from different streams, and a graph draws from the same stream whichever thread solves it. Work that is split across threads, such as
+ * multiple Gibbs chains or multithreading workers, installs a generator for each piece of work, derived
+ * from the graph's generator and the number of the piece, using {@link #setThreadRandom}. Results
+ * therefore depend only on the seeds, not on how the work is scheduled on threads.
+ * <p>
+ * Threads that have no generator installed use a stream derived from the root seed set by
+ * {@link #setSeed(long)} and the thread's id.
+ */
 public class SolverRandomGenerator
 {
-	public static RandomGenerator rand = new org.apache.commons.math3.random.MersenneTwister();
+	/*-------
+	 * State
+	 */
+	
+	private static volatile long _rootSeed = System.nanoTime() ^ System.currentTimeMillis();
 	
-	// Other random number generators not supported by the Apache framework
-	private static RandomEngine randEngine = new cern.jet.random.engine.MersenneTwister(rand.nextInt());
-	public static cern.jet.random.Gamma randGamma = new cern.jet.random.Gamma(1, 1, randEngine);
-	public static cern.jet.random.Beta randBeta = new cern.jet.random.Beta(1, 1, randEngine);
+	/**
+	 * Incremented by {@link #setSeed(long)} to invalidate existing streams derived from the root seed.
+	 */
+	private static volatile int _generation = 0;
+	
+	private static final ThreadLocal<ThreadStream> _threadStream = new ThreadLocal<ThreadStream>();
+	
+	private static final class ThreadStream
+	{
+		private final XoroshiroRandom rand;
+		private final int generation;
+		private final boolean explicit;
+		
+		private ThreadStream(XoroshiroRandom rand, int generation, boolean explicit)
+		{
+			this.rand = rand;
+			this.generation = generation;
+			this.explicit = explicit;
+		}
+	}
 	
+	/*----------------
+	 * Static methods
+	 */
 	
-	public static void setSeed(long seed)
+	/**
+	 * Returns the generator for the calling thread.
+	 * <p>
+	 * The result must not be shared with other threads, but may be cached by the caller for
+	 * the duration of an operation.
+	 */
+	public static XoroshiroRandom getRand()
 	{
-		// Work-around for bug in apache-commons.math-2.2
-		// Bug 723: https://issues.apache.org/jira/browse/MATH-723
-		// Can't just set the seed; must replace the object instead
-		// WARNING: setting the seed creates new objects; which will not be used if reference to original object is cached
-		rand = new org.apache.commons.math3.random.MersenneTwister(seed);
+		final ThreadStream stream = _threadStream.get();
+		if (stream != null && (stream.explicit || stream.generation == _generation))
+			return stream.rand;
 		
-		// WARNING: setting the seed creates new objects; which will not be used if reference to original object is cached
-		randEngine = new cern.jet.random.engine.MersenneTwister((int)seed);
-		randGamma = new cern.jet.random.Gamma(1, 1, randEngine);
-		randBeta = new cern.jet.random.Beta(1, 1, randEngine);
+		final int generation = _generation;
+		final XoroshiroRandom rand = XoroshiroRandom.forStream(_rootSeed, Thread.currentThread().getId());
+		_threadStream.set(new ThreadStream(rand, generation, false));
+		return rand;
+	}
+	
+	/**
+	 * Returns a new generator for the solver graph of {@code graph}, derived from the root seed and the
+	 * graph's {@linkplain FactorGraph#getId() id}, so that it does not depend on the thread that solves it.
+	 */
+	static XoroshiroRandom forGraph(FactorGraph graph)
+	{
+		// Graph streams use negative indices so they never coincide with a thread's stream.
+		return XoroshiroRandom.forStream(_rootSeed, Long.MIN_VALUE | graph.getId());
+	}
+	
+	/**
+	 * Sets the root seed. Threads without an installed generator start over with a stream derived from the
+	 * new seed, and solver graphs that have not been given their own seed with
+	 * {@link SFactorGraphBase#setSeed(long)} derive a new generator the next time they are solved. Does not
+	 * affect generators installed by {@link #setThreadRandom}.
+	 */
+	public static synchronized void setSeed(long seed)
+	{
+		_rootSeed = seed;
+		++_generation;
+	}
+	
+	/**
+	 * Incremented by each call to {@link #setSeed(long)}.
+	 */
+	static int getGeneration()
+	{
+		return _generation;
+	}
+	
+	/**
+	 * Makes {@code rand} the generator returned by {@link #getRand()} on the calling thread until replaced by
+	 * another call to this method. If {@code rand} is null, the thread reverts to using a stream derived from
+	 * the root seed.
+	 * 
+	 * @return the generator previously installed on this thread, or null if none was.
+	 * @since 0.05
+	 */
+	public static XoroshiroRandom setThreadRandom(XoroshiroRandom rand)
+	{
+		final ThreadStream previous = _threadStream.get();
+		if (rand != null)
+			_threadStream.set(new ThreadStream(rand, _generation, true));
+		else
+			_threadStream.remove();
+		return previous != null && previous.explicit ? previous.rand : null;
+	}
+	
+	/**
+	 * True if the calling thread is using a generator installed by {@link #setThreadRandom}.
+	 * @since 0.05
+	 */
+	public static boolean hasThreadRandom()
+	{
+		final ThreadStream stream = _threadStream.get();
+		return stream != null && stream.explicit;
 	}
 }
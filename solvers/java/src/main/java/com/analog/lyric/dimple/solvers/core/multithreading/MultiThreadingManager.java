@@ -22,7 +22,9 @@ import java.util.concurrent.ExecutorService;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PersistentPhaseMultithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PhaseMultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.core.multithreading.residualalgorithm.ResidualMultithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.core.multithreading.singlequeuealgorithm.SingleQueueMutlithreadingAlgorithm;
 
 /*
@@ -45,6 +47,8 @@ public class MultiThreadingManager
 		setNumWorkersToDefault();
 		_mode2alg.put(MultithreadingMode.Phase,new PhaseMultithreadingAlgorithm(this));
 		_mode2alg.put(MultithreadingMode.SingleQueue,new SingleQueueMutlithreadingAlgorithm(this));
+		_mode2alg.put(MultithreadingMode.PersistentPhase,new PersistentPhaseMultithreadingAlgorithm(this));
+		_mode2alg.put(MultithreadingMode.Residual,new ResidualMultithreadingAlgorithm(this));
 		_factorGraph = fg;
 	}
 
@@ -74,9 +78,16 @@ public class MultiThreadingManager
 	
 	public void setMode(MultithreadingMode mode)
 	{
+		if (mode != _whichAlg)
+			_mode2alg.get(_whichAlg).shutdown();
 		_whichAlg = mode;
 	}
 	
+	public MultithreadingMode getMode()
+	{
+		return _whichAlg;
+	}
+	
 	public FactorGraph getFactorGraph()
 	{
 		return _factorGraph;
@@ -106,7 +117,19 @@ public class MultiThreadingManager
 	
 	public void iterate(int numIters)
 	{
-		_mode2alg.get(_whichAlg).iterate(numIters);
+		MultithreadingAlgorithm alg = _mode2alg.get(_whichAlg);
+		alg.seedWorkers(_numWorkers);
+		alg.iterate(numIters);
+	}
+	
+	/*
+	 * Releases any worker threads held by the multithreading algorithms.
+	 * They will be recreated as needed on the next call to iterate.
+	 */
+	public void shutdown()
+	{
+		for (MultithreadingAlgorithm alg : _mode2alg.values())
+			alg.shutdown();
 	}
 	
 	/*
@@ -16,6 +16,9 @@
 
 package com.analog.lyric.dimple.solvers.core.multithreading;
 
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.math.XoroshiroRandom;
+
 /*
  * Abstract base class for a multithreading algorithm.
  */
@@ -23,6 +26,9 @@ public abstract class MultithreadingAlgorithm
 {
 	final private MultiThreadingManager _manager;
 	
+	// Random number generators for the workers during the current call to iterate, indexed by worker number
+	private XoroshiroRandom [] _workerRandoms = new XoroshiroRandom[0];
+	
 	public MultithreadingAlgorithm(MultiThreadingManager manager)
 	{
 		_manager = manager;
@@ -34,4 +40,36 @@ public abstract class MultithreadingAlgorithm
 	}
 	
 	public abstract void iterate(int numIters);
+	
+	/*
+	 * Gives each of numWorkers workers a new random number generator for the next call to iterate.
+	 * The generators are derived from the calling thread's generator, which is the solver graph's
+	 * generator while it is being solved, and the worker number, so that the streams do not depend
+	 * on which pool threads happen to run the workers.
+	 */
+	public void seedWorkers(int numWorkers)
+	{
+		final long seed = SolverRandomGenerator.getRand().nextLong();
+		final XoroshiroRandom [] randoms = new XoroshiroRandom[numWorkers];
+		for (int i = 0; i < numWorkers; i++)
+			randoms[i] = XoroshiroRandom.forStream(seed, i);
+		_workerRandoms = randoms;
+	}
+	
+	/*
+	 * Returns the random number generator for worker number which, set by the last call to seedWorkers.
+	 * Workers must install it using SolverRandomGenerator.setThreadRandom while updating nodes.
+	 */
+	protected XoroshiroRandom getWorkerRandom(int which)
+	{
+		return _workerRandoms[which];
+	}
+	
+	/*
+	 * Releases any threads or other resources held by the algorithm between calls
+	 * to iterate. Does nothing by default.
+	 */
+	public void shutdown()
+	{
+	}
 }
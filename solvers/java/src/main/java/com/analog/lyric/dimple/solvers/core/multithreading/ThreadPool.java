@@ -16,8 +16,14 @@
 
 package com.analog.lyric.dimple.solvers.core.multithreading;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -35,6 +41,26 @@ public class ThreadPool
 	private static ExecutorService _service; 
 	private static int _numThreads;
 	
+	// True on the threads of the pool.
+	private static final ThreadLocal<Boolean> _isPoolThread = new ThreadLocal<Boolean>();
+	
+	private static final ThreadFactory _threadFactory = new ThreadFactory() {
+		private final ThreadFactory _defaultFactory = Executors.defaultThreadFactory();
+		
+		@Override
+		public Thread newThread(final Runnable r)
+		{
+			return _defaultFactory.newThread(new Runnable() {
+				@Override
+				public void run()
+				{
+					_isPoolThread.set(true);
+					r.run();
+				}
+			});
+		}
+	};
+	
 	private ThreadPool()
 	{
 		
@@ -64,7 +90,7 @@ public class ThreadPool
 		_numThreads = numThreads;
 		ThreadPoolExecutor pool = new ThreadPoolExecutor(numThreads,
 				numThreads, 1L, TimeUnit.SECONDS,
-				new LinkedBlockingQueue<Runnable>());
+				new LinkedBlockingQueue<Runnable>(), _threadFactory);
 		pool.allowCoreThreadTimeOut(true);
 		_service = pool;
 	}
@@ -74,6 +100,54 @@ public class ThreadPool
 		return _numThreads;
 	}
 	
+	/**
+	 * Runs {@code tasks} on the thread pool and waits for all of them to finish.
+	 * <p>
+	 * The tasks are instead run one after another on the calling thread if there is only one, or if the
+	 * calling thread belongs to the pool, since a task waiting for other tasks could otherwise leave
+	 * none of the pool's threads free to run them. An exception thrown by a task is rethrown, wrapped
+	 * in a {@link DimpleException} if it is checked.
+	 * 
+	 * @since 0.05
+	 */
+	public static <T> void invokeAll(List<? extends Callable<T>> tasks)
+	{
+		try
+		{
+			if (tasks.size() == 1 || _isPoolThread.get() != null)
+			{
+				for (Callable<T> task : tasks)
+					task.call();
+				return;
+			}
+			
+			List<Future<T>> results = getThreadPool().invokeAll(tasks);
+			for (Future<T> result : results)
+				result.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new DimpleException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			else if (cause instanceof Error)
+				throw (Error)cause;
+			throw new DimpleException(e);
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new DimpleException(e);
+		}
+	}
+	
 	private static void cleanupService()
 	{
 		if (_service != null)
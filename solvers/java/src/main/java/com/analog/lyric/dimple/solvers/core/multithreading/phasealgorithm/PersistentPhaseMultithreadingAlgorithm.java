@@ -0,0 +1,376 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingAlgorithm;
+import com.analog.lyric.math.XoroshiroRandom;
+
+/*
+ * Variant of the phase algorithm that keeps a fixed set of long-lived worker threads
+ * instead of submitting new tasks to the executor for every phase.
+ *
+ * The phases of the dependency graph are divided into contiguous per-worker slices once,
+ * when the graph or the number of workers changes. Each iteration the workers walk
+ * through the phases in lock step, synchronizing on a Phaser between phases, so no
+ * queues or tasks are allocated while iterating. A worker that finishes its own slice
+ * steals remaining entries from the slices of the other workers.
+ *
+ * The calling thread acts as worker zero, so numWorkers - 1 helper threads are created.
+ * Helper threads are daemon threads that stay blocked on the Phaser between calls to
+ * iterate until {@link #shutdown()} is invoked. Helpers only hold a weak reference to the
+ * algorithm while they are waiting, and wake up periodically to check it, so the helpers
+ * of an algorithm whose graph has been dropped without a shutdown exit by themselves.
+ */
+public class PersistentPhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
+{
+	/*-------
+	 * State
+	 */
+
+	// Number of unused cursor slots between the cursors of consecutive workers, so that
+	// different workers' cursors do not share a cache line.
+	private static final int CURSOR_PADDING = 8;
+
+	// How often a waiting helper checks whether the algorithm is still reachable.
+	static final long IDLE_CHECK_MILLIS = 1000;
+
+	private StaticDependencyGraph _plannedGraph;
+	private int _numWorkers;
+
+	// Schedule entries for each phase.
+	private IScheduleEntry [][] _phases = new IScheduleEntry[0][];
+
+	// Slice boundaries: worker w owns entries [_sliceStarts[p][w], _sliceStarts[p][w+1]) of phase p.
+	private int [][] _sliceStarts = new int[0][];
+
+	// Claim counters indexed by cursorIndex(worker, phase). A counter only ever increases: during
+	// the iteration with sequence number e, claims for a slice of length n are numbered
+	// [e*n, (e+1)*n), so no counter has to be reset between iterations.
+	private AtomicLongArray _cursors;
+
+	// Sequence number of the next iteration. Only modified by the calling thread while the
+	// helpers are waiting for the next job.
+	private long _epoch;
+
+	// Number of iterations in the current job.
+	private int _jobIterations;
+
+	private Phaser _phaser;
+	private Thread [] _helpers = new Thread[0];
+	private final AtomicReference<Throwable> _failure = new AtomicReference<Throwable>();
+
+	/*--------------
+	 * Construction
+	 */
+
+	public PersistentPhaseMultithreadingAlgorithm(MultiThreadingManager manager)
+	{
+		super(manager);
+	}
+
+	/*----------------------------------
+	 * MultithreadingAlgorithm methods
+	 */
+
+	@Override
+	public synchronized void iterate(int numIters)
+	{
+		if (numIters <= 0)
+			return;
+
+		plan(getManager().getDependencyGraph(), getManager().getNumWorkers());
+
+		if (_numWorkers == 1)
+		{
+			iterateSingleThreaded(numIters);
+			return;
+		}
+
+		_jobIterations = numIters;
+
+		// Release the helpers, then do our share of the work.
+		_phaser.arriveAndAwaitAdvance();
+		runJob(_phaser, 0);
+
+		// All workers have arrived at the barrier following the last phase.
+		_epoch += numIters;
+
+		Throwable failure = _failure.getAndSet(null);
+		if (failure != null)
+		{
+			// Counters may have been left part way through a slice.
+			_plannedGraph = null;
+
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException)failure;
+			else if (failure instanceof Error)
+				throw (Error)failure;
+			else
+				throw new DimpleException(failure.toString());
+		}
+	}
+
+	/**
+	 * Stops the helper threads. They will be recreated the next time {@link #iterate} is invoked.
+	 */
+	@Override
+	public synchronized void shutdown()
+	{
+		stopHelpers();
+		_plannedGraph = null;
+	}
+
+	/*-----------------
+	 * Implementation
+	 */
+
+	private void iterateSingleThreaded(int numIters)
+	{
+		final IScheduleEntry [][] phases = _phases;
+		for (int i = 0; i < numIters; i++)
+			for (IScheduleEntry [] phase : phases)
+				for (IScheduleEntry entry : phase)
+					entry.update();
+	}
+
+	/*
+	 * Rebuilds the per-phase slices when the dependency graph or the number of workers
+	 * has changed since the last call.
+	 */
+	private void plan(StaticDependencyGraph graph, int numWorkers)
+	{
+		if (graph == _plannedGraph && numWorkers == _numWorkers)
+			return;
+
+		if (numWorkers != _numWorkers)
+			stopHelpers();
+
+		ArrayList<ArrayList<IScheduleEntry>> phaseLists = graph.getPhases();
+		final int numPhases = phaseLists.size();
+
+		IScheduleEntry [][] phases = new IScheduleEntry[numPhases][];
+		int [][] sliceStarts = new int[numPhases][numWorkers + 1];
+		for (int p = 0; p < numPhases; p++)
+		{
+			ArrayList<IScheduleEntry> list = phaseLists.get(p);
+			final int size = list.size();
+			phases[p] = list.toArray(new IScheduleEntry[size]);
+			for (int w = 0; w <= numWorkers; w++)
+				sliceStarts[p][w] = (int)(((long)size * w) / numWorkers);
+		}
+
+		_phases = phases;
+		_sliceStarts = sliceStarts;
+		_cursors = new AtomicLongArray(numWorkers * (numPhases + CURSOR_PADDING));
+		_epoch = 0;
+		_numWorkers = numWorkers;
+		_plannedGraph = graph;
+
+		if (numWorkers > 1 && _helpers.length == 0)
+			startHelpers();
+	}
+
+	private void startHelpers()
+	{
+		final int numWorkers = _numWorkers;
+		_phaser = new Phaser(numWorkers);
+		_helpers = new Thread[numWorkers - 1];
+		for (int i = 0; i < _helpers.length; i++)
+		{
+			Thread thread = new Thread(new Helper(this, _phaser, i + 1), "Dimple phase worker " + (i + 1));
+			thread.setDaemon(true);
+			_helpers[i] = thread;
+			thread.start();
+		}
+	}
+
+	private void stopHelpers()
+	{
+		if (_helpers.length > 0)
+		{
+			// Wakes up the helpers waiting for the next job and tells them to exit.
+			_phaser.forceTermination();
+			_phaser = null;
+			_helpers = new Thread[0];
+		}
+	}
+
+	/*
+	 * Static so that a waiting helper does not keep the algorithm, and with it the solver graph,
+	 * reachable. The algorithm is only strongly referenced while a job is running.
+	 */
+	private static final class Helper implements Runnable
+	{
+		private final WeakReference<PersistentPhaseMultithreadingAlgorithm> _algorithm;
+		private final Phaser _myPhaser;
+		private final int _which;
+
+		private Helper(PersistentPhaseMultithreadingAlgorithm algorithm, Phaser phaser, int which)
+		{
+			_algorithm = new WeakReference<PersistentPhaseMultithreadingAlgorithm>(algorithm);
+			_myPhaser = phaser;
+			_which = which;
+		}
+
+		@Override
+		public void run()
+		{
+			while (awaitJob())
+			{
+				if (!runNextJob())
+					return;
+			}
+		}
+
+		/*
+		 * Waits for the next call to iterate. Returns false if the helper should exit, either because
+		 * the phaser was terminated by shutdown or because the algorithm is no longer reachable.
+		 */
+		private boolean awaitJob()
+		{
+			final Phaser phaser = _myPhaser;
+			final int phase = phaser.arrive();
+			if (phase < 0)
+				return false;
+
+			while (true)
+			{
+				try
+				{
+					return phaser.awaitAdvanceInterruptibly(phase, IDLE_CHECK_MILLIS, TimeUnit.MILLISECONDS) >= 0;
+				}
+				catch (TimeoutException ex)
+				{
+				}
+				catch (InterruptedException ex)
+				{
+				}
+
+				// Once the algorithm has been collected nobody can call iterate again.
+				if (_algorithm.get() == null)
+					return false;
+			}
+		}
+
+		private boolean runNextJob()
+		{
+			// The calling thread is inside iterate, so the algorithm cannot have been collected yet.
+			final PersistentPhaseMultithreadingAlgorithm algorithm = _algorithm.get();
+			if (algorithm == null)
+				return false;
+			algorithm.runJob(_myPhaser, _which);
+			return true;
+		}
+	}
+
+	/*
+	 * Runs the current job on behalf of worker {@code which}. Every worker arrives at the
+	 * phaser once per phase, even after a failure, so that the others are never left waiting.
+	 */
+	private void runJob(Phaser phaser, int which)
+	{
+		final int numPhases = _phases.length;
+		final long firstEpoch = _epoch;
+		final long endEpoch = firstEpoch + _jobIterations;
+
+		final XoroshiroRandom previous = SolverRandomGenerator.setThreadRandom(getWorkerRandom(which));
+		try
+		{
+			for (long epoch = firstEpoch; epoch < endEpoch; epoch++)
+			{
+				for (int p = 0; p < numPhases; p++)
+				{
+					if (_failure.get() == null)
+					{
+						try
+						{
+							runPhase(p, which, epoch);
+						}
+						catch (Throwable e)
+						{
+							_failure.compareAndSet(null, e);
+						}
+					}
+					phaser.arriveAndAwaitAdvance();
+				}
+			}
+		}
+		finally
+		{
+			SolverRandomGenerator.setThreadRandom(previous);
+		}
+	}
+
+	private void runPhase(int phase, int which, long epoch)
+	{
+		final IScheduleEntry [] entries = _phases[phase];
+		final int numWorkers = _numWorkers;
+
+		// Do my own slice first, then steal from the others, starting with my neighbor
+		// so that not everyone looks at the same slice.
+		for (int i = 0; i < numWorkers; i++)
+		{
+			final int w = (which + i) % numWorkers;
+			final int start = _sliceStarts[phase][w];
+			final int length = _sliceStarts[phase][w + 1] - start;
+			if (length == 0)
+				continue;
+
+			final int cursor = cursorIndex(w, phase);
+			int offset;
+			while ((offset = claim(cursor, length, epoch)) >= 0)
+				entries[start + offset].update();
+		}
+	}
+
+	/*
+	 * Returns offset of next unclaimed entry within the slice, or -1 if the slice is exhausted.
+	 */
+	private int claim(int cursor, int length, long epoch)
+	{
+		final AtomicLongArray cursors = _cursors;
+		final long base = epoch * length;
+		final long limit = base + length;
+
+		while (true)
+		{
+			long claimed = cursors.get(cursor);
+			if (claimed >= limit)
+				return -1;
+			if (cursors.compareAndSet(cursor, claimed, claimed + 1))
+				return (int)(claimed - base);
+		}
+	}
+
+	private int cursorIndex(int worker, int phase)
+	{
+		return worker * (_phases.length + CURSOR_PADDING) + phase;
+	}
+}
@@ -84,7 +84,7 @@ public class PhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
 		//Instantiate the Callable object that will do the updates. Each object is responsible
 		//for filling its queue so that building the queues is also multithreaded.
 		for (int i = 0; i < numThreads; i++)
-			ll.add(new WorkerWithStealing(scheduleEntries, i, deques, stealing));
+			ll.add(new WorkerWithStealing(scheduleEntries, i, deques, stealing, getWorkerRandom(i)));
 				
 		//Kick off the threads and wait for them to complete.
 		try {
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.math.XoroshiroRandom;
 
 /*
  * Responsible for picking of a chunk of schedule entries,
@@ -33,20 +35,36 @@ class WorkerWithStealing implements Callable<Object>
 	private int _which;
 	private ArrayList<IScheduleEntry> _nodes;
 	private boolean _stealing;
+	private XoroshiroRandom _rand;
 	
 	public WorkerWithStealing(ArrayList<IScheduleEntry> nodes, 
 			int which, ConcurrentLinkedQueue<IScheduleEntry> [] deques, 
-			boolean stealing)
+			boolean stealing, XoroshiroRandom rand)
 	{
 		_which = which;
 		_deques = deques;
 		_nodes= nodes;
 		_stealing = stealing;
+		_rand = rand;
 	}
 	
 	
 	@Override
 	public Object call() throws Exception 
+	{
+		final XoroshiroRandom previous = SolverRandomGenerator.setThreadRandom(_rand);
+		try
+		{
+			updateEntries();
+		}
+		finally
+		{
+			SolverRandomGenerator.setThreadRandom(previous);
+		}
+		return null;
+	}
+	
+	private void updateEntries()
 	{			
 		//Which thread am I?
 		int which = _which;
@@ -94,6 +112,5 @@ class WorkerWithStealing implements Callable<Object>
 			}
 			
 		}	
-		return null;
 	}
 }
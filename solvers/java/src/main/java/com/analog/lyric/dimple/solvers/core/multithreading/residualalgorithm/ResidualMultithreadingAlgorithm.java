@@ -0,0 +1,130 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading.residualalgorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PhaseMultithreadingAlgorithm;
+import com.analog.lyric.math.XoroshiroRandom;
+
+/*
+ * Runs a ResidualSchedule concurrently. Each worker repeatedly claims the pending edge
+ * with the largest residual that does not share a node with an edge being updated by
+ * another worker, until the iteration's share of updates has been done or the schedule
+ * has converged.
+ *
+ * Graphs with any other schedule are run using the phase algorithm.
+ */
+public class ResidualMultithreadingAlgorithm extends MultithreadingAlgorithm
+{
+	private final PhaseMultithreadingAlgorithm _staticAlgorithm;
+
+	public ResidualMultithreadingAlgorithm(MultiThreadingManager manager)
+	{
+		super(manager);
+		_staticAlgorithm = new PhaseMultithreadingAlgorithm(manager);
+	}
+
+	@Override
+	public void iterate(int numIters)
+	{
+		ISchedule schedule = getManager().getFactorGraph().getSchedule();
+		if (!(schedule instanceof ResidualSchedule))
+		{
+			_staticAlgorithm.seedWorkers(getManager().getNumWorkers());
+			_staticAlgorithm.iterate(numIters);
+			return;
+		}
+
+		final ResidualSchedule residualSchedule = (ResidualSchedule)schedule;
+		ExecutorService service = getManager().getService();
+		int numThreads = getManager().getNumWorkers();
+
+		ArrayList<Callable<Object>> workers = new ArrayList<Callable<Object>>(numThreads);
+		for (int i = 0; i < numThreads; i++)
+			workers.add(new Worker(residualSchedule, getWorkerRandom(i)));
+
+		for (int i = 0; i < numIters; i++)
+		{
+			if (residualSchedule.isConverged())
+				break;
+
+			residualSchedule.beginIteration();
+
+			try
+			{
+				List<Future<Object>> results = service.invokeAll(workers);
+				for (Future<Object> result : results)
+					result.get();
+			}
+			catch (InterruptedException e)
+			{
+				throw new DimpleException(e);
+			}
+			catch (ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				else if (cause instanceof Error)
+					throw (Error)cause;
+				throw new DimpleException(e);
+			}
+		}
+	}
+
+	private static class Worker implements Callable<Object>
+	{
+		private final ResidualSchedule _schedule;
+		private final XoroshiroRandom _rand;
+
+		private Worker(ResidualSchedule schedule, XoroshiroRandom rand)
+		{
+			_schedule = schedule;
+			_rand = rand;
+		}
+
+		@Override
+		public Object call() throws Exception
+		{
+			final XoroshiroRandom previous = SolverRandomGenerator.setThreadRandom(_rand);
+			try
+			{
+				IScheduleEntry entry;
+				while ((entry = _schedule.claimNext()) != null)
+					entry.update();
+			}
+			finally
+			{
+				SolverRandomGenerator.setThreadRandom(previous);
+			}
+			return null;
+		}
+	}
+}
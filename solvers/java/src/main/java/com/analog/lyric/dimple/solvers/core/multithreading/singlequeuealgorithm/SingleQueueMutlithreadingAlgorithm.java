@@ -68,7 +68,7 @@ public class SingleQueueMutlithreadingAlgorithm extends MultithreadingAlgorithm
 	 		int numThreads = getManager().getNumWorkers();	 		
 			ArrayList<Callable<Object>> workers = new ArrayList<Callable<Object>>();			
 	 		for (int i = 0; i < numThreads; i++)	 			
-	 			workers.add(new SingleQueueWorker(workQueue, dg.getNumNodes(), nodesLeft));
+	 			workers.add(new SingleQueueWorker(workQueue, dg.getNumNodes(), nodesLeft, getWorkerRandom(i)));
 	 		
 	 		//Kick off the work
 	 		try {
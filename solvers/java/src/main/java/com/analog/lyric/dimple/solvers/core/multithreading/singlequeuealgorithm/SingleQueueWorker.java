@@ -21,6 +21,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraphNode;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.math.XoroshiroRandom;
 
 /*
  * Object that retrieves data from the work queue until there is nothing left.
@@ -31,18 +33,35 @@ class SingleQueueWorker implements Callable<Object>
 {
 	private LinkedBlockingQueue<StaticDependencyGraphNode> _workQueue;
 	private AtomicInteger _nodesDone;
+	private XoroshiroRandom _rand;
 	
 	public SingleQueueWorker(LinkedBlockingQueue<StaticDependencyGraphNode> 
 		workQueue,
 		int numNodes,
-		AtomicInteger nodesDone)
+		AtomicInteger nodesDone,
+		XoroshiroRandom rand)
 	{
 		_workQueue = workQueue;
 		_nodesDone = nodesDone;
+		_rand = rand;
 	}
 	
 	@Override
 	public Object call() throws Exception 
+	{
+		final XoroshiroRandom previous = SolverRandomGenerator.setThreadRandom(_rand);
+		try
+		{
+			updateEntries();
+		}
+		finally
+		{
+			SolverRandomGenerator.setThreadRandom(previous);
+		}
+		return null;
+	}
+	
+	private void updateEntries() throws InterruptedException
 	{
 		//Keep going until there is nothing left.
 		while(true)
@@ -98,7 +117,6 @@ class SingleQueueWorker implements Callable<Object>
 	
 			
 		}
-		return null;
 
 	}
 }
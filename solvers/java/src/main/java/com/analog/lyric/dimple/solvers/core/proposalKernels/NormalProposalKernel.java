@@ -26,7 +26,7 @@ public class NormalProposalKernel implements IProposalKernel
 	
 	public Proposal next(Value currentValue, Domain variableDomain)
 	{
-		return new Proposal(currentValue.getDouble() + _standardDeviation * SolverRandomGenerator.rand.nextGaussian());
+		return new Proposal(SolverRandomGenerator.getRand().nextNormal(currentValue.getDouble(), _standardDeviation));
 	}
 	
 	public void setParameters(Object... parameters)
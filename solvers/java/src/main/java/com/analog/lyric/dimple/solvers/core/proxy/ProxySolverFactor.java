@@ -91,6 +91,12 @@ public abstract class ProxySolverFactor extends ProxySolverNode implements ISolv
 		throw unsupported("setDirectedTo");
 	}
 
+	@Override
+	public boolean isConcurrentlyEvaluable()
+	{
+		return getDelegate().isConcurrentlyEvaluable();
+	}
+
 	/*-------------------------
 	 * ProxySolverNode methods
 	 */
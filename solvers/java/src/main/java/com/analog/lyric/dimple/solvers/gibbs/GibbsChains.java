@@ -0,0 +1,445 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Beta;
+import com.analog.lyric.dimple.factorfunctions.Gamma;
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.model.variables.VariableList;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.ISampleAccumulator;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.math.XoroshiroRandom;
+
+/**
+ * Independent Gibbs chains for {@link SFactorGraph#setNumChains(int)}.
+ * <p>
+ * Chain zero is the solver graph itself. Each additional chain is a copy of the model
+ * with its own Gibbs solver graph, so that every chain has its own sample state. Each
+ * chain draws from its own random stream, split from the calling thread's generator.
+ * <p>
+ * The copies share the model's factor function instances, so the chains are only run
+ * concurrently if every factor {@linkplain ISolverFactor#isConcurrentlyEvaluable() may be
+ * evaluated concurrently}, as table factors and the built-in distributions such as
+ * {@link Normal}, {@link Gamma} and {@link Beta} may. Otherwise they are run one after another
+ * on the calling thread. Since each chain has its own random stream, the results are the same
+ * either way.
+ * <p>
+ * The copies inherit the model's scheduler and any custom schedule. They are kept for later
+ * solves until the structure or the schedule of the model changes, as indicated by
+ * {@link #isCurrent}. The graph-level settings and the variable inputs and fixed values of
+ * the model are copied to them on every solve.
+ * <p>
+ * The copies save all of their samples. The samples of chain zero are recorded by sample
+ * accumulators attached only while solving, so the sample saving settings of the model's
+ * variables are left as they were.
+ */
+final class GibbsChains
+{
+	/*-------
+	 * State
+	 */
+
+	private final SFactorGraph[] _chains;
+
+	/**
+	 * Variables of each chain, in the same order as the variables of the primary graph.
+	 */
+	private final VariableList[] _chainVariables;
+	private final VariableList _primaryVariables;
+
+	/**
+	 * Samples of each variable of chain zero in the most recent solve, or null for variables
+	 * whose samples are not recorded.
+	 */
+	private final SampleRecorder[] _primarySamples;
+
+	private final long _modelVersion;
+	private final long _scheduleVersion;
+
+	/**
+	 * True if the chains may be run concurrently.
+	 */
+	private final boolean _concurrent;
+
+	/*--------------
+	 * Construction
+	 */
+
+	GibbsChains(SFactorGraph primary, int numChains)
+	{
+		_chains = new SFactorGraph[numChains];
+		_chainVariables = new VariableList[numChains];
+
+		final FactorGraph model = primary.getModel();
+		_modelVersion = modelVersion(model);
+		_scheduleVersion = scheduleVersion(model);
+		_concurrent = isConcurrentlyEvaluable(model);
+		_primaryVariables = model.getVariables();
+		_chains[0] = primary;
+		_chainVariables[0] = _primaryVariables;
+
+		_primarySamples = new SampleRecorder[_primaryVariables.size()];
+		for (int i = 0; i < _primarySamples.length; ++i)
+		{
+			ISolverVariableGibbs var = getChainVariable(0, i);
+			if (var instanceof SDiscreteVariable || var instanceof SRealVariable)
+				_primarySamples[i] = new SampleRecorder(var instanceof SDiscreteVariable);
+		}
+
+		for (int chain = 1; chain < numChains; ++chain)
+		{
+			FactorGraph copy = model.copyRoot();
+			SFactorGraph solver = copy.setSolverFactory(new Solver());
+			_chains[chain] = solver;
+
+			VariableList variables = copy.getVariables();
+			if (variables.size() != _primaryVariables.size())
+				throw new DimpleException("Copy of graph for Gibbs chain does not match original");
+			_chainVariables[chain] = variables;
+		}
+	}
+
+	/*---------
+	 * Methods
+	 */
+
+	int getNumChains()
+	{
+		return _chains.length;
+	}
+
+	/**
+	 * True if these chains can be used to solve {@code primary} with {@code numChains} chains, i.e.
+	 * they were created for it with that many chains and neither the structure nor the schedule of
+	 * its model has changed since.
+	 */
+	boolean isCurrent(SFactorGraph primary, int numChains)
+	{
+		final FactorGraph model = primary.getModel();
+		return _chains[0] == primary && _chains.length == numChains &&
+			_modelVersion == modelVersion(model) && _scheduleVersion == scheduleVersion(model);
+	}
+
+	/**
+	 * Runs all of the chains, concurrently if possible, and then adds the belief counts of the other
+	 * chains to those of the primary graph. The primary graph must already have been
+	 * initialized.
+	 */
+	void solve()
+	{
+		final int numChains = _chains.length;
+		final SFactorGraph primary = _chains[0];
+		final int numVariables = _primaryVariables.size();
+
+		// Initialize the copies here, rather than in the chain threads, so that any lazily computed
+		// state shared between the copies, such as factor tables, is created before running concurrently.
+		for (int chain = 1; chain < numChains; ++chain)
+		{
+			final SFactorGraph copy = _chains[chain];
+			primary.copyChainSettings(copy);
+			for (int i = 0; i < numVariables; ++i)
+				_chainVariables[chain].getByIndex(i).moveInputs(_primaryVariables.getByIndex(i));
+			copy.getModel().initialize();
+			copy.saveAllSamples();
+		}
+
+		List<Callable<Object>> workers = new ArrayList<Callable<Object>>(numChains);
+		for (int chain = 0; chain < numChains; ++chain)
+			workers.add(new ChainWorker(_chains[chain], SolverRandomGenerator.getRand().split()));
+
+		for (int i = 0; i < numVariables; ++i)
+		{
+			if (_primarySamples[i] != null)
+			{
+				_primarySamples[i].reset();
+				getChainVariable(0, i).addSampleAccumulator(_primarySamples[i]);
+			}
+		}
+
+		try
+		{
+			if (_concurrent)
+			{
+				List<Future<Object>> results = ThreadPool.getThreadPool().invokeAll(workers);
+				for (Future<Object> result : results)
+					result.get();
+			}
+			else
+			{
+				for (Callable<Object> worker : workers)
+					worker.call();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new DimpleException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			else if (cause instanceof Error)
+				throw (Error)cause;
+			throw new DimpleException(e);
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new DimpleException(e);
+		}
+		finally
+		{
+			for (int i = 0; i < numVariables; ++i)
+			{
+				if (_primarySamples[i] != null)
+					getChainVariable(0, i).removeSampleAccumulator(_primarySamples[i]);
+			}
+		}
+
+		for (int i = 0; i < numVariables; ++i)
+		{
+			ISolverVariableGibbs var = getChainVariable(0, i);
+			if (var instanceof SDiscreteVariable)
+			{
+				for (int chain = 1; chain < numChains; ++chain)
+					((SDiscreteVariable)var).addBeliefCounts((SDiscreteVariable)getChainVariable(chain, i));
+			}
+		}
+	}
+
+	/**
+	 * Returns the solver variable for {@code chain} that corresponds to {@code var} in the primary graph.
+	 */
+	ISolverVariableGibbs getChainVariable(int chain, VariableBase var)
+	{
+		int index = _primaryVariables.values().indexOf(var);
+		if (index < 0)
+			throw new DimpleException("Variable '%s' is not in the solved graph", var);
+		return getChainVariable(chain, index);
+	}
+
+	/**
+	 * Returns the solver variable for {@code chain} that corresponds to the variable at {@code index}
+	 * in the primary graph's {@link FactorGraph#getVariables()}.
+	 */
+	ISolverVariableGibbs getChainVariable(int chain, int index)
+	{
+		return (ISolverVariableGibbs)_chainVariables[chain].getByIndex(index).getSolver();
+	}
+
+	/**
+	 * Returns the sample indices of the Discrete variable at {@code index} saved by {@code chain}
+	 * in the most recent solve.
+	 */
+	int[] getSampleIndices(int chain, int index)
+	{
+		if (chain > 0)
+			return ((SDiscreteVariable)getChainVariable(chain, index)).getAllSampleIndices();
+
+		final SampleRecorder recorder = _primarySamples[index];
+		final int[] indices = new int[recorder._size];
+		for (int i = 0; i < indices.length; ++i)
+			indices[i] = (int)recorder._samples[i];
+		return indices;
+	}
+
+	/**
+	 * Returns the sample values of the Real variable at {@code index} saved by {@code chain}
+	 * in the most recent solve.
+	 */
+	double[] getSampleValues(int chain, int index)
+	{
+		if (chain > 0)
+			return ((SRealVariable)getChainVariable(chain, index)).getAllSamples();
+
+		final SampleRecorder recorder = _primarySamples[index];
+		return Arrays.copyOf(recorder._samples, recorder._size);
+	}
+
+	/*
+	 * Sum of the version ids of the model and its nested graphs, which changes whenever any of them changes.
+	 */
+	private static long modelVersion(FactorGraph graph)
+	{
+		long version = graph.getVersionId();
+		for (FactorGraph nested : graph.getNestedGraphs())
+			version += modelVersion(nested);
+		return version;
+	}
+
+	/*
+	 * Sum of the schedule version ids of the model and its nested graphs, which changes whenever
+	 * a schedule or scheduler is set on any of them. The model's schedule must already be current.
+	 */
+	private static long scheduleVersion(FactorGraph graph)
+	{
+		long version = graph.getScheduleVersionId();
+		for (FactorGraph nested : graph.getNestedGraphs())
+			version += scheduleVersion(nested);
+		return version;
+	}
+
+	/*
+	 * True if every factor of the graph can be evaluated by several chains at once.
+	 */
+	private static boolean isConcurrentlyEvaluable(FactorGraph graph)
+	{
+		for (Factor factor : graph.getNonGraphFactorsFlat())
+		{
+			if (!factor.getSolver().isConcurrentlyEvaluable())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the Gelman-Rubin potential scale reduction factor, R-hat, for a scalar quantity
+	 * given the values sampled by each of several chains. Values close to one indicate that the
+	 * chains have mixed. Each chain must have the same number of samples, at least two.
+	 */
+	static double gelmanRubin(double[][] chainSamples)
+	{
+		final int numChains = chainSamples.length;
+		if (numChains < 2)
+			throw new DimpleException("Gelman-Rubin statistic requires at least two chains");
+		final int n = chainSamples[0].length;
+		if (n < 2)
+			throw new DimpleException("Gelman-Rubin statistic requires at least two samples per chain");
+
+		double[] means = new double[numChains];
+		double grandMean = 0;
+		double withinVariance = 0;
+		for (int chain = 0; chain < numChains; ++chain)
+		{
+			final double[] samples = chainSamples[chain];
+			if (samples.length != n)
+				throw new DimpleException("Gelman-Rubin statistic requires the same number of samples in each chain");
+
+			double mean = 0;
+			for (double sample : samples)
+				mean += sample;
+			mean /= n;
+
+			double variance = 0;
+			for (double sample : samples)
+				variance += (sample - mean) * (sample - mean);
+
+			means[chain] = mean;
+			grandMean += mean;
+			withinVariance += variance / (n - 1);
+		}
+		grandMean /= numChains;
+		withinVariance /= numChains;
+
+		double betweenVariance = 0;
+		for (double mean : means)
+			betweenVariance += (mean - grandMean) * (mean - grandMean);
+		betweenVariance *= (double)n / (numChains - 1);
+
+		if (withinVariance == 0)
+			return betweenVariance == 0 ? 1 : Double.POSITIVE_INFINITY;
+
+		double pooledVariance = (n - 1) * withinVariance / n + betweenVariance / n;
+		return Math.sqrt(pooledVariance / withinVariance);
+	}
+
+	/*---------------
+	 * Chain workers
+	 */
+
+	/**
+	 * Records every sample of a variable of chain zero: the index for a discrete variable,
+	 * otherwise the value. Unlike most accumulators this keeps all of the samples, but only
+	 * until the next solve.
+	 */
+	private static final class SampleRecorder implements ISampleAccumulator
+	{
+		private final boolean _discrete;
+		private double[] _samples = new double[16];
+		private int _size;
+
+		private SampleRecorder(boolean discrete)
+		{
+			_discrete = discrete;
+		}
+
+		@Override
+		public void add(Value sample)
+		{
+			if (_size == _samples.length)
+				_samples = Arrays.copyOf(_samples, _size * 2);
+			_samples[_size++] = _discrete ? sample.getIndex() : sample.getDouble();
+		}
+
+		@Override
+		public long getCount()
+		{
+			return _size;
+		}
+
+		@Override
+		public void reset()
+		{
+			_size = 0;
+		}
+	}
+
+	private static final class ChainWorker implements Callable<Object>
+	{
+		private final SFactorGraph _chain;
+		private final XoroshiroRandom _rand;
+
+		private ChainWorker(SFactorGraph chain, XoroshiroRandom rand)
+		{
+			_chain = chain;
+			_rand = rand;
+		}
+
+		@Override
+		public Object call() throws Exception
+		{
+			final XoroshiroRandom previous = SolverRandomGenerator.setThreadRandom(_rand);
+			try
+			{
+				_chain.solveOneChain();
+			}
+			finally
+			{
+				SolverRandomGenerator.setThreadRandom(previous);
+			}
+			return null;
+		}
+	}
+}
@@ -306,6 +306,23 @@ public final class GibbsNeighbors implements ReleasableIterable<ISolverNodeGibbs
 		return _adjacentDependentFactors != null;
 	}
 	
+	/**
+	 * The number of nodes in the list.
+	 */
+	int size()
+	{
+		return _neighbors.length;
+	}
+	
+	/**
+	 * The node at {@code index}, in the same order as {@link #iterator()}. Unlike iteration,
+	 * this does not allocate anything, even when used recursively.
+	 */
+	ISolverNodeGibbs get(int index)
+	{
+		return _neighbors[index];
+	}
+	
 	/**
 	 * Update the deterministic outputs that depend on the original variable.
 	 * 
@@ -314,15 +331,14 @@ public final class GibbsNeighbors implements ReleasableIterable<ISolverNodeGibbs
 	 */
 	void update(Value oldValue)
 	{
-		if (_adjacentDependentFactors != null)
+		final FactorWork[] dependentFactors = _adjacentDependentFactors;
+		if (dependentFactors != null)
 		{
-			ReleasableIterator<FactorWork> dependentFactors = ReleasableArrayIterator.create(_adjacentDependentFactors);
-			while (dependentFactors.hasNext())
+			// Not a pooled iterator, which would have to be allocated when this recurses through dependents
+			for (FactorWork factor : dependentFactors)
 			{
-				FactorWork factor = dependentFactors.next();
 				factor._factorNode.updateNeighborVariableValue(factor._incomingEdge, oldValue);
 			}
-			dependentFactors.release();
 		}
 	}
 	
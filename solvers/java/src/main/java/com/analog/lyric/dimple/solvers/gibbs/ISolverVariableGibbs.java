@@ -19,6 +19,7 @@ package com.analog.lyric.dimple.solvers.gibbs;
 import com.analog.lyric.collect.ReleasableIterator;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.ISampleAccumulator;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 import com.analog.lyric.util.misc.Internal;
 
@@ -28,6 +29,31 @@ public interface ISolverVariableGibbs extends ISolverNodeGibbs, ISolverVariable
 	public void saveAllSamples();
 	public void disableSavingAllSamples();
 	public void saveCurrentSample();
+	
+	/**
+	 * Attaches {@code accumulator} to this variable so that it will be passed every sample saved by
+	 * {@link #saveCurrentSample()}. This allows statistics of long runs to be computed without
+	 * keeping every sample as done by {@link #saveAllSamples()}. Attached accumulators are reset
+	 * when the solver is initialized.
+	 * <p>
+	 * Does nothing if {@code accumulator} is already attached.
+	 * <p>
+	 * @since 0.05
+	 */
+	public void addSampleAccumulator(ISampleAccumulator accumulator);
+	
+	/**
+	 * Detaches {@code accumulator} from this variable. Returns false if it was not attached.
+	 * @since 0.05
+	 */
+	public boolean removeSampleAccumulator(ISampleAccumulator accumulator);
+	
+	/**
+	 * Returns a copy of the accumulators attached to this variable by {@link #addSampleAccumulator}.
+	 * @since 0.05
+	 */
+	public ISampleAccumulator[] getSampleAccumulators();
+	
     public void saveBestSample();
     public Value getCurrentSampleValue();
     public void setCurrentSample(Object value);
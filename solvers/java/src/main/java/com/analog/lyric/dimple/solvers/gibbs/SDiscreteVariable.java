@@ -36,6 +36,8 @@ import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteDirectSam
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteSamplerClient;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IGenericSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IMCMCSampler;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.ISampleAccumulator;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.SampleAccumulatorList;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.google.common.primitives.Doubles;
@@ -54,6 +56,7 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 	private double[] _input;
 	private double[] _conditional;
 	private ArrayList<Integer> _sampleIndexArray;
+	private SampleAccumulatorList _sampleAccumulators = new SampleAccumulatorList();
 	private int _bestSampleIndex;
 	private DiscreteValue _initialSampleValue = null;
 	private double _beta = 1;
@@ -67,6 +70,14 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 	 * List of neighbors for sample scoring. Instantiated during initialization.
 	 */
 	private GibbsNeighbors _neighbors = null;
+	
+	/*
+	 * Scratch values, with the same type as _outputMsg, so that update() does not need to allocate.
+	 * _sampleCopy is the copy of the current sample given to the sampler, and _oldSample holds
+	 * the previous sample while deterministic dependents are updated.
+	 */
+	private DiscreteValue _sampleCopy;
+	private DiscreteValue _oldSample;
 
 	/*--------------
 	 * Construction
@@ -135,17 +146,10 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		}
 		else	// There are deterministic dependents, so must account for these
 		{
-			// TODO: SPEED UP
 			for (int index = 0; index < messageLength; index++)
 			{
 				setCurrentSampleIndex(index);
-				double out = _input[index];						// Sum of the input prior...
-				ReleasableIterator<ISolverNodeGibbs> scoreNodes = getSampleScoreNodes();
-				while (scoreNodes.hasNext())
-				{
-					out += scoreNodes.next().getPotential();
-				}
-				scoreNodes.release();
+				double out = addSampleScoreNodePotentials(_input[index]);	// Sum of the input prior and the neighbors' potentials
 				
 				out *= _beta;									// Apply tempering
 
@@ -156,10 +160,12 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		}
 		
 		// Sample from the conditional distribution
+		final DiscreteValue sampleCopy = _sampleCopy;
+		sampleCopy.setIndex(_outputMsg.getIndex());
 		if (_sampler instanceof IDiscreteDirectSampler)
-			((IDiscreteDirectSampler)_sampler).nextSample(_outputMsg.clone(), _conditional, minEnergy, this);
+			((IDiscreteDirectSampler)_sampler).nextSample(sampleCopy, _conditional, minEnergy, this);
 		else if (_sampler instanceof IMCMCSampler)
-			((IMCMCSampler)_sampler).nextSample(_outputMsg.clone(), this);
+			((IMCMCSampler)_sampler).nextSample(sampleCopy, this);
 	}
 	
 	/*-------------------------
@@ -251,18 +257,11 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		
 		computeScore:
 		{
-			double potential = _input[_outputMsg.getIndex()];
-
-			ReleasableIterator<ISolverNodeGibbs> scoreNodes = getSampleScoreNodes();
-			while (scoreNodes.hasNext())
+			final double potential = addSampleScoreNodePotentials(_input[_outputMsg.getIndex()]);
+			if (!Doubles.isFinite(potential))
 			{
-				potential += scoreNodes.next().getPotential();
-				if (!Doubles.isFinite(potential))
-				{
-					break computeScore;
-				}
+				break computeScore;
 			}
-			scoreNodes.release();
 
 			sampleScore = potential * _beta;	// Incorporate current temperature
 		}
@@ -294,6 +293,14 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		_beliefHistogram[_outputMsg.getIndex()]++;
 	}
 
+	// Adds the belief histogram of another chain's copy of this variable into this one
+	final void addBeliefCounts(SDiscreteVariable other)
+	{
+		final long[] otherHistogram = other._beliefHistogram;
+		for (int i = 0, end = _beliefHistogram.length; i < end; i++)
+			_beliefHistogram[i] += otherHistogram[i];
+	}
+
 	// TODO - move up to ISolverVariable
 	@Override
 	public double[] getBelief()
@@ -373,12 +380,31 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
     {
     	_sampleIndexArray = null;
     }
+
+	@Override
+	public void addSampleAccumulator(ISampleAccumulator accumulator)
+	{
+		_sampleAccumulators.add(accumulator);
+	}
+	
+	@Override
+	public boolean removeSampleAccumulator(ISampleAccumulator accumulator)
+	{
+		return _sampleAccumulators.remove(accumulator);
+	}
+	
+	@Override
+	public ISampleAccumulator[] getSampleAccumulators()
+	{
+		return _sampleAccumulators.toArray();
+	}
     
     @Override
 	public final void saveCurrentSample()
     {
     	if (_sampleIndexArray != null)
     		_sampleIndexArray.add(_outputMsg.getIndex());
+    	_sampleAccumulators.addSample(_outputMsg);
     }
     
     @Override
@@ -432,7 +458,7 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		DiscreteValue oldValue = null;
 		if (hasDeterministicDependents)
 		{
-			oldValue = _outputMsg.clone();
+			oldValue = copyOfCurrentSample();
 		}
 		
 		// Send the sample value to all output ports
@@ -456,7 +482,7 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		DiscreteValue oldValue = null;
 		if (hasDeterministicDependents)
 		{
-			oldValue = _outputMsg.clone();
+			oldValue = copyOfCurrentSample();
 		}
 		
 		// Send the sample value to all output ports
@@ -469,6 +495,43 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		}
     }
     
+	/*
+	 * A copy of the current sample to pass to the deterministic dependents as the old value. The copy
+	 * is only kept by the root graph when it is deferring deterministic updates, which never happens
+	 * during update(), so otherwise the same scratch value is reused.
+	 */
+	private DiscreteValue copyOfCurrentSample()
+	{
+		if (((SFactorGraph)_var.getRootGraph().getSolver()).isDeferringDeterministicUpdates())
+		{
+			return _outputMsg.clone();
+		}
+		
+		final DiscreteValue oldSample = _oldSample;
+		oldSample.setIndex(_outputMsg.getIndex());
+		return oldSample;
+	}
+	
+	/*
+	 * Adds the potentials of the nodes in getSampleScoreNodes() to potential, without using an iterator.
+	 */
+	private double addSampleScoreNodePotentials(double potential)
+	{
+		final GibbsNeighbors neighbors = _neighbors;
+		if (neighbors != null)
+		{
+			for (int i = 0, end = neighbors.size(); i < end; i++)
+				potential += neighbors.get(i).getPotential();
+		}
+		else
+		{
+			final VariableBase var = _var;
+			for (int port = 0, end = var.getSiblingCount(); port < end; port++)
+				potential += ((ISolverNodeGibbs)var.getSibling(port).getSolver()).getPotential();
+		}
+		return potential;
+	}
+	
     public final Object getCurrentSample()
     {
     	return _outputMsg.getObject();
@@ -549,6 +612,16 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 	{
 		return _initialSampleValue.getIndex();
 	}
+
+	/**
+	 * Reverts to choosing the initial sample value randomly, as if neither {@link #setInitialSampleValue}
+	 * nor {@link #setInitialSampleIndex} had been called.
+	 * @since 0.05
+	 */
+	public final void clearInitialSampleValue()
+	{
+		_initialSampleValue = null;
+	}
 	
     // TODO: move to ISolverVariableGibbs
     
@@ -603,6 +676,8 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		DiscreteDomain domain = _varDiscrete.getDomain();
 		_outputMsg = Value.create(domain);
 		_outputMsg = (DiscreteValue)resetOutputMessage(_outputMsg);
+		_sampleCopy = _outputMsg.clone();
+		_oldSample = _outputMsg.clone();
 
 		if (_sampleIndexArray != null)
 			saveAllSamples();
@@ -696,9 +771,12 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		SDiscreteVariable ovar = ((SDiscreteVariable)other);
 		_outputMsg = ovar._outputMsg;
 		_sampleIndexArray = ovar._sampleIndexArray;
+		_sampleAccumulators = ovar._sampleAccumulators;
 		_beliefHistogram = ovar._beliefHistogram;
 		_outputMsg = ovar._outputMsg;
 		_conditional = ovar._conditional;
+		_sampleCopy = ovar._sampleCopy;
+		_oldSample = ovar._oldSample;
 		_bestSampleIndex = ovar._bestSampleIndex;
 		_initialSampleValue = ovar._initialSampleValue;
 		_beta = ovar._beta;
@@ -720,6 +798,7 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		// Clear out sample state
 		_bestSampleIndex = -1;
 		if (_sampleIndexArray != null) _sampleIndexArray.clear();
+		_sampleAccumulators.reset();
 
 		int messageLength = _varDiscrete.getDiscreteDomain().size();
 		for (int i = 0; i < messageLength; i++)
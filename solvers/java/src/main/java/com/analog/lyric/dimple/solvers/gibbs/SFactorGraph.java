@@ -39,6 +39,7 @@ import com.analog.lyric.dimple.factorfunctions.NegativeExpGamma;
 import com.analog.lyric.dimple.factorfunctions.Normal;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.repeated.BlastFromThePastFactor;
 import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
@@ -51,8 +52,8 @@ import com.analog.lyric.dimple.model.variables.VariableBase;
 import com.analog.lyric.dimple.schedulers.GibbsDefaultScheduler;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ParallelNodesScheduleEntry;
 import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
-import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBernoulli;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBeta;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBinomial;
@@ -109,6 +110,21 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	 */
 	private int _deferDeterministicFactorUpdatesCounter = 0;
 	
+	/**
+	 * The number of independent chains run by {@link #solveOneStep()}.
+	 */
+	private int _numChains = 1;
+	
+	/**
+	 * The chains run by the most recent multiple-chain solve, or null.
+	 */
+	private GibbsChains _chains = null;
+	
+	/**
+	 * The chains created by the most recent multiple-chain solve, kept for reuse by later solves.
+	 */
+	private GibbsChains _chainCache = null;
+	
 	// Arguments for the constructor
 	public static class Arguments
 	{
@@ -225,44 +241,79 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	public void initialize()
 	{
 		// Same as SFactorGraphBase.initialize() but with deferral of deterministic updates
-		FactorGraph fg = _factorGraph;
-		deferDeterministicUpdates();
-//		long start = System.nanoTime();
-		for (int i = 0, end = fg.getOwnedVariableCount(); i < end; ++i)
-		{
-			fg.getOwnedVariable(i).getSolver().initialize();
-		}
-		if (!fg.hasParentGraph())
+		final boolean randomStarted = startRandom();
+		try
 		{
-			for (int i = 0, end = fg.getBoundaryVariableCount(); i <end; ++i)
+			FactorGraph fg = _factorGraph;
+			deferDeterministicUpdates();
+//			long start = System.nanoTime();
+			for (int i = 0, end = fg.getOwnedVariableCount(); i < end; ++i)
 			{
-				fg.getBoundaryVariable(i).getSolver().initialize();
+				fg.getOwnedVariable(i).getSolver().initialize();
 			}
-		}
-//		System.out.format("Solver variable initialization: %fs\n", (System.nanoTime() - start) / 1e9);
-		processDeferredDeterministicUpdates();
-		for (Factor f : fg.getNonGraphFactorsTop())
-			f.getSolver().initialize();
-		for (FactorGraph g : fg.getNestedGraphs())
-			g.getSolver().initialize();
+			if (!fg.hasParentGraph())
+			{
+				for (int i = 0, end = fg.getBoundaryVariableCount(); i <end; ++i)
+				{
+					fg.getBoundaryVariable(i).getSolver().initialize();
+				}
+			}
+//			System.out.format("Solver variable initialization: %fs\n", (System.nanoTime() - start) / 1e9);
+			processDeferredDeterministicUpdates();
+			for (Factor f : fg.getNonGraphFactorsTop())
+				f.getSolver().initialize();
+			for (FactorGraph g : fg.getNestedGraphs())
+				g.getSolver().initialize();
 		
-		_schedule = _factorGraph.getSchedule();
-		_scheduleIterator = _schedule.iterator();
-		_minPotential = Double.POSITIVE_INFINITY;
-		_firstSample = true;
+			_schedule = _factorGraph.getSchedule();
+			_scheduleIterator = _schedule.iterator();
+			_minPotential = Double.POSITIVE_INFINITY;
+			_firstSample = true;
 		
-		if (_scansPerSample >= 0)
-			setScansPerSample(_scansPerSample);
+			if (_scansPerSample >= 0)
+				setScansPerSample(_scansPerSample);
 		
-		if (_burnInScans >= 0) _burnInUpdates = _burnInScans * _factorGraph.getVariables().size();
-		if (_temper) setTemperature(_initialTemperature);
+			if (_burnInScans >= 0) _burnInUpdates = _burnInScans * _factorGraph.getVariables().size();
+			if (_temper) setTemperature(_initialTemperature);
 		
-		if (_scoreArray != null)
-			_scoreArray.clear();
+			if (_scoreArray != null)
+				_scoreArray.clear();
+		}
+		finally
+		{
+			finishRandom(randomStarted);
+		}
 	}
 
 	@Override
 	public void solveOneStep()
+	{
+		final boolean randomStarted = startRandom();
+		try
+		{
+			if (_numChains > 1)
+			{
+				if (_factorGraph.hasParentGraph() || _factorGraph.getFactorGraphStreams().size() > 0)
+					throw new DimpleException("Multiple Gibbs chains are only supported when solving a root graph without streams");
+				if (_chainCache == null || !_chainCache.isCurrent(this, _numChains))
+					_chainCache = new GibbsChains(this, _numChains);
+				_chains = _chainCache;
+				_chains.solve();
+			}
+			else
+			{
+				_chains = null;
+				solveOneChain();
+			}
+		}
+		finally
+		{
+			finishRandom(randomStarted);
+		}
+	}
+	
+	// Burn-in and sample a single chain using this graph's sample state
+	void solveOneChain()
 	{
 		_minPotential = Double.POSITIVE_INFINITY;
 		_firstSample = true;
@@ -283,8 +334,16 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	
 	public final void burnIn(int restartCount)
 	{
-		randomRestart(restartCount);
-		iterate(_burnInUpdates);
+		final boolean randomStarted = startRandom();
+		try
+		{
+			randomRestart(restartCount);
+			iterate(_burnInUpdates);
+		}
+		finally
+		{
+			finishRandom(randomStarted);
+		}
 	}
 	
 	// Run more samples without initializing, burn-in, or random-restarts
@@ -294,24 +353,46 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	public void sample() {sample(1);}
 	public void sample(int numSamples)
 	{
-		for (int sample = 0; sample < numSamples; sample++)
-			oneSample();
+		final boolean randomStarted = startRandom();
+		try
+		{
+			for (int sample = 0; sample < numSamples; sample++)
+				oneSample();
+		}
+		finally
+		{
+			finishRandom(randomStarted);
+		}
 	}
 
 	// Note that the iterate() method for the Gibbs solver means do the
 	// specified number of single-variable updates, regardless of other parameter settings.
 	// The iterate() method behaves differently than for other solvers due to the fact that the
 	// update() method for Gibbs-specific schedules will update only a single variable.
-	// Also, multithreaded operation for Gibbs is not supported
+	// Also, multithreaded operation within a single Gibbs chain is supported only by schedules that update independent
+	// variables concurrently, such as GibbsColoredScanSchedule (see setNumChains for running multiple chains concurrently)
 	@Override
 	public void iterate(int numIters)
 	{
-		for (int iterNum = 0; iterNum < numIters; iterNum++)
+		final boolean randomStarted = startRandom();
+		try
 		{
-			if (!_scheduleIterator.hasNext())
-				_scheduleIterator = _schedule.iterator();	// Wrap-around the schedule if reached the end
+			for (int iterNum = 0; iterNum < numIters; iterNum++)
+			{
+				if (!_scheduleIterator.hasNext())
+					_scheduleIterator = _schedule.iterator();	// Wrap-around the schedule if reached the end
+
+				IScheduleEntry entry = _scheduleIterator.next();
+				entry.update();
 
-			_scheduleIterator.next().update();
+				// An entry that updates several variables at once counts as that many updates
+				if (entry instanceof ParallelNodesScheduleEntry)
+					iterNum += ((ParallelNodesScheduleEntry)entry).getNodeCount() - 1;
+			}
+		}
+		finally
+		{
+			finishRandom(randomStarted);
 		}
 		
 		// Allow interruption (if the solver is run as a thread); currently interruption is allowed only between iterations, not within a single iteration
@@ -451,12 +532,6 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	}
 	public double getTemperature() {return _temperature;}
 	
-	// Sets the random seed for the Gibbs solver.  This allows runs of the solver to be repeatable.
-	public void setSeed(long seed)
-	{
-		SolverRandomGenerator.setSeed(seed);
-	}
-	
 	// Set/get the number of samples to be run when solving the graph (post burn-in)
 	public void setNumSamples(int numSamples) {_numSamples = numSamples;}
 	public int getNumSamples() {return _numSamples;}
@@ -539,6 +614,188 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	
 	
 	
+	/*-----------------
+	 * Multiple chains
+	 */
+	
+	/**
+	 * Sets the number of independent chains to run concurrently when solving the graph.
+	 * <p>
+	 * When more than one, {@link #solve()} runs each chain on its own copy of the graph, from its own
+	 * random restart and with its own random stream, using the graph-level settings of this solver
+	 * (number of samples, burn-in, restarts, tempering and default samplers). Settings made on individual
+	 * solver variables apply only to the first chain. The belief counts of all of the chains are pooled
+	 * into the beliefs of this graph's variables, while the current, best and saved samples and scores of
+	 * this graph are those of the first chain. All samples of every chain are kept until the next solve and
+	 * can be obtained using {@link #getChainSampleIndices(Discrete)} and {@link #getChainSampleValues(Real)},
+	 * and convergence checked with {@link #getGelmanRubinStatistic(VariableBase)}. Whether this graph's own
+	 * variables save all of their samples is not affected.
+	 * <p>
+	 * The copies of the graph are reused by later solves until the graph's structure changes. The inputs
+	 * and fixed values of the variables are copied to them on every solve.
+	 * <p>
+	 * Default is one. Only supported for root graphs that have no {@link FactorGraphStream}s.
+	 * 
+	 * @since 0.05
+	 */
+	public void setNumChains(int numChains)
+	{
+		if (numChains < 1)
+			throw new DimpleException("Number of chains must be greater than 0.");
+		_numChains = numChains;
+	}
+	public int getNumChains() {return _numChains;}
+	
+	/**
+	 * Returns the sample indices of {@code var} saved by each chain of the most recent solve,
+	 * indexed by chain and then sample.
+	 * 
+	 * @see #setNumChains(int)
+	 * @since 0.05
+	 */
+	public int[][] getChainSampleIndices(Discrete var)
+	{
+		final int numChains = _chains != null ? _chains.getNumChains() : 1;
+		int[][] samples = new int[numChains][];
+		if (_chains == null)
+		{
+			samples[0] = ((SDiscreteVariable)getSolverVariable(var)).getAllSampleIndices();
+			return samples;
+		}
+		final int index = getChainVariableIndex(var);
+		for (int chain = 0; chain < numChains; ++chain)
+			samples[chain] = _chains.getSampleIndices(chain, index);
+		return samples;
+	}
+	
+	/**
+	 * Returns the sample values of {@code var} saved by each chain of the most recent solve,
+	 * indexed by chain and then sample.
+	 * 
+	 * @see #setNumChains(int)
+	 * @since 0.05
+	 */
+	public double[][] getChainSampleValues(Real var)
+	{
+		final int numChains = _chains != null ? _chains.getNumChains() : 1;
+		double[][] samples = new double[numChains][];
+		if (_chains == null)
+		{
+			samples[0] = ((SRealVariable)getSolverVariable(var)).getAllSamples();
+			return samples;
+		}
+		final int index = getChainVariableIndex(var);
+		for (int chain = 0; chain < numChains; ++chain)
+			samples[chain] = _chains.getSampleValues(chain, index);
+		return samples;
+	}
+	
+	/**
+	 * Returns the Gelman-Rubin potential scale reduction factor (R-hat) of the samples of {@code var}
+	 * across the chains of the most recent solve. Values near one indicate the chains have converged
+	 * to the same distribution. Computed on the sampled values, so it is only meaningful for quantities
+	 * with an order: it is supported for {@link Real} variables and for {@link Discrete} variables whose
+	 * domain elements are all numbers, such as integer ranges.
+	 * 
+	 * @throws DimpleException if fewer than two chains were run, or {@code var} is not Real or a Discrete
+	 * with numeric elements.
+	 * @see #setNumChains(int)
+	 * @since 0.05
+	 */
+	public double getGelmanRubinStatistic(VariableBase var)
+	{
+		if (_chains == null)
+			throw new DimpleException("Gelman-Rubin statistic requires solving with more than one chain");
+		return getGelmanRubinStatistic(getChainVariableIndex(var));
+	}
+	
+	/**
+	 * Returns the largest {@link #getGelmanRubinStatistic(VariableBase)} over all of the variables in
+	 * the graph for which it is supported.
+	 * 
+	 * @since 0.05
+	 */
+	public double getMaxGelmanRubinStatistic()
+	{
+		if (_chains == null)
+			throw new DimpleException("Gelman-Rubin statistic requires solving with more than one chain");
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0, end = _factorGraph.getVariables().size(); i < end; ++i)
+		{
+			if (!hasOrderedSamples(_chains.getChainVariable(0, i)))
+				continue;
+			max = Math.max(max, getGelmanRubinStatistic(i));
+		}
+		return max;
+	}
+	
+	private double getGelmanRubinStatistic(int variableIndex)
+	{
+		final ISolverVariableGibbs svar = _chains.getChainVariable(0, variableIndex);
+		if (!hasOrderedSamples(svar))
+			throw new DimpleException("Gelman-Rubin statistic is only supported for Real variables and Discrete variables with numeric elements");
+
+		final int numChains = _chains.getNumChains();
+		double[][] samples = new double[numChains][];
+		for (int chain = 0; chain < numChains; ++chain)
+		{
+			if (svar instanceof SDiscreteVariable)
+			{
+				// Use the numeric values rather than the indices, which need not be in increasing order.
+				DiscreteDomain domain = svar.getModelObject().asDiscreteVariable().getDiscreteDomain();
+				int[] indices = _chains.getSampleIndices(chain, variableIndex);
+				samples[chain] = new double[indices.length];
+				for (int i = 0; i < indices.length; ++i)
+					samples[chain][i] = ((Number)domain.getElement(indices[i])).doubleValue();
+			}
+			else
+				samples[chain] = _chains.getSampleValues(chain, variableIndex);
+		}
+		return GibbsChains.gelmanRubin(samples);
+	}
+	
+	/*
+	 * True if samples of the variable have a meaningful order for the Gelman-Rubin statistic.
+	 */
+	private static boolean hasOrderedSamples(ISolverVariableGibbs svar)
+	{
+		if (svar instanceof SRealVariable)
+			return true;
+		if (!(svar instanceof SDiscreteVariable))
+			return false;
+		DiscreteDomain domain = svar.getModelObject().asDiscreteVariable().getDiscreteDomain();
+		for (int i = 0, end = domain.size(); i < end; ++i)
+		{
+			if (!(domain.getElement(i) instanceof Number))
+				return false;
+		}
+		return true;
+	}
+	
+	private int getChainVariableIndex(VariableBase var)
+	{
+		final int index = _factorGraph.getVariables().values().indexOf(var);
+		if (index < 0)
+			throw new DimpleException("Variable '%s' is not in the solved graph", var);
+		return index;
+	}
+	
+	// Copies the graph-level settings of this solver to the solver for another chain
+	void copyChainSettings(SFactorGraph other)
+	{
+		other._numSamples = _numSamples;
+		other._updatesPerSample = _updatesPerSample;
+		other._burnInUpdates = _burnInUpdates;
+		other._scansPerSample = _scansPerSample;
+		other._burnInScans = _burnInScans;
+		other._numRandomRestarts = _numRandomRestarts;
+		other._temper = _temper;
+		other._initialTemperature = _initialTemperature;
+		other._temperingDecayConstant = _temperingDecayConstant;
+		other.setDefaultRealSampler(_defaultRealSamplerName);
+		other.setDefaultDiscreteSampler(_defaultDiscreteSamplerName);
+	}
+	
 	// Helpers for operating on pre-specified groups of variables in the graph
 	public double[] getVariableSampleValues(int variableGroupID)
 	{
@@ -728,6 +985,15 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 		++_deferDeterministicFactorUpdatesCounter;
 	}
 	
+	/**
+	 * True if {@link #scheduleDeterministicDirectedUpdate} is currently deferring updates, in which case
+	 * it holds on to the old values passed to it until {@link #processDeferredDeterministicUpdates()}.
+	 */
+	boolean isDeferringDeterministicUpdates()
+	{
+		return _deferDeterministicFactorUpdatesCounter > 0;
+	}
+	
 	public boolean checkAllEdgesAreIncludedInSchedule()
 	{
 		return false;
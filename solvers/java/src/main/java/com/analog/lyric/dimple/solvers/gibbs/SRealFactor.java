@@ -35,7 +35,15 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 {
 	protected Factor _realFactor;
 	protected Value [] _inputMsgs;
-	//	private Object[] _scratchValues;
+	/**
+	 * Argument array used by {@link #updateEdgeMessage}, holding the input values for all edges
+	 * but the one being updated.
+	 */
+	private Value[] _scratchValues;
+	/**
+	 * Lazily created values used to enumerate the domain of each discrete neighbor in {@link #updateEdgeMessage}.
+	 */
+	private Value[] _scratchDomainValues;
 	protected int _numPorts;
 	protected boolean _isDeterministicDirected;
 	/**
@@ -82,10 +90,12 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 			FactorFunction factorFunction = _realFactor.getFactorFunction();
 			int numPorts = _factor.getSiblingCount();
 			
-			Object[] values = new Object[numPorts];
-			
-			for (int port = 0; port < numPorts; port++)
-				values[port] = _inputMsgs[port].getObject();
+			final Value[] values = _scratchValues;
+			System.arraycopy(_inputMsgs, 0, values, 0, numPorts);
+			Value outputValue = _scratchDomainValues[outPortNum];
+			if (outputValue == null)
+				outputValue = _scratchDomainValues[outPortNum] = Value.create(outputVariableDomain);
+			values[outPortNum] = outputValue;
 
 			//TODO: these could be cached instead.
 			double[] outputMsgs = (double[])var.getSolver().getInputMsg(_factor.getSiblingPortIndex(outPortNum));
@@ -93,7 +103,7 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 			int outputMsgLength = outputMsgs.length;
 			for (int i = 0; i < outputMsgLength; i++)
 			{
-				values[outPortNum] = outputVariableDomain.getElement(i);
+				outputValue.setIndex(i);
 				outputMsgs[i] = factorFunction.evalEnergy(values);		// Messages to discrete variables are energy values
 			}
 		}
@@ -175,7 +185,8 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 		_numPorts = factor.getSiblingCount();
 		_inputMsgs = new Value[_numPorts];
 		_outputsValid = false;
-//		_scratchValues = new Object[_numPorts];
+		_scratchValues = new Value[_numPorts];
+		_scratchDomainValues = new Value[_numPorts];
 		for (int i = 0; i < _numPorts; i++)
 		{
 			Object [] messages = factor.getSibling(i).getSolver().createMessages(this);
@@ -51,6 +51,8 @@ import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.GenericSamplerRegi
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IMCMCSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IRealSamplerClient;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.MHSampler;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.ISampleAccumulator;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.SampleAccumulatorList;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.google.common.primitives.Doubles;
@@ -80,6 +82,7 @@ public class SRealJointVariable extends SRealJointVariableBase implements ISolve
 	private IRealJointConjugateSampler _conjugateSampler = null;
 	private boolean _samplerSpecificallySpecified = false;
 	private ArrayList<double[]> _sampleArray;
+	private SampleAccumulatorList _sampleAccumulators = new SampleAccumulatorList();
 	private double[] _bestSampleValue;
 	private double _beta = 1;
 	private boolean _holdSampleValue = false;
@@ -372,7 +375,7 @@ public class SRealJointVariable extends SRealJointVariableBase implements ISolve
 
 					// No available sampler, so if bounded, sample uniformly from the bounds
 					if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-						setCurrentSample(i, SolverRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+						setCurrentSample(i, SolverRandomGenerator.getRand().nextDouble() * (hi - lo) + lo);
 				}
 			}
 		}
@@ -406,7 +409,7 @@ public class SRealJointVariable extends SRealJointVariableBase implements ISolve
 				{
 					// No available sampler, so if bounded, sample uniformly from the bounds
 					if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-						setCurrentSample(i, SolverRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+						setCurrentSample(i, SolverRandomGenerator.getRand().nextDouble() * (hi - lo) + lo);
 				}
 			}
 		}
@@ -421,7 +424,7 @@ public class SRealJointVariable extends SRealJointVariableBase implements ISolve
 
 				// If bounded, sample uniformly from the bounds, otherwise leave current sample value
 				if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-					setCurrentSample(i, SolverRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+					setCurrentSample(i, SolverRandomGenerator.getRand().nextDouble() * (hi - lo) + lo);
 			}
 		}
 	}
@@ -524,12 +527,31 @@ public class SRealJointVariable extends SRealJointVariableBase implements ISolve
     {
     	_sampleArray = null;
     }
+
+	@Override
+	public void addSampleAccumulator(ISampleAccumulator accumulator)
+	{
+		_sampleAccumulators.add(accumulator);
+	}
+	
+	@Override
+	public boolean removeSampleAccumulator(ISampleAccumulator accumulator)
+	{
+		return _sampleAccumulators.remove(accumulator);
+	}
+	
+	@Override
+	public ISampleAccumulator[] getSampleAccumulators()
+	{
+		return _sampleAccumulators.toArray();
+	}
     
 	@Override
 	public final void saveCurrentSample()
 	{
 		if (_sampleArray != null)
 			_sampleArray.add(_sampleValue.clone());
+		_sampleAccumulators.addSample(_outputMsg);
 	}
 
 	@Override
@@ -785,6 +807,16 @@ public class SRealJointVariable extends SRealJointVariableBase implements ISolve
 		return _initialSampleValue;
 	}
 
+	/**
+	 * Reverts to choosing the initial sample value randomly, as if {@link #setInitialSampleValue}
+	 * had never been called.
+	 * @since 0.05
+	 */
+	public final void clearInitialSampleValue()
+	{
+		_initialSampleValueSet = false;
+	}
+
 	// TODO move to ISolverVariableGibbs
 	@Override
 	public final void setBeta(double beta)	// beta = 1/temperature
@@ -863,6 +895,7 @@ public class SRealJointVariable extends SRealJointVariableBase implements ISolve
 		// Clear out sample state
 		_bestSampleValue = _sampleValue;
 		if (_sampleArray != null) _sampleArray.clear();
+		_sampleAccumulators.reset();
 		
 		// Determine which sampler to use
 		if (_samplerSpecificallySpecified)
@@ -905,6 +938,7 @@ public class SRealJointVariable extends SRealJointVariableBase implements ISolve
 		_initialSampleValue = ovar._initialSampleValue;
 		_initialSampleValueSet = ovar._initialSampleValueSet;
 		_sampleArray = ovar._sampleArray;
+		_sampleAccumulators = ovar._sampleAccumulators;
 		_bestSampleValue = ovar._bestSampleValue;
 		_beta = ovar._beta;
 		_defaultSamplerName = ovar._defaultSamplerName;
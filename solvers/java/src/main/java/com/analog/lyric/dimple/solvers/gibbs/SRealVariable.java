@@ -47,6 +47,8 @@ import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.GenericSamplerRegi
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IMCMCSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IRealSamplerClient;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.MHSampler;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.ISampleAccumulator;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.SampleAccumulatorList;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.google.common.primitives.Doubles;
@@ -72,12 +74,17 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 	private double _initialSampleValue = 0;
 	private boolean _initialSampleValueSet = false;
 	private FactorFunction _input;
+	/**
+	 * Single element argument array used to evaluate {@link #_input} without allocating.
+	 */
+	private final RealValue[] _inputArgument = new RealValue[] { RealValue.create() };
 	private RealDomain _domain;
 	private String _defaultSamplerName = DEFAULT_REAL_SAMPLER_NAME;
 	private IMCMCSampler _sampler = null;
 	private IRealConjugateSampler _conjugateSampler = null;
 	private boolean _samplerSpecificallySpecified = false;
 	private ArrayList<Double> _sampleArray;
+	private SampleAccumulatorList _sampleAccumulators = new SampleAccumulatorList();
 	private double _bestSampleValue;
 	private double _beta = 1;
 	private boolean _holdSampleValue = false;
@@ -199,7 +206,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 			// Sum up the potentials from the input and all connected factors
 			if (_input != null)
 			{
-				potential = _input.evalEnergy(new Object[]{_sampleValue});
+				potential = evalInputEnergy(_sampleValue);
 				if (!Doubles.isFinite(potential))
 				{
 					break computeScore;
@@ -344,7 +351,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		{
 			// No input or no available sampler, so if bounded, sample uniformly from the bounds
 			if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-				setCurrentSample(SolverRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+				setCurrentSample(SolverRandomGenerator.getRand().nextDouble() * (hi - lo) + lo);
 		}
 	}
 
@@ -389,9 +396,9 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		else if (_input == null)
 			return 0;
 		else if (_guessWasSet)
-			return _input.evalEnergy(_guessValue);
+			return evalInputEnergy(_guessValue);
 		else
-			return _input.evalEnergy(_sampleValue);
+			return evalInputEnergy(_sampleValue);
 	}
 	
 	@Override
@@ -416,12 +423,31 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
     {
     	_sampleArray = null;
     }
+
+	@Override
+	public void addSampleAccumulator(ISampleAccumulator accumulator)
+	{
+		_sampleAccumulators.add(accumulator);
+	}
+	
+	@Override
+	public boolean removeSampleAccumulator(ISampleAccumulator accumulator)
+	{
+		return _sampleAccumulators.remove(accumulator);
+	}
+	
+	@Override
+	public ISampleAccumulator[] getSampleAccumulators()
+	{
+		return _sampleAccumulators.toArray();
+	}
     
 	@Override
 	public final void saveCurrentSample()
 	{
 		if (_sampleArray != null)
 			_sampleArray.add(_sampleValue);
+		_sampleAccumulators.addSample(_outputMsg);
 	}
 
 	@Override
@@ -439,7 +465,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		else if (_input == null)
 			return 0;
 		else
-			return _input.evalEnergy(new Object[]{_sampleValue});
+			return evalInputEnergy(_sampleValue);
 	}
 	
 	@Override
@@ -486,6 +512,13 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		return _sampleValue;
 	}
 
+	private double evalInputEnergy(double value)
+	{
+		final RealValue[] argument = _inputArgument;
+		argument[0].setDouble(value);
+		return _input.evalEnergy(argument);
+	}
+
 	public final double getBestSample()
 	{
 		return _bestSampleValue;
@@ -636,6 +669,16 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		return _initialSampleValue;
 	}
 
+	/**
+	 * Reverts to choosing the initial sample value randomly, as if {@link #setInitialSampleValue}
+	 * had never been called.
+	 * @since 0.05
+	 */
+	public final void clearInitialSampleValue()
+	{
+		_initialSampleValueSet = false;
+	}
+
 	// TODO move to ISolverVariableGibbs
 	@Override
 	public final void setBeta(double beta)	// beta = 1/temperature
@@ -715,6 +758,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		// Clear out sample state
 		_bestSampleValue = _sampleValue;
 		if (_sampleArray != null) _sampleArray.clear();
+		_sampleAccumulators.reset();
 		
 		// Determine which sampler to use
 		if (_samplerSpecificallySpecified)
@@ -757,6 +801,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		_initialSampleValue = ovar._initialSampleValue;
 		_initialSampleValueSet = ovar._initialSampleValueSet;
 		_sampleArray = ovar._sampleArray;
+		_sampleAccumulators = ovar._sampleAccumulators;
 		_bestSampleValue = ovar._bestSampleValue;
 		_beta = ovar._beta;
 		_defaultSamplerName = ovar._defaultSamplerName;
@@ -21,6 +21,7 @@ import java.util.Collection;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
 import com.analog.lyric.dimple.model.values.IndexedValue;
@@ -41,6 +42,11 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
     protected double[][] _outPortMsgs = null;
     protected int _numPorts;
     protected boolean _isDeterministicDirected;
+    
+    /**
+     * Scratch space for the indices of the current input values.
+     */
+    private int[] _portIndices = null;
     private boolean _visited = false;
     
     /*--------------
@@ -80,7 +86,7 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 		IFactorTable factorTable = getFactorTable();
 
 		final int numPorts = _numPorts;
-		int[] inPortMsgs = new int[numPorts];
+		final int[] inPortMsgs = _portIndices;
 		for (int port = 0; port < numPorts; port++)
 			inPortMsgs[port] = _inPortMsgs[port].getIndex();
 
@@ -104,7 +110,7 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 			return getFactor().getFactorFunction().evalEnergy(_inPortMsgs);
 		}
 		
-		int[] inPortMsgs = new int[_numPorts];
+		final int[] inPortMsgs = _portIndices;
 		for (int port = 0; port < _numPorts; port++)
 			inPortMsgs[port] = _inPortMsgs[port].getIndex();
 
@@ -125,8 +131,28 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 	@Override
 	public void updateNeighborVariableValuesNow(Collection<IndexedValue> oldValues)
 	{
-		// Compute the output values of the deterministic factor function from the input values
 		final Factor factor = _factor;
+		final IFactorTable table = getFactorTableIfComputed();
+		if (table != null && table.isDeterministicDirected() && table.getDomainIndexer().supportsJointIndexing())
+		{
+			// Look up the output indices in the table, which avoids converting the values to objects
+			final JointDomainIndexer domains = table.getDomainIndexer();
+			final int[] indices = _portIndices;
+			for (int port = 0, end = _numPorts; port < end; port++)
+				indices[port] = _inPortMsgs[port].getIndex();
+			domains.jointIndexToIndices(table.sparseIndexToJointIndex(domains.inputIndexFromIndices(indices)), indices);
+			
+			for (int i = 0, end = domains.getOutputSize(); i < end; i++)
+			{
+				final int outputIndex = domains.getOutputDomainIndex(i);
+				final DiscreteValue value = _inPortMsgs[outputIndex];
+				value.setIndex(indices[outputIndex]);
+				((ISolverVariableGibbs)factor.getSibling(outputIndex).getSolver()).setCurrentSample(value);
+			}
+			return;
+		}
+		
+		// Compute the output values of the deterministic factor function from the input values
 		factor.getFactorFunction().evalDeterministic(factor, _inPortMsgs);
 		
 		// Update the directed-to variables with the computed values
@@ -153,6 +179,7 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
     	
 	    _inPortMsgs = new DiscreteValue[_numPorts];
 	    _outPortMsgs = new double[_numPorts][];
+	    _portIndices = new int[_numPorts];
 	    
 	    for (int port = 0; port < _numPorts; port++)
 	    {
@@ -200,6 +227,20 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 		this._outPortMsgs[thisPortNum] = tf._outPortMsgs[otherPortNum];
 	}
 
+	/*-----------------------
+	 * ISolverFactor methods
+	 */
+	
+	/**
+	 * Returns true, since the factor is evaluated through its factor table, which is created
+	 * when the factor is initialized and is only read while sampling.
+	 */
+	@Override
+	public boolean isConcurrentlyEvaluable()
+	{
+		return true;
+	}
+
 	/*--------------------------
 	 * STableFactorBase methods
 	 */
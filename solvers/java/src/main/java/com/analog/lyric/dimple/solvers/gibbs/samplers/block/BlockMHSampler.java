@@ -114,7 +114,7 @@ public class BlockMHSampler implements ISampler, IBlockUpdater
 
 		// Accept or reject
 		final double rejectionThreshold = Math.exp(LPrevious - LProposed + proposal.hastingsTerm);
-		if (SolverRandomGenerator.rand.nextDouble() < rejectionThreshold)
+		if (SolverRandomGenerator.getRand().nextDouble() < rejectionThreshold)
 			setNextSampleValue(proposalValue);		// Accept
 		else
 			setNextSampleValue(sampleValue);		// Reject
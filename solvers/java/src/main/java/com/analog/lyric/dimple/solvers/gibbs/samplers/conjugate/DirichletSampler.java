@@ -91,7 +91,7 @@ public class DirichletSampler implements IRealJointConjugateSampler
 		int numZeros = 0;
 		for (int i = 0; i < dimension; i++)
 		{
-			double nextSample = SolverRandomGenerator.randGamma.nextDouble(parameters.getAlphaMinusOne(i) + 1, 1);
+			double nextSample = SolverRandomGenerator.getRand().nextGamma(parameters.getAlphaMinusOne(i) + 1, 1);
 			sample[i] = nextSample;
 			sum += nextSample;
 			if (nextSample == 0)
@@ -119,7 +119,7 @@ public class DirichletSampler implements IRealJointConjugateSampler
 		{
 			// Corner case where all samples were zero
 			// Choose one sample value at random, make that (nearly) one, and the others (nearly) zero
-			int randomChoice = (int)(SolverRandomGenerator.rand.nextDouble() * dimension);
+			int randomChoice = (int)(SolverRandomGenerator.getRand().nextDouble() * dimension);
 			if (randomChoice > dimension - 1) randomChoice = dimension - 1;
 			for (int i = 0; i < dimension; i++)
 				if (i != randomChoice)
@@ -67,7 +67,7 @@ public class GammaSampler implements IRealConjugateSampler
 	{
 		double alphaMinusOne = parameters.getAlphaMinusOne();
 		double beta = parameters.getBeta();
-		return SolverRandomGenerator.randGamma.nextDouble(alphaMinusOne + 1, beta);
+		return SolverRandomGenerator.getRand().nextGamma(alphaMinusOne + 1, beta);
 	}
 	
 	@Override
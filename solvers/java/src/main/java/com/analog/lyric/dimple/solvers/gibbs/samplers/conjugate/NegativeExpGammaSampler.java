@@ -67,7 +67,7 @@ public class NegativeExpGammaSampler implements IRealConjugateSampler
 	{
 		double alphaMinusOne = parameters.getAlphaMinusOne();
 		double beta = parameters.getBeta();
-		return -Math.log(SolverRandomGenerator.randGamma.nextDouble(alphaMinusOne + 1, beta));
+		return -Math.log(SolverRandomGenerator.getRand().nextGamma(alphaMinusOne + 1, beta));
 	}
 	
 	@Override
@@ -76,9 +76,9 @@ public class NormalSampler implements IRealConjugateSampler
 		double mean = parameters.getMean();
 		double precision = parameters.getPrecision();
 		if (precision > 0)
-			return mean + SolverRandomGenerator.rand.nextGaussian() / Math.sqrt(precision);
+			return SolverRandomGenerator.getRand().nextNormal(mean, 1 / Math.sqrt(precision));
 		else
-			return mean + SolverRandomGenerator.rand.nextGaussian() * MAX_SIGMA;
+			return SolverRandomGenerator.getRand().nextNormal(mean, MAX_SIGMA);
 	}
 
 	@Override
@@ -43,7 +43,7 @@ public class CDFSampler implements IDiscreteDirectSampler
 	@Override
 	public void nextSample(DiscreteValue sampleValue, double[] energy, double minEnergy, IDiscreteSamplerClient samplerClient)
 	{		
-		final RandomGenerator rand = SolverRandomGenerator.rand;
+		final RandomGenerator rand = SolverRandomGenerator.getRand();
 		final int length = energy.length;
 		int sampleIndex;
 
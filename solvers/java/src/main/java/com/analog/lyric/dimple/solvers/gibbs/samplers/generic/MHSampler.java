@@ -58,7 +58,7 @@ public class MHSampler implements IMCMCSampler
 
 		// Accept or reject
 		final double rejectionThreshold = Math.exp(LPrevious - LProposed + proposal.hastingsTerm);
-		if (SolverRandomGenerator.rand.nextDouble() < rejectionThreshold)
+		if (SolverRandomGenerator.getRand().nextDouble() < rejectionThreshold)
 			samplerClient.setNextSampleValue(proposalValue);		// Accept
 		else
 			samplerClient.setNextSampleValue(sampleValue);			// Reject
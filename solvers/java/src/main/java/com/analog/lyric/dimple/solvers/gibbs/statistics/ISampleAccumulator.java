@@ -0,0 +1,55 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.statistics;
+
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.gibbs.ISolverVariableGibbs;
+
+/**
+ * Computes a statistic of the samples of a Gibbs variable on-line, one sample at a time,
+ * without keeping every sample.
+ * <p>
+ * Accumulators are attached to a variable using
+ * {@link ISolverVariableGibbs#addSampleAccumulator(ISampleAccumulator)}. Every sample
+ * saved by the variable is then passed to {@link #add(Value)}. Attached accumulators are
+ * {@linkplain #reset() reset} when the solver is initialized.
+ * <p>
+ * Implementations should use bounded memory regardless of the number of samples and
+ * should not allocate in {@link #add(Value)}.
+ *
+ * @since 0.05
+ */
+public interface ISampleAccumulator
+{
+	/**
+	 * Adds a single sample.
+	 * <p>
+	 * The {@code sample} object is owned by the caller and may be modified after this returns, so it
+	 * must not be retained.
+	 */
+	public void add(Value sample);
+
+	/**
+	 * The number of samples passed to {@link #add(Value)} since construction or the last {@link #reset()}.
+	 */
+	public long getCount();
+
+	/**
+	 * Discards all of the accumulated samples.
+	 */
+	public void reset();
+}
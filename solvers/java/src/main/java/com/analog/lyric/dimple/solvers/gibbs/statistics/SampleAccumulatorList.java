@@ -0,0 +1,144 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.statistics;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.util.misc.Internal;
+
+/**
+ * The {@link ISampleAccumulator}s attached to a single Gibbs solver variable.
+ * <p>
+ * Stored as an array so that passing a sample to all of the accumulators does not allocate.
+ *
+ * @since 0.05
+ */
+@Internal
+@NotThreadSafe
+public final class SampleAccumulatorList
+{
+	/*-------
+	 * State
+	 */
+
+	private static final ISampleAccumulator[] EMPTY = new ISampleAccumulator[0];
+
+	private ISampleAccumulator[] _accumulators = EMPTY;
+
+	/*---------
+	 * Methods
+	 */
+
+	/**
+	 * Appends {@code accumulator} unless it is already in the list.
+	 */
+	public void add(ISampleAccumulator accumulator)
+	{
+		if (accumulator == null)
+		{
+			throw new NullPointerException("null sample accumulator");
+		}
+
+		if (indexOf(accumulator) < 0)
+		{
+			final int size = _accumulators.length;
+			_accumulators = Arrays.copyOf(_accumulators, size + 1);
+			_accumulators[size] = accumulator;
+		}
+	}
+
+	/**
+	 * Passes {@code sample} to each accumulator in the list.
+	 */
+	public void addSample(Value sample)
+	{
+		for (ISampleAccumulator accumulator : _accumulators)
+		{
+			accumulator.add(sample);
+		}
+	}
+
+	/**
+	 * Removes all accumulators from the list.
+	 */
+	public void clear()
+	{
+		_accumulators = EMPTY;
+	}
+
+	public boolean isEmpty()
+	{
+		return _accumulators.length == 0;
+	}
+
+	/**
+	 * Removes {@code accumulator} from the list, returning false if it was not in the list.
+	 */
+	public boolean remove(ISampleAccumulator accumulator)
+	{
+		final int index = indexOf(accumulator);
+		if (index < 0)
+		{
+			return false;
+		}
+
+		final int size = _accumulators.length;
+		final ISampleAccumulator[] accumulators = new ISampleAccumulator[size - 1];
+		System.arraycopy(_accumulators, 0, accumulators, 0, index);
+		System.arraycopy(_accumulators, index + 1, accumulators, index, size - index - 1);
+		_accumulators = accumulators;
+		return true;
+	}
+
+	/**
+	 * Invokes {@link ISampleAccumulator#reset()} on each accumulator in the list.
+	 */
+	public void reset()
+	{
+		for (ISampleAccumulator accumulator : _accumulators)
+		{
+			accumulator.reset();
+		}
+	}
+
+	/**
+	 * Returns a copy of the accumulators in the order in which they were added.
+	 */
+	public ISampleAccumulator[] toArray()
+	{
+		return _accumulators.clone();
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private int indexOf(ISampleAccumulator accumulator)
+	{
+		for (int i = 0, end = _accumulators.length; i < end; ++i)
+		{
+			if (_accumulators[i] == accumulator)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.statistics;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Counts samples in bins.
+ * <p>
+ * A histogram constructed using {@link #SampleHistogram(DiscreteDomain)} has one bin for each
+ * element of a discrete domain and counts samples by their {@link Value#getIndex()}. One constructed
+ * using {@link #SampleHistogram(double, double, int)} divides a real interval into equal width bins
+ * and counts samples by their {@link Value#getDouble()}, keeping separate counts of samples that
+ * fall below or above the interval.
+ *
+ * @since 0.05
+ */
+@NotThreadSafe
+public class SampleHistogram implements ISampleAccumulator
+{
+	/*-------
+	 * State
+	 */
+
+	private final long[] _counts;
+	private final boolean _discrete;
+	private final double _lowerBound;
+	private final double _upperBound;
+	private final double _binsPerUnit;
+
+	private long _underflowCount;
+	private long _overflowCount;
+	private long _count;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Constructs histogram with one bin for each element of {@code domain}.
+	 */
+	public SampleHistogram(DiscreteDomain domain)
+	{
+		_counts = new long[domain.size()];
+		_discrete = true;
+		_lowerBound = 0;
+		_upperBound = _counts.length;
+		_binsPerUnit = 1;
+	}
+
+	/**
+	 * Constructs histogram with {@code nBins} equal width bins that cover the interval
+	 * [{@code lowerBound}, {@code upperBound}).
+	 */
+	public SampleHistogram(double lowerBound, double upperBound, int nBins)
+	{
+		if (nBins < 1)
+		{
+			throw new DimpleException("Number of histogram bins must be positive: %d", nBins);
+		}
+		if (!(lowerBound < upperBound) || Double.isInfinite(upperBound - lowerBound))
+		{
+			throw new DimpleException("Bad histogram bounds [%g, %g)", lowerBound, upperBound);
+		}
+
+		_counts = new long[nBins];
+		_discrete = false;
+		_lowerBound = lowerBound;
+		_upperBound = upperBound;
+		_binsPerUnit = nBins / (upperBound - lowerBound);
+	}
+
+	/*------------------------------
+	 * ISampleAccumulator methods
+	 */
+
+	@Override
+	public void add(Value sample)
+	{
+		if (_discrete)
+		{
+			final int index = sample.getIndex();
+			if (index < 0 || index >= _counts.length)
+			{
+				throw new DimpleException("Sample index %d out of range for histogram with %d bins", index, _counts.length);
+			}
+			++_counts[index];
+			++_count;
+		}
+		else
+		{
+			add(sample.getDouble());
+		}
+	}
+
+	@Override
+	public long getCount()
+	{
+		return _count;
+	}
+
+	@Override
+	public void reset()
+	{
+		Arrays.fill(_counts, 0);
+		_underflowCount = 0;
+		_overflowCount = 0;
+		_count = 0;
+	}
+
+	/*--------------------------
+	 * SampleHistogram methods
+	 */
+
+	/**
+	 * Adds a real sample.
+	 * <p>
+	 * For a histogram over a discrete domain, {@code sample} is interpreted as an element index.
+	 */
+	public void add(double sample)
+	{
+		if (Double.isNaN(sample))
+		{
+			throw new DimpleException("Cannot add NaN to histogram");
+		}
+		
+		++_count;
+		if (sample < _lowerBound)
+		{
+			++_underflowCount;
+		}
+		else if (sample >= _upperBound)
+		{
+			++_overflowCount;
+		}
+		else
+		{
+			// Guard against rounding up to the upper bound.
+			final int bin = Math.min((int)((sample - _lowerBound) * _binsPerUnit), _counts.length - 1);
+			++_counts[bin];
+		}
+	}
+
+	/**
+	 * The lower bound of the ith bin. For a histogram over a discrete domain, this is simply {@code i}.
+	 */
+	public double getBinLowerBound(int i)
+	{
+		return _lowerBound + i / _binsPerUnit;
+	}
+
+	/**
+	 * Returns a copy of the counts for each bin.
+	 */
+	public long[] getCounts()
+	{
+		return _counts.clone();
+	}
+
+	/**
+	 * Returns the fraction of all samples added to each bin, including samples that were outside
+	 * the range of the histogram in the total.
+	 */
+	public double[] getFrequencies()
+	{
+		final int nBins = _counts.length;
+		final double[] frequencies = new double[nBins];
+		if (_count > 0)
+		{
+			for (int i = 0; i < nBins; ++i)
+			{
+				frequencies[i] = (double)_counts[i] / _count;
+			}
+		}
+		return frequencies;
+	}
+
+	public int getNumberOfBins()
+	{
+		return _counts.length;
+	}
+
+	/**
+	 * The number of samples that were greater than or equal to the histogram's upper bound.
+	 */
+	public long getOverflowCount()
+	{
+		return _overflowCount;
+	}
+
+	/**
+	 * The number of samples that were less than the histogram's lower bound.
+	 */
+	public long getUnderflowCount()
+	{
+		return _underflowCount;
+	}
+}
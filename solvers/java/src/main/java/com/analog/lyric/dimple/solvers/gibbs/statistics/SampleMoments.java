@@ -0,0 +1,200 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.statistics;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.values.RealJointValue;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Accumulates the running mean and variance of samples using Welford's algorithm, which
+ * is numerically stable for long runs.
+ * <p>
+ * Scalar samples are converted using {@link Value#getDouble()}, so discrete variables must have
+ * numeric domains. Samples of {@link RealJointValue} are accumulated separately for each element.
+ *
+ * @since 0.05
+ */
+@NotThreadSafe
+public class SampleMoments implements ISampleAccumulator
+{
+	/*-------
+	 * State
+	 */
+
+	private long _count;
+	private double[] _means = null;
+
+	/**
+	 * Sums of squared differences from the current mean.
+	 */
+	private double[] _m2 = null;
+
+	/*------------------------------
+	 * ISampleAccumulator methods
+	 */
+
+	@Override
+	public void add(Value sample)
+	{
+		if (sample instanceof RealJointValue)
+		{
+			add(((RealJointValue)sample).getObject());
+		}
+		else
+		{
+			add(sample.getDouble());
+		}
+	}
+
+	@Override
+	public long getCount()
+	{
+		return _count;
+	}
+
+	@Override
+	public void reset()
+	{
+		_count = 0;
+		_means = null;
+		_m2 = null;
+	}
+
+	/*-------------------------
+	 * SampleMoments methods
+	 */
+
+	/**
+	 * Adds a scalar sample.
+	 */
+	public void add(double sample)
+	{
+		ensureDimension(1);
+		addElement(0, sample, ++_count);
+	}
+
+	/**
+	 * Adds a vector sample.
+	 */
+	public void add(double[] sample)
+	{
+		ensureDimension(sample.length);
+		final long count = ++_count;
+		for (int i = 0, end = sample.length; i < end; ++i)
+		{
+			addElement(i, sample[i], count);
+		}
+	}
+
+	/**
+	 * The number of elements in each sample, or zero if there are no samples.
+	 */
+	public int getDimension()
+	{
+		return _means == null ? 0 : _means.length;
+	}
+
+	/**
+	 * Mean of scalar samples, or the first element of vector samples. NaN if there are no samples.
+	 */
+	public double getMean()
+	{
+		return getMean(0);
+	}
+
+	/**
+	 * Mean of the ith element of the samples. NaN if there are no samples.
+	 */
+	public double getMean(int i)
+	{
+		return _count == 0 ? Double.NaN : _means[i];
+	}
+
+	/**
+	 * Returns a copy of the element-wise means of the samples.
+	 */
+	public double[] getMeans()
+	{
+		return _means == null ? new double[0] : _means.clone();
+	}
+
+	/**
+	 * Unbiased sample variance of scalar samples, or the first element of vector samples.
+	 * NaN if there are fewer than two samples.
+	 */
+	public double getVariance()
+	{
+		return getVariance(0);
+	}
+
+	/**
+	 * Unbiased sample variance of the ith element of the samples. NaN if there are fewer than two samples.
+	 */
+	public double getVariance(int i)
+	{
+		return _count < 2 ? Double.NaN : _m2[i] / (_count - 1);
+	}
+
+	/**
+	 * Returns the element-wise unbiased variances of the samples.
+	 */
+	public double[] getVariances()
+	{
+		final int dimension = getDimension();
+		final double[] variances = new double[dimension];
+		for (int i = 0; i < dimension; ++i)
+		{
+			variances[i] = getVariance(i);
+		}
+		return variances;
+	}
+
+	/**
+	 * Square root of {@link #getVariance()}.
+	 */
+	public double getStandardDeviation()
+	{
+		return Math.sqrt(getVariance());
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void addElement(int i, double sample, long count)
+	{
+		final double delta = sample - _means[i];
+		_means[i] += delta / count;
+		_m2[i] += delta * (sample - _means[i]);
+	}
+
+	private void ensureDimension(int dimension)
+	{
+		if (_means == null)
+		{
+			_means = new double[dimension];
+			_m2 = new double[dimension];
+		}
+		else if (_means.length != dimension)
+		{
+			throw new DimpleException("Sample dimension %d does not match previous dimension %d", dimension, _means.length);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.statistics;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Estimates quantiles of scalar samples using the P<sup>2</sup> algorithm of Jain and Chlamtac,
+ * which keeps just five markers for each quantile instead of the samples themselves.
+ * <p>
+ * Samples are converted using {@link Value#getDouble()}. The estimates are exact for the first
+ * five samples and approximate thereafter.
+ *
+ * @since 0.05
+ */
+@NotThreadSafe
+public class SampleQuantiles implements ISampleAccumulator
+{
+	/*-------
+	 * State
+	 */
+
+	private static final int NMARKERS = 5;
+
+	private final double[] _probabilities;
+
+	/**
+	 * Marker heights, {@link #NMARKERS} per quantile. Also holds the first few samples
+	 * before there are enough to initialize the markers.
+	 */
+	private final double[] _heights;
+
+	/**
+	 * Actual marker positions, {@link #NMARKERS} per quantile.
+	 */
+	private final double[] _positions;
+
+	/**
+	 * Desired marker positions, {@link #NMARKERS} per quantile.
+	 */
+	private final double[] _desired;
+
+	private long _count;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Constructs accumulator that estimates the quantiles for each of the given {@code probabilities},
+	 * each of which must be in the range [0,1].
+	 */
+	public SampleQuantiles(double ... probabilities)
+	{
+		if (probabilities.length == 0)
+		{
+			throw new DimpleException("No quantile probabilities specified");
+		}
+		for (double p : probabilities)
+		{
+			if (!(p >= 0 && p <= 1))
+			{
+				throw new DimpleException("Quantile probability %g not in range [0,1]", p);
+			}
+		}
+
+		_probabilities = probabilities.clone();
+		final int size = NMARKERS * probabilities.length;
+		_heights = new double[size];
+		_positions = new double[size];
+		_desired = new double[size];
+	}
+
+	/*------------------------------
+	 * ISampleAccumulator methods
+	 */
+
+	@Override
+	public void add(Value sample)
+	{
+		add(sample.getDouble());
+	}
+
+	@Override
+	public long getCount()
+	{
+		return _count;
+	}
+
+	@Override
+	public void reset()
+	{
+		_count = 0;
+	}
+
+	/*---------------------------
+	 * SampleQuantiles methods
+	 */
+
+	/**
+	 * Adds a scalar sample.
+	 */
+	public void add(double sample)
+	{
+		if (Double.isNaN(sample))
+		{
+			throw new DimpleException("Cannot add NaN to quantile estimator");
+		}
+
+		final int nQuantiles = _probabilities.length;
+
+		if (_count < NMARKERS)
+		{
+			final int n = (int)_count;
+			for (int j = 0; j < nQuantiles; ++j)
+			{
+				_heights[j * NMARKERS + n] = sample;
+			}
+			if (++_count == NMARKERS)
+			{
+				initializeMarkers();
+			}
+			return;
+		}
+
+		++_count;
+		for (int j = 0; j < nQuantiles; ++j)
+		{
+			addToQuantile(j * NMARKERS, _probabilities[j], sample);
+		}
+	}
+
+	/**
+	 * Returns the probabilities of the estimated quantiles in the order they were specified in the constructor.
+	 */
+	public double[] getProbabilities()
+	{
+		return _probabilities.clone();
+	}
+
+	/**
+	 * Estimate of the quantile for the ith probability passed to the constructor. NaN if there are no samples.
+	 */
+	public double getQuantile(int i)
+	{
+		if (_count == 0)
+		{
+			return Double.NaN;
+		}
+
+		final int offset = i * NMARKERS;
+		if (_count < NMARKERS)
+		{
+			final int n = (int)_count;
+			final double[] sorted = Arrays.copyOfRange(_heights, offset, offset + n);
+			Arrays.sort(sorted);
+			return sorted[(int)Math.round(_probabilities[i] * (n - 1))];
+		}
+
+		final double p = _probabilities[i];
+		if (p == 0.0)
+		{
+			return _heights[offset];
+		}
+		else if (p == 1.0)
+		{
+			return _heights[offset + NMARKERS - 1];
+		}
+		return _heights[offset + 2];
+	}
+
+	/**
+	 * Returns estimates of all of the quantiles.
+	 */
+	public double[] getQuantiles()
+	{
+		final int nQuantiles = _probabilities.length;
+		final double[] quantiles = new double[nQuantiles];
+		for (int i = 0; i < nQuantiles; ++i)
+		{
+			quantiles[i] = getQuantile(i);
+		}
+		return quantiles;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void addToQuantile(int offset, double p, double sample)
+	{
+		final double[] heights = _heights;
+		final double[] positions = _positions;
+		final double[] desired = _desired;
+
+		// Find the cell containing the sample, adjusting the extreme markers if necessary.
+		int k;
+		if (sample < heights[offset])
+		{
+			heights[offset] = sample;
+			k = 0;
+		}
+		else if (sample >= heights[offset + NMARKERS - 1])
+		{
+			heights[offset + NMARKERS - 1] = sample;
+			k = NMARKERS - 2;
+		}
+		else
+		{
+			k = 0;
+			while (sample >= heights[offset + k + 1])
+			{
+				++k;
+			}
+		}
+
+		for (int i = k + 1; i < NMARKERS; ++i)
+		{
+			positions[offset + i] += 1;
+		}
+		desired[offset + 1] += p / 2;
+		desired[offset + 2] += p;
+		desired[offset + 3] += (1 + p) / 2;
+		desired[offset + 4] += 1;
+
+		// Adjust the heights of the middle markers if they are off from their desired positions.
+		for (int i = offset + 1, end = offset + NMARKERS - 1; i < end; ++i)
+		{
+			final double d = desired[i] - positions[i];
+			if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1))
+			{
+				final int sign = d > 0 ? 1 : -1;
+				final double height = parabolic(i, sign);
+				if (heights[i - 1] < height && height < heights[i + 1])
+				{
+					heights[i] = height;
+				}
+				else
+				{
+					heights[i] += sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]);
+				}
+				positions[i] += sign;
+			}
+		}
+	}
+
+	private void initializeMarkers()
+	{
+		for (int j = 0, nQuantiles = _probabilities.length; j < nQuantiles; ++j)
+		{
+			final int offset = j * NMARKERS;
+			final double p = _probabilities[j];
+			Arrays.sort(_heights, offset, offset + NMARKERS);
+			for (int i = 0; i < NMARKERS; ++i)
+			{
+				_positions[offset + i] = i + 1;
+			}
+			_desired[offset] = 1;
+			_desired[offset + 1] = 1 + 2 * p;
+			_desired[offset + 2] = 1 + 4 * p;
+			_desired[offset + 3] = 3 + 2 * p;
+			_desired[offset + 4] = 5;
+		}
+	}
+
+	/**
+	 * Piecewise-parabolic prediction of new height for marker {@code i} moved by {@code d}.
+	 */
+	private double parabolic(int i, int d)
+	{
+		final double[] q = _heights;
+		final double[] n = _positions;
+		return q[i] + d / (n[i + 1] - n[i - 1]) *
+			((n[i] - n[i - 1] + d) * (q[i + 1] - q[i]) / (n[i + 1] - n[i]) +
+				(n[i + 1] - n[i] - d) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+	}
+}
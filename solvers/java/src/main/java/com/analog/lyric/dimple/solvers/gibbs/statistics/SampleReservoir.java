@@ -0,0 +1,218 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.statistics;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.values.DiscreteValue;
+import com.analog.lyric.dimple.model.values.RealJointValue;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+
+/**
+ * Keeps a bounded, uniformly chosen subset of thinned samples.
+ * <p>
+ * Only every {@code thinning}th sample is considered. Until {@code capacity} samples have been
+ * considered, all of them are kept. After that, each new sample replaces a randomly chosen kept
+ * sample with the probability that keeps the subset uniform over all considered samples, using
+ * {@link SolverRandomGenerator#getRand()}.
+ * <p>
+ * Samples are stored in a {@code double} array. Discrete samples are stored as their element
+ * {@linkplain Value#getIndex() index}, real samples by their value, and {@link RealJointValue} samples
+ * as consecutive elements.
+ *
+ * @since 0.05
+ */
+@NotThreadSafe
+public class SampleReservoir implements ISampleAccumulator
+{
+	/*-------
+	 * State
+	 */
+
+	private final int _capacity;
+	private final int _thinning;
+
+	private double[] _samples = null;
+	private int _dimension = 0;
+
+	/**
+	 * Number of samples passed to {@link #add}.
+	 */
+	private long _count;
+
+	/**
+	 * Number of samples that survived thinning.
+	 */
+	private long _thinnedCount;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Constructs reservoir that keeps up to {@code capacity} of every {@code thinning}th sample.
+	 */
+	public SampleReservoir(int capacity, int thinning)
+	{
+		if (capacity < 1)
+		{
+			throw new DimpleException("Reservoir capacity must be positive: %d", capacity);
+		}
+		if (thinning < 1)
+		{
+			throw new DimpleException("Reservoir thinning interval must be positive: %d", thinning);
+		}
+		_capacity = capacity;
+		_thinning = thinning;
+	}
+
+	/**
+	 * Constructs reservoir that keeps up to {@code capacity} of all samples.
+	 */
+	public SampleReservoir(int capacity)
+	{
+		this(capacity, 1);
+	}
+
+	/*------------------------------
+	 * ISampleAccumulator methods
+	 */
+
+	@Override
+	public void add(Value sample)
+	{
+		final int slot = nextSlot(sample instanceof RealJointValue ? ((RealJointValue)sample).getObject().length : 1);
+		if (slot >= 0)
+		{
+			if (sample instanceof RealJointValue)
+			{
+				System.arraycopy(((RealJointValue)sample).getObject(), 0, _samples, slot * _dimension, _dimension);
+			}
+			else
+			{
+				_samples[slot] = sample instanceof DiscreteValue ? sample.getIndex() : sample.getDouble();
+			}
+		}
+	}
+
+	@Override
+	public long getCount()
+	{
+		return _count;
+	}
+
+	@Override
+	public void reset()
+	{
+		_count = 0;
+		_thinnedCount = 0;
+		_samples = null;
+		_dimension = 0;
+	}
+
+	/*---------------------------
+	 * SampleReservoir methods
+	 */
+
+	/**
+	 * Adds a scalar sample.
+	 */
+	public void add(double sample)
+	{
+		final int slot = nextSlot(1);
+		if (slot >= 0)
+		{
+			_samples[slot] = sample;
+		}
+	}
+
+	public int getCapacity()
+	{
+		return _capacity;
+	}
+
+	/**
+	 * The number of elements in each sample, or zero if there are no samples.
+	 */
+	public int getDimension()
+	{
+		return _dimension;
+	}
+
+	/**
+	 * Returns a copy of the kept samples. Samples with more than one element are laid out
+	 * consecutively, so that element i of sample j is at {@code j * }{@link #getDimension()}{@code + i}.
+	 * <p>
+	 * The samples are not in any particular order.
+	 */
+	public double[] getSamples()
+	{
+		return _samples == null ? new double[0] : Arrays.copyOf(_samples, size() * _dimension);
+	}
+
+	public int getThinning()
+	{
+		return _thinning;
+	}
+
+	/**
+	 * The number of samples currently kept.
+	 */
+	public int size()
+	{
+		return (int)Math.min(_thinnedCount, _capacity);
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Counts a new sample and returns the slot in which it should be stored or -1 if it should
+	 * be discarded.
+	 */
+	private int nextSlot(int dimension)
+	{
+		if (_samples == null)
+		{
+			_samples = new double[_capacity * dimension];
+			_dimension = dimension;
+		}
+		else if (dimension != _dimension)
+		{
+			throw new DimpleException("Sample dimension %d does not match previous dimension %d", dimension, _dimension);
+		}
+
+		if (_count++ % _thinning != 0)
+		{
+			return -1;
+		}
+
+		final long n = _thinnedCount++;
+		if (n < _capacity)
+		{
+			return (int)n;
+		}
+
+		final long slot = (long)(SolverRandomGenerator.getRand().nextDouble() * (n + 1));
+		return slot < _capacity ? (int)slot : -1;
+	}
+}
@@ -42,4 +42,13 @@ public interface ISolverFactor extends ISolverNode
 	public int[][] getPossibleBeliefIndices() ;
 	
 	public void setDirectedTo(int [] indices);
+	
+	/**
+	 * True if this factor may be evaluated by several threads at once, for instance while
+	 * updating the variables of a Gibbs color class or running several Gibbs chains that
+	 * share the model's factor functions.
+	 * 
+	 * @since 0.05
+	 */
+	public boolean isConcurrentlyEvaluable();
 }
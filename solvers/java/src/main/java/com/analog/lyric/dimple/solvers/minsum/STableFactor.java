@@ -141,7 +141,8 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	@Override
 	protected void setTableRepresentation(IFactorTable table)
 	{
-		table.setRepresentation(FactorTableRepresentation.SPARSE_ENERGY_WITH_INDICES);
+		// The update engine uses the packed indices, so don't force creation of per-entry index arrays.
+		table.setRepresentation(FactorTableRepresentation.SPARSE_ENERGY);
 	}
 	
 	/*----------------------
@@ -203,7 +204,7 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	@Override
 	public double getFactorTableValue(int index)
 	{
-		return getFactorTable().getEnergiesSparseUnsafe()[index];
+		return getFactorTable().getEnergyForSparseIndex(index);
 	}
 	
 	@Override
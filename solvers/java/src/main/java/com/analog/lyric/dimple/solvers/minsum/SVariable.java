@@ -166,23 +166,39 @@ public class SVariable extends SDiscreteVariableDoubleArray
 
 	@Override
 	public double[] getBelief()
+	{
+		return getBelief(null);
+	}
+
+	@Override
+	public double[] getBelief(double[] belief)
 	{
 
 		double[] priors = _input;
-		double[] outBelief = new double[priors.length];
 		int numValue = priors.length;
+		double[] outBelief = belief != null && belief.length == numValue ? belief : new double[numValue];
 		int numPorts = _var.getSiblingCount();
 
 
+		double minPotential = Double.POSITIVE_INFINITY;
 		for (int i = 0; i < numValue; i++)
 		{
 			double sum = priors[i];
 			for (int port = 0; port < numPorts; port++) sum += _inputMessages[port][i];
 			outBelief[i] = sum;
+			if (sum < minPotential) minPotential = sum;
 		}
 
-		// Convert to probabilities since that's what the interface expects
-		return MessageConverter.toProb(outBelief);
+		// Convert to probabilities since that's what the interface expects,
+		// in the same way as MessageConverter.toProb but without another array
+		double total = 0;
+		for (int i = 0; i < numValue; i++)
+		{
+			outBelief[i] = Math.exp(-(outBelief[i] - minPotential));
+			total += outBelief[i];
+		}
+		for (int i = 0; i < numValue; i++) outBelief[i] /= total;
+		return outBelief;
 	}
 
 
@@ -16,7 +16,10 @@
 
 package com.analog.lyric.dimple.solvers.minsum;
 
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.OffHeapFactorTable;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.solvers.core.DistanceTransform;
 
 /*
  * Provides the update and updateEdge logic for minsum
@@ -25,18 +28,24 @@ public class TableFactorEngine
 {
 	STableFactor _tableFactor;
 	Factor _factor;
+	
+	// Non-null if the factor is a pairwise distance factor whose messages can be computed without the table
+	private final DistanceTransform _distanceTransform;
+	
+	// Scratch space for reading an OffHeapFactorTable in blocks
+	private double[] _energyBlock = null;
+	private int[] _indexBlock = null;
 
 	public TableFactorEngine(STableFactor tableFactor)
 	{
 		_tableFactor = tableFactor;
 		_factor = _tableFactor.getFactor();
+		_distanceTransform = DistanceTransform.forFactor(_factor);
 	}
 	
 	public void updateEdge(int outPortNum)
 	{
-	    int[][] table = _tableFactor.getFactorTable().getIndicesSparseUnsafe();
-	    double[] values = _tableFactor.getFactorTable().getEnergiesSparseUnsafe();
-	    int tableLength = table.length;
+	    final DistanceTransform distanceTransform = getDistanceTransform();
 	    final int numPorts = _factor.getSiblingCount();
 
 
@@ -55,24 +64,38 @@ public class TableFactorEngine
         }
 
         
-        for (int i = 0; i < outputMsgLength; i++)
-        	outputMsgs[i] = Double.POSITIVE_INFINITY;
-
         double [][] inPortMsgs = _tableFactor.getInPortMsgs();
         
-	    // Run through each row of the function table
-        for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+        if (distanceTransform != null)
         {
-        	double L = values[tableIndex];
-        	int[] tableRow = table[tableIndex];
-        	int outputIndex = tableRow[outPortNum];
-
-        	for (int inPortNum = 0; inPortNum < numPorts; inPortNum++)
-        		if (inPortNum != outPortNum)
-        			L += inPortMsgs[inPortNum][tableRow[inPortNum]];
-        	
-        	if (L < outputMsgs[outputIndex])
-        		outputMsgs[outputIndex] = L;				// Use the minimum value
+        	// Pairwise distance factor, so the table need not be visited
+        	distanceTransform.minConvolve(inPortMsgs[1 - outPortNum], outputMsgs);
+        }
+        else
+        {
+        	for (int i = 0; i < outputMsgLength; i++)
+        		outputMsgs[i] = Double.POSITIVE_INFINITY;
+
+        	IFactorTable factorTable = _tableFactor.getFactorTable();
+        	if (factorTable instanceof OffHeapFactorTable)
+        	{
+        		// Read the table in blocks rather than through heap copies of the whole table
+        		OffHeapFactorTable offHeapTable = (OffHeapFactorTable)factorTable;
+        		double[] values = getEnergyBlock();
+        		int[] indices = getIndexBlock(numPorts);
+        		for (int si = 0, tableSize = offHeapTable.sparseSize(); si < tableSize;)
+        		{
+        			int tableLength = offHeapTable.readEnergiesSparse(si, values, indices);
+        			minOverTableEdge(values, indices, tableLength, numPorts, outPortNum, inPortMsgs, outputMsgs);
+        			si += tableLength;
+        		}
+        	}
+        	else
+        	{
+        		double[] values = factorTable.getEnergiesSparseUnsafe();
+        		int[] indices = factorTable.getPackedIndicesSparseUnsafe();
+        		minOverTableEdge(values, indices, values.length, numPorts, outPortNum, inPortMsgs, outputMsgs);
+        	}
         }
 
 	    // Normalize the outputs
@@ -105,9 +128,15 @@ public class TableFactorEngine
 	
 	public void update()
 	{
-	    int[][] table = _tableFactor.getFactorTable().getIndicesSparseUnsafe();
-	    double[] values = _tableFactor.getFactorTable().getEnergiesSparseUnsafe();
-	    int tableLength = table.length;
+		if (getDistanceTransform() != null)
+		{
+			// Each port's message only depends on the other port's input, so this is the same as updating each edge
+			for (int port = 0; port < 2; port++)
+				updateEdge(port);
+			return;
+		}
+		
+	    IFactorTable factorTable = _tableFactor.getFactorTable();
 	    int numPorts = _factor.getSiblingCount();
 	    double [][] outPortMsgs = _tableFactor.getOutPortMsgs();
 
@@ -133,27 +162,25 @@ public class TableFactorEngine
 	    
 	    double [][] inPortMsgs = _tableFactor.getInPortMsgs();
 
-	    
-	    // Run through each row of the function table
-	    for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+	    if (factorTable instanceof OffHeapFactorTable)
 	    {
-	    	int[] tableRow = table[tableIndex];
-	    	
-	    	// Sum up the function value plus the messages on all ports
-	    	double L = values[tableIndex];
-	    	for (int port = 0; port < numPorts; port++)
-	    		L += inPortMsgs[port][tableRow[port]];
-
-			// Run through each output port
-	    	for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
+	    	// Read the table in blocks rather than through heap copies of the whole table
+	    	OffHeapFactorTable offHeapTable = (OffHeapFactorTable)factorTable;
+	    	double[] values = getEnergyBlock();
+	    	int[] indices = getIndexBlock(numPorts);
+	    	for (int si = 0, tableSize = offHeapTable.sparseSize(); si < tableSize;)
 	    	{
-	    		double[] outputMsgs = outPortMsgs[outPortNum];
-	    		int outputIndex = tableRow[outPortNum];											// Index for the output value
-	    		double LThisPort = L - inPortMsgs[outPortNum][tableRow[outPortNum]];			// Subtract out the message from this output port
-	    		if (LThisPort < outputMsgs[outputIndex])
-	    			outputMsgs[outputIndex] = LThisPort;	// Use the minimum value
+	    		int tableLength = offHeapTable.readEnergiesSparse(si, values, indices);
+	    		minOverTable(values, indices, tableLength, numPorts, inPortMsgs, outPortMsgs);
+	    		si += tableLength;
 	    	}
 	    }
+	    else
+	    {
+	    	double[] values = factorTable.getEnergiesSparseUnsafe();
+	    	int[] indices = factorTable.getPackedIndicesSparseUnsafe();
+	    	minOverTable(values, indices, values.length, numPorts, inPortMsgs, outPortMsgs);
+	    }
 	   
 	    // Damping
 	    if (_tableFactor._dampingInUse)
@@ -191,4 +218,74 @@ public class TableFactorEngine
 	    		outputMsgs[i] -= minPotential;			// Normalize min value
 	    }
 	}
+	
+	/*
+	 * Lowers each output message to the minimum over the first tableLength rows of the packed table.
+	 */
+	private static void minOverTableEdge(double[] values, int[] indices, int tableLength, int numPorts, int outPortNum,
+		double[][] inPortMsgs, double[] outputMsgs)
+	{
+		// The indices are packed by port, so the index for a port in a given row is at
+		// port * tableLength + tableIndex.
+		final int outOffset = outPortNum * tableLength;
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			double L = values[tableIndex];
+			int outputIndex = indices[outOffset + tableIndex];
+
+			for (int inPortNum = 0, i = tableIndex; inPortNum < numPorts; inPortNum++, i += tableLength)
+				if (inPortNum != outPortNum)
+					L += inPortMsgs[inPortNum][indices[i]];
+
+			if (L < outputMsgs[outputIndex])
+				outputMsgs[outputIndex] = L;				// Use the minimum value
+		}
+	}
+	
+	/*
+	 * Lowers the messages out of every port to the minimum over the first tableLength rows of the packed table.
+	 */
+	private static void minOverTable(double[] values, int[] indices, int tableLength, int numPorts,
+		double[][] inPortMsgs, double[][] outPortMsgs)
+	{
+		// Run through each row of the function table
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			// Sum up the function value plus the messages on all ports
+			double L = values[tableIndex];
+			for (int port = 0, i = tableIndex; port < numPorts; port++, i += tableLength)
+				L += inPortMsgs[port][indices[i]];
+
+			// Run through each output port
+			for (int outPortNum = 0, i = tableIndex; outPortNum < numPorts; outPortNum++, i += tableLength)
+			{
+				double[] outputMsgs = outPortMsgs[outPortNum];
+				int outputIndex = indices[i];											// Index for the output value
+				double LThisPort = L - inPortMsgs[outPortNum][outputIndex];			// Subtract out the message from this output port
+				if (LThisPort < outputMsgs[outputIndex])
+					outputMsgs[outputIndex] = LThisPort;	// Use the minimum value
+			}
+		}
+	}
+	
+	private double[] getEnergyBlock()
+	{
+		double[] block = _energyBlock;
+		if (block == null)
+			block = _energyBlock = new double[OffHeapFactorTable.BLOCK_SIZE];
+		return block;
+	}
+	
+	private int[] getIndexBlock(int numPorts)
+	{
+		int[] block = _indexBlock;
+		if (block == null || block.length < OffHeapFactorTable.BLOCK_SIZE * numPorts)
+			block = _indexBlock = new int[OffHeapFactorTable.BLOCK_SIZE * numPorts];
+		return block;
+	}
+	
+	private DistanceTransform getDistanceTransform()
+	{
+		return _distanceTransform != null && _distanceTransform.isCurrent() ? _distanceTransform : null;
+	}
 }
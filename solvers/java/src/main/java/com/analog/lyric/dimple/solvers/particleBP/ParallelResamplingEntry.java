@@ -0,0 +1,51 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.particleBP;
+
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ParallelNodesScheduleEntry;
+
+/**
+ * Resamples the particles of a set of real variables, no two of which share a factor,
+ * concurrently. Used by {@link SFactorGraph} for parallel resampling; not intended for use
+ * in a schedule.
+ *
+ * @since 0.05
+ */
+class ParallelResamplingEntry extends ParallelNodesScheduleEntry
+{
+	/*--------------
+	 * Construction
+	 */
+
+	ParallelResamplingEntry(VariableBase[] variables, int maxSlices)
+	{
+		// Resampling a variable is expensive enough to be worth a thread of its own
+		super(variables, maxSlices, 1);
+	}
+
+	/*------------------------------------
+	 * ParallelNodesScheduleEntry methods
+	 */
+
+	@Override
+	protected void updateNode(INode node)
+	{
+		((SRealVariable)((VariableBase)node).getSolver()).resample();
+	}
+}
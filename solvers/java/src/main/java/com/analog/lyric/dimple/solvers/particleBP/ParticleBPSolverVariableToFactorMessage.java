@@ -20,7 +20,7 @@ public class ParticleBPSolverVariableToFactorMessage
 {
 	public int length;
 	public int resamplingVersion;
-	public Double[] particleValues;
+	public double[] particleValues;
 	public double[] messageValues;
 	
 	
@@ -28,7 +28,7 @@ public class ParticleBPSolverVariableToFactorMessage
 	{
 		length = numParticles;
 		resamplingVersion = 0;
-		particleValues = new Double[numParticles];
+		particleValues = new double[numParticles];
 		messageValues = new double[numParticles];
 		
     	double initialMessageValue = 1.0/numParticles;
@@ -16,12 +16,18 @@
 
 package com.analog.lyric.dimple.solvers.particleBP;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.variables.VariableBase;
 import com.analog.lyric.dimple.model.variables.VariableList;
 import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
-import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 import com.analog.lyric.dimple.solvers.sumproduct.STableFactor;
@@ -38,6 +44,8 @@ public class SFactorGraph extends SFactorGraphBase
 	protected double _temperingDecayConstant;
 	protected double _temperature;
 	protected final double LOG2 = Math.log(2);
+	protected int _numResamplingWorkers = 1;
+	private List<ParallelResamplingEntry> _resamplingEntries = null;
 	
 	// Arguments for the constructor
 	public static class Arguments
@@ -94,12 +102,26 @@ public class SFactorGraph extends SFactorGraphBase
 	public void initialize() 
 	{
 		super.initialize();
+		_resamplingEntries = null;
 //		_minPotential = Double.MAX_VALUE;
 		if (_temper) setTemperature(_initialTemperature);
 	}
 	
 	@Override
 	public void iterate(int numIters) 
+	{
+		final boolean randomStarted = startRandom();
+		try
+		{
+			iterateWithResampling(numIters);
+		}
+		finally
+		{
+			finishRandom(randomStarted);
+		}
+	}
+	
+	private void iterateWithResampling(int numIters)
 	{
 		VariableList vars = _factorGraph.getVariables();
 		
@@ -108,11 +130,21 @@ public class SFactorGraph extends SFactorGraphBase
 		{
 			if (--iterationsBeforeResampling <= 0)
 			{
-				for (VariableBase v : vars)
+				if (_numResamplingWorkers > 1)
 				{
-					ISolverVariable vs = v.getSolver();
-					if (vs instanceof SRealVariable)
-						((SRealVariable)vs).resample();	
+					if (_resamplingEntries == null)
+						_resamplingEntries = createResamplingEntries();
+					for (ParallelResamplingEntry entry : _resamplingEntries)
+						entry.update();
+				}
+				else
+				{
+					for (VariableBase v : vars)
+					{
+						ISolverVariable vs = v.getSolver();
+						if (vs instanceof SRealVariable)
+							((SRealVariable)vs).resample();
+					}
 				}
 				iterationsBeforeResampling = _numIterationsBetweenResampling;
 			}
@@ -164,12 +196,6 @@ public class SFactorGraph extends SFactorGraphBase
 	}
 	public double getTemperature() {return _temperature;}
 	
-	// Sets the random seed for the Particle BP solver.  This allows runs of the solver to be repeatable.
-	public void setSeed(long seed)
-	{
-		SolverRandomGenerator.setSeed(seed);
-	}
-	
 
 	// Set the number of particle values globally for all real variables
 	public void setNumParticles(int numParticles)
@@ -196,6 +222,70 @@ public class SFactorGraph extends SFactorGraphBase
 	}
 	
 	
+	/**
+	 * Sets the maximum number of threads used to resample the particles of the real variables.
+	 * <p>
+	 * When greater than one, the real variables are divided into groups, no two members of which share
+	 * a factor, and the variables of each group are resampled concurrently. Each thread draws from
+	 * its own random stream, so results are repeatable for a given seed and number of workers, but differ
+	 * from those of sequential resampling. The default is one, which resamples the variables in turn.
+	 * <p>
+	 * WARNING: the input and factor functions are then evaluated from multiple threads, which is
+	 * only safe if the same function object is not used by variables or factors in the same group, or if
+	 * the function does not modify its own state when evaluated. Functions with constant parameters
+	 * satisfy this.
+	 * 
+	 * @since 0.05
+	 */
+	public void setNumResamplingWorkers(int numWorkers)
+	{
+		if (numWorkers < 1)
+			throw new DimpleException("Number of workers must be greater than 0.");
+		_numResamplingWorkers = numWorkers;
+		_resamplingEntries = null;
+	}
+	
+	/**
+	 * @since 0.05
+	 */
+	public int getNumResamplingWorkers() {return _numResamplingWorkers;}
+	
+	// Greedily colors the real variables so that no two of the same color share a factor,
+	// with one entry to resample each color class
+	private List<ParallelResamplingEntry> createResamplingEntries()
+	{
+		final Map<VariableBase, Integer> colors = new HashMap<VariableBase, Integer>();
+		final List<List<VariableBase>> classes = new ArrayList<List<VariableBase>>();
+		final BitSet used = new BitSet();
+		for (VariableBase v : _factorGraph.getVariables())
+		{
+			if (!(v.getSolver() instanceof SRealVariable))
+				continue;
+			
+			used.clear();
+			for (int i = 0, end = v.getSiblingCount(); i < end; i++)
+			{
+				Factor factor = v.getSibling(i);
+				for (int j = 0, endj = factor.getSiblingCount(); j < endj; j++)
+				{
+					Integer color = colors.get(factor.getSibling(j));
+					if (color != null)
+						used.set(color);
+				}
+			}
+			int color = used.nextClearBit(0);
+			if (color == classes.size())
+				classes.add(new ArrayList<VariableBase>());
+			classes.get(color).add(v);
+			colors.put(v, color);
+		}
+		
+		List<ParallelResamplingEntry> entries = new ArrayList<ParallelResamplingEntry>(classes.size());
+		for (List<VariableBase> colorClass : classes)
+			entries.add(new ParallelResamplingEntry(colorClass.toArray(new VariableBase[colorClass.size()]), _numResamplingWorkers));
+		return entries;
+	}
+	
 	// Set/get the number of iterations between resamplings
 	public void setNumIterationsBetweenResampling(int numIterationsBetweenResampling) {_numIterationsBetweenResampling = numIterationsBetweenResampling;}
 	public int getNumIterationsBetweenResampling() {return _numIterationsBetweenResampling;}
@@ -19,7 +19,10 @@ package com.analog.lyric.dimple.solvers.particleBP;
 
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.RealValue;
+import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.Real;
 import com.analog.lyric.dimple.model.variables.VariableBase;
@@ -34,7 +37,8 @@ public class SRealFactor extends SFactorBase
 	protected double [][] _inPortMsgs;
 	protected double [][] _outMsgArray;
 	protected Object[][] _variableDomains;
-	protected Object[] _variableValues;
+	protected double[][] _particleValues;
+	protected Value[] _variableValues;
 	protected int[] _variableIndices;
 	protected int[] _variableDomainLengths;
 	protected boolean[] _realVariable;
@@ -56,12 +60,10 @@ public class SRealFactor extends SFactorBase
 
         double marginal = 0;
         initializeVariableCombinations();
-		_variableValues[outPortIndex] = value;	// Use the specified value for the output port
+		_variableValues[outPortIndex].setDouble(value);	// Use the specified value for the output port
         while (true)
         {
-        	double prob = 1;
-			try {prob = factorFunction.eval(_variableValues);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
-			if (_beta != 1) prob = Math.pow(prob, _beta);
+        	double prob = evalProbability(factorFunction);
 
         	for (int inPortNum = 0; inPortNum < _numPorts; inPortNum++)
         		if (inPortNum != outPortIndex)
@@ -90,9 +92,7 @@ public class SRealFactor extends SFactorBase
         initializeVariableCombinations();
         while (true)
         {
-        	double prob = 1;
-			try {prob = factorFunction.eval(_variableValues);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
-			if (_beta != 1) prob = Math.pow(prob, _beta);
+        	double prob = evalProbability(factorFunction);
 
         	for (int inPortNum = 0; inPortNum < _numPorts; inPortNum++)
         		if (inPortNum != outPortNum)
@@ -124,9 +124,7 @@ public class SRealFactor extends SFactorBase
 			initializeVariableCombinations();
 			while (true)
 			{
-				double prob = 1;
-				try {prob = factorFunction.eval(_variableValues);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
-				if (_beta != 1) prob = Math.pow(prob, _beta);
+				double prob = evalProbability(factorFunction);
 
 				for (int inPortNum = 0; inPortNum < _numPorts; inPortNum++)
 					if (inPortNum != outPortNum)
@@ -152,7 +150,7 @@ public class SRealFactor extends SFactorBase
 		for (int iPort = 0; iPort < _numPorts; iPort++)
 		{
 			_variableIndices[iPort] = 0;
-			_variableValues[iPort] = _variableDomains[iPort][0];
+			setVariableValue(iPort);
 		}
 	}
 	
@@ -181,7 +179,7 @@ public class SRealFactor extends SFactorBase
 		
 		// Get values for indices
 		for (int i = 0; i < _numPorts; i++)
-			_variableValues[i] =_variableDomains[i][_variableIndices[i]];
+			setVariableValue(i);
 		
 	}
 	
@@ -215,10 +213,28 @@ public class SRealFactor extends SFactorBase
 		
 		// Get values for indices
 		for (int i = 0; i < _numPorts; i++)
-			_variableValues[i] =_variableDomains[i][_variableIndices[i]];
-		_variableValues[exceptionIndex] = exceptionValue;
+			if (i != exceptionIndex)
+				setVariableValue(i);
+		_variableValues[exceptionIndex].setDouble(exceptionValue);
 	}
 	
+	// Evaluates the factor function at the current values, raised to the power beta
+	protected double evalProbability(FactorFunction factorFunction)
+	{
+		double prob = 1;
+		try {prob = Math.exp(-factorFunction.evalEnergy(_variableValues));} catch (Exception e) {e.printStackTrace(); System.exit(1);}
+		if (_beta != 1) prob = Math.pow(prob, _beta);
+		return prob;
+	}
+	
+	// Sets the value of the variable at the specified port from its current index
+	protected void setVariableValue(int port)
+	{
+		if (_realVariable[port])
+			_variableValues[port].setDouble(_particleValues[port][_variableIndices[port]]);
+		else
+			_variableValues[port].setIndex(_variableIndices[port]);
+	}
 	
     public void setBeta(double beta)	// beta = 1/temperature
     {
@@ -240,7 +256,8 @@ public class SRealFactor extends SFactorBase
     	_inPortMsgs = new double[_numPorts][];
     	_outMsgArray = new double[_numPorts][];
 		_variableDomains = new Object[_numPorts][];
-		_variableValues = new Object[_numPorts];
+		_particleValues = new double[_numPorts][];
+		_variableValues = new Value[_numPorts];
 		_variableIndices = new int[_numPorts];
 		_variableDomainLengths = new int[_numPorts];
 		_realVariable = new boolean[_numPorts];
@@ -255,18 +272,22 @@ public class SRealFactor extends SFactorBase
 	    	{
 	    		ParticleBPSolverVariableToFactorMessage tmp = (ParticleBPSolverVariableToFactorMessage)messages[1];
 	    		_realVariable[iPort] = true;
-	    		_variableDomains[iPort] = tmp.particleValues;
+	    		_particleValues[iPort] = tmp.particleValues;
 	    		_inPortMsgs[iPort] = tmp.messageValues;
+	    		_variableValues[iPort] = RealValue.create();
+	    		_variableDomainLengths[iPort] = tmp.particleValues.length;
 	    	}
 	    	else
 	    	{
-	    		_realVariable[iPort] = true;
-	    		_variableDomains[iPort] = ((Discrete)var).getDiscreteDomain().getElements();
+	    		final DiscreteDomain domain = ((Discrete)var).getDiscreteDomain();
+	    		_realVariable[iPort] = false;
+	    		_variableDomains[iPort] = domain.getElements();
 	    		_inPortMsgs[iPort] = (double[])messages[1];
+	    		_variableValues[iPort] = Value.create(domain);
+	    		_variableDomainLengths[iPort] = _variableDomains[iPort].length;
 	    	}
 	    	
     		_outMsgArray[iPort] = (double[])messages[0];
-	    	_variableDomainLengths[iPort] = _variableDomains[iPort].length;
 	    }
 	}
 
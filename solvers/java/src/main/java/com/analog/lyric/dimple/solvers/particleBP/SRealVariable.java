@@ -25,6 +25,7 @@ import com.analog.lyric.dimple.model.domains.RealDomain;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.factors.FactorBase;
 import com.analog.lyric.dimple.model.values.RealValue;
+import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.VariableBase;
 import com.analog.lyric.dimple.solvers.core.SRealVariableBase;
 import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
@@ -33,10 +34,11 @@ import com.analog.lyric.dimple.solvers.core.proposalKernels.NormalProposalKernel
 import com.analog.lyric.dimple.solvers.core.proposalKernels.Proposal;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.analog.lyric.math.XoroshiroRandom;
 
 public class SRealVariable extends SRealVariableBase
 {
-	protected Double[] _particleValues;
+	protected double[] _particleValues;
 	protected int _numParticles = 1;
 	protected int _resamplingUpdatesPerSample = 1;
 	protected IProposalKernel _proposalKernel = new NormalProposalKernel();	// Normal proposal kernel by default
@@ -51,6 +53,11 @@ public class SRealVariable extends SRealVariableBase
 	ParticleBPSolverVariableToFactorMessage[] _outMsgArray = new ParticleBPSolverVariableToFactorMessage[0];
 	double [] _logWeight;
 	protected double _beta = 1;
+	private double[] _alphas = new double[0];
+	private final Value[] _inputArgument = new Value[] {RealValue.create()};
+	private final RealValue _sampleValue = RealValue.create();
+	private SRealFactor[] _siblingFactors = new SRealFactor[0];
+	private int[] _siblingPortNums = new int[0];
 
 
 
@@ -76,27 +83,25 @@ public class SRealVariable extends SRealVariableBase
 
 		double[] outMsgs = _outMsgArray[outPortNum].messageValues;
 
+		computeLogPriors(_particleValues, outMsgs);
 		for (int m = 0; m < M; m++)
 		{
-			double prior = 1;
-			if (_input != null)
-				try {prior = _input.eval(new Object[]{_particleValues[m]});} catch (Exception e) {e.printStackTrace(); System.exit(1);}
-				double out = (prior == 0) ? minLog : Math.log(prior) * _beta;
+			double out = outMsgs[m];
 
-				for (int d = 0; d < D; d++)
+			for (int d = 0; d < D; d++)
+			{
+				if (d != outPortNum)		// For all ports except the output port
 				{
-					if (d != outPortNum)		// For all ports except the output port
-					{
-						double tmp = _inPortMsgs[d][m];
-						out += (tmp == 0) ? minLog : Math.log(tmp);
-					}
+					double tmp = _inPortMsgs[d][m];
+					out += (tmp == 0) ? minLog : Math.log(tmp);
 				}
+			}
 
-				// Subtract the log weight
-				out -= _logWeight[m];
+			// Subtract the log weight
+			out -= _logWeight[m];
 
-				if (out > maxLog) maxLog = out;
-				outMsgs[m] = out;
+			if (out > maxLog) maxLog = out;
+			outMsgs[m] = out;
 		}
 
 		//create sum
@@ -123,22 +128,20 @@ public class SRealVariable extends SRealVariableBase
 
 
 		//Compute alphas
-		double[] alphas = new double[M];
+		final double[] alphas = _alphas;
+		computeLogPriors(_particleValues, alphas);
 		for (int m = 0; m < M; m++)
 		{
-			double prior = 1;
-			if (_input != null)
-				try {prior = _input.eval(new Object[]{_particleValues[m]});} catch (Exception e) {e.printStackTrace(); System.exit(1);}
-				double alpha = (prior == 0) ? minLog : Math.log(prior) * _beta;
+			double alpha = alphas[m];
 
-				for (int d = 0; d < D; d++)
-				{
-					double tmp = _inPortMsgs[d][m];
-					double logtmp = (tmp == 0) ? minLog : Math.log(tmp);
-					_logInPortMsgs[d][m] = logtmp;
-					alpha += logtmp;
-				}
-				alphas[m] = alpha;
+			for (int d = 0; d < D; d++)
+			{
+				double tmp = _inPortMsgs[d][m];
+				double logtmp = (tmp == 0) ? minLog : Math.log(tmp);
+				_logInPortMsgs[d][m] = logtmp;
+				alpha += logtmp;
+			}
+			alphas[m] = alpha;
 		}
 
 		//Now compute output messages for each outgoing edge
@@ -188,47 +191,34 @@ public class SRealVariable extends SRealVariableBase
 		double _lowerBound = _domain.getLowerBound();
 		double _upperBound = _domain.getUpperBound();
 		int M = _numParticles;
+		final double[] particleValues = _particleValues;
+		final SRealFactor[] factors = updateSiblingFactors();
+		final int[] factorPortNums = _siblingPortNums;
+		final RealValue sampleValueObject = _sampleValue;
+		final XoroshiroRandom rand = SolverRandomGenerator.getRand();
 
 
 		// For each sample value
 		for (int m = 0; m < M; m++)
 		{
-			double sampleValue = _particleValues[m];
+			double sampleValue = particleValues[m];
 			double potential = 0;
 			double potentialProposed = 0;
 
 
 			// Start with the potential for the current particle value
 			if (_input != null)
-				try {
-					potential = -Math.log(_input.eval(new Object[]{sampleValue})) * _beta;
-				}
-				catch (Exception e)
-				{
-					e.printStackTrace(); System.exit(1);
-				}
+				potential = evalInputEnergy(sampleValue) * _beta;
 
 			for (int portIndex = 0; portIndex < numPorts; portIndex++)
-			{
-				FactorBase factorNode = _var.getSibling(portIndex);
-				int factorPortNumber = 0;
-				try {
-					factorPortNumber = factorNode.getPortNum(_var);
-					}
-				catch (Exception e)
-				{
-					e.printStackTrace(); System.exit(1);
-				}
-				
-				SRealFactor factor = (SRealFactor)(factorNode.getSolver());
-				potential += factor.getMarginalPotential(sampleValue, factorPortNumber);
-			}
+				potential += factors[portIndex].getMarginalPotential(sampleValue, factorPortNums[portIndex]);
 
 
 			// Now repeat resampling this sample
 			for (int update = 0; update < _resamplingUpdatesPerSample; update++)
 			{
-				Proposal proposal = _proposalKernel.next(RealValue.create(sampleValue), varDomain);
+				sampleValueObject.setDouble(sampleValue);
+				Proposal proposal = _proposalKernel.next(sampleValueObject, varDomain);
 				double proposalValue = proposal.value.getDouble();
 
 				// If outside the bounds, then reject
@@ -238,40 +228,28 @@ public class SRealVariable extends SRealVariableBase
 				// Sum up the potentials from the input and all connected factors
 				potentialProposed = 0;
 				if (_input != null)
-					try {potentialProposed = -Math.log(_input.eval(new Object[]{proposalValue})) * _beta;} catch (Exception e) {e.printStackTrace(); System.exit(1);}
-
-					for (int portIndex = 0; portIndex < numPorts; portIndex++)
-					{
-						FactorBase factorNode = _var.getSibling(portIndex);
-						int factorPortNumber = 0;
-						try {factorPortNumber = factorNode.getPortNum(_var);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
-						SRealFactor factor = (SRealFactor)(factorNode.getSolver());
-						potentialProposed += factor.getMarginalPotential(proposalValue, factorPortNumber);
-					}
-
-
-					// Accept or reject
-					double rejectionThreshold = Math.exp(potential - potentialProposed + proposal.hastingsTerm);
-					if (SolverRandomGenerator.rand.nextDouble() < rejectionThreshold)
-					{
-						sampleValue = proposalValue;
-						potential = potentialProposed;
-					}
+					potentialProposed = evalInputEnergy(proposalValue) * _beta;
+
+				for (int portIndex = 0; portIndex < numPorts; portIndex++)
+					potentialProposed += factors[portIndex].getMarginalPotential(proposalValue, factorPortNums[portIndex]);
+
+
+				// Accept or reject
+				double rejectionThreshold = Math.exp(potential - potentialProposed + proposal.hastingsTerm);
+				if (rand.nextDouble() < rejectionThreshold)
+				{
+					sampleValue = proposalValue;
+					potential = potentialProposed;
+				}
 			}
 
-			_particleValues[m] = sampleValue;	// Keep this sample
+			particleValues[m] = sampleValue;	// Keep this sample
 			_logWeight[m] = -potential;			// Sum-product code uses log(p) instead of -log(p)
 
 
 			// Update the incoming messages for the new particle value
 			for (int d = 0; d < numPorts; d++)
-			{
-				FactorBase factorNode = _var.getSibling(d);
-				int factorPortNumber = 0;
-				try {factorPortNumber = factorNode.getPortNum(_var);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
-				SRealFactor factor = (SRealFactor)(factorNode.getSolver());
-				_inPortMsgs[d][m] = Math.exp(factor.getMarginalPotential(sampleValue, factorPortNumber));
-			}
+				_inPortMsgs[d][m] = Math.exp(factors[d].getMarginalPotential(sampleValue, factorPortNums[d]));
 
 
 		}
@@ -284,6 +262,51 @@ public class SRealVariable extends SRealVariableBase
 			_outMsgArray[iPort].resamplingVersion++;
 	}
 
+	// Sets logPriors to the log of the input at each of the values, raised to the power beta,
+	// scoring all of the values with a single call to the input function
+	private void computeLogPriors(double[] values, double[] logPriors)
+	{
+		final double minLog = -100;
+		final int M = values.length;
+
+		if (_input == null)
+		{
+			Arrays.fill(logPriors, 0, M, 0);
+			return;
+		}
+
+		_input.evalEnergies(_inputArgument, 0, values, logPriors);
+		for (int m = 0; m < M; m++)
+		{
+			double energy = logPriors[m];
+			logPriors[m] = (energy == Double.POSITIVE_INFINITY) ? minLog : -energy * _beta;
+		}
+	}
+
+	private double evalInputEnergy(double value)
+	{
+		_inputArgument[0].setDouble(value);
+		return _input.evalEnergy(_inputArgument);
+	}
+
+	// Caches the solver factor and its port number for each sibling of the variable
+	private SRealFactor[] updateSiblingFactors()
+	{
+		final int numPorts = _var.getSiblingCount();
+		if (_siblingFactors.length != numPorts)
+		{
+			_siblingFactors = new SRealFactor[numPorts];
+			_siblingPortNums = new int[numPorts];
+		}
+		for (int d = 0; d < numPorts; d++)
+		{
+			FactorBase factorNode = _var.getSibling(d);
+			_siblingFactors[d] = (SRealFactor)(factorNode.getSolver());
+			_siblingPortNums[d] = factorNode.getPortNum(_var);
+		}
+		return _siblingFactors;
+	}
+
 
 	@Override
 	public Object getBelief()
@@ -296,12 +319,10 @@ public class SRealVariable extends SRealVariableBase
 
 		double[] outBelief = new double[M];
 
+		computeLogPriors(_particleValues, outBelief);
 		for (int m = 0; m < M; m++)
 		{
-			double prior = 1;
-			if (_input != null)
-				prior = _input.eval(new Object[]{_particleValues[m]});
-			double out = (prior == 0) ? minLog : Math.log(prior) * _beta;
+			double out = outBelief[m];
 
 			for (int d = 0; d < D; d++)
 			{
@@ -335,7 +356,6 @@ public class SRealVariable extends SRealVariableBase
 	// Alternative belief, returned for a specified set of variable values
 	public double [] getBelief(double[] valueSet)
 	{
-		final double minLog = -100;
 		int M = valueSet.length;
 		int D = _var.getSiblingCount();
 		double maxLog = Double.NEGATIVE_INFINITY;
@@ -343,21 +363,15 @@ public class SRealVariable extends SRealVariableBase
 
 		double[] outBelief = new double[M];
 
+		computeLogPriors(valueSet, outBelief);
+		updateSiblingFactors();
 		for (int m = 0; m < M; m++)
 		{
 			double value = valueSet[m];
-			double prior = 1;
-			if (_input != null)
-				prior = _input.eval(new Object[]{value});
-			double out = (prior == 0) ? minLog : Math.log(prior) * _beta;
+			double out = outBelief[m];
 
 			for (int d = 0; d < D; d++)
-			{
-				FactorBase factorNode = _var.getSibling(d);
-				int factorPortNumber = factorNode.getPortNum(_var);
-				SRealFactor factor = (SRealFactor)(factorNode.getSolver());
-				out -= factor.getMarginalPotential(value, factorPortNumber);	// Potential is -log(p)
-			}
+				out -= _siblingFactors[d].getMarginalPotential(value, _siblingPortNums[d]);	// Potential is -log(p)
 
 			if (out > maxLog) maxLog = out;
 			outBelief[m] = out;
@@ -381,9 +395,7 @@ public class SRealVariable extends SRealVariableBase
 
 	public double[] getParticleValues()
 	{
-		double[] particles = new double[_numParticles];
-		for (int i = 0; i < _numParticles; i++) particles[i] = _particleValues[i];
-		return particles;
+		return Arrays.copyOf(_particleValues, _numParticles);
 	}
 
 	public void setNumParticles(int numParticles)
@@ -465,10 +477,9 @@ public class SRealVariable extends SRealVariableBase
 	@Override
 	public Object[] createMessages(ISolverFactor factor)
 	{
-		_particleValues = new Double[_numParticles];
-		for (int i = 0; i < _particleValues.length; i++)
-			_particleValues[i] = 0.0;
+		_particleValues = new double[_numParticles];
 		_logWeight = new double[_numParticles];
+		_alphas = new double[_numParticles];
 
 		int portNum = _var.getPortNum(factor.getModelObject());
 		int numPorts = Math.max(_inPortMsgs.length, portNum+1);
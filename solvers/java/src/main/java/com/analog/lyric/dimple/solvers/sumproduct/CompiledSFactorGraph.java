@@ -0,0 +1,139 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+
+/**
+ * Sum-product solver graph that runs its iterations on a compiled, flat representation of
+ * the graph and schedule.
+ * <p>
+ * When the graph is initialized, discrete graphs made up only of table factors and
+ * {@linkplain com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor parity checks} are compiled
+ * into a single message array with precomputed offsets and an integer update program (see
+ * {@link #isCompiled()}). Each call to {@link #iterate(int)} copies the messages into the
+ * compiled form, runs all of the iterations on it, and copies the messages back, so
+ * variable beliefs and the other methods that look at messages behave just as they do
+ * for {@link SFactorGraph}. Convergence checks (see {@link #setConvergenceTolerance(double)})
+ * compute the beliefs from the compiled form, so they do not copy the messages. The compiled
+ * form is rebuilt if the graph, its schedule, its factor tables or its solver factors change.
+ * <p>
+ * The compiled form uses the same {@link SumProductKernels} as the solver objects, so the two
+ * compute the same messages.
+ * <p>
+ * Graphs that cannot be compiled and runs that use features the compiled form does not support
+ * (damping, derivative computation, k-best updates, sampled factor parallel updates or
+ * multithreading) use the standard {@link SFactorGraph} update instead. The results may
+ * differ from the standard update in the last few bits because all table factor node updates
+ * use the single pass algorithm described in {@link STableFactor#setOptimizedUpdate(boolean)}.
+ * <p>
+ * Compiling min-sum graphs is out of scope: this backend only compiles sum-product graphs,
+ * and graphs using the {@linkplain com.analog.lyric.dimple.solvers.minsum.MinSumSolver min-sum solver}
+ * always run on their solver objects. The compiled form is built on the sum-product message
+ * representation and {@link SumProductKernels}, and has no equivalent of the min-sum solver's
+ * energy messages, min-convolution updates or distance transform factors.
+ *
+ * @since 0.05
+ * @see CompiledSumProductSolver
+ */
+public class CompiledSFactorGraph extends SFactorGraph
+{
+	/*-------
+	 * State
+	 */
+
+	private FlatMessageGraph _flatGraph = null;
+
+	/**
+	 * True while {@link #update()} should run on {@link #_flatGraph}.
+	 */
+	private boolean _runningFlatGraph = false;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CompiledSFactorGraph(FactorGraph factorGraph)
+	{
+		super(factorGraph);
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+		_flatGraph = FlatMessageGraph.compile(this);
+	}
+
+	@Override
+	public void update()
+	{
+		if (_runningFlatGraph)
+			_flatGraph.update();
+		else
+			super.update();
+	}
+
+	/*------------------------------
+	 * SFactorGraphBase methods
+	 */
+
+	@Override
+	protected void startIterations()
+	{
+		if (getSampledFactorParallelUpdates())
+			return;
+
+		if (_flatGraph != null && !_flatGraph.isCurrent())
+			_flatGraph = FlatMessageGraph.compile(this);
+
+		_runningFlatGraph = _flatGraph != null && _flatGraph.load();
+	}
+
+	@Override
+	protected void finishIterations()
+	{
+		if (_runningFlatGraph)
+		{
+			_runningFlatGraph = false;
+			_flatGraph.store();
+		}
+	}
+
+	@Override
+	protected double updateBeliefChange()
+	{
+		return _runningFlatGraph ? _flatGraph.updateBeliefChange() : super.updateBeliefChange();
+	}
+
+	/*------------------------------
+	 * CompiledSFactorGraph methods
+	 */
+
+	/**
+	 * True if the most recent call to {@link #initialize()} compiled the graph. Iterations
+	 * may still use the standard update if the compiled form does not support the current options.
+	 */
+	public boolean isCompiled()
+	{
+		return _flatGraph != null;
+	}
+}
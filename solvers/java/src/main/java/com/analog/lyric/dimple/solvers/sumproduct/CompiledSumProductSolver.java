@@ -0,0 +1,37 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+
+/**
+ * Sum-product solver that runs discrete table factor graphs on a compiled, flat
+ * representation of the graph.
+ * <p>
+ * There is no compiled form of the min-sum solver, which is out of scope for this backend.
+ *
+ * @since 0.05
+ * @see CompiledSFactorGraph
+ */
+public class CompiledSumProductSolver extends SumProductSolver
+{
+	@Override
+	public CompiledSFactorGraph createFactorGraph(FactorGraph factorGraph)
+	{
+		return new CompiledSFactorGraph(factorGraph);
+	}
+}
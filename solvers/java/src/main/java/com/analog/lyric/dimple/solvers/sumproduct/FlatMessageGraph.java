@@ -0,0 +1,645 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.factors.FactorList;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.model.variables.VariableList;
+import com.analog.lyric.dimple.schedulers.schedule.FixedSchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.STableFactorDoubleArray;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor;
+
+/**
+ * Flat representation of a discrete sum-product graph and its schedule used by
+ * {@link CompiledSFactorGraph}.
+ * <p>
+ * All of the edge messages are held in one array at precomputed offsets, the factor tables'
+ * packed indices are converted to offsets into that array, and the schedule is converted
+ * into an array of integer instructions, so that {@link #update()} runs without calling
+ * through the schedule entries or the solver objects.
+ * <p>
+ * {@link CustomXor} parity checks are also supported, and are updated directly on the shared
+ * message array using the same rule, so codes with many checks run as one batch.
+ * <p>
+ * The updates are done by {@link SumProductKernels}, as they are for the solver objects. The messages
+ * are copied in from the solver objects by {@link #load()} and back out by {@link #store()}, so that
+ * the flat representation is only used for the duration of a run of iterations, and
+ * {@link #updateBeliefChange()} computes the beliefs for convergence checks during the run.
+ */
+@NotThreadSafe
+final class FlatMessageGraph
+{
+	/*-------
+	 * State
+	 */
+
+	private static final int UPDATE_VARIABLE = 0;
+	private static final int UPDATE_VARIABLE_EDGE = 1;
+	private static final int UPDATE_FACTOR = 2;
+	private static final int UPDATE_FACTOR_EDGE = 3;
+	private static final int UPDATE_XOR = 4;
+	private static final int UPDATE_XOR_EDGE = 5;
+
+	/**
+	 * Number of ints per instruction in {@link #_program}: opcode, node index, port.
+	 */
+	private static final int INSTRUCTION_SIZE = 3;
+
+	private final FactorGraph _graph;
+	private final long _versionId;
+	private final long _scheduleVersionId;
+
+	private final SDiscreteVariable[] _variables;
+	private final STableFactorDoubleArray[] _factors;
+
+	/**
+	 * Update instructions in schedule order. Node indexes refer to {@link #_variables} or
+	 * {@link #_factors}, depending on the opcode.
+	 */
+	private final int[] _program;
+
+	/**
+	 * All of the variable to factor messages and all of the factor to variable messages. The two
+	 * messages of an edge are at the same offset in each array.
+	 */
+	private final double[] _toFactorMessages;
+	private final double[] _toVariableMessages;
+
+	/**
+	 * All of the variable inputs. The input for variable v starts at {@code _inputOffsets[v]},
+	 * and its length, the size of the variable's domain, is {@code _inputOffsets[v+1] - _inputOffsets[v]}.
+	 */
+	private final double[] _inputs;
+	private final int[] _inputOffsets;
+
+	/**
+	 * The edges of variable v, in port order, are numbered from {@code _variableEdgeStarts[v]} up to
+	 * {@code _variableEdgeStarts[v+1]} in {@link #_variableEdgeOffsets}.
+	 */
+	private final int[] _variableEdgeStarts;
+
+	/** Offset of the messages of each edge, indexed by variable edge number */
+	private final int[] _variableEdgeOffsets;
+
+	/**
+	 * The edges of factor f are numbered consecutively, in port order, starting from
+	 * {@code _factorEdgeStarts[f]}.
+	 */
+	private final int[] _factorEdgeStarts;
+
+	/*
+	 * Edge attributes, indexed by edge number.
+	 */
+
+	/** Offset of the messages of the edge */
+	private final int[] _edgeOffsets;
+	private final int[] _edgeSizes;
+
+	/*
+	 * Table factor attributes, indexed by factor number, which are null for parity checks.
+	 */
+
+	private final double[][] _weights;
+	private final int[][] _packedIndices;
+
+	/**
+	 * Same as {@link #_packedIndices}, but with the offset of the messages of the corresponding
+	 * edge added to each index.
+	 */
+	private final int[][] _messageIndices;
+
+	/*
+	 * Parity check attributes
+	 */
+
+	/** {@link CustomXor#getParitySign()} for parity checks, indexed by factor number */
+	private final double[] _paritySigns;
+	/** {@link CustomXor#getTrueIndex(int)} for edges of parity checks, indexed by edge number */
+	private final int[] _trueIndices;
+
+	/**
+	 * {@link #_toFactorMessages} and {@link #_toVariableMessages} repeated for each port, as the message
+	 * arrays passed to {@link SumProductKernels}.
+	 */
+	private final double[][] _toFactorArrays;
+	private final double[][] _toVariableArrays;
+
+	/*
+	 * Variable beliefs for updateBeliefChange(), laid out like _inputs.
+	 */
+
+	private final double[] _beliefs;
+	private final double[] _previousBeliefs;
+	private boolean _hasPreviousBeliefs = false;
+
+	/*
+	 * Scratch space
+	 */
+
+	private final double[] _alphas;
+	private final double[] _logInputs;
+	private final double[] _prefixProducts;
+	private final double[] _differences;
+
+	/*--------------
+	 * Construction
+	 */
+
+	private FlatMessageGraph(SFactorGraph sgraph,
+		SDiscreteVariable[] variables, int[] variableEdgeStarts, int[] variableEdges,
+		STableFactorDoubleArray[] factors, int[] factorEdgeStarts, int[] edgeSizes, int[] program)
+	{
+		_graph = sgraph.getModelObject();
+		_versionId = _graph.getVersionId();
+		_scheduleVersionId = _graph.getScheduleVersionId();
+
+		_variables = variables;
+		_variableEdgeStarts = variableEdgeStarts;
+		_factors = factors;
+		_factorEdgeStarts = factorEdgeStarts;
+		_edgeSizes = edgeSizes;
+		_program = program;
+
+		final int nVariables = variables.length;
+		_inputOffsets = new int[nVariables + 1];
+		int maxDomainSize = 0, maxDomainTimesDegree = 0, maxPorts = 0;
+		for (int v = 0; v < nVariables; ++v)
+		{
+			final int size = variables[v].getModelObject().getDiscreteDomain().size();
+			final int degree = variableEdgeStarts[v + 1] - variableEdgeStarts[v];
+			_inputOffsets[v + 1] = _inputOffsets[v] + size;
+			maxDomainSize = Math.max(maxDomainSize, size);
+			maxDomainTimesDegree = Math.max(maxDomainTimesDegree, size * degree);
+			maxPorts = Math.max(maxPorts, degree);
+		}
+		_inputs = new double[_inputOffsets[nVariables]];
+		_beliefs = new double[_inputs.length];
+		_previousBeliefs = new double[_inputs.length];
+
+		// The messages of each factor's edges are laid out together, in port order.
+		final int nFactors = factors.length;
+		final int nEdges = factorEdgeStarts[nFactors];
+		_edgeOffsets = new int[nEdges];
+		int offset = 0;
+		for (int f = 0; f < nFactors; ++f)
+		{
+			final int start = factorEdgeStarts[f], end = factorEdgeStarts[f + 1];
+			maxPorts = Math.max(maxPorts, end - start);
+			for (int e = start; e < end; ++e)
+			{
+				_edgeOffsets[e] = offset;
+				offset += edgeSizes[e];
+			}
+		}
+		_toFactorMessages = new double[offset];
+		_toVariableMessages = new double[offset];
+		_toFactorArrays = new double[maxPorts][];
+		_toVariableArrays = new double[maxPorts][];
+		Arrays.fill(_toFactorArrays, _toFactorMessages);
+		Arrays.fill(_toVariableArrays, _toVariableMessages);
+
+		_variableEdgeOffsets = new int[variableEdges.length];
+		for (int i = 0; i < variableEdges.length; ++i)
+		{
+			_variableEdgeOffsets[i] = _edgeOffsets[variableEdges[i]];
+		}
+
+		_weights = new double[nFactors][];
+		_packedIndices = new int[nFactors][];
+		_messageIndices = new int[nFactors][];
+		_paritySigns = new double[nFactors];
+		_trueIndices = new int[nEdges];
+		for (int f = 0; f < nFactors; ++f)
+		{
+			if (factors[f] instanceof CustomXor)
+			{
+				final CustomXor xor = (CustomXor)factors[f];
+				for (int port = 0, e = factorEdgeStarts[f], end = factorEdgeStarts[f + 1]; e < end; ++port, ++e)
+				{
+					_trueIndices[e] = xor.getTrueIndex(port);
+				}
+				continue;
+			}
+
+			final IFactorTable table = factors[f].getFactorTable();
+			final double[] weights = _weights[f] = table.getWeightsSparseUnsafe();
+			final int[] packedIndices = _packedIndices[f] = table.getPackedIndicesSparseUnsafe();
+			final int[] messageIndices = _messageIndices[f] = new int[packedIndices.length];
+			final int tableLength = weights.length;
+			for (int i = 0, e = factorEdgeStarts[f]; i < packedIndices.length; ++e)
+			{
+				final int edgeOffset = _edgeOffsets[e];
+				for (int end = i + tableLength; i < end; ++i)
+				{
+					messageIndices[i] = edgeOffset + packedIndices[i];
+				}
+			}
+		}
+
+		_alphas = new double[maxDomainSize];
+		_logInputs = new double[maxDomainTimesDegree];
+		_prefixProducts = new double[maxPorts];
+		_differences = new double[maxPorts];
+	}
+
+	/**
+	 * Compiles the flat representation of the solver graph and its current schedule.
+	 * <p>
+	 * Returns null if the graph cannot be represented, which is the case unless the graph is
+	 * a root graph whose variables are all {@link SDiscreteVariable}s and whose factors are
+	 * all {@link STableFactor}s or {@link CustomXor}s, and whose schedule is a {@link FixedSchedule} containing only
+	 * node and edge entries.
+	 */
+	static FlatMessageGraph compile(SFactorGraph sgraph)
+	{
+		final FactorGraph graph = sgraph.getModelObject();
+		if (graph.hasParentGraph())
+		{
+			return null;
+		}
+
+		final VariableList variableList = graph.getVariablesFlat();
+		final int nVariables = variableList.size();
+		final SDiscreteVariable[] variables = new SDiscreteVariable[nVariables];
+		final Map<INode, Integer> variableNumbers = new HashMap<INode, Integer>(nVariables * 2);
+		for (int v = 0; v < nVariables; ++v)
+		{
+			final VariableBase var = variableList.getByIndex(v);
+			final Object svar = var.getSolver();
+			if (svar == null || svar.getClass() != SDiscreteVariable.class)
+			{
+				return null;
+			}
+			variables[v] = (SDiscreteVariable)svar;
+			variableNumbers.put(var, v);
+		}
+
+		final FactorList factorList = graph.getNonGraphFactorsFlat();
+		final int nFactors = factorList.size();
+		final STableFactorDoubleArray[] factors = new STableFactorDoubleArray[nFactors];
+		final Map<INode, Integer> factorNumbers = new HashMap<INode, Integer>(nFactors * 2);
+		final int[] factorEdgeStarts = new int[nFactors + 1];
+		for (int f = 0; f < nFactors; ++f)
+		{
+			final Factor factor = factorList.getByIndex(f);
+			final Object sfactor = factor.getSolver();
+			if (sfactor == null || (sfactor.getClass() != STableFactor.class && sfactor.getClass() != CustomXor.class))
+			{
+				return null;
+			}
+			factors[f] = (STableFactorDoubleArray)sfactor;
+			factorNumbers.put(factor, f);
+			factorEdgeStarts[f + 1] = factorEdgeStarts[f] + factor.getSiblingCount();
+		}
+
+		final int[] edgeSizes = new int[factorEdgeStarts[nFactors]];
+		for (int f = 0, e = 0; f < nFactors; ++f)
+		{
+			final Factor factor = factorList.getByIndex(f);
+			for (int port = 0, nPorts = factor.getSiblingCount(); port < nPorts; ++port, ++e)
+			{
+				final Integer v = variableNumbers.get(factor.getSibling(port));
+				if (v == null)
+				{
+					return null;
+				}
+				edgeSizes[e] = variables[v].getModelObject().getDiscreteDomain().size();
+			}
+		}
+
+		final int[] variableEdgeStarts = new int[nVariables + 1];
+		for (int v = 0; v < nVariables; ++v)
+		{
+			variableEdgeStarts[v + 1] = variableEdgeStarts[v] + variableList.getByIndex(v).getSiblingCount();
+		}
+		final int[] variableEdges = new int[variableEdgeStarts[nVariables]];
+		for (int v = 0, i = 0; v < nVariables; ++v)
+		{
+			final VariableBase var = variableList.getByIndex(v);
+			for (int port = 0, nPorts = var.getSiblingCount(); port < nPorts; ++port, ++i)
+			{
+				final Integer f = factorNumbers.get(var.getSibling(port));
+				if (f == null)
+				{
+					return null;
+				}
+				variableEdges[i] = factorEdgeStarts[f] + var.getSiblingPortIndex(port);
+			}
+		}
+
+		// Other kinds of schedule may change from one iteration to the next.
+		final ISchedule schedule = graph.getSchedule();
+		if (!(schedule instanceof FixedSchedule))
+		{
+			return null;
+		}
+
+		int[] program = new int[INSTRUCTION_SIZE * 16];
+		int size = 0;
+		for (IScheduleEntry entry : schedule)
+		{
+			final INode node;
+			int port = -1;
+			if (entry instanceof NodeScheduleEntry)
+			{
+				node = ((NodeScheduleEntry)entry).getNode();
+			}
+			else if (entry instanceof EdgeScheduleEntry)
+			{
+				node = ((EdgeScheduleEntry)entry).getNode();
+				port = ((EdgeScheduleEntry)entry).getPortNum();
+			}
+			else
+			{
+				return null;
+			}
+
+			int opcode;
+			Integer n = variableNumbers.get(node);
+			if (n != null)
+			{
+				opcode = port < 0 ? UPDATE_VARIABLE : UPDATE_VARIABLE_EDGE;
+			}
+			else if ((n = factorNumbers.get(node)) != null)
+			{
+				if (factors[n] instanceof CustomXor)
+					opcode = port < 0 ? UPDATE_XOR : UPDATE_XOR_EDGE;
+				else
+					opcode = port < 0 ? UPDATE_FACTOR : UPDATE_FACTOR_EDGE;
+			}
+			else
+			{
+				return null;
+			}
+
+			if (size == program.length)
+			{
+				program = Arrays.copyOf(program, size * 2);
+			}
+			program[size++] = opcode;
+			program[size++] = n;
+			program[size++] = port;
+		}
+
+		return new FlatMessageGraph(sgraph, variables, variableEdgeStarts, variableEdges,
+			factors, factorEdgeStarts, edgeSizes, Arrays.copyOf(program, size));
+	}
+
+	/*--------------------------
+	 * FlatMessageGraph methods
+	 */
+
+	/**
+	 * True if the graph, its schedule, its factor tables and its solver factors have not changed since
+	 * this was compiled.
+	 */
+	boolean isCurrent()
+	{
+		if (_graph.getVersionId() != _versionId || _graph.getScheduleVersionId() != _scheduleVersionId)
+		{
+			return false;
+		}
+
+		for (int f = 0, nFactors = _factors.length; f < nFactors; ++f)
+		{
+			// The solver graph may replace a custom factor with a table factor without changing the model.
+			if (_factors[f].getFactor().getSolver() != _factors[f])
+			{
+				return false;
+			}
+			if (_weights[f] == null)
+			{
+				continue;
+			}
+			final IFactorTable table = _factors[f].getFactorTable();
+			if (table.getWeightsSparseUnsafe() != _weights[f] || table.getPackedIndicesSparseUnsafe() != _packedIndices[f])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Copies the variable inputs and the edge messages from the solver objects.
+	 * <p>
+	 * Returns false without copying everything if any of the solver objects currently
+	 * has an option enabled that is not supported by {@link #update()}: damping, derivative
+	 * computation or k-best factor updates.
+	 */
+	boolean load()
+	{
+		_hasPreviousBeliefs = false;
+
+		for (int v = 0, nVariables = _variables.length; v < nVariables; ++v)
+		{
+			final SDiscreteVariable svar = _variables[v];
+			if (svar._dampingInUse || svar.getCalculateDerivative())
+			{
+				return false;
+			}
+			final double[] input = svar.getInputUnsafe();
+			final int offset = _inputOffsets[v];
+			if (input.length != _inputOffsets[v + 1] - offset)
+			{
+				return false;
+			}
+			System.arraycopy(input, 0, _inputs, offset, input.length);
+		}
+
+		for (int f = 0, nFactors = _factors.length; f < nFactors; ++f)
+		{
+			final STableFactorDoubleArray sfactor = _factors[f];
+			if (sfactor instanceof CustomXor)
+			{
+				_paritySigns[f] = ((CustomXor)sfactor).getParitySign();
+			}
+			else
+			{
+				final STableFactor tableFactor = (STableFactor)sfactor;
+				if (tableFactor._dampingInUse || tableFactor._kIsSmallerThanDomain || tableFactor._updateDerivative)
+				{
+					return false;
+				}
+			}
+			for (int port = 0, e = _factorEdgeStarts[f], end = _factorEdgeStarts[f + 1]; e < end; ++port, ++e)
+			{
+				final int size = _edgeSizes[e];
+				System.arraycopy((double[])sfactor.getInputMsg(port), 0, _toFactorMessages, _edgeOffsets[e], size);
+				System.arraycopy((double[])sfactor.getOutputMsg(port), 0, _toVariableMessages, _edgeOffsets[e], size);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Copies the edge messages back to the solver objects.
+	 */
+	void store()
+	{
+		for (int f = 0, nFactors = _factors.length; f < nFactors; ++f)
+		{
+			final STableFactorDoubleArray sfactor = _factors[f];
+			for (int port = 0, e = _factorEdgeStarts[f], end = _factorEdgeStarts[f + 1]; e < end; ++port, ++e)
+			{
+				final int size = _edgeSizes[e];
+				System.arraycopy(_toFactorMessages, _edgeOffsets[e], (double[])sfactor.getInputMsg(port), 0, size);
+				System.arraycopy(_toVariableMessages, _edgeOffsets[e], (double[])sfactor.getOutputMsg(port), 0, size);
+			}
+		}
+	}
+
+	/**
+	 * Runs one pass of the compiled schedule over the loaded messages.
+	 */
+	void update()
+	{
+		final int[] program = _program;
+		for (int pc = 0, end = program.length; pc < end; pc += INSTRUCTION_SIZE)
+		{
+			final int n = program[pc + 1];
+			switch (program[pc])
+			{
+			case UPDATE_VARIABLE:
+				updateVariable(n);
+				break;
+			case UPDATE_VARIABLE_EDGE:
+				updateVariableEdge(n, program[pc + 2]);
+				break;
+			case UPDATE_FACTOR:
+				updateFactor(n);
+				break;
+			case UPDATE_FACTOR_EDGE:
+				updateFactorEdge(n, program[pc + 2]);
+				break;
+			case UPDATE_XOR:
+				updateXor(n);
+				break;
+			case UPDATE_XOR_EDGE:
+				updateXorEdge(n, program[pc + 2]);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the largest absolute change in any element of a variable belief since the previous
+	 * call, computed from the loaded messages, and saves the current beliefs. Returns infinity
+	 * on the first call after {@link #load()}.
+	 */
+	double updateBeliefChange()
+	{
+		final double[] beliefs = _beliefs, previousBeliefs = _previousBeliefs;
+		for (int v = 0, nVariables = _variables.length; v < nVariables; ++v)
+		{
+			final int inputOffset = _inputOffsets[v];
+			final int start = _variableEdgeStarts[v];
+			SumProductKernels.updateVariableEdge(_inputs, inputOffset, _inputOffsets[v + 1] - inputOffset,
+				_variableEdgeStarts[v + 1] - start, _toVariableArrays, _variableEdgeOffsets, start, -1, beliefs, inputOffset);
+		}
+
+		double maxChange = _hasPreviousBeliefs ? 0 : Double.POSITIVE_INFINITY;
+		for (int i = 0, end = beliefs.length; i < end; ++i)
+		{
+			final double change = Math.abs(beliefs[i] - previousBeliefs[i]);
+			if (!(change <= maxChange))
+				maxChange = Double.isNaN(change) ? Double.POSITIVE_INFINITY : change;
+		}
+		System.arraycopy(beliefs, 0, previousBeliefs, 0, beliefs.length);
+		_hasPreviousBeliefs = true;
+
+		return maxChange;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/*
+	 * The updates are done by SumProductKernels, as for SDiscreteVariable, STableFactor with the
+	 * optimized update enabled, and CustomXor, except that damping is not supported.
+	 */
+
+	private void updateVariable(int v)
+	{
+		final int inputOffset = _inputOffsets[v];
+		final int size = _inputOffsets[v + 1] - inputOffset;
+		final int start = _variableEdgeStarts[v];
+		final int numPorts = _variableEdgeStarts[v + 1] - start;
+
+		if (!SumProductKernels.updateVariableLinear(_inputs, inputOffset, size, numPorts,
+			_toVariableArrays, _toFactorArrays, _variableEdgeOffsets, start, _alphas))
+		{
+			SumProductKernels.updateVariableLog(_inputs, inputOffset, size, numPorts,
+				_toVariableArrays, _toFactorArrays, _variableEdgeOffsets, start, _alphas, _logInputs);
+		}
+	}
+
+	private void updateVariableEdge(int v, int outPort)
+	{
+		final int inputOffset = _inputOffsets[v];
+		final int start = _variableEdgeStarts[v];
+		SumProductKernels.updateVariableEdge(_inputs, inputOffset, _inputOffsets[v + 1] - inputOffset,
+			_variableEdgeStarts[v + 1] - start, _toVariableArrays, _variableEdgeOffsets, start, outPort,
+			_toFactorMessages, _variableEdgeOffsets[start + outPort]);
+	}
+
+	private void updateFactor(int f)
+	{
+		final int start = _factorEdgeStarts[f];
+		SumProductKernels.updateTable(_weights[f], _messageIndices[f], _factorEdgeStarts[f + 1] - start, _edgeSizes,
+			_toFactorArrays, _toVariableArrays, _edgeOffsets, start, _prefixProducts, _factors[f].getFactor());
+	}
+
+	private void updateFactorEdge(int f, int outPort)
+	{
+		final int start = _factorEdgeStarts[f];
+		SumProductKernels.updateTableEdge(_weights[f], _messageIndices[f], _factorEdgeStarts[f + 1] - start, outPort, _edgeSizes,
+			_toFactorArrays, _toVariableArrays, _edgeOffsets, start, "UpdateEdge", _factors[f].getFactor());
+	}
+
+	private void updateXor(int f)
+	{
+		final int start = _factorEdgeStarts[f];
+		SumProductKernels.updateParity(_paritySigns[f], _trueIndices, _factorEdgeStarts[f + 1] - start,
+			_toFactorArrays, _toVariableArrays, _edgeOffsets, start, _differences, _prefixProducts,
+			_factors[f].getFactor());
+	}
+
+	private void updateXorEdge(int f, int outPort)
+	{
+		final int start = _factorEdgeStarts[f];
+		SumProductKernels.updateParityEdge(_paritySigns[f], _trueIndices, _factorEdgeStarts[f + 1] - start, outPort,
+			_toFactorArrays, _toVariableArrays, _edgeOffsets, start, _factors[f].getFactor());
+	}
+}
@@ -32,10 +32,12 @@ public class SDiscreteVariable extends SDiscreteVariableDoubleArray
 	 * We cache all of the double arrays we use during the update.  This saves
 	 * time when performing the update.
 	 */
-    double [][] _logInPortMsgs = new double[0][];
     double [][] _savedOutMsgArray = new double[0][];
     double [][] _outPortDerivativeMsgs = new double[0][];
     double [] _dampingParams = new double[0];
+    private double [] _alphas = new double[0];
+    private double [] _logInputs = new double[0];
+    private int [] _zeroOffsets = new int[0];
     private boolean _calculateDerivative = false;
 	protected boolean _dampingInUse = false;
 
@@ -57,6 +59,22 @@ public class SDiscreteVariable extends SDiscreteVariableDoubleArray
 		_calculateDerivative = val;
 	}
 
+	/**
+	 * @since 0.05
+	 */
+	public boolean getCalculateDerivative()
+	{
+		return _calculateDerivative;
+	}
+	
+	/*
+	 * Returns the cached input array itself rather than a copy.
+	 */
+	double[] getInputUnsafe()
+	{
+		return _input;
+	}
+
 
 	
 	
@@ -106,67 +124,13 @@ public class SDiscreteVariable extends SDiscreteVariableDoubleArray
     @Override
 	public void updateEdge(int outPortNum)
     {
-    	
-        final double minLog = -100;
-        double[] priors = _input;
-        int M = priors.length;
-        int D = _var.getSiblingCount();
-        double maxLog = Double.NEGATIVE_INFINITY;
+        final int M = _input.length;
+        final int D = _var.getSiblingCount();
+        final double[] outMsgs = _outputMessages[outPortNum];
 
-        double[] outMsgs = _outputMessages[outPortNum];
-
-        if (_dampingInUse)
-        {
-        	double damping = _dampingParams[outPortNum];
-        	if (damping != 0)
-        	{
-        		double[] saved = _savedOutMsgArray[outPortNum];
-        		for (int i = 0; i < outMsgs.length; i++)
-        			saved[i] = outMsgs[i];
-        	}
-        }
-
-        
-        for (int m = 0; m < M; m++)
-        {
-        	double prior = priors[m];
-        	double out = (prior == 0) ? minLog : Math.log(prior);
-        	
-	        for (int d = 0; d < D; d++)
-	        {
-	        	if (d != outPortNum)		// For all ports except the output port
-	        	{
-	        		double tmp = _inputMessages[d][m];
-	        		out += (tmp == 0) ? minLog : Math.log(tmp);
-	        	}
-	        }
-        	if (out > maxLog) maxLog = out;
-        	outMsgs[m] = out;
-        }
-        
-        //create sum
-        double sum = 0;
-        for (int m = 0; m < M; m++)
-        {
-        	double out = Math.exp(outMsgs[m] - maxLog);
-        	outMsgs[m] = out;
-        	sum += out;
-        }
-        
-        //calculate message by dividing by sum
-        for (int m = 0; m < M; m++)
-        	outMsgs[m] /= sum;
-
-        if (_dampingInUse)
-        {
-        	double damping = _dampingParams[outPortNum];
-        	if (damping != 0)
-        	{
-        		double[] saved = _savedOutMsgArray[outPortNum];
-        		for (int m = 0; m < M; m++)
-        			outMsgs[m] = outMsgs[m]*(1-damping) + saved[m]*damping;
-        	}
-        }
+        saveOutputForDamping(outPortNum);
+        SumProductKernels.updateVariableEdge(_input, 0, M, D, _inputMessages, getZeroOffsets(D), 0, outPortNum, outMsgs, 0);
+        applyDamping(outPortNum);
 	    
         if (_calculateDerivative)
         	updateDerivative(outPortNum);
@@ -177,88 +141,26 @@ public class SDiscreteVariable extends SDiscreteVariableDoubleArray
     @Override
 	public void update()
     {
-        final double minLog = -100;
-        double[] priors = _input;
-        int M = priors.length;
-        int D = _var.getSiblingCount();
+        final int M = _input.length;
+        final int D = _var.getSiblingCount();
+        final int[] zeroOffsets = getZeroOffsets(D);
+        double[] alphas = _alphas;
+        if (alphas.length != M)
+        	alphas = _alphas = new double[M];
         
+        for (int d = 0; d < D; d++)
+        	saveOutputForDamping(d);
         
-        //Compute alphas
-        double[] alphas = new double[M];
-        for (int m = 0; m < M; m++)
+        if (!SumProductKernels.updateVariableLinear(_input, 0, M, D, _inputMessages, _outputMessages, zeroOffsets, 0, alphas))
         {
-        	double prior = priors[m];
-        	double alpha = (prior == 0) ? minLog : Math.log(prior);
-
-        	for (int d = 0; d < D; d++)
-	        {
-	        	double tmp = _inputMessages[d][m];
-        		double logtmp = (tmp == 0) ? minLog : Math.log(tmp);
-        		_logInPortMsgs[d][m] = logtmp;
-        		alpha += logtmp;
-	        }
-	        alphas[m] = alpha;
+        	double[] logInputs = _logInputs;
+        	if (logInputs.length < M * D)
+        		logInputs = _logInputs = new double[M * D];
+        	SumProductKernels.updateVariableLog(_input, 0, M, D, _inputMessages, _outputMessages, zeroOffsets, 0, alphas, logInputs);
         }
         
-        
-        //Now compute output messages for each outgoing edge
-	    for (int out_d = 0; out_d < D; out_d++ )
-	    {
-            double[] outMsgs = _outputMessages[out_d];
-            
-
-            if (_dampingInUse)
-            {
-            	double damping = _dampingParams[out_d];
-            	if (damping != 0)
-            	{
-            		double[] saved = _savedOutMsgArray[out_d];
-            		for (int i = 0; i < outMsgs.length; i++)
-            			saved[i] = outMsgs[i];
-            	}
-            }
-            
-            
-            double maxLog = Double.NEGATIVE_INFINITY;
-            
-            //set outMsgs to alpha - mu_d,m
-            //find max alpha
-            double[] logInPortMsgsD = _logInPortMsgs[out_d];
-            for (int m = 0; m < M; m++)
-            {
-            	double out = alphas[m] - logInPortMsgsD[m];
-                if (out > maxLog) maxLog = out;
-                outMsgs[m] = out;
-            }
-            
-            //create sum
-            double sum = 0;
-            for (int m = 0; m < M; m++)
-            {
-                double out = Math.exp(outMsgs[m] - maxLog);
-                outMsgs[m] = out;
-                sum += out;
-            }
-            
-            //calculate message by dividing by sum
-            for (int m = 0; m < M; m++)
-            {
-            	outMsgs[m] /= sum;
-            }
-            
-            
-            if (_dampingInUse)
-            {
-            	double damping = _dampingParams[out_d];
-            	if (damping != 0)
-            	{
-            		double[] saved = _savedOutMsgArray[out_d];
-            		for (int m = 0; m < M; m++)
-            			outMsgs[m] = outMsgs[m]*(1-damping) + saved[m]*damping;
-            	}
-            }
-            
-	    }
+        for (int d = 0; d < D; d++)
+        	applyDamping(d);
 	   
 	    if (_calculateDerivative)
 		    for (int i = 0; i < _inputMessages.length; i++)
@@ -266,50 +168,60 @@ public class SDiscreteVariable extends SDiscreteVariableDoubleArray
 	    
     }
     
+    /*
+     * Saves the output message for the port before it is updated if it is damped.
+     */
+    private void saveOutputForDamping(int port)
+    {
+    	if (_dampingInUse && _dampingParams[port] != 0)
+    	{
+    		double[] outMsgs = _outputMessages[port];
+    		System.arraycopy(outMsgs, 0, _savedOutMsgArray[port], 0, outMsgs.length);
+    	}
+    }
+    
+    /*
+     * Mixes the updated output message for the port with the saved one if it is damped.
+     */
+    private void applyDamping(int port)
+    {
+    	if (_dampingInUse)
+    	{
+    		double damping = _dampingParams[port];
+    		if (damping != 0)
+    		{
+    			double[] outMsgs = _outputMessages[port];
+    			double[] saved = _savedOutMsgArray[port];
+    			for (int m = 0; m < outMsgs.length; m++)
+    				outMsgs[m] = outMsgs[m]*(1-damping) + saved[m]*damping;
+    		}
+    	}
+    }
+    
+    /*
+     * Offsets for SumProductKernels, which are all zero because each message has its own array.
+     */
+    private int[] getZeroOffsets(int numPorts)
+    {
+    	int[] zeroOffsets = _zeroOffsets;
+    	if (zeroOffsets.length < numPorts)
+    		zeroOffsets = _zeroOffsets = new int[numPorts];
+    	return zeroOffsets;
+    }
         
     @Override
 	public double[] getBelief()
     {
-
-        final double minLog = -100;
-        double[] priors = _input;
-        int M = priors.length;
-        int D = _var.getSiblingCount();
-        double maxLog = Double.NEGATIVE_INFINITY;
-
-        
-        double[] outBelief = new double[M];
-
-        for (int m = 0; m < M; m++)
-        {
-        	double prior = priors[m];
-        	double out = (prior == 0) ? minLog : Math.log(prior);
-        	
-	        for (int d = 0; d < D; d++)
-	        {
-	        	double tmp = _inputMessages[d][m];
-	        	out += (tmp == 0) ? minLog : Math.log(tmp);
-	        }
-        	if (out > maxLog) maxLog = out;
-        	outBelief[m] = out;
-        }
-        
-        //create sum
-        double sum = 0;
-        for (int m = 0; m < M; m++)
-        {
-        	double out = Math.exp(outBelief[m] - maxLog);
-        	outBelief[m] = out;
-        	sum += out;
-        }
-        
-        //calculate belief by dividing by sum
-        for (int m = 0; m < M; m++)
-        {
-        	outBelief[m] /= sum;
-        }
-        
-        
+    	return getBelief(null);
+    }
+    
+    @Override
+	public double[] getBelief(double[] belief)
+    {
+        final int M = _input.length;
+        final int D = _var.getSiblingCount();
+        double[] outBelief = belief != null && belief.length == M ? belief : new double[M];
+        SumProductKernels.updateVariableEdge(_input, 0, M, D, _inputMessages, getZeroOffsets(D), 0, -1, outBelief, 0);
         return outBelief;
     }
     
@@ -573,8 +485,6 @@ public class SDiscreteVariable extends SDiscreteVariableDoubleArray
 		Object [] retval = super.createMessages(factor);
 		int portNum = _var.getPortNum(factor.getModelObject());
 		int newArraySize = _inputMessages.length;
-		_logInPortMsgs = Arrays.copyOf(_logInPortMsgs, newArraySize);
-		_logInPortMsgs[portNum] = new double[_inputMessages[portNum].length];
 		
 		if (_dampingInUse)
 		{
@@ -608,11 +518,9 @@ public class SDiscreteVariable extends SDiscreteVariableDoubleArray
 	{
 		super.moveMessages(other, portNum, otherPortNum);
 		
-		SDiscreteVariable sother = (SDiscreteVariable)other;
-		_logInPortMsgs[portNum] = sother._logInPortMsgs[otherPortNum];
-		
 		if (_dampingInUse)
 		{
+			SDiscreteVariable sother = (SDiscreteVariable)other;
 			_savedOutMsgArray[portNum] = sother._savedOutMsgArray[otherPortNum];
 		}
 	}
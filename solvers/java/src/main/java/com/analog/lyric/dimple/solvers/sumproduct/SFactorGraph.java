@@ -16,6 +16,7 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct;
 
+import java.util.LinkedHashSet;
 import java.util.Random;
 
 import com.analog.lyric.dimple.factorfunctions.ComplexNegate;
@@ -36,6 +37,7 @@ import com.analog.lyric.dimple.factorfunctions.RealJointSubtract;
 import com.analog.lyric.dimple.factorfunctions.RealJointSum;
 import com.analog.lyric.dimple.factorfunctions.Subtract;
 import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.Xor;
 import com.analog.lyric.dimple.factorfunctions.core.CustomFactorFunctionWrapper;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
@@ -45,13 +47,17 @@ import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.variables.Real;
 import com.analog.lyric.dimple.model.variables.RealJoint;
 import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ParallelNodesScheduleEntry;
 import com.analog.lyric.dimple.solvers.core.ParameterEstimator;
 import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
-import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
 import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomComplexGaussianPolynomial;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomDiscreteSubtract;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomDiscreteSum;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldAdd;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldConstantMult;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldMult;
@@ -69,16 +75,21 @@ import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivaria
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateGaussianSum;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateNormalConstantParameters;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomNormalConstantParameters;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor;
 import com.analog.lyric.dimple.solvers.sumproduct.sampledfactor.SampledFactor;
 import com.analog.lyric.util.misc.IMapList;
 
 public class SFactorGraph extends SFactorGraphBase
 {
 	private double _damping = 0;
+	private boolean _optimizedUpdate = false;
+	private boolean _derivativesInUse = false;
 	private IFactorTable _currentFactorTable = null;
 	private int _sampledFactorSamplesPerUpdate = SampledFactor.DEFAULT_SAMPLES_PER_UPDATE;
 	private int _sampledFactorBurnInScansPerUpdate = SampledFactor.DEFAULT_BURN_IN_SCANS_PER_UPDATE;
 	private int _sampledFactorScansPerSample = SampledFactor.DEFAULT_SCANS_PER_SAMPLE;
+	private boolean _sampledFactorAmortizedUpdate = false;
+	private boolean _sampledFactorParallelUpdates = false;
 	private static Random _rand = new Random();
 
 
@@ -128,12 +139,20 @@ public class SFactorGraph extends SFactorGraphBase
 				return new CustomFiniteFieldProjection(factor);
 			else if ((factorFunction instanceof Multiplexer) || (noFF && factorName.equals("multiplexerCPD")))	// "multiplexerCPD" for backward compatibility
 				return new CustomMultiplexer(factor);															// Currently only supports discrete variables
+			else if ((factorFunction instanceof Sum) && !requiresTableFactors() && CustomDiscreteSum.isFactorCompatible(factor))		// Integer domains only
+				return new CustomDiscreteSum(factor);
+			else if ((factorFunction instanceof Subtract) && !requiresTableFactors() && CustomDiscreteSubtract.isFactorCompatible(factor))
+				return new CustomDiscreteSubtract(factor);
+			else if ((factorFunction instanceof Xor) && !requiresTableFactors() && CustomXor.isFactorCompatible(factor))				// Binary domains only
+				return new CustomXor(factor);
 			else	// No custom factor exists, so create a generic one
 			{
 				// For discrete case, create a table factor
 				STableFactor tf = new STableFactor(factor);
 				if (_damping != 0)
 					setDampingForTableFactor(tf);
+				if (_optimizedUpdate)
+					tf.setOptimizedUpdate(true);
 				return tf;
 			}
 		}
@@ -191,6 +210,9 @@ public class SFactorGraph extends SFactorGraphBase
 				// For non-discrete factor that doesn't have a custom factor, create a sampled factor
 				SampledFactor sf = new SampledFactor(factor);
 				sf.setSamplesPerUpdate(_sampledFactorSamplesPerUpdate);
+				sf.setBurnInScansPerUpdate(_sampledFactorBurnInScansPerUpdate);
+				sf.setScansPerSample(_sampledFactorScansPerSample);
+				sf.setAmortizedUpdate(_sampledFactorAmortizedUpdate);
 				return sf;
 			}
 		}
@@ -236,20 +258,26 @@ public class SFactorGraph extends SFactorGraphBase
 		return _rand;
 	}
 	
+	@Override
 	public void setSeed(long seed)
 	{
 		_rand = new Random(seed);				// Used for parameter estimation
-		SolverRandomGenerator.setSeed(seed);	// Used for sampled factors
+		super.setSeed(seed);					// Used for sampled factors
 	}
 	
 
 	/*
 	 * Set the global solver damping parameter.  We have to go through all factor graphs
 	 * and update the damping parameter on all existing table functions in that graph.
+	 * Custom factors that do not support damping but that were only chosen over a table
+	 * factor for speed, such as CustomDiscreteSum and CustomXor, are replaced by table factors when
+	 * damping is nonzero.  The same is done when derivatives are first computed.
 	 */
 	public void setDamping(double damping)
 	{
 		_damping = damping;
+		if (damping != 0)
+			replaceCustomFactorsWithTables(_factorGraph.getNonGraphFactors());
 		for (Factor f : _factorGraph.getNonGraphFactors())
 		{
 			if (f.getSolver() instanceof STableFactor)
@@ -266,6 +294,26 @@ public class SFactorGraph extends SFactorGraphBase
 		return _damping;
 	}
 
+	/*
+	 * Set whether table factors compute all of their output messages in a single pass
+	 * over the factor table when updating all edges at once.  As with damping, this applies
+	 * to existing table factors as well as those created afterward.
+	 */
+	public void setOptimizedUpdate(boolean optimizedUpdate)
+	{
+		_optimizedUpdate = optimizedUpdate;
+		for (Factor f : _factorGraph.getNonGraphFactorsFlat())
+		{
+			if (f.getSolver() instanceof STableFactor)
+				((STableFactor)f.getSolver()).setOptimizedUpdate(optimizedUpdate);
+		}
+	}
+	
+	public boolean getOptimizedUpdate()
+	{
+		return _optimizedUpdate;
+	}
+
 	/*
 	 * This method applies the global damping parameter to all of the table factor's ports
 	 * and all of the variable ports connected to it.  This might cause problems in the future
@@ -311,7 +359,7 @@ public class SFactorGraph extends SFactorGraphBase
 		{
 			ISolverFactor s = f.getSolver();
 			if (s instanceof SampledFactor)
-				((SampledFactor)s).setSamplesPerUpdate(burnInSamples);
+				((SampledFactor)s).setBurnInScansPerUpdate(burnInSamples);
 		}
 	}
 	public int getSampledFactorBurnInScansPerUpdate()
@@ -326,13 +374,95 @@ public class SFactorGraph extends SFactorGraphBase
 		{
 			ISolverFactor s = f.getSolver();
 			if (s instanceof SampledFactor)
-				((SampledFactor)s).setSamplesPerUpdate(scansPerSample);
+				((SampledFactor)s).setScansPerSample(scansPerSample);
 		}
 	}
 	public int getSampledFactorScansPerSample()
 	{
 		return _sampledFactorScansPerSample;
 	}
+	
+	/**
+	 * Enables or disables amortized updates for all sampled factors in the graph.
+	 * @see SampledFactor#setAmortizedUpdate(boolean)
+	 * @since 0.05
+	 */
+	public void setSampledFactorAmortizedUpdate(boolean amortizedUpdate)
+	{
+		_sampledFactorAmortizedUpdate = amortizedUpdate;
+		for (Factor f : _factorGraph.getNonGraphFactors())
+		{
+			ISolverFactor s = f.getSolver();
+			if (s instanceof SampledFactor)
+				((SampledFactor)s).setAmortizedUpdate(amortizedUpdate);
+		}
+	}
+	/**
+	 * @since 0.05
+	 */
+	public boolean getSampledFactorAmortizedUpdate()
+	{
+		return _sampledFactorAmortizedUpdate;
+	}
+	
+	/**
+	 * Enables or disables concurrent updates of sampled factors. When enabled, consecutive
+	 * schedule entries that each update a whole sampled factor are updated concurrently, since
+	 * each such update depends only on the input messages of its own factor.
+	 * <p>
+	 * Factor functions shared by sampled factors updated in this way must be safe to evaluate
+	 * concurrently.
+	 * @since 0.05
+	 */
+	public void setSampledFactorParallelUpdates(boolean parallelUpdates)
+	{
+		_sampledFactorParallelUpdates = parallelUpdates;
+	}
+	/**
+	 * @since 0.05
+	 */
+	public boolean getSampledFactorParallelUpdates()
+	{
+		return _sampledFactorParallelUpdates;
+	}
+	
+	@Override
+	public void update()
+	{
+		if (!_sampledFactorParallelUpdates)
+		{
+			super.update();
+			return;
+		}
+		
+		// Gather runs of consecutive updates of distinct sampled factors and update each run concurrently
+		final int numWorkers = getMultithreadingManager().getNumWorkers();
+		final LinkedHashSet<INode> sampledFactors = new LinkedHashSet<INode>();
+		for (IScheduleEntry entry : _factorGraph.getSchedule())
+		{
+			if (entry instanceof NodeScheduleEntry)
+			{
+				INode node = ((NodeScheduleEntry)entry).getNode();
+				if (node.getSolver() instanceof SampledFactor && sampledFactors.add(node))
+				{
+					continue;
+				}
+			}
+			updateSampledFactors(sampledFactors, numWorkers);
+			entry.update();
+		}
+		updateSampledFactors(sampledFactors, numWorkers);
+	}
+	
+	private void updateSampledFactors(LinkedHashSet<INode> sampledFactors, int numWorkers)
+	{
+		final int size = sampledFactors.size();
+		if (size == 1)
+			sampledFactors.iterator().next().update();
+		else if (size > 1)
+			new ParallelNodesScheduleEntry(sampledFactors.toArray(new INode[size]), numWorkers, 1).update();
+		sampledFactors.clear();
+	}
 
 	
 
@@ -355,6 +485,9 @@ public class SFactorGraph extends SFactorGraphBase
 			_scaleFactor = scaleFactor;
 		}
 
+		//Unlike PseudoLikelihood, this step is not split into shards that run on the
+		//ThreadPool. It is deliberately left sequential, since each derivative is computed
+		//from the beliefs of the whole graph, which the weight updates change as they go.
 		@Override
 		public void runStep(FactorGraph fg)
 		{
@@ -385,6 +518,28 @@ public class SFactorGraph extends SFactorGraphBase
 		
 	}
 	
+	/*
+	 * True if new factors must use STableFactor rather than a custom factor that was chosen only
+	 * for speed and that does not support damping or derivatives, such as CustomDiscreteSum or CustomXor.
+	 */
+	private boolean requiresTableFactors()
+	{
+		return _damping != 0 || _derivativesInUse;
+	}
+	
+	/*
+	 * Recreates the solver objects of those factors that use such a custom factor, so that
+	 * they use STableFactor instead.
+	 */
+	private void replaceCustomFactorsWithTables(Iterable<Factor> factors)
+	{
+		for (Factor f : factors)
+		{
+			if (f.getSolver() instanceof CustomDiscreteSum || f.getSolver() instanceof CustomXor)
+				f.createSolverObject(this);
+		}
+	}
+	
 	public static int [][] convertObjects2Indices(VariableBase [] vars, Object [][] data)
 	{
 		
@@ -414,6 +569,11 @@ public class SFactorGraph extends SFactorGraphBase
 		
 		_currentFactorTable = ft;
 		
+		if (!_derivativesInUse)
+		{
+			_derivativesInUse = true;
+			replaceCustomFactorsWithTables(_factorGraph.getFactorsFlat());
+		}
 				
 		for (Factor f : _factorGraph.getFactorsFlat())
 		{
@@ -481,8 +641,8 @@ public class SFactorGraph extends SFactorGraphBase
 			if (f.getSolver() instanceof STableFactor)
 			{
 				STableFactor tf = (STableFactor)(f.getSolver());
-				tf.getFactorTable().getIndicesSparseUnsafe();
 				tf.getFactorTable().getWeightsSparseUnsafe();
+				tf.getFactorTable().getPackedIndicesSparseUnsafe();
 			}
 		}
 		
@@ -49,6 +49,7 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	protected boolean _kIsSmallerThanDomain = false;
 	protected boolean _updateDerivative = false;
 	protected boolean _dampingInUse = false;
+	protected boolean _optimizedUpdate = false;
 	
 	/*--------------
 	 * Construction
@@ -166,7 +167,8 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	@Override
 	protected void setTableRepresentation(IFactorTable table)
 	{
-		table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT_WITH_INDICES);
+		// The update engine uses the packed indices, so don't force creation of per-entry index arrays.
+		table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT);
 	}
 	
 	/*-------------
@@ -214,6 +216,22 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	}
 
 
+	/**
+	 * When enabled, {@link #update()} computes the messages for all ports in a single
+	 * pass over the factor table instead of one pass per port. This is faster for factors
+	 * with more than two ports but may give results that differ in the last few bits
+	 * due to the different order of multiplication.
+	 */
+	public void setOptimizedUpdate(boolean optimizedUpdate)
+	{
+		_optimizedUpdate = optimizedUpdate;
+	}
+	
+	public boolean getOptimizedUpdate()
+	{
+		return _optimizedUpdate;
+	}
+
 	public void setUpdateDerivative(boolean updateDer)
 	{
 		_updateDerivative = updateDer;
@@ -223,20 +241,19 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	
 	public double [] getUnormalizedBelief()
 	{
-		final int [][] table = getFactorTable().getIndicesSparseUnsafe();
-		final double [] values = getFactorTable().getWeightsSparseUnsafe();
+		final IFactorTable table = getFactorTable();
+		final double [] values = table.getWeightsSparseUnsafe();
+		final int [] indices = table.getPackedIndicesSparseUnsafe();
 		final int nEntries = values.length;
-		final double [] retval = new double[nEntries];
+		final int nPorts = _inputMsgs.length;
+		final double [] retval = values.clone();
 		
-		
-		for (int i = 0; i < nEntries; i++)
+		for (int j = 0, offset = 0; j < nPorts; j++, offset += nEntries)
 		{
-			retval[i] = values[i];
-			
-			final int[] indices = table[i];
-			for (int j = 0; j < indices.length; j++)
+			final double[] inputMsg = _inputMsgs[j];
+			for (int i = 0; i < nEntries; i++)
 			{
-				retval[i] *= _inputMsgs[j][indices[j]];
+				retval[i] *= inputMsg[indices[offset + i]];
 			}
 		}
 		
@@ -299,7 +316,7 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	@Override
 	public double getFactorTableValue(int index)
 	{
-		return getFactorTable().getWeightsSparseUnsafe()[index];
+		return getFactorTable().getWeightForSparseIndex(index);
 	}
 
 	@Override
@@ -0,0 +1,541 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import java.util.Arrays;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.OffHeapFactorTable;
+import com.analog.lyric.dimple.model.factors.Factor;
+
+/**
+ * Discrete sum-product message updates shared by the solver objects and by {@link CompiledSFactorGraph},
+ * so that both compute the same messages.
+ * <p>
+ * The messages of a node's edges are passed as arrays of message arrays and an array of offsets: the
+ * message into the node on port p starts at {@code in[p][offsets[start + p]]}, and the message out of
+ * it starts at the same offset in {@code out[p]}. Other per-edge arrays are also indexed by
+ * {@code start + p}. The solver objects keep each message in its own array, and so pass offsets of
+ * zero, while the compiled graph keeps the messages in each direction in one array.
+ * <p>
+ * None of the methods allocate memory. Damping and derivatives are left to the caller.
+ *
+ * @since 0.05
+ */
+public final class SumProductKernels
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Used in place of the log of zero.
+	 */
+	private static final double MIN_LOG = -100;
+
+	private SumProductKernels()
+	{
+	}
+
+	/*------------------
+	 * Variable updates
+	 */
+
+	/**
+	 * Computes the messages out of a discrete variable by multiplying the input and all of the incoming
+	 * messages together and then dividing out the incoming message for each port. This avoids the log and
+	 * exp calls made by {@link #updateVariableLog}, but can only be used when there are no zero (or denormal)
+	 * values in the input or incoming messages. Returns false without modifying the outgoing messages if that
+	 * is not the case or if the product underflows.
+	 *
+	 * @param input holds the variable input, of length {@code size}, starting at {@code inputOffset}.
+	 * @param alphas is scratch space of at least {@code size}.
+	 */
+	public static boolean updateVariableLinear(double[] input, int inputOffset, int size, int numPorts,
+		double[][] in, double[][] out, int[] offsets, int start, double[] alphas)
+	{
+		for (int m = 0; m < size; m++)
+		{
+			final double prior = input[inputOffset + m];
+			if (prior < Double.MIN_NORMAL)
+				return false;
+			alphas[m] = prior;
+		}
+
+		for (int port = 0; port < numPorts; port++)
+		{
+			final double[] inMsgs = in[port];
+			final int inOffset = offsets[start + port];
+			double max = 0;
+			for (int m = 0; m < size; m++)
+			{
+				final double tmp = inMsgs[inOffset + m];
+				if (tmp < Double.MIN_NORMAL)
+					return false;
+				final double alpha = alphas[m] *= tmp;
+				if (alpha > max) max = alpha;
+			}
+
+			// Rescale so that the largest value is one to keep the product from underflowing.
+			// This scales every entry by the same amount, so it does not change the normalized outputs.
+			if (max < Double.MIN_NORMAL || max == Double.POSITIVE_INFINITY)
+				return false;
+			final double scale = 1 / max;
+			for (int m = 0; m < size; m++)
+				alphas[m] *= scale;
+		}
+
+		for (int m = 0; m < size; m++)
+			if (alphas[m] < Double.MIN_NORMAL)
+				return false;
+
+		for (int port = 0; port < numPorts; port++)
+		{
+			final double[] inMsgs = in[port], outMsgs = out[port];
+			final int offset = offsets[start + port];
+
+			double sum = 0;
+			for (int m = 0; m < size; m++)
+			{
+				final double value = alphas[m] / inMsgs[offset + m];
+				outMsgs[offset + m] = value;
+				sum += value;
+			}
+			for (int m = 0; m < size; m++)
+				outMsgs[offset + m] /= sum;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Computes the messages out of a discrete variable in the log domain, replacing zero values
+	 * with a very small non-zero value.
+	 *
+	 * @param alphas is scratch space of at least {@code size}.
+	 * @param logInputs is scratch space of at least {@code size * numPorts}.
+	 * @see #updateVariableLinear
+	 */
+	public static void updateVariableLog(double[] input, int inputOffset, int size, int numPorts,
+		double[][] in, double[][] out, int[] offsets, int start, double[] alphas, double[] logInputs)
+	{
+		for (int m = 0; m < size; m++)
+		{
+			final double prior = input[inputOffset + m];
+			double alpha = (prior == 0) ? MIN_LOG : Math.log(prior);
+			for (int port = 0, j = m; port < numPorts; port++, j += size)
+			{
+				final double tmp = in[port][offsets[start + port] + m];
+				final double logtmp = (tmp == 0) ? MIN_LOG : Math.log(tmp);
+				logInputs[j] = logtmp;
+				alpha += logtmp;
+			}
+			alphas[m] = alpha;
+		}
+
+		for (int port = 0, j = 0; port < numPorts; port++, j += size)
+		{
+			final double[] outMsgs = out[port];
+			final int outOffset = offsets[start + port];
+			double maxLog = Double.NEGATIVE_INFINITY;
+			for (int m = 0; m < size; m++)
+			{
+				final double value = alphas[m] - logInputs[j + m];
+				if (value > maxLog) maxLog = value;
+				outMsgs[outOffset + m] = value;
+			}
+			normalizeLog(outMsgs, outOffset, size, maxLog);
+		}
+	}
+
+	/**
+	 * Computes the normalized product of a discrete variable's input and all of its incoming messages
+	 * other than the one on {@code excludedPort}, in the log domain. This is the message out of
+	 * {@code excludedPort}, or the variable's belief if {@code excludedPort} is negative.
+	 *
+	 * @param result is where the product is written, starting at {@code resultOffset}.
+	 */
+	public static void updateVariableEdge(double[] input, int inputOffset, int size, int numPorts,
+		double[][] in, int[] offsets, int start, int excludedPort, double[] result, int resultOffset)
+	{
+		double maxLog = Double.NEGATIVE_INFINITY;
+		for (int m = 0; m < size; m++)
+		{
+			final double prior = input[inputOffset + m];
+			double value = (prior == 0) ? MIN_LOG : Math.log(prior);
+			for (int port = 0; port < numPorts; port++)
+			{
+				if (port != excludedPort)
+				{
+					final double tmp = in[port][offsets[start + port] + m];
+					value += (tmp == 0) ? MIN_LOG : Math.log(tmp);
+				}
+			}
+			if (value > maxLog) maxLog = value;
+			result[resultOffset + m] = value;
+		}
+		normalizeLog(result, resultOffset, size, maxLog);
+	}
+
+	/*---------------
+	 * Table updates
+	 */
+
+	/**
+	 * Computes all of the messages out of a table factor in a single pass over the table.
+	 * <p>
+	 * For each table row we compute the running product of the weight and the
+	 * input messages for the ports before each port (the prefix) in a forward walk,
+	 * and then multiply in the product of the input messages for the ports after
+	 * each port (the suffix) in a backward walk. This gives every port the product
+	 * of all of the other inputs without dividing, so zeros in the input messages
+	 * need no special handling. The cost is O(numPorts) multiplies per row instead
+	 * of the O(numPorts^2) required by computing each port separately.
+	 *
+	 * @param weights are the table's sparse weights.
+	 * @param indices are the table's sparse indices, packed by port as in
+	 * {@link com.analog.lyric.dimple.factorfunctions.core.IFactorTable#getPackedIndicesSparseUnsafe()},
+	 * with the offset of each port's messages added, so that they index the message arrays directly.
+	 * When the offsets are zero, these are just the table's packed indices.
+	 * @param sizes are the sizes of the domains of the factor's variables.
+	 * @param prefixProducts is scratch space of at least {@code numPorts}.
+	 * @param factor is only used to describe the factor if all of the probabilities of a message are zero.
+	 */
+	public static void updateTable(double[] weights, int[] indices, int numPorts, int[] sizes,
+		double[][] in, double[][] out, int[] offsets, int start, double[] prefixProducts, Factor factor)
+	{
+		for (int port = 0; port < numPorts; port++)
+			clear(out[port], offsets[start + port], sizes[start + port]);
+
+		addTable(weights, indices, weights.length, numPorts, in, out, prefixProducts);
+
+		for (int port = 0; port < numPorts; port++)
+			normalize(out[port], offsets[start + port], sizes[start + port], "Update", port, factor);
+	}
+
+	/**
+	 * Computes all of the messages out of a table factor whose table is stored off the heap, reading the
+	 * table in blocks through {@link OffHeapFactorTable#readWeightsSparse} rather than through heap copies
+	 * of the whole table.
+	 *
+	 * @param weightBlock is scratch space whose length determines the number of entries read at a time.
+	 * @param indexBlock is scratch space of at least {@code weightBlock.length * numPorts}.
+	 * @see #updateTable(double[], int[], int, int[], double[][], double[][], int[], int, double[], Factor)
+	 */
+	public static void updateTable(OffHeapFactorTable table, double[] weightBlock, int[] indexBlock, int numPorts,
+		int[] sizes, double[][] in, double[][] out, int[] offsets, int start, double[] prefixProducts, Factor factor)
+	{
+		for (int port = 0; port < numPorts; port++)
+			clear(out[port], offsets[start + port], sizes[start + port]);
+
+		for (int si = 0, tableSize = table.sparseSize(); si < tableSize;)
+		{
+			final int blockLength = table.readWeightsSparse(si, weightBlock, indexBlock);
+			addOffsets(indexBlock, blockLength, numPorts, offsets, start);
+			addTable(weightBlock, indexBlock, blockLength, numPorts, in, out, prefixProducts);
+			si += blockLength;
+		}
+
+		for (int port = 0; port < numPorts; port++)
+			normalize(out[port], offsets[start + port], sizes[start + port], "Update", port, factor);
+	}
+
+	/**
+	 * Computes the message out of one port of a table factor.
+	 *
+	 * @param operation names the update in the exception thrown if all of the probabilities of the message are zero.
+	 * @see #updateTable
+	 */
+	public static void updateTableEdge(double[] weights, int[] indices, int numPorts, int outPort, int[] sizes,
+		double[][] in, double[][] out, int[] offsets, int start, String operation, Factor factor)
+	{
+		final int outMsgOffset = offsets[start + outPort];
+		clear(out[outPort], outMsgOffset, sizes[start + outPort]);
+		addTableEdge(weights, indices, weights.length, numPorts, outPort, in, out[outPort]);
+		normalize(out[outPort], outMsgOffset, sizes[start + outPort], operation, outPort, factor);
+	}
+
+	/**
+	 * Computes the message out of one port of a table factor whose table is stored off the heap.
+	 *
+	 * @see #updateTable(OffHeapFactorTable, double[], int[], int, int[], double[][], double[][], int[], int, double[], Factor)
+	 * @see #updateTableEdge(double[], int[], int, int, int[], double[][], double[][], int[], int, String, Factor)
+	 */
+	public static void updateTableEdge(OffHeapFactorTable table, double[] weightBlock, int[] indexBlock, int numPorts,
+		int outPort, int[] sizes, double[][] in, double[][] out, int[] offsets, int start, String operation, Factor factor)
+	{
+		final int outMsgOffset = offsets[start + outPort];
+		clear(out[outPort], outMsgOffset, sizes[start + outPort]);
+
+		for (int si = 0, tableSize = table.sparseSize(); si < tableSize;)
+		{
+			final int blockLength = table.readWeightsSparse(si, weightBlock, indexBlock);
+			addOffsets(indexBlock, blockLength, numPorts, offsets, start);
+			addTableEdge(weightBlock, indexBlock, blockLength, numPorts, outPort, in, out[outPort]);
+			si += blockLength;
+		}
+
+		normalize(out[outPort], outMsgOffset, sizes[start + outPort], operation, outPort, factor);
+	}
+
+	/*----------------------
+	 * Parity check updates
+	 */
+
+	/**
+	 * Computes all of the messages out of a parity check over binary variables using the "tanh rule":
+	 * writing each incoming message as the difference d = p(false) - p(true), the message to a variable
+	 * has difference equal to the product of the other variables' differences, times -1 if the constant
+	 * inputs have odd parity. The products of the other differences are formed from prefix and suffix
+	 * products, so this takes time linear in the number of ports.
+	 * <p>
+	 * The differences of confident messages are close to +/-1, where they cannot represent the smaller
+	 * probability. So the magnitude of each difference is kept as log(1 - 2q), computed with
+	 * {@link Math#log1p}, where q is the smaller normalized probability of the message, and the
+	 * smaller outgoing probability is recovered with {@link Math#expm1}. The signs are kept separately.
+	 * A probability of 1e-20 therefore remains 1e-20, as it does in the table factor update, rather
+	 * than becoming zero.
+	 *
+	 * @param paritySign is 1 if the constant inputs have even parity, otherwise -1.
+	 * @param trueIndices are the indices of the true element in each variable's domain.
+	 * @param logMagnitudes is scratch space of at least {@code numPorts}.
+	 * @param prefixLogs is scratch space of at least {@code numPorts}.
+	 * @param factor is only used to describe the factor if all of the probabilities of a message are zero.
+	 */
+	public static void updateParity(double paritySign, int[] trueIndices, int numPorts,
+		double[][] in, double[][] out, int[] offsets, int start,
+		double[] logMagnitudes, double[] prefixLogs, Factor factor)
+	{
+		double sign = paritySign, logMagnitude = 0;
+		for (int port = 0; port < numPorts; port++)
+		{
+			prefixLogs[port] = logMagnitude;
+			logMagnitude += logMagnitudes[port] = getParityLogMagnitude(trueIndices, in, offsets, start, port);
+			sign *= getParitySign(trueIndices, in, offsets, start, port);
+		}
+		if (Double.isNaN(logMagnitude))
+			checkParityZeroInputs(numPorts, in, offsets, start, -1, factor);
+
+		// Since each sign is +/-1, the sign of the product of the other differences is the
+		// sign of the product of all of them times the port's own sign.
+		double suffix = 0;
+		for (int port = numPorts; --port >= 0;)
+		{
+			setParityOutput(trueIndices, out, offsets, start, port,
+				sign * getParitySign(trueIndices, in, offsets, start, port), prefixLogs[port] + suffix);
+			suffix += logMagnitudes[port];
+		}
+	}
+
+	/**
+	 * Computes the message out of one port of a parity check.
+	 *
+	 * @see #updateParity
+	 */
+	public static void updateParityEdge(double paritySign, int[] trueIndices, int numPorts, int outPort,
+		double[][] in, double[][] out, int[] offsets, int start, Factor factor)
+	{
+		double sign = paritySign, logMagnitude = 0;
+		for (int port = 0; port < numPorts; port++)
+		{
+			if (port != outPort)
+			{
+				logMagnitude += getParityLogMagnitude(trueIndices, in, offsets, start, port);
+				sign *= getParitySign(trueIndices, in, offsets, start, port);
+			}
+		}
+		if (Double.isNaN(logMagnitude))
+			checkParityZeroInputs(numPorts, in, offsets, start, outPort, factor);
+		setParityOutput(trueIndices, out, offsets, start, outPort, sign, logMagnitude);
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static void clear(double[] values, int offset, int size)
+	{
+		Arrays.fill(values, offset, offset + size, 0);
+	}
+
+	/*
+	 * Adds the products for the first tableLength rows of the packed table to the messages out of
+	 * every port. See updateTable.
+	 */
+	private static void addTable(double[] weights, int[] indices, int tableLength, int numPorts,
+		double[][] in, double[][] out, double[] prefixProducts)
+	{
+		final int lastOffset = (numPorts - 1) * tableLength;
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			double prod = weights[tableIndex];
+			for (int port = 0, i = tableIndex; port < numPorts; port++, i += tableLength)
+			{
+				prefixProducts[port] = prod;
+				prod *= in[port][indices[i]];
+			}
+
+			double suffix = 1;
+			for (int port = numPorts, i = lastOffset + tableIndex; --port >= 0; i -= tableLength)
+			{
+				final int index = indices[i];
+				out[port][index] += prefixProducts[port] * suffix;
+				suffix *= in[port][index];
+			}
+		}
+	}
+
+	/*
+	 * Adds the products for the first tableLength rows of the packed table to the message out of outPort.
+	 */
+	private static void addTableEdge(double[] weights, int[] indices, int tableLength, int numPorts, int outPort,
+		double[][] in, double[] outMsgs)
+	{
+		// The indices are packed by port, so the index for a port in a given row is at
+		// port * tableLength + tableIndex.
+		final int outOffset = outPort * tableLength;
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			double prob = weights[tableIndex];
+			for (int port = 0, i = tableIndex; port < outPort; ++port, i += tableLength)
+				prob *= in[port][indices[i]];
+			for (int port = outPort + 1, i = outOffset + tableLength + tableIndex; port < numPorts; port++, i += tableLength)
+				prob *= in[port][indices[i]];
+			outMsgs[indices[outOffset + tableIndex]] += prob;
+		}
+	}
+
+	/*
+	 * Adds each port's message offset to its indices in a block read from an off-heap table, so that
+	 * they index the message arrays directly.
+	 */
+	private static void addOffsets(int[] indices, int tableLength, int numPorts, int[] offsets, int start)
+	{
+		for (int port = 0, i = 0; port < numPorts; port++)
+		{
+			final int offset = offsets[start + port];
+			for (int end = i + tableLength; i < end; i++)
+				indices[i] += offset;
+		}
+	}
+
+	/*
+	 * Converts log values in place and normalizes them to sum to one.
+	 */
+	private static void normalizeLog(double[] values, int offset, int size, double maxLog)
+	{
+		final int end = offset + size;
+		double sum = 0;
+		for (int i = offset; i < end; i++)
+		{
+			final double value = Math.exp(values[i] - maxLog);
+			values[i] = value;
+			sum += value;
+		}
+		for (int i = offset; i < end; i++)
+			values[i] /= sum;
+	}
+
+	private static void normalize(double[] values, int offset, int size, String operation, int port, Factor factor)
+	{
+		final int end = offset + size;
+		double sum = 0;
+		for (int i = offset; i < end; i++)
+			sum += values[i];
+		if (sum == 0)
+		{
+			throw new DimpleException("%s failed in SumProduct Solver.  All probabilities were zero when calculating message for port %d on factor %s",
+				operation, port, factor.getLabel());
+		}
+
+		for (int i = offset; i < end; i++)
+			values[i] /= sum;
+	}
+
+	/*
+	 * The log of the magnitude of the difference p(false) - p(true) of the normalized incoming message,
+	 * which is log(1 - 2q) for the smaller normalized probability q. NaN if the incoming message has all
+	 * zero probabilities.
+	 */
+	private static double getParityLogMagnitude(int[] trueIndices, double[][] in, int[] offsets, int start, int port)
+	{
+		final double[] inMsgs = in[port];
+		final int inOffset = offsets[start + port];
+		final double p0 = inMsgs[inOffset], p1 = inMsgs[inOffset + 1];
+		return Math.log1p(-2 * Math.min(p0, p1) / (p0 + p1));
+	}
+
+	/*
+	 * The sign of the difference p(false) - p(true) of the incoming message, taking zero as positive.
+	 */
+	private static double getParitySign(int[] trueIndices, double[][] in, int[] offsets, int start, int port)
+	{
+		final double[] inMsgs = in[port];
+		final int inOffset = offsets[start + port], trueIndex = trueIndices[start + port];
+		return inMsgs[inOffset + 1 - trueIndex] >= inMsgs[inOffset + trueIndex] ? 1 : -1;
+	}
+
+	/*
+	 * Sets the outgoing message whose difference p(false) - p(true) has the given sign and the log of whose
+	 * magnitude is logMagnitude.
+	 */
+	private static void setParityOutput(int[] trueIndices, double[][] out, int[] offsets, int start, int port,
+		double sign, double logMagnitude)
+	{
+		final double[] outMsgs = out[port];
+		final int outOffset = offsets[start + port], trueIndex = trueIndices[start + port];
+		final double smaller = -Math.expm1(logMagnitude) / 2, larger = (1 + Math.exp(logMagnitude)) / 2;
+		outMsgs[outOffset + trueIndex] = sign > 0 ? smaller : larger;
+		outMsgs[outOffset + 1 - trueIndex] = sign > 0 ? larger : smaller;
+	}
+
+	/*
+	 * Throws the same exception as the table factor update if an outgoing message would have all zero
+	 * probabilities because of an incoming message with all zero probabilities. Only updates the edge
+	 * for outPort, or all edges if it is negative.
+	 */
+	private static void checkParityZeroInputs(int numPorts, double[][] in, int[] offsets, int start, int outPort, Factor factor)
+	{
+		int firstZeroInput = -1, numZeroInputs = 0;
+		for (int port = 0; port < numPorts; port++)
+		{
+			final double[] inMsgs = in[port];
+			final int inOffset = offsets[start + port];
+			if (port != outPort && inMsgs[inOffset] + inMsgs[inOffset + 1] == 0)
+			{
+				if (firstZeroInput < 0)
+					firstZeroInput = port;
+				++numZeroInputs;
+			}
+		}
+
+		// When updating all edges, the table factor reports the lowest port whose message is affected.
+		int zeroOutputPort = -1;
+		if (outPort >= 0)
+			zeroOutputPort = numZeroInputs > 0 ? outPort : -1;
+		else if (firstZeroInput > 0 || numZeroInputs > 1)
+			zeroOutputPort = 0;
+		else if (numZeroInputs == 1 && numPorts > 1)
+			zeroOutputPort = 1;
+
+		if (zeroOutputPort >= 0)
+		{
+			throw new DimpleException("%s failed in SumProduct Solver.  All probabilities were zero when calculating message for port %d on factor %s",
+				outPort >= 0 ? "UpdateEdge" : "Update", zeroOutputPort, factor.getLabel());
+		}
+	}
+}
@@ -16,10 +16,11 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct;
 
-import java.util.Arrays;
-
 import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.OffHeapFactorTable;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.solvers.core.DistanceTransform;
 
 /*
  * Provides the update and updateEdge logic for sumproduct
@@ -29,141 +30,214 @@ public class TableFactorEngine
 	STableFactor _tableFactor;
 	Factor _factor;
 	
+	// Scratch space for updateOptimized, indexed by port
+	private double[] _prefixProducts = null;
+	private int[] _zeroOffsets = null;
+	private int[] _messageSizes = null;
+	
+	// Scratch space for reading an OffHeapFactorTable in blocks
+	private double[] _weightBlock = null;
+	private int[] _indexBlock = null;
+	
+	// Non-null if the factor is a pairwise distance factor whose messages can be computed without the table
+	private final DistanceTransform _distanceTransform;
+	
 	public TableFactorEngine(STableFactor tableFactor)
 	{
 		_tableFactor = tableFactor;
 		_factor = _tableFactor.getFactor();
+		
+		DistanceTransform distanceTransform = DistanceTransform.forFactor(_factor);
+		_distanceTransform = distanceTransform != null && distanceTransform.canConvolve() ? distanceTransform : null;
 	}
 	
 	public void updateEdge(int outPortNum)
 	{
-	    int[][] table = _tableFactor.getFactorTable().getIndicesSparseUnsafe();
-	    double[] values = _tableFactor.getFactorTable().getWeightsSparseUnsafe();
-	    int tableLength = table.length;
-	    int numPorts = _factor.getSiblingCount();
+	    final DistanceTransform distanceTransform = getDistanceTransform();
 	    
         double[] outputMsgs = _tableFactor.getOutPortMsgs()[outPortNum];
         double [][] inputMsgs = _tableFactor.getInPortMsgs();
         
-        if (_tableFactor._dampingInUse)
-        {
-        	double damping = _tableFactor._dampingParams[outPortNum];
-        	if (damping != 0)
-        	{
-        		double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
-        		for (int i = 0; i < outputMsgs.length; i++)
-        			saved[i] = outputMsgs[i];
-        	}
-        }
-        
-    	int outputMsgLength = outputMsgs.length;
-    	Arrays.fill(outputMsgs, 0);
-        
-        for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
-        {
-        	double prob = values[tableIndex];
-        	int[] tableRow = table[tableIndex];
-    		int outputIndex = tableRow[outPortNum];
-        	
-			for (int inPortNum = 0; inPortNum < outPortNum; ++inPortNum)
-				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-			for (int inPortNum = outPortNum + 1; inPortNum < numPorts; inPortNum++)
-				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-        	
-        	outputMsgs[outputIndex] += prob;
-        }
-        
-    	double sum = 0;
-    	for (int i = 0; i < outputMsgLength; i++) sum += outputMsgs[i];
-		if (sum == 0)
+        saveOutputForDamping(outPortNum);
+    	
+    	if (distanceTransform != null)
+    	{
+    		// Pairwise distance factor, so the table need not be visited
+    		distanceTransform.convolve(inputMsgs[1 - outPortNum], outputMsgs);
+    		
+        	double sum = 0;
+        	for (int i = 0; i < outputMsgs.length; i++) sum += outputMsgs[i];
+    		if (sum == 0)
+    		{
+    			throw new DimpleException("UpdateEdge failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+    					+ outPortNum + " on factor " + _factor.getLabel());
+    		}
+
+    		for (int i = 0; i < outputMsgs.length; i++)
+    			outputMsgs[i] /= sum;
+    	}
+    	else
+    	{
+    		updateTableEdge(outPortNum, "UpdateEdge");
+    	}
+    	
+    	applyDamping(outPortNum);
+	}
+	
+
+	
+	
+	public void update()
+	{
+		if (getDistanceTransform() != null)
 		{
-			throw new DimpleException("UpdateEdge failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
-					+ outPortNum + " on factor " + _factor.getLabel());
+			// Each port's message only depends on the other port's input, so this is the same as updating each edge
+			for (int outPortNum = 0; outPortNum < 2; outPortNum++)
+				updateEdge(outPortNum);
+			return;
 		}
+		
+		if (_tableFactor._optimizedUpdate)
+		{
+			updateOptimized();
+			return;
+		}
+		
+	    int numPorts = _factor.getSiblingCount();
+	    for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
+	    {
+	    	saveOutputForDamping(outPortNum);
+	    	updateTableEdge(outPortNum, "Update");
+	    	applyDamping(outPortNum);
+	    }
+	}
 
-		for (int i = 0; i < outputMsgLength; i++)
-			outputMsgs[i] /= sum;
-    	
+	/*
+	 * Computes all of the outgoing messages in a single pass over the table.
+	 * See SumProductKernels.updateTable.
+	 */
+	public void updateOptimized()
+	{
+	    IFactorTable factorTable = _tableFactor.getFactorTable();
+	    int numPorts = _factor.getSiblingCount();
+	    double [][] outMsgs = _tableFactor.getOutPortMsgs();
+	    int[] zeroOffsets = getZeroOffsets(numPorts);
+	    
+	    double[] prefixProducts = _prefixProducts;
+	    if (prefixProducts == null || prefixProducts.length != numPorts)
+	    	prefixProducts = _prefixProducts = new double[numPorts];
+	    
+	    for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
+	    	saveOutputForDamping(outPortNum);
+	    
+	    if (factorTable instanceof OffHeapFactorTable)
+	    {
+	    	SumProductKernels.updateTable((OffHeapFactorTable)factorTable, getWeightBlock(), getIndexBlock(numPorts),
+	    		numPorts, getMessageSizes(outMsgs), _tableFactor.getInPortMsgs(), outMsgs, zeroOffsets, 0,
+	    		prefixProducts, _factor);
+	    }
+	    else
+	    {
+	    	SumProductKernels.updateTable(factorTable.getWeightsSparseUnsafe(), factorTable.getPackedIndicesSparseUnsafe(),
+	    		numPorts, getMessageSizes(outMsgs), _tableFactor.getInPortMsgs(), outMsgs, zeroOffsets, 0,
+	    		prefixProducts, _factor);
+	    }
+	    
+	    for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
+	    	applyDamping(outPortNum);
+	}
+	
+	private void updateTableEdge(int outPortNum, String operation)
+	{
+	    IFactorTable factorTable = _tableFactor.getFactorTable();
+	    int numPorts = _factor.getSiblingCount();
+	    double [][] outMsgs = _tableFactor.getOutPortMsgs();
+	    int[] zeroOffsets = getZeroOffsets(numPorts);
+	    
+	    if (factorTable instanceof OffHeapFactorTable)
+	    {
+	    	SumProductKernels.updateTableEdge((OffHeapFactorTable)factorTable, getWeightBlock(), getIndexBlock(numPorts),
+	    		numPorts, outPortNum, getMessageSizes(outMsgs), _tableFactor.getInPortMsgs(), outMsgs, zeroOffsets, 0,
+	    		operation, _factor);
+	    }
+	    else
+	    {
+	    	SumProductKernels.updateTableEdge(factorTable.getWeightsSparseUnsafe(), factorTable.getPackedIndicesSparseUnsafe(),
+	    		numPorts, outPortNum, getMessageSizes(outMsgs), _tableFactor.getInPortMsgs(), outMsgs, zeroOffsets, 0,
+	    		operation, _factor);
+	    }
+	}
+	
+	private void saveOutputForDamping(int outPortNum)
+	{
 		if (_tableFactor._dampingInUse)
 		{
 			double damping = _tableFactor._dampingParams[outPortNum];
 			if (damping != 0)
 			{
+				double[] outputMsgs = _tableFactor.getOutPortMsgs()[outPortNum];
+				System.arraycopy(outputMsgs, 0, _tableFactor._savedOutMsgArray[outPortNum], 0, outputMsgs.length);
+			}
+		}
+	}
+	
+	private void applyDamping(int outPortNum)
+	{
+		if (_tableFactor._dampingInUse)
+		{
+			double damping = _tableFactor._dampingParams[outPortNum];
+			if (damping != 0)
+			{
+				double[] outputMsgs = _tableFactor.getOutPortMsgs()[outPortNum];
 				double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
-				for (int i = 0; i < outputMsgLength; i++)
+				for (int i = 0; i < outputMsgs.length; i++)
 					outputMsgs[i] = (1-damping)*outputMsgs[i] + damping*saved[i];
 			}
 		}
-    	
 	}
 	
-
+	/*
+	 * Offsets for SumProductKernels, which are all zero because each message has its own array.
+	 */
+	private int[] getZeroOffsets(int numPorts)
+	{
+		int[] zeroOffsets = _zeroOffsets;
+		if (zeroOffsets == null || zeroOffsets.length < numPorts)
+			zeroOffsets = _zeroOffsets = new int[numPorts];
+		return zeroOffsets;
+	}
+	
+	/*
+	 * The lengths of the output messages.
+	 */
+	private int[] getMessageSizes(double[][] outMsgs)
+	{
+		int[] sizes = _messageSizes;
+		if (sizes == null || sizes.length != outMsgs.length)
+			sizes = _messageSizes = new int[outMsgs.length];
+		for (int i = 0; i < sizes.length; i++)
+			sizes[i] = outMsgs[i].length;
+		return sizes;
+	}
 	
+	private double[] getWeightBlock()
+	{
+		double[] block = _weightBlock;
+		if (block == null)
+			block = _weightBlock = new double[OffHeapFactorTable.BLOCK_SIZE];
+		return block;
+	}
 	
-	public void update()
+	private int[] getIndexBlock(int numPorts)
 	{
-	    int[][] table = _tableFactor.getFactorTable().getIndicesSparseUnsafe();
-	    double[] values = _tableFactor.getFactorTable().getWeightsSparseUnsafe();
-	    int tableLength = table.length;
-	    int numPorts = _factor.getSiblingCount();
-	    
-	    
-	    double [][] outMsgs = _tableFactor.getOutPortMsgs();
-	    double [][] inMsgs = _tableFactor.getInPortMsgs();
-	    
-	    for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
-	    {
-	    	double[] outputMsgs = outMsgs[outPortNum];
-	    		    	
-	    	if (_tableFactor._dampingInUse)
-	    	{
-	    		double damping = _tableFactor._dampingParams[outPortNum];
-	    		if (damping != 0)
-	    		{
-	    			double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
-	    			for (int i = 0; i < outputMsgs.length; i++)
-	    				saved[i] = outputMsgs[i];
-	    		}
-	    	}
-	    	
-	    	int outputMsgLength = outputMsgs.length;
-	    	Arrays.fill(outputMsgs, 0);
-
-	    	for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
-	    	{
-	    		double prob = values[tableIndex];
-	    		int[] tableRow = table[tableIndex];
-	    		int outputIndex = tableRow[outPortNum];
-
-				for (int inPortNum = 0; inPortNum < outPortNum; ++inPortNum)
-					prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-				for (int inPortNum = outPortNum + 1; inPortNum < numPorts; inPortNum++)
-					prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    		outputMsgs[outputIndex] += prob;
-	    	}
-
-	    	double sum = 0;
-	    	for (int i = 0; i < outputMsgLength; i++) sum += outputMsgs[i];
-    		if (sum == 0)
-    		{
-    			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
-    					+ outPortNum + " on factor " +_factor.getLabel());
-    		}
-
-	    	for (int i = 0; i < outputMsgLength; i++)
-	    		outputMsgs[i] /= sum;
-	    	
-	    	if (_tableFactor._dampingInUse)
-	    	{
-	    		double damping = _tableFactor._dampingParams[outPortNum];
-	    		if (damping != 0)
-	    		{
-	    			double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
-	    		for (int i = 0; i < outputMsgLength; i++)
-	    			outputMsgs[i] = (1-damping)*outputMsgs[i] + damping*saved[i];
-	    		}
-	    	}
-	    	
-	    }
+		int[] block = _indexBlock;
+		if (block == null || block.length < OffHeapFactorTable.BLOCK_SIZE * numPorts)
+			block = _indexBlock = new int[OffHeapFactorTable.BLOCK_SIZE * numPorts];
+		return block;
+	}
+	
+	private DistanceTransform getDistanceTransform()
+	{
+		return _distanceTransform != null && _distanceTransform.isCurrent() ? _distanceTransform : null;
 	}
 }
@@ -0,0 +1,41 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import com.analog.lyric.dimple.factorfunctions.Subtract;
+import com.analog.lyric.dimple.model.factors.Factor;
+
+/**
+ * Same as {@link CustomDiscreteSum}, but for the {@link Subtract} constraint x0 = x1 - x2 - ...
+ *
+ * @since 0.05
+ */
+public class CustomDiscreteSubtract extends CustomDiscreteSum
+{
+	public CustomDiscreteSubtract(Factor factor)
+	{
+		super(factor, true);
+	}
+
+	/**
+	 * Same as {@link CustomDiscreteSum#isFactorCompatible}, but requires a {@link Subtract} function.
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		return factor.getFactorFunction().getContainedFactorFunction() instanceof Subtract && hasCompatibleVariables(factor);
+	}
+}
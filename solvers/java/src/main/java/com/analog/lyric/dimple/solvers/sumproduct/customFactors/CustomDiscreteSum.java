@@ -0,0 +1,379 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.solvers.core.STableFactorDoubleArray;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+/**
+ * Sum-product solver factor for the {@link Sum} constraint x0 = x1 + x2 + ... over discrete
+ * variables whose elements are all integers, without creating a factor table.
+ * <p>
+ * Each incoming message is laid out on the dense integer grid from its domain's smallest to
+ * largest value, negated terms in reverse order, so that the distribution of a sum of terms is
+ * the convolution of their messages. The message to each variable is read from the convolution
+ * of all the other messages, using prefix and suffix convolutions when all edges are updated.
+ * Convolutions of two long sequences are computed with an FFT and others directly, so an update
+ * costs about O(n d log(n d)) rather than the O(d^n) of a table factor.
+ * <p>
+ * Values computed by FFT carry rounding errors relative to the largest value; negative results
+ * are set to zero.
+ *
+ * @since 0.05
+ */
+public class CustomDiscreteSum extends STableFactorDoubleArray
+{
+	/*-----------
+	 * Constants
+	 */
+
+	/**
+	 * Smallest joint cardinality of the variable domains for which {@link #isFactorCompatible}
+	 * will return true. Smaller factors are cheap enough as tables.
+	 */
+	public static final int MIN_JOINT_CARDINALITY = 1 << 10;
+
+	/**
+	 * Largest number of integers spanned by a variable's domain.
+	 */
+	public static final int MAX_DOMAIN_SPAN = 1 << 20;
+
+	/*
+	 * Convolutions in which either sequence is no longer than this are computed directly.
+	 */
+	static final int MAX_DIRECT_LENGTH = 32;
+
+	/*-------
+	 * State
+	 */
+
+	private final int _numPorts;
+
+	// Coefficient of each variable in the constraint sum_j _signs[j]*x_j == 0
+	private final int[] _signs;
+
+	// Integer value of each domain element of each variable
+	private final int[][] _values;
+	private final int[] _minValues;
+	private final int[] _maxValues;
+
+	private final Map<Integer, DoubleFFT_1D> _ffts = new HashMap<Integer, DoubleFFT_1D>();
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomDiscreteSum(Factor factor)
+	{
+		this(factor, false);
+	}
+
+	/**
+	 * @param subtract if true, the constraint is x0 = x1 - x2 - ... instead of x0 = x1 + x2 + ...
+	 */
+	protected CustomDiscreteSum(Factor factor, boolean subtract)
+	{
+		super(factor);
+
+		_numPorts = factor.getSiblingCount();
+		if (_numPorts < 2)
+			throw new DimpleException("Must specify at least two variables");
+
+		_signs = new int[_numPorts];
+		_values = new int[_numPorts][];
+		_minValues = new int[_numPorts];
+		_maxValues = new int[_numPorts];
+
+		for (int port = 0; port < _numPorts; port++)
+		{
+			_signs[port] = port == 0 ? -1 : (subtract && port > 1 ? -1 : 1);
+
+			DiscreteDomain domain = factor.getSibling(port).asDiscreteVariable().getDiscreteDomain();
+			if (!hasIntegerElements(domain))
+				throw new DimpleException("Variable '%s' does not have a domain of integers", factor.getSibling(port));
+
+			int[] values = _values[port] = new int[domain.size()];
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int i = 0; i < values.length; i++)
+			{
+				values[i] = ((Number)domain.getElement(i)).intValue();
+				min = Math.min(min, values[i]);
+				max = Math.max(max, values[i]);
+			}
+			_minValues[port] = min;
+			_maxValues[port] = max;
+		}
+	}
+
+	/**
+	 * Indicates whether {@code factor} should use this custom factor: the factor's function must be
+	 * a {@link Sum} with no constants or smoothing, all of its variables must have domains of integers,
+	 * and the joint cardinality of the domains must be at least {@link #MIN_JOINT_CARDINALITY}.
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		return factor.getFactorFunction().getContainedFactorFunction() instanceof Sum && hasCompatibleVariables(factor);
+	}
+
+	static boolean hasCompatibleVariables(Factor factor)
+	{
+		final FactorFunction function = factor.getFactorFunction();
+		if (function.hasConstants() || !function.isDeterministicDirected())
+			return false;
+
+		final int nVars = factor.getSiblingCount();
+		if (nVars < 2)
+			return false;
+
+		double cardinality = 1;
+		for (int i = 0; i < nVars; i++)
+		{
+			VariableBase var = factor.getSibling(i);
+			if (!var.getDomain().isDiscrete())
+				return false;
+
+			DiscreteDomain domain = var.asDiscreteVariable().getDiscreteDomain();
+			if (!hasIntegerElements(domain))
+				return false;
+			cardinality *= domain.size();
+		}
+
+		return cardinality >= MIN_JOINT_CARDINALITY;
+	}
+
+	private static boolean hasIntegerElements(DiscreteDomain domain)
+	{
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for (int i = 0, end = domain.size(); i < end; i++)
+		{
+			Object element = domain.getElement(i);
+			if (!(element instanceof Number))
+				return false;
+
+			double value = ((Number)element).doubleValue();
+			if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE / 4)
+				return false;
+
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		return max - min < MAX_DOMAIN_SPAN;
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	public void update()
+	{
+		final int nPorts = _numPorts;
+
+		// suffixes[j] is the distribution of the sum of the terms from j on
+		final Distribution[] suffixes = new Distribution[nPorts + 1];
+		suffixes[nPorts] = Distribution.ONE;
+		for (int port = nPorts; --port > 0;)
+			suffixes[port] = convolve(term(port), suffixes[port + 1]);
+
+		Distribution prefix = Distribution.ONE;
+		for (int port = 0; port < nPorts; port++)
+		{
+			setOutputMessage(port, convolve(prefix, suffixes[port + 1]));
+			if (port + 1 < nPorts)
+				prefix = convolve(prefix, term(port));
+		}
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		Distribution others = Distribution.ONE;
+		for (int port = 0; port < _numPorts; port++)
+		{
+			if (port != outPortNum)
+				others = convolve(others, term(port));
+		}
+		setOutputMessage(outPortNum, others);
+	}
+
+	/*-------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	@Override
+	protected void setTableRepresentation(IFactorTable table)
+	{
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/*
+	 * Weights over a contiguous range of integers starting at _offset.
+	 */
+	private static final class Distribution
+	{
+		private static final Distribution ONE = new Distribution(new double[] { 1 }, 0);
+
+		private final double[] _weights;
+		private final int _offset;
+
+		private Distribution(double[] weights, int offset)
+		{
+			_weights = weights;
+			_offset = offset;
+		}
+	}
+
+	/*
+	 * Distribution of _signs[port] * x_port from the input message.
+	 */
+	private Distribution term(int port)
+	{
+		final double[] inputMsg = _inputMsgs[port];
+		final int[] values = _values[port];
+		final int min = _minValues[port], max = _maxValues[port];
+		final double[] weights = new double[max - min + 1];
+
+		if (_signs[port] > 0)
+		{
+			for (int i = 0; i < values.length; i++)
+				weights[values[i] - min] += inputMsg[i];
+			return new Distribution(weights, min);
+		}
+		else
+		{
+			for (int i = 0; i < values.length; i++)
+				weights[max - values[i]] += inputMsg[i];
+			return new Distribution(weights, -max);
+		}
+	}
+
+	/*
+	 * The constraint holds when _signs[port] * x_port == -(sum of the other terms).
+	 */
+	private void setOutputMessage(int port, Distribution others)
+	{
+		final double[] outputMsg = _outputMsgs[port];
+		final int[] values = _values[port];
+		final double[] weights = others._weights;
+		final int sign = _signs[port];
+
+		double sum = 0;
+		for (int i = 0; i < values.length; i++)
+		{
+			final int index = -sign * values[i] - others._offset;
+			final double weight = index >= 0 && index < weights.length ? Math.max(weights[index], 0) : 0;
+			outputMsg[i] = weight;
+			sum += weight;
+		}
+
+		if (sum == 0)
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+				+ port + " on factor " + _factor.getLabel());
+
+		for (int i = 0; i < values.length; i++)
+			outputMsg[i] /= sum;
+	}
+
+	private Distribution convolve(Distribution a, Distribution b)
+	{
+		if (a == Distribution.ONE)
+			return b;
+		if (b == Distribution.ONE)
+			return a;
+
+		final int offset = a._offset + b._offset;
+		if (Math.min(a._weights.length, b._weights.length) <= MAX_DIRECT_LENGTH)
+			return new Distribution(convolveDirect(a._weights, b._weights), offset);
+		else
+			return new Distribution(convolveFFT(a._weights, b._weights), offset);
+	}
+
+	private static double[] convolveDirect(double[] a, double[] b)
+	{
+		final double[] result = new double[a.length + b.length - 1];
+		for (int i = 0; i < a.length; i++)
+		{
+			final double ai = a[i];
+			if (ai != 0)
+			{
+				for (int j = 0; j < b.length; j++)
+					result[i + j] += ai * b[j];
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Transforms both real sequences at once as the real and imaginary parts of one complex
+	 * sequence z = a + ib, whose transform Z gives A[k]*B[k] = (Z[k]^2 - conj(Z[N-k])^2) / 4i.
+	 */
+	private double[] convolveFFT(double[] a, double[] b)
+	{
+		final int length = a.length + b.length - 1;
+		final int n = Integer.highestOneBit(length - 1) << 1;
+
+		DoubleFFT_1D fft = _ffts.get(n);
+		if (fft == null)
+		{
+			fft = new DoubleFFT_1D(n);
+			_ffts.put(n, fft);
+		}
+
+		final double[] z = new double[2 * n];
+		for (int i = 0; i < a.length; i++)
+			z[2 * i] = a[i];
+		for (int i = 0; i < b.length; i++)
+			z[2 * i + 1] = b[i];
+		fft.complexForward(z);
+
+		final double[] product = new double[2 * n];
+		for (int k = 0; k < n; k++)
+		{
+			final int j = (n - k) & (n - 1);
+			final double zr = z[2 * k], zi = z[2 * k + 1];
+			final double wr = z[2 * j], wi = z[2 * j + 1];
+			product[2 * k] = (zr * zi + wr * wi) / 2;
+			product[2 * k + 1] = (wr * wr - wi * wi - zr * zr + zi * zi) / 4;
+		}
+		fft.complexInverse(product, true);
+
+		final double[] result = new double[length];
+		for (int i = 0; i < length; i++)
+			result[i] = product[2 * i];
+		return result;
+	}
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.solvers.core.STableFactorDoubleArray;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductKernels;
+
+/**
+ * Sum-product solver factor for the {@link Xor} parity check over binary variables, without
+ * creating a factor table.
+ * <p>
+ * Uses the "tanh rule" in {@link SumProductKernels#updateParity}, so updating all edges takes time
+ * linear in the number of variables rather than exponential.
+ * <p>
+ * Damping is not supported, so {@link com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph}
+ * uses a table factor instead when damping or derivatives are in use.
+ *
+ * @since 0.05
+ */
+public class CustomXor extends STableFactorDoubleArray
+{
+	/*-------
+	 * State
+	 */
+
+	private final int _numPorts;
+
+	/**
+	 * Index of the true element in each variable's domain.
+	 */
+	private final int[] _trueIndices;
+
+	/**
+	 * 1 if the constant inputs have even parity, otherwise -1.
+	 */
+	private double _paritySign = 1;
+
+	/*
+	 * Scratch space for update()
+	 */
+	private final double[] _differences;
+	private final double[] _prefixes;
+
+	/**
+	 * Offsets for {@link SumProductKernels}, which are all zero because each message has its own array.
+	 */
+	private final int[] _zeroOffsets;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomXor(Factor factor)
+	{
+		super(factor);
+
+		_numPorts = factor.getSiblingCount();
+		_trueIndices = new int[_numPorts];
+		_differences = new double[_numPorts];
+		_prefixes = new double[_numPorts];
+		_zeroOffsets = new int[_numPorts];
+
+		for (int port = 0; port < _numPorts; port++)
+		{
+			int trueIndex = trueIndex(factor.getSibling(port));
+			if (trueIndex < 0)
+				throw new DimpleException("Variable '%s' does not have a domain of one false and one true value", factor.getSibling(port));
+			_trueIndices[port] = trueIndex;
+		}
+	}
+
+	/**
+	 * Indicates whether {@code factor} can use this custom factor: its function must be an {@link Xor}
+	 * and each of its variables must have a domain of one false and one true value, such as a Bit.
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		if (!(factor.getFactorFunction().getContainedFactorFunction() instanceof Xor))
+			return false;
+
+		for (int i = 0, end = factor.getSiblingCount(); i < end; i++)
+		{
+			if (trueIndex(factor.getSibling(i)) < 0)
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Index of the true element of a binary domain, or -1 if the domain does not have exactly
+	 * one false and one true element.
+	 */
+	private static int trueIndex(VariableBase var)
+	{
+		if (!var.getDomain().isDiscrete())
+			return -1;
+
+		final DiscreteDomain domain = var.asDiscreteVariable().getDiscreteDomain();
+		if (domain.size() != 2)
+			return -1;
+
+		try
+		{
+			final boolean first = FactorFunctionUtilities.toBoolean(domain.getElement(0));
+			final boolean second = FactorFunctionUtilities.toBoolean(domain.getElement(1));
+			return first == second ? -1 : (first ? 0 : 1);
+		}
+		catch (DimpleException ex)
+		{
+			return -1;
+		}
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+
+		// Pre-compute parity associated with any constant edges
+		_paritySign = 1;
+		FactorFunction factorFunction = _factor.getFactorFunction();
+		if (factorFunction.hasConstants())
+		{
+			for (Object constant : factorFunction.getConstants())
+			{
+				if (FactorFunctionUtilities.toBoolean(constant))
+					_paritySign = -_paritySign;
+			}
+		}
+	}
+
+	@Override
+	public void update()
+	{
+		SumProductKernels.updateParity(_paritySign, _trueIndices, _numPorts, _inputMsgs, _outputMsgs, _zeroOffsets, 0,
+			_differences, _prefixes, _factor);
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		SumProductKernels.updateParityEdge(_paritySign, _trueIndices, _numPorts, outPortNum, _inputMsgs, _outputMsgs,
+			_zeroOffsets, 0, _factor);
+	}
+
+	/*-------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	@Override
+	protected void setTableRepresentation(IFactorTable table)
+	{
+	}
+
+	/*-------------------
+	 * CustomXor methods
+	 */
+
+	/**
+	 * 1 if the constant inputs of the factor have even parity, otherwise -1. Only valid after {@link #initialize()}.
+	 */
+	public double getParitySign()
+	{
+		return _paritySign;
+	}
+
+	/**
+	 * Index of the true element in the domain of the variable on the given port.
+	 */
+	public int getTrueIndex(int port)
+	{
+		return _trueIndices[port];
+	}
+}
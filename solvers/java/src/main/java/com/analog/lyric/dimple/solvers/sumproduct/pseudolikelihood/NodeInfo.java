@@ -49,6 +49,17 @@ public class NodeInfo
 		_dist = null;
 	}
 	
+	//Add the counts from a histogram of samples that were collected separately,
+	//such as from one shard of the data set.
+	public void addHistogram(SparseJointHistogram hist)
+	{
+		for (LinkedList<Integer> ll : hist.getKeys())
+			_hist.add(ll, hist.get(ll));
+		
+		//invalidate the distribution.
+		_dist = null;
+	}
+	
 	//Retrieve a distribution from the histogram.
 	public SparseJointDistribution getDistribution()
 	{
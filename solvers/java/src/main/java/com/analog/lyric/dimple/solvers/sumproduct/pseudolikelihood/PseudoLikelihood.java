@@ -20,8 +20,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
@@ -32,13 +34,25 @@ import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.VariableBase;
 import com.analog.lyric.dimple.model.variables.VariableList;
 import com.analog.lyric.dimple.solvers.core.ParameterEstimator;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
 
 /*
  * The pseudolikelihood class uses the Pseudolikelihood algorithm
  * to estimate parameters of a factor graph.
+ * 
+ * The empirical distributions are built by splitting the rows of the data into shards
+ * whose histograms are counted concurrently on the shared ThreadPool and then merged,
+ * and the gradient is computed by splitting the factors into shards whose per-table
+ * gradients are computed concurrently and then summed. Each step of the gradient descent
+ * may use either the full data set or a random mini-batch of its rows.
+ * 
+ * Only this estimator is sharded. SFactorGraph.GradientDescent.runStep is out of scope
+ * and still runs sequentially on the calling thread.
  */
 public class PseudoLikelihood extends ParameterEstimator
 {
+	//The minimum number of data rows counted by each shard.
+	private static final int MIN_ROWS_PER_SHARD = 256;
 
 	private double _scaleFactor;
 	private HashMap<Factor,FactorInfo> _factor2factorInfo = new HashMap<Factor, FactorInfo>();
@@ -46,6 +60,10 @@ public class PseudoLikelihood extends ParameterEstimator
 	private int [][] _data;
 	private HashMap<VariableBase,Integer> _var2index = new HashMap<VariableBase, Integer>();
 	private VariableBase [] _vars;
+	private ArrayList<NodeInfo> _nodeInfos = new ArrayList<NodeInfo>();
+	private int _numThreads = Runtime.getRuntime().availableProcessors();
+	private int _batchSize = 0;
+	private int [] _rows;
 	
 	//The constructor saves the factor graph, the tables of interest, and the variables
 	//It also builds the NodeInfo object mappings.
@@ -83,6 +101,9 @@ public class PseudoLikelihood extends ParameterEstimator
 		for (VariableBase v : varsConnectedToFactors)
 			_var2varInfo.put(v,VariableInfo.createVariableInfo(v, _var2index));
 
+		//Keep a single list of all the node infos for splitting them up among threads.
+		_nodeInfos.addAll(_factor2factorInfo.values());
+		_nodeInfos.addAll(_var2varInfo.values());
 	}
 	
 	//Users can set data directly
@@ -96,23 +117,13 @@ public class PseudoLikelihood extends ParameterEstimator
 	public void setData(int [][] data)
 	{
 		_data = data;
-
-		//First reset the nodeinfos.
-		for (FactorInfo fi : _factor2factorInfo.values())
-			fi.reset();
-		for (VariableInfo vi : _var2varInfo.values())
-			vi.reset();
 		
-		//Then go through the data and add samples to all the factorinfos and
-		//variableinfos.
+		//Mini-batches are chosen by shuffling the start of this list of rows.
+		_rows = new int[data.length];
 		for (int i = 0; i < data.length; i++)
-		{
-			for (FactorInfo fi : _factor2factorInfo.values())
-				fi.addSample(data[i]);
-			for (VariableInfo vi : _var2varInfo.values())
-				vi.addSample(data[i]);
-		}
-
+			_rows[i] = i;
+		
+		buildDistributions(_rows, data.length);
 	}
 	
 	//users can set the scale factor.
@@ -121,6 +132,38 @@ public class PseudoLikelihood extends ParameterEstimator
 		_scaleFactor = scale;
 	}
 	
+	//Users can set the number of rows of data used for each step of the gradient descent.
+	//Zero, the default, uses all of the data. Otherwise each step builds the empirical
+	//distributions from a new random selection of this many rows, so a batch size of one
+	//gives stochastic gradient descent. After learning, the empirical distributions used by
+	//calculateGradient will be those of the last batch until setData is called again.
+	public void setBatchSize(int batchSize)
+	{
+		if (batchSize < 0)
+			throw new DimpleException("Batch size must be non-negative: %d", batchSize);
+		_batchSize = batchSize;
+	}
+	
+	public int getBatchSize()
+	{
+		return _batchSize;
+	}
+	
+	//Users can set the maximum number of shards processed concurrently when building the
+	//empirical distributions and the gradient. This defaults to the number of processors,
+	//and a value of one does all of the work on the calling thread.
+	public void setNumThreads(int numThreads)
+	{
+		if (numThreads < 1)
+			throw new DimpleException("Number of threads must be positive: %d", numThreads);
+		_numThreads = numThreads;
+	}
+	
+	public int getNumThreads()
+	{
+		return _numThreads;
+	}
+	
 	//The learn function sets the data, num steps, scale factor and runs the gradient descent
 	public void learn(Object [][] data, int numSteps,double scaleFactor)
 	{
@@ -161,81 +204,73 @@ public class PseudoLikelihood extends ParameterEstimator
 		IFactorTable [] tables = getTables();
 		HashMap<IFactorTable,ArrayList<Factor>> table2factors = getTable2Factors();
 		
-		//initialize the gradient
-		double [][] gradients = new double[tables.length][];
-		
 		//Invalidate the distributions because parameters may have changed.
 		for (VariableInfo vi : _var2varInfo.values())
 			vi.invalidateDistributions();
 		
-		//for each unique factor table
+		//Make sure all of the tables have their sparse representation, which is otherwise
+		//created on demand, before they are read concurrently.
+		for (IFactorTable table : table2factors.keySet())
+		{
+			table.getWeightsSparseUnsafe();
+			table.getIndicesSparseUnsafe();
+		}
+		
+		//Compute all of the cached distributions up front so that the shards only read them.
+		int nShards = numShards(_nodeInfos.size(), 1);
+		ArrayList<DistributionShard> distributionShards = new ArrayList<DistributionShard>(nShards);
+		for (int s = 0; s < nShards; s++)
+			distributionShards.add(new DistributionShard(shardStart(s, nShards, _nodeInfos.size()),
+				shardStart(s + 1, nShards, _nodeInfos.size())));
+		ThreadPool.invokeAll(distributionShards);
+		
+		//Make a list of all of the factors along with the index of their table.
+		ArrayList<Factor> factors = new ArrayList<Factor>();
+		ArrayList<Integer> tableIndices = new ArrayList<Integer>();
 		for (int i = 0; i < tables.length; i++)
 		{
-			//cache some stuff.
-			double [] weights = tables[i].getWeightsSparseUnsafe();
-			int [][] indices = tables[i].getIndicesSparseUnsafe();
-			int degree = indices[0].length;
-			
-			//TODO: avoid this new?
-			gradients[i] = new double[weights.length];
-			
-			ArrayList<Factor> factors = table2factors.get(tables[i]);
+			ArrayList<Factor> tableFactors = table2factors.get(tables[i]);
 			
 			//If this table actually is related to this graph
-			if (factors != null)
+			if (tableFactors != null)
 			{
-				//for each factor
-				for (int k = 0; k < factors.size(); k++)
+				for (Factor f : tableFactors)
 				{
-					Factor f = factors.get(k);
-					FactorInfo fi = _factor2factorInfo.get(f);
-	
-					//for each weight
-					for (int j = 0; j < weights.length; j++)
-					{
-						//add degree * pd(indices)
-						double impericalFactorD = fi.getDistribution().get(indices[j]);
-						gradients[i][j] += degree*impericalFactorD;
-					}
-	
-					//for each variable
-					for (int vindex = 0, size = f.getSiblingCount(); vindex < size; ++vindex)
-					{
-						VariableBase v = f.getSibling(vindex);
-						VariableInfo vi = _var2varInfo.get(v);
-						
-						//for each element of the variables domain
-						for (int d = 0; d < v.asDiscreteVariable().getDiscreteDomain().size(); d++)
-						{
-							Set<LinkedList<Integer>> samples = vi.getUniqueSamples();
-							
-							//for each unique sample
-							for (LinkedList<Integer> sample : samples)
-							{
-								//calculate pneighbors
-								double prob = vi.getProb(d,sample);
-								
-								//find weight index from variable domain and unique sample
-								int index = vi.getFactorTableIndex(f, d, sample);
-								
-								//subtract prob
-								gradients[i][index] -= prob;
-								
-							}
-						}
-					}
+					factors.add(f);
+					tableIndices.add(i);
 				}
 			}
 		}
+		
+		//Each shard adds the terms for its factors to its own gradient, which are then summed.
+		nShards = numShards(factors.size(), 1);
+		ArrayList<GradientShard> gradientShards = new ArrayList<GradientShard>(nShards);
+		for (int s = 0; s < nShards; s++)
+			gradientShards.add(new GradientShard(factors, tableIndices,
+				shardStart(s, nShards, factors.size()), shardStart(s + 1, nShards, factors.size())));
+		ThreadPool.invokeAll(gradientShards);
+		
+		double [][] gradients = gradientShards.get(0)._gradients;
+		for (int s = 1; s < nShards; s++)
+		{
+			double [][] shardGradients = gradientShards.get(s)._gradients;
+			for (int i = 0; i < gradients.length; i++)
+				for (int j = 0; j < gradients[i].length; j++)
+					gradients[i][j] += shardGradients[i][j];
+		}
 
 		return gradients;
 	}
 	
 	//One step of gradient descent simply calculates the gradient
-	//and applies it.
+	//and applies it. When using mini-batches, the empirical distributions
+	//are first rebuilt from a random selection of rows.
 	@Override
 	public void runStep(FactorGraph fg)
 	{
+		if (_data != null && _batchSize > 0 && _batchSize < _data.length)
+			buildDistributions(selectBatch(), _batchSize);
+		
 		double [][] gradient = calculateGradient();
 		applyGradient(gradient);
 	}
@@ -376,6 +411,112 @@ public class PseudoLikelihood extends ParameterEstimator
 		return total;
 	}
 	
+	//Adds the terms of the gradient for one factor to the gradient of its table.
+	private void addFactorGradient(Factor f, IFactorTable table, double [] gradient)
+	{
+		//cache some stuff.
+		int [][] indices = table.getIndicesSparseUnsafe();
+		int degree = indices[0].length;
+		FactorInfo fi = _factor2factorInfo.get(f);
+
+		//for each weight
+		for (int j = 0; j < indices.length; j++)
+		{
+			//add degree * pd(indices)
+			double impericalFactorD = fi.getDistribution().get(indices[j]);
+			gradient[j] += degree*impericalFactorD;
+		}
+
+		//for each variable
+		for (int vindex = 0, size = f.getSiblingCount(); vindex < size; ++vindex)
+		{
+			VariableBase v = f.getSibling(vindex);
+			VariableInfo vi = _var2varInfo.get(v);
+			
+			//for each element of the variables domain
+			for (int d = 0; d < v.asDiscreteVariable().getDiscreteDomain().size(); d++)
+			{
+				Set<LinkedList<Integer>> samples = vi.getUniqueSamples();
+				
+				//for each unique sample
+				for (LinkedList<Integer> sample : samples)
+				{
+					//calculate pneighbors
+					double prob = vi.getProb(d,sample);
+					
+					//find weight index from variable domain and unique sample
+					int index = vi.getFactorTableIndex(f, d, sample);
+					
+					//subtract prob
+					gradient[index] -= prob;
+				}
+			}
+		}
+	}
+	
+	//Builds the empirical distributions from the first nRows of the given rows of data.
+	private void buildDistributions(int [] rows, int nRows)
+	{
+		//First reset the nodeinfos.
+		for (NodeInfo ni : _nodeInfos)
+			ni.reset();
+		
+		int nShards = numShards(nRows, MIN_ROWS_PER_SHARD);
+		if (nShards == 1)
+		{
+			//Go through the data and add samples to all the factorinfos and
+			//variableinfos.
+			for (int i = 0; i < nRows; i++)
+			{
+				int [] sample = _data[rows[i]];
+				for (NodeInfo ni : _nodeInfos)
+					ni.addSample(sample);
+			}
+			return;
+		}
+		
+		//Count a histogram for each node over each shard of the rows
+		ArrayList<HistogramShard> histogramShards = new ArrayList<HistogramShard>(nShards);
+		for (int s = 0; s < nShards; s++)
+			histogramShards.add(new HistogramShard(rows, shardStart(s, nShards, nRows), shardStart(s + 1, nShards, nRows)));
+		ThreadPool.invokeAll(histogramShards);
+		
+		//and then merge the histograms, splitting up the nodes.
+		int nNodeShards = numShards(_nodeInfos.size(), 1);
+		ArrayList<MergeShard> mergeShards = new ArrayList<MergeShard>(nNodeShards);
+		for (int s = 0; s < nNodeShards; s++)
+			mergeShards.add(new MergeShard(histogramShards, shardStart(s, nNodeShards, _nodeInfos.size()),
+				shardStart(s + 1, nNodeShards, _nodeInfos.size())));
+		ThreadPool.invokeAll(mergeShards);
+	}
+	
+	//Randomly moves a mini-batch of rows to the start of the list of rows.
+	private int [] selectBatch()
+	{
+		int [] rows = _rows;
+		Random rand = getRandom();
+		for (int i = 0; i < _batchSize; i++)
+		{
+			int j = i + rand.nextInt(rows.length - i);
+			int tmp = rows[i];
+			rows[i] = rows[j];
+			rows[j] = tmp;
+		}
+		return rows;
+	}
+	
+	//The number of shards to split the given number of items into.
+	private int numShards(int nItems, int minItemsPerShard)
+	{
+		return Math.max(1, Math.min(_numThreads, nItems / minItemsPerShard));
+	}
+	
+	//The first item of a shard.
+	private static int shardStart(int shard, int nShards, int nItems)
+	{
+		return (int)((long)shard * nItems / nShards);
+	}
+	
 	//Used for dealing with data that is provided as domain objects rather than indices.
 	final private int [][] convertObjects2Indices(Object [][] data)
 	{
@@ -390,4 +531,124 @@ public class PseudoLikelihood extends ParameterEstimator
 		
 		return retval;
 	}
-}
\ No newline at end of file
+	
+	//Counts the histograms of every node over a range of rows.
+	private final class HistogramShard implements Callable<Object>
+	{
+		private final int [] _shardRows;
+		private final int _start;
+		private final int _end;
+		private final SparseJointHistogram [] _histograms;
+		
+		private HistogramShard(int [] rows, int start, int end)
+		{
+			_shardRows = rows;
+			_start = start;
+			_end = end;
+			_histograms = new SparseJointHistogram[_nodeInfos.size()];
+		}
+		
+		@Override
+		public Object call()
+		{
+			for (int k = 0; k < _histograms.length; k++)
+			{
+				NodeInfo ni = _nodeInfos.get(k);
+				SparseJointHistogram hist = new SparseJointHistogram(0);
+				for (int i = _start; i < _end; i++)
+					hist.add(ni.indicesToRelevantOnes(_data[_shardRows[i]]));
+				_histograms[k] = hist;
+			}
+			return null;
+		}
+	}
+	
+	//Merges the histograms of all of the row shards for a range of nodes.
+	private final class MergeShard implements Callable<Object>
+	{
+		private final List<HistogramShard> _histogramShards;
+		private final int _start;
+		private final int _end;
+		
+		private MergeShard(List<HistogramShard> histogramShards, int start, int end)
+		{
+			_histogramShards = histogramShards;
+			_start = start;
+			_end = end;
+		}
+		
+		@Override
+		public Object call()
+		{
+			for (int k = _start; k < _end; k++)
+			{
+				NodeInfo ni = _nodeInfos.get(k);
+				for (HistogramShard shard : _histogramShards)
+					ni.addHistogram(shard._histograms[k]);
+			}
+			return null;
+		}
+	}
+	
+	//Computes the cached distributions for a range of nodes.
+	private final class DistributionShard implements Callable<Object>
+	{
+		private final int _start;
+		private final int _end;
+		
+		private DistributionShard(int start, int end)
+		{
+			_start = start;
+			_end = end;
+		}
+		
+		@Override
+		public Object call()
+		{
+			for (int k = _start; k < _end; k++)
+			{
+				NodeInfo ni = _nodeInfos.get(k);
+				if (ni instanceof VariableInfo)
+					((VariableInfo)ni).computeDistributions();
+				else
+					ni.getDistribution();
+			}
+			return null;
+		}
+	}
+	
+	//Computes the gradient terms for a range of factors.
+	private final class GradientShard implements Callable<Object>
+	{
+		private final List<Factor> _factors;
+		private final List<Integer> _tableIndices;
+		private final int _start;
+		private final int _end;
+		private final double [][] _gradients;
+		
+		private GradientShard(List<Factor> factors, List<Integer> tableIndices, int start, int end)
+		{
+			_factors = factors;
+			_tableIndices = tableIndices;
+			_start = start;
+			_end = end;
+			
+			IFactorTable [] tables = getTables();
+			_gradients = new double[tables.length][];
+			for (int i = 0; i < tables.length; i++)
+				_gradients[i] = new double[tables[i].getWeightsSparseUnsafe().length];
+		}
+		
+		@Override
+		public Object call()
+		{
+			IFactorTable [] tables = getTables();
+			for (int k = _start; k < _end; k++)
+			{
+				int i = _tableIndices.get(k);
+				addFactorGradient(_factors.get(k), tables[i], _gradients[i]);
+			}
+			return null;
+		}
+	}
+}
@@ -144,16 +144,31 @@ public class VariableInfo extends NodeInfo
 		//First get the empirical probability of a neighbor.
 		double pneighbors = getDistribution().get(neighbors);
 		
-		
-		Integer [] domainValues = new Integer[neighbors.size()];
-		domainValues = neighbors.toArray(domainValues);
-		
+		return getConditionalDistribution(neighbors)[varIndex]*pneighbors;
+	}
+	
+	//Computes and caches the empirical distribution and p(x|neighbors) for every unique sample
+	//so that subsequent calls to getProb only read from the caches and may be made concurrently.
+	public void computeDistributions()
+	{
+		getDistribution();
+		for (LinkedList<Integer> sample : _uniqueSamplesPerValue)
+			getConditionalDistribution(sample);
+	}
+	
+	//Retrieve p(x|neighbors) for all settings of this variable.
+	private double [] getConditionalDistribution(LinkedList<Integer> neighbors)
+	{
 		//Cache the distribution of p(x|neighbors) since we have to calculate them all to
 		//correctly normalize things.
-		if (!_neighbors2distributions.containsKey(neighbors))
+		double [] distribution = _neighbors2distributions.get(neighbors);
+		if (distribution == null)
 		{
+			Integer [] domainValues = new Integer[neighbors.size()];
+			domainValues = neighbors.toArray(domainValues);
+			
 			//initialize
-			double [] distribution = new double[_var.getDiscreteDomain().size()];
+			distribution = new double[_var.getDiscreteDomain().size()];
 			double normalizer = 0;
 			
 			//calculate the probability for each setting of this var.
@@ -191,7 +206,7 @@ public class VariableInfo extends NodeInfo
 			_neighbors2distributions.put(neighbors,distribution);
 		}
 		
-		return _neighbors2distributions.get(neighbors)[varIndex]*pneighbors;
+		return distribution;
 	}
 	
 	
@@ -209,6 +224,14 @@ public class VariableInfo extends NodeInfo
 		_uniqueSamplesPerValue.add(otherIndices);
 	}
 
+	//Merging a histogram also merges its samples into the set of unique samples.
+	@Override
+	public void addHistogram(SparseJointHistogram hist)
+	{
+		super.addHistogram(hist);
+		_uniqueSamplesPerValue.addAll(hist.getKeys());
+	}
+
 	//Returns the set of unique samples.
 	public Set<LinkedList<Integer>> getUniqueSamples()
 	{
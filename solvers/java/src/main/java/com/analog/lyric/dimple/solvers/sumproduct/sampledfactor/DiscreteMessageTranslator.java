@@ -61,6 +61,43 @@ public class DiscreteMessageTranslator extends MessageTranslatorBase
 		System.arraycopy(message, 0, _outputMessage, 0, message.length);
 	}
 	
+	@Override
+	public final void setOutputMessageFromVariableBeliefExcludingInput()
+	{
+		final double[] belief = (double[])_variable.getBeliefObject();
+		final double[] input = _inputMessage;
+		final double[] output = _outputMessage;
+		final int length = belief.length;
+		
+		double sum = 0;
+		for (int i = 0; i < length; i++)
+		{
+			// Values excluded by the input are never sampled, so nothing is known about them
+			final double value = input[i] > 0 ? belief[i] / input[i] : 0;
+			output[i] = value;
+			sum += value;
+		}
+		if (sum > 0)
+		{
+			for (int i = 0; i < length; i++)
+				output[i] /= sum;
+		}
+	}
+	
+	@Override
+	public final void setInitialSampleFromCurrentSample()
+	{
+		com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable var =
+			(com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable)_variable.getSolver();
+		var.setInitialSampleIndex(var.getCurrentSampleIndex());
+	}
+	
+	@Override
+	public final void clearInitialSample()
+	{
+		((com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable)_variable.getSolver()).clearInitialSampleValue();
+	}
+	
 
 	@Override
 	public final void initialize()
@@ -48,6 +48,29 @@ public abstract class MessageTranslatorBase
 	public abstract void setVariableInputFromInputMessage();
 	public abstract void setVariableInputUniform();
 	public abstract void setOutputMessageFromVariableBelief();
+	
+	/**
+	 * Sets the output message from the belief of the message-graph variable when its input was
+	 * set from the input message, by removing the contribution of the input message from the belief.
+	 * If this cannot be done, for example because the result would not be a proper message, the
+	 * output message is left unchanged.
+	 * @since 0.05
+	 */
+	public abstract void setOutputMessageFromVariableBeliefExcludingInput();
+	
+	/**
+	 * Sets the initial sample of the message-graph variable to its current sample, so that the next
+	 * time the message graph is solved, sampling resumes from the current state.
+	 * @since 0.05
+	 */
+	public abstract void setInitialSampleFromCurrentSample();
+	
+	/**
+	 * Undoes {@link #setInitialSampleFromCurrentSample()}, so that the next time the message graph
+	 * is solved, the variable starts from a random sample.
+	 * @since 0.05
+	 */
+	public abstract void clearInitialSample();
 	public abstract void initialize();
 	public abstract void createInputMessage(Object msg);
 	public abstract void createOutputMessage(Object msg);
@@ -18,6 +18,8 @@ package com.analog.lyric.dimple.solvers.sumproduct.sampledfactor;
 
 import java.util.List;
 
+import Jama.Matrix;
+
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.MultivariateNormal;
 import com.analog.lyric.dimple.model.core.Port;
@@ -77,14 +79,61 @@ public class MultivariateNormalMessageTranslator extends MessageTranslatorBase
 
 	@Override
 	public final void setOutputMessageFromVariableBelief()
+	{
+		double[] mean = new double[_solverVariable.getDimension()];
+		double[][] covariance = computeSampleMeanAndCovariance(mean);
+		_outputMessage.setMeanAndCovariance(mean, covariance);
+	}
+	
+	@Override
+	public final void setOutputMessageFromVariableBeliefExcludingInput()
+	{
+		double[] mean = new double[_solverVariable.getDimension()];
+		double[][] covariance = computeSampleMeanAndCovariance(mean);
+		MultivariateNormalParameters belief = new MultivariateNormalParameters(mean, covariance);
+		if (_inputMessage.isNull())
+		{
+			_outputMessage.set(belief);
+			return;
+		}
+		
+		// Divide the belief by the input message
+		Matrix beliefMatrix = new Matrix(belief.getInformationMatrix());
+		Matrix inputMatrix = new Matrix(_inputMessage.getInformationMatrix());
+		Matrix outputMatrix = beliefMatrix.minus(inputMatrix);
+		if (!outputMatrix.chol().isSPD())
+			return;
+		
+		double[] beliefVector = belief.getInformationVector();
+		double[] inputVector = _inputMessage.getInformationVector();
+		double[] outputVector = new double[beliefVector.length];
+		for (int i = 0; i < outputVector.length; i++)
+			outputVector[i] = beliefVector[i] - inputVector[i];
+		
+		_outputMessage.setInformation(outputVector, outputMatrix.getArray());
+	}
+	
+	@Override
+	public final void setInitialSampleFromCurrentSample()
+	{
+		_solverVariable.setInitialSampleValue(_solverVariable.getCurrentSample().clone());
+	}
+	
+	@Override
+	public final void clearInitialSample()
+	{
+		_solverVariable.clearInitialSampleValue();
+	}
+	
+	// Computes the sample mean into the mean argument, and returns the sample covariance
+	private double[][] computeSampleMeanAndCovariance(double[] mean)
 	{
 		// Get the raw sample array to avoid making a copy; this is unsafe, so be careful not to modify it
 		List<double[]> sampleValues = _solverVariable._getSampleArrayUnsafe();
 		int numSamples = sampleValues.size();
-		int dimension = sampleValues.get(0).length;
+		int dimension = mean.length;
 
 		// For all sample values, compute the mean
-		double[] mean = new double[dimension];
 		for (int sample = 0; sample < numSamples; sample++)
 		{
 			double[] tmp = sampleValues.get(sample);
@@ -119,8 +168,8 @@ public class MultivariateNormalMessageTranslator extends MessageTranslatorBase
 				covariance[col][row] = value;	// Fill in lower triangular half
 			}
 		}
-		
-		_outputMessage.setMeanAndCovariance(mean, covariance);
+
+		return covariance;
 	}
 	
 	
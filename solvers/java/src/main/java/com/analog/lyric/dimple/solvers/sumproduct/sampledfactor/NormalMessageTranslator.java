@@ -103,6 +103,47 @@ public class NormalMessageTranslator extends MessageTranslatorBase
 		_outputMessage.setVariance(variance);
 	}
 	
+	@Override
+	public final void setOutputMessageFromVariableBeliefExcludingInput()
+	{
+		List<Double> sampleValues = _solverVariable._getSampleArrayUnsafe();
+		int numSamples = sampleValues.size();
+
+		double sum = 0;
+		double sumsq = 0;
+		for (int i = 0; i < numSamples; i++)
+		{
+			double tmp = sampleValues.get(i);
+			if (Double.isInfinite(tmp) || Double.isNaN(tmp))
+				return;
+			sum += tmp;
+			sumsq += tmp*tmp;
+		}
+		double beliefMean = sum / numSamples;
+		double beliefPrecision = (numSamples - 1) / (sumsq - sum*beliefMean);
+
+		// Divide the belief by the input message
+		double inputPrecision = _inputMessage.getPrecision();
+		double outputPrecision = beliefPrecision - inputPrecision;
+		if (!(outputPrecision > 0) || Double.isInfinite(outputPrecision))
+			return;
+		
+		_outputMessage.setMean((beliefPrecision * beliefMean - inputPrecision * _inputMessage.getMean()) / outputPrecision);
+		_outputMessage.setPrecision(outputPrecision);
+	}
+	
+	@Override
+	public final void setInitialSampleFromCurrentSample()
+	{
+		_solverVariable.setInitialSampleValue(_solverVariable.getCurrentSample());
+	}
+	
+	@Override
+	public final void clearInitialSample()
+	{
+		_solverVariable.clearInitialSampleValue();
+	}
+	
 	
 	@Override
 	public final void initialize()
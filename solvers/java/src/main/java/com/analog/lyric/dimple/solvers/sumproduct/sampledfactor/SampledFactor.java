@@ -20,8 +20,10 @@ import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.variables.VariableBase;
 import com.analog.lyric.dimple.solvers.core.SFactorBase;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.math.XoroshiroRandom;
 
 /**
  * @author jeff
@@ -50,6 +52,16 @@ import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
  * of the desired output message.  The accuracy depends on the number of
  * samples used in each update.
  * 
+ * In the default mode, the message graph is solved separately for each output edge.
+ * Alternatively, when amortized updates are enabled using {@link #setAmortizedUpdate},
+ * {@link #update()} solves the message graph only once, with the input of every variable
+ * set from the corresponding input message, and computes each output message by removing
+ * the input message from the resulting belief. In this mode, sampling also resumes from
+ * the state in which the previous update left the message graph, rather than restarting.
+ * 
+ * Each sampled factor draws from its own random stream, so the results do not depend
+ * on which thread the factor is updated on.
+ * 
  */
 public class SampledFactor extends SFactorBase
 {
@@ -60,6 +72,9 @@ public class SampledFactor extends SFactorBase
 	private VariableBase[] _privateVariables;
 	private FactorGraph _messageGraph;
 	private com.analog.lyric.dimple.solvers.gibbs.SFactorGraph _solverGraph;
+	private boolean _amortizedUpdate = false;
+	private boolean _warmStart = false;
+	private XoroshiroRandom _rand;
 	public final static int DEFAULT_SAMPLES_PER_UPDATE = 1000;
 	public final static int DEFAULT_BURN_IN_SCANS_PER_UPDATE = 10;
 	public final static int DEFAULT_SCANS_PER_SAMPLE = 1;
@@ -97,13 +112,44 @@ public class SampledFactor extends SFactorBase
 		_messageGraph.addFactor(factor.getFactorFunction(), _privateVariables);
 	}
 	
+	@Override
+	public void update()
+	{
+		if (!_amortizedUpdate)
+		{
+			super.update();
+			return;
+		}
+		
+		int numSiblings = _factor.getSiblingCount();
+		setSolverParameters();
+		
+		// Set inputs of all of the message-graph variables to the incoming message value
+		for (int edge = 0; edge < numSiblings; edge++)
+		{
+			MessageTranslatorBase messageTranslator = _messageTranslator[edge];
+			messageTranslator.setMessageDirection(MessageTranslatorBase.MessageDirection.OUTPUT);
+			messageTranslator.setVariableInputFromInputMessage();
+		}
+		
+		// Run the Gibbs solver, continuing from the previous state if there is one
+		solveMessageGraph();
+		
+		// Set all of the output messages from the same samples
+		for (int edge = 0; edge < numSiblings; edge++)
+		{
+			MessageTranslatorBase messageTranslator = _messageTranslator[edge];
+			messageTranslator.setOutputMessageFromVariableBeliefExcludingInput();
+			messageTranslator.setInitialSampleFromCurrentSample();
+		}
+		_warmStart = true;
+	}
+	
 	@Override
 	public void updateEdge(int outPortNum)
 	{
 		int numSiblings = _factor.getSiblingCount();
-		_solverGraph.setNumSamples(_samplesPerUpdate);
-		_solverGraph.setBurnInScans(_burnInScansPerUpdate);
-		_solverGraph.setScansPerSample(_scansPerSample);
+		setSolverParameters();
 		
 		// Set inputs of the message-graph variables to the incoming message value; all except the output variable
 		for (int edge = 0; edge < numSiblings; edge++)
@@ -122,7 +168,7 @@ public class SampledFactor extends SFactorBase
 		}
 
 		// Run the Gibbs solver
-		_messageGraph.solve();
+		solveMessageGraph();
 	
 		// Set the output message using the belief of the message-graph output variable
 		_messageTranslator[outPortNum].setOutputMessageFromVariableBelief();
@@ -130,6 +176,25 @@ public class SampledFactor extends SFactorBase
 	}
 	
 	
+	/**
+	 * Enables or disables amortized updates, in which {@link #update()} draws a single set of samples,
+	 * resuming from the previous state, that is used to compute the output messages for all edges.
+	 * Updates of individual edges are not affected.
+	 * @since 0.05
+	 */
+	public void setAmortizedUpdate(boolean amortizedUpdate)
+	{
+		_amortizedUpdate = amortizedUpdate;
+	}
+	
+	/**
+	 * @since 0.05
+	 */
+	public boolean isAmortizedUpdate()
+	{
+		return _amortizedUpdate;
+	}
+	
 	// Set/get operating parameters
 	public void setSamplesPerUpdate(int numSamples)
 	{
@@ -158,6 +223,14 @@ public class SampledFactor extends SFactorBase
 	}
 
 	
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+		_warmStart = false;
+		_rand = SolverRandomGenerator.getRand().split();
+	}
+	
 	@Override
 	public void resetEdgeMessages(int i)
 	{
@@ -196,4 +269,35 @@ public class SampledFactor extends SFactorBase
 		return _messageTranslator[portIndex].getOutputMessage();
 	}
 
+	
+	private void setSolverParameters()
+	{
+		_solverGraph.setNumSamples(_samplesPerUpdate);
+		_solverGraph.setBurnInScans(_burnInScansPerUpdate);
+		_solverGraph.setScansPerSample(_scansPerSample);
+	}
+	
+	// Solves the message graph using this factor's random stream
+	private void solveMessageGraph()
+	{
+		if (!_warmStart)
+		{
+			// The initial sample values are only set by amortized updates
+			for (MessageTranslatorBase messageTranslator : _messageTranslator)
+				messageTranslator.clearInitialSample();
+		}
+		
+		if (_rand == null)
+			_rand = SolverRandomGenerator.getRand().split();
+		final XoroshiroRandom previous = SolverRandomGenerator.setThreadRandom(_rand);
+		try
+		{
+			_messageGraph.solve();
+		}
+		finally
+		{
+			SolverRandomGenerator.setThreadRandom(previous);
+		}
+	}
+
 }
@@ -0,0 +1,229 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.math;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.math3.random.BitsStreamGenerator;
+
+/**
+ * Fast, splittable pseudo-random generator based on the xoroshiro128++ algorithm
+ * of Blackman and Vigna, with 128 bits of state.
+ * <p>
+ * Independent streams can be derived deterministically, either from a root seed and stream
+ * index using {@link #forStream(long, long)}, or from an existing generator using {@link #split()}.
+ * <p>
+ * In addition to the {@link org.apache.commons.math3.random.RandomGenerator} methods, provides
+ * Gamma, Beta and Normal variates that do not allocate any objects.
+ * <p>
+ * Instances are not thread safe; each thread should use its own.
+ *
+ * @since 0.05
+ */
+@NotThreadSafe
+public class XoroshiroRandom extends BitsStreamGenerator
+{
+	/*-------
+	 * State
+	 */
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long _s0;
+	private long _s1;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public XoroshiroRandom(long seed)
+	{
+		setSeed(seed);
+	}
+
+	/**
+	 * Returns a new generator for stream number {@code streamIndex} derived from {@code rootSeed}.
+	 * The same arguments always produce the same stream, and different stream indices produce
+	 * statistically independent streams.
+	 */
+	public static XoroshiroRandom forStream(long rootSeed, long streamIndex)
+	{
+		return new XoroshiroRandom(mix64(rootSeed) ^ mix64(GOLDEN_GAMMA * (streamIndex + 1)));
+	}
+
+	/**
+	 * Returns a new generator whose stream is independent of this one, seeded from
+	 * this generator's next output.
+	 */
+	public XoroshiroRandom split()
+	{
+		return new XoroshiroRandom(mix64(nextLong() ^ GOLDEN_GAMMA));
+	}
+
+	/*-----------------------------
+	 * BitsStreamGenerator methods
+	 */
+
+	@Override
+	public void setSeed(int seed)
+	{
+		setSeed((long)seed);
+	}
+
+	@Override
+	public void setSeed(int[] seed)
+	{
+		long combined = 0;
+		for (int value : seed)
+			combined = mix64(combined ^ value);
+		setSeed(combined);
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		// Expand the seed using SplitMix64, which never produces two zero state words in a row
+		long z = seed;
+		_s0 = mix64(z += GOLDEN_GAMMA);
+		_s1 = mix64(z += GOLDEN_GAMMA);
+		clear();
+	}
+
+	@Override
+	protected int next(int bits)
+	{
+		return (int)(nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong()
+	{
+		final long s0 = _s0;
+		long s1 = _s1;
+		final long result = Long.rotateLeft(s0 + s1, 17) + s0;
+		s1 ^= s0;
+		_s0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+		_s1 = Long.rotateLeft(s1, 28);
+		return result;
+	}
+
+	@Override
+	public int nextInt()
+	{
+		return (int)(nextLong() >>> 32);
+	}
+
+	@Override
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	@Override
+	public boolean nextBoolean()
+	{
+		return nextLong() < 0;
+	}
+
+	/*------------------
+	 * Variate methods
+	 */
+
+	/**
+	 * Returns a sample from a Normal distribution with given {@code mean} and {@code standardDeviation}.
+	 */
+	public double nextNormal(double mean, double standardDeviation)
+	{
+		return mean + standardDeviation * nextGaussian();
+	}
+
+	/**
+	 * Returns a sample from a Gamma distribution with given shape {@code alpha} and rate {@code beta}
+	 * (i.e. with mean alpha/beta), using the method of Marsaglia and Tsang.
+	 */
+	public double nextGamma(double alpha, double beta)
+	{
+		if (alpha < 1)
+		{
+			// Boost using Gamma(alpha) = Gamma(alpha + 1) * U^(1/alpha)
+			return Math.exp(nextLogGamma(alpha)) / beta;
+		}
+		return nextStandardGamma(alpha) / beta;
+	}
+
+	/**
+	 * Returns a sample from a Beta distribution with parameters {@code alpha} and {@code beta}.
+	 */
+	public double nextBeta(double alpha, double beta)
+	{
+		if (alpha < 1 || beta < 1)
+		{
+			// Work in the log domain to avoid underflow for small parameters
+			final double logX = nextLogGamma(alpha);
+			final double logY = nextLogGamma(beta);
+			return 1 / (1 + Math.exp(logY - logX));
+		}
+		final double x = nextStandardGamma(alpha);
+		final double y = nextStandardGamma(beta);
+		return x / (x + y);
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	// Log of a sample from Gamma(alpha, 1)
+	private double nextLogGamma(double alpha)
+	{
+		if (alpha >= 1)
+			return Math.log(nextStandardGamma(alpha));
+		return Math.log(nextStandardGamma(alpha + 1)) + Math.log(1 - nextDouble()) / alpha;
+	}
+
+	// Sample from Gamma(alpha, 1) for alpha >= 1
+	private double nextStandardGamma(double alpha)
+	{
+		final double d = alpha - 1.0/3.0;
+		final double c = 1 / Math.sqrt(9 * d);
+		while (true)
+		{
+			double x, v;
+			do
+			{
+				x = nextGaussian();
+				v = 1 + c * x;
+			} while (v <= 0);
+			v = v * v * v;
+			final double u = nextDouble();
+			final double x2 = x * x;
+			if (u < 1 - .0331 * x2 * x2)
+				return d * v;
+			if (Math.log(u) < .5 * x2 + d * (1 - v + Math.log(v)))
+				return d * v;
+		}
+	}
+
+	// SplitMix64 finalizer
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -27,9 +27,18 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.analog.lyric.dimple.factorfunctions.Beta;
+import com.analog.lyric.dimple.factorfunctions.Categorical;
+import com.analog.lyric.dimple.factorfunctions.Gamma;
+import com.analog.lyric.dimple.factorfunctions.LogNormal;
+import com.analog.lyric.dimple.factorfunctions.Multiplexer;
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.Product;
+import com.analog.lyric.dimple.factorfunctions.Sum;
 import com.analog.lyric.dimple.factorfunctions.XorDelta;
 import com.analog.lyric.dimple.factorfunctions.core.CustomFactorFunctionWrapper;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionWithConstants;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.factorfunctions.core.TableFactorFunction;
@@ -37,6 +46,7 @@ import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.factors.DiscreteFactor;
+import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.Discrete;
 
 
@@ -174,4 +184,67 @@ public class FactorFunctionTest {
 		assertTrue(ftThreeBinary.toString().length() != 0);
 		
 	}
+	
+	@Test
+	public void test_evalEnergyValues()
+	{
+		// The Value based evaluation should give the same result as the Object based one.
+		assertValueEnergy(new Normal(), 1.0, 2.0, 0.5, 1.5, -1.0);
+		assertValueEnergy(new Normal(1.0, 2.0), 0.5, 1.5);
+		assertValueEnergy(new Gamma(), 2.0, 3.0, 0.5, 1.5);
+		assertValueEnergy(new Beta(), 2.0, 3.0, 0.25, 0.75);
+		assertValueEnergy(new Beta(1.0, 3.0), 0.25, 0.75);
+		assertValueEnergy(new LogNormal(), 0.5, 2.0, 0.5, 1.5);
+		assertValueEnergy(new LogNormal(), 0.5, 2.0, -1.0);
+		assertValueEnergy(new Sum(), 3.0, 1.0, 2.0);
+		assertValueEnergy(new Sum(), 3.5, 1.0, 2.0);
+		assertValueEnergy(new Sum(0.5), 3.5, 1.0, 2.0);
+		assertValueEnergy(new Product(), 6.0, 2.0, 3.0);
+		assertValueEnergy(new Product(0.5), 5.0, 2.0, 3.0);
+		assertValueEnergy(new Categorical(), new double[] { 0.2, 0.3, 0.5 }, 2, 0, 1);
+		assertValueEnergy(new Multiplexer(), 2.0, 1, 1.0, 2.0);
+
+		// Including when some arguments are constants, repeatedly from the same thread.
+		FactorFunction normal = new FactorFunctionWithConstants(new Normal(), new Object[] { 1.0, 2.0 }, new int[] { 0, 1 });
+		assertValueEnergy(normal, 0.5, 1.5);
+		assertValueEnergy(normal, 0.25, 1.5, 3.0);
+		assertValueEnergy(normal, 0.75);
+	}
+	
+	@Test
+	public void test_evalEnergies()
+	{
+		// Batched evaluation should match evaluating one value at a time.
+		double[] batch = new double[] { -1.0, 0.0, 0.5, 2.0 };
+		assertEnergies(new Normal(1.0, 2.0), batch, 0, 0.0);
+		assertEnergies(new Normal(), batch, 2, 1.0, 2.0, 0.0, 1.5);
+		assertEnergies(new Normal(), batch, 3, 1.0, 2.0, 0.5, 0.0);
+		assertEnergies(new Normal(), new double[] { 0.5, 1.0 }, 1, 1.0, 0.0, 0.5);
+		assertEnergies(new Normal(), batch, 2, 1.0, -2.0, 0.0);
+		assertEnergies(new Gamma(), batch, 2, 2.0, 3.0, 0.0);
+		assertEnergies(new Sum(0.5), batch, 1, 3.0, 0.0, 2.0);
+	}
+	
+	private void assertEnergies(FactorFunction function, double[] batch, int index, Object ... arguments)
+	{
+		Value[] values = new Value[arguments.length];
+		for (int i = 0; i < arguments.length; ++i)
+			values[i] = Value.create(arguments[i]);
+		double[] energies = new double[batch.length];
+		function.evalEnergies(values, index, batch, energies);
+		for (int i = 0; i < batch.length; ++i)
+		{
+			arguments[index] = batch[i];
+			assertEquals(function.evalEnergy(arguments), energies[i], 1e-12);
+		}
+		assertEquals(0.0, values[index].getDouble(), 0.0);	// Unchanged
+	}
+	
+	private void assertValueEnergy(FactorFunction function, Object ... arguments)
+	{
+		Value[] values = new Value[arguments.length];
+		for (int i = 0; i < arguments.length; ++i)
+			values[i] = Value.create(arguments[i]);
+		assertEquals(function.evalEnergy(arguments), function.evalEnergy(values), 0.0);
+	}
 }
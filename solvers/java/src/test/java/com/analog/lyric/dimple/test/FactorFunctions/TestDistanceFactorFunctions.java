@@ -0,0 +1,289 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.FactorFunctions;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Potts;
+import com.analog.lyric.dimple.factorfunctions.TruncatedLinear;
+import com.analog.lyric.dimple.factorfunctions.TruncatedQuadratic;
+import com.analog.lyric.dimple.factorfunctions.core.DistanceFactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.core.DistanceTransform;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+
+/**
+ * Tests for {@link DistanceFactorFunction} implementations and {@link DistanceTransform}.
+ */
+public class TestDistanceFactorFunctions
+{
+	private final Random _rand = new Random(42);
+
+	@Test
+	public void testEnergy()
+	{
+		assertEquals(0, new Potts(2).evalEnergy(3, 3), 0.0);
+		assertEquals(2, new Potts(2).evalEnergy(3, 4), 0.0);
+		assertEquals(1.5, new TruncatedLinear(.5).evalEnergy(1, 4), 0.0);
+		assertEquals(1, new TruncatedLinear(.5, 1).evalEnergy(1, 4), 0.0);
+		assertEquals(4.5, new TruncatedQuadratic(.5).evalEnergy(4, 1), 0.0);
+		assertEquals(3, new TruncatedQuadratic(.5, 3).evalEnergy(4, 1), 0.0);
+	}
+
+	@Test
+	public void testTransform()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 24);
+		final DistanceFactorFunction[] functions = new DistanceFactorFunction[] {
+			new Potts(1.3),
+			new TruncatedLinear(.4),
+			new TruncatedLinear(.4, 2.1),
+			new TruncatedLinear(.4, 2.0),
+			new TruncatedLinear(3, .5),
+			new TruncatedLinear(0, 1),
+			new TruncatedQuadratic(.1),
+			new TruncatedQuadratic(.1, 3.5),
+			new TruncatedQuadratic(0),
+		};
+
+		for (DistanceFactorFunction function : functions)
+		{
+			FactorGraph fg = new FactorGraph();
+			Factor factor = fg.addFactor(function, new Discrete(domain), new Discrete(domain));
+			DistanceTransform transform = DistanceTransform.forFactor(factor);
+			assertNotNull(transform);
+			assertTrue(transform.isCurrent());
+			assertEquals(domain.size(), transform.size());
+
+			final int size = domain.size();
+			for (int trial = 0; trial < 4; ++trial)
+			{
+				double[] in = new double[size];
+				for (int i = 0; i < size; ++i)
+				{
+					// Include infinite energies and values spanning a wide range
+					in[i] = trial > 0 && _rand.nextInt(4) == 0 ? Double.POSITIVE_INFINITY : _rand.nextDouble() * 10;
+				}
+				if (trial == 3)
+					Arrays.fill(in, Double.POSITIVE_INFINITY);
+
+				double[] expected = new double[size];
+				double[] actual = new double[size];
+				for (int x = 0; x < size; ++x)
+				{
+					expected[x] = Double.POSITIVE_INFINITY;
+					for (int y = 0; y < size; ++y)
+						expected[x] = Math.min(expected[x], in[y] + function.evalEnergy(x, y));
+				}
+				transform.minConvolve(in, actual);
+				assertArrayEquals(expected, actual, 1e-12);
+
+				if (transform.canConvolve())
+				{
+					for (int i = 0; i < size; ++i)
+						in[i] = Math.exp(-in[i] * 3);
+					for (int x = 0; x < size; ++x)
+					{
+						expected[x] = 0;
+						for (int y = 0; y < size; ++y)
+							expected[x] += in[y] * Math.exp(-function.evalEnergy(x, y));
+					}
+					transform.convolve(in, actual);
+					for (int x = 0; x < size; ++x)
+						assertEquals(expected[x], actual[x], 1e-12 * expected[x] + 1e-300);
+				}
+			}
+		}
+
+		// Not applicable
+		FactorGraph fg = new FactorGraph();
+		assertNull(DistanceTransform.forFactor(fg.addFactor(new TruncatedLinear(1), new Discrete(domain), new Discrete(DiscreteDomain.range(0, 5)))));
+		assertNull(DistanceTransform.forFactor(fg.addFactor(new TruncatedLinear(1), new Discrete(1, 2, 4), new Discrete(1, 2, 4))));
+		assertNotNull(DistanceTransform.forFactor(fg.addFactor(new Potts(1), new Discrete(1, 2, 4), new Discrete(1, 2, 4))));
+		Factor directed = fg.addFactor(new TruncatedLinear(1), new Discrete(domain), new Discrete(domain));
+		DistanceTransform transform = DistanceTransform.forFactor(directed);
+		directed.setDirectedTo(new int[] { 1 });
+		assertFalse(transform.isCurrent());
+		assertNull(DistanceTransform.forFactor(directed));
+
+		// Changing the representation of the table does not change its values, but writing to
+		// its weights does, even when they are written in place and passed back.
+		Factor potts = fg.addFactor(new Potts(1), new Discrete(domain), new Discrete(domain));
+		transform = DistanceTransform.forFactor(potts);
+		IFactorTable table = potts.getFactorTable();
+		double[] weights = table.getWeightsSparseUnsafe();
+		assertTrue(transform.isCurrent());
+		weights[0] *= 2;
+		table.replaceWeightsSparse(weights);
+		assertFalse(transform.isCurrent());
+
+		// Also when the table is changed before the transform first sees it.
+		Factor edited = fg.addFactor(new Potts(1), new Discrete(domain), new Discrete(domain));
+		transform = DistanceTransform.forFactor(edited);
+		assertTrue(transform.isCurrent());
+		edited.getFactorTable().setWeightForIndices(3, 0, 1);
+		assertFalse(transform.isCurrent());
+	}
+
+	@Test
+	public void testSolvers()
+	{
+		final DiscreteDomain[] domains = new DiscreteDomain[] { DiscreteDomain.range(1, 16), DiscreteDomain.range(0.0, 3.0, .25) };
+		final DistanceFactorFunction[] functions = new DistanceFactorFunction[] {
+			new Potts(1.3), new TruncatedLinear(.7, 2.5), new TruncatedQuadratic(.3, 4)
+		};
+
+		for (DiscreteDomain domain : domains)
+		{
+			for (DistanceFactorFunction function : functions)
+			{
+				long seed = _rand.nextLong();
+				compareSolver(new com.analog.lyric.dimple.solvers.minsum.Solver(), domain, function, seed);
+				compareSolver(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), domain, function, seed);
+			}
+		}
+	}
+
+	/**
+	 * Once the weights of a distance function's table have been changed, the solvers must use the table
+	 * instead of the function.
+	 */
+	@Test
+	public void testModifiedTable()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(1, 12);
+		final int size = domain.size();
+		final DistanceFactorFunction[] functions = new DistanceFactorFunction[] {
+			new Potts(1.3), new TruncatedLinear(.7, 2.5)
+		};
+
+		for (DistanceFactorFunction function : functions)
+		{
+			double[][] tableWeights = new double[size][size];
+			for (double[] row : tableWeights)
+				for (int j = 0; j < size; ++j)
+					row[j] = _rand.nextDouble() + .01;
+
+			long seed = _rand.nextLong();
+			compareSolver(new com.analog.lyric.dimple.solvers.minsum.Solver(), domain, function, seed, tableWeights);
+			compareSolver(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), domain, function, seed, tableWeights);
+		}
+	}
+
+	/*
+	 * Compares beliefs of a loopy grid using the function against the same grid using
+	 * tables with the same values, which are always computed by visiting the table.
+	 */
+	private void compareSolver(IFactorGraphFactory<?> solver, DiscreteDomain domain, DistanceFactorFunction function, long seed)
+	{
+		compareSolver(solver, domain, function, seed, null);
+	}
+
+	/*
+	 * If {@code tableWeights} is not null, the grid using the function is solved once, then the weights of
+	 * the function's table are replaced by {@code tableWeights} and it is solved again.
+	 */
+	private void compareSolver(IFactorGraphFactory<?> solver, DiscreteDomain domain, DistanceFactorFunction function, long seed,
+		double[][] tableWeights)
+	{
+		double[][] expected = solveGrid(solver, domain, function, seed, false, tableWeights);
+		double[][] actual = solveGrid(solver, domain, function, seed, true, tableWeights);
+		for (int i = 0; i < expected.length; ++i)
+			assertArrayEquals(expected[i], actual[i], 1e-10);
+	}
+
+	private double[][] solveGrid(IFactorGraphFactory<?> solver, DiscreteDomain domain, DistanceFactorFunction function,
+		long seed, boolean useFunction, double[][] tableWeights)
+	{
+		final Random rand = new Random(seed);
+		final int n = 4, size = domain.size();
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(solver);
+		fg.getSolver().setNumIterations(5);
+
+		int[][] indices = new int[size * size][];
+		double[] weights = new double[size * size];
+		for (int i = 0, k = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j, ++k)
+			{
+				indices[k] = new int[] { i, j };
+				weights[k] = tableWeights != null ? tableWeights[i][j] :
+					Math.exp(-function.evalEnergy(domain.getElement(i), domain.getElement(j)));
+			}
+		}
+
+		Discrete[] vars = new Discrete[n * n];
+		for (int i = 0; i < vars.length; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			double[] input = new double[size];
+			for (int j = 0; j < size; ++j)
+				input[j] = rand.nextDouble() + .001;
+			vars[i].setInput(input);
+		}
+		for (int y = 0; y < n; ++y)
+		{
+			for (int x = 0; x < n; ++x)
+			{
+				Discrete var = vars[y * n + x];
+				if (x + 1 < n)
+				{
+					if (useFunction)
+						fg.addFactor(function, var, vars[y * n + x + 1]);
+					else
+						fg.addFactor(indices, weights, var, vars[y * n + x + 1]);
+				}
+				if (y + 1 < n)
+				{
+					if (useFunction)
+						fg.addFactor(function, vars[(y + 1) * n + x], var);
+					else
+						fg.addFactor(indices, weights, vars[(y + 1) * n + x], var);
+				}
+			}
+		}
+
+		fg.solve();
+
+		if (useFunction && tableWeights != null)
+		{
+			// All of the factors share the function's table.
+			IFactorTable table = function.getFactorTable(fg.getFactors().iterator().next());
+			double[] dense = new double[size * size];
+			for (int i = 0; i < size; ++i)
+				for (int j = 0; j < size; ++j)
+					dense[table.getDomainIndexer().jointIndexFromIndices(i, j)] = tableWeights[i][j];
+			table.setWeightsDense(dense);
+			fg.solve();
+		}
+
+		double[][] beliefs = new double[vars.length][];
+		for (int i = 0; i < vars.length; ++i)
+			beliefs[i] = vars[i].getBelief();
+		return beliefs;
+	}
+}
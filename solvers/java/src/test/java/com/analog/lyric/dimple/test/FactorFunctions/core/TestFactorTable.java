@@ -729,7 +729,58 @@ public class TestFactorTable
 			}
 		}
 	}
-	
+
+	/**
+	 * Test that {@link IFactorTable#getPackedIndicesSparseUnsafe()} is recomputed when the order of the
+	 * sparse entries changes without changing their number.
+	 */
+	@Test
+	public void testPackedIndicesAfterReindexing()
+	{
+		IFactorTable table = FactorTable.create(domain2, domain3, domain5);
+		double[] weights = new double[table.jointSize()];
+		for (int i = 0; i < weights.length; ++i)
+		{
+			weights[i] = rand.nextDouble() + 0.1;
+		}
+		table.setWeightsDense(weights);
+		assertTrue(table.hasMaximumDensity());
+
+		int[] packed = table.getPackedIndicesSparseUnsafe();
+		assertPackedIndices(table);
+
+		table.setDirected(BitSetUtil.bitsetFromIndices(3, 0));
+		assertNotSame(packed, table.getPackedIndicesSparseUnsafe());
+		assertPackedIndices(table);
+
+		packed = table.getPackedIndicesSparseUnsafe();
+		table.setDirected(BitSetUtil.bitsetFromIndices(3, 2));
+		assertNotSame(packed, table.getPackedIndicesSparseUnsafe());
+		assertPackedIndices(table);
+
+		packed = table.getPackedIndicesSparseUnsafe();
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		assertNotSame(packed, table.getPackedIndicesSparseUnsafe());
+		assertPackedIndices(table);
+	}
+
+	private static void assertPackedIndices(IFactorTable table)
+	{
+		final int[] packed = table.getPackedIndicesSparseUnsafe();
+		final int sparseSize = table.sparseSize();
+		final int dimensions = table.getDimensions();
+		assertEquals(sparseSize * dimensions, packed.length);
+		final int[] indices = new int[dimensions];
+		for (int si = 0; si < sparseSize; ++si)
+		{
+			table.sparseIndexToIndices(si, indices);
+			for (int d = 0; d < dimensions; ++d)
+			{
+				assertEquals(indices[d], packed[d * sparseSize + si]);
+			}
+		}
+	}
+
 	@Test
 	@Ignore
 	public void performanceComparison()
@@ -1355,6 +1406,24 @@ public class TestFactorTable
 				assertEquals(table.getWeightForSparseIndex(si), sparseWeights[si], 0.0);
 			}
 		}
+		if (table.hasSparseRepresentation())
+		{
+			int[] packedIndices = table.getPackedIndicesSparseUnsafe();
+			assertEquals(representation, table.getRepresentation());
+			final int sparseSize = table.sparseSize();
+			final int dimensions = table.getDimensions();
+			assertEquals(sparseSize * dimensions, packedIndices.length);
+			assertSame(packedIndices, table.getPackedIndicesSparseUnsafe());
+			int[] indices = new int[dimensions];
+			for (int si = 0; si < sparseSize; ++si)
+			{
+				table.sparseIndexToIndices(si, indices);
+				for (int d = 0; d < dimensions; ++d)
+				{
+					assertEquals(indices[d], packedIndices[d * sparseSize + si]);
+				}
+			}
+		}
 		
 		JointDomainReindexer nullConverter =
 			JointDomainReindexer.createPermuter(table.getDomainIndexer(), table.getDomainIndexer());
@@ -1445,6 +1514,16 @@ public class TestFactorTable
 						assertEquals(table.sparseIndexToJointIndex(si), ji);
 						assertEquals(si, table.sparseIndexFromJointIndex(ji));
 					}
+					if (domains.supportsLongJointIndexing())
+					{
+						final long lji = table.sparseIndexToLongJointIndex(si);
+						assertEquals(domains.longJointIndexFromIndices(entry.indices()), lji);
+						assertEquals(si, table.sparseIndexFromLongJointIndex(lji));
+						if (si > 0)
+						{
+							assertTrue(table.sparseIndexToLongJointIndex(si - 1) < lji);
+						}
+					}
 					assertArrayEquals(table.sparseIndexToIndices(si, null), entry.indices());
 					assertArrayEquals(table.sparseIndexToElements(si, null), entry.values());
 				}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.FactorFunctions.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Tests parallel creation of factor tables by {@link FactorFunction#getFactorTable(JointDomainIndexer)}.
+ */
+public class TestFactorTableBuilder
+{
+	/*
+	 * Energy that is infinite for about a third of the joint indexes.
+	 */
+	static class Modular extends FactorFunction
+	{
+		private final boolean _threadSafe;
+		final AtomicInteger _tablesCreated = new AtomicInteger();
+
+		Modular(boolean threadSafe)
+		{
+			_threadSafe = threadSafe;
+		}
+
+		@Override
+		public double evalEnergy(Object... arguments)
+		{
+			int sum = 0;
+			for (int i = 0; i < arguments.length; ++i)
+				sum += (i + 1) * FactorFunctionUtilities.toInteger(arguments[i]);
+			return sum % 3 == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(sum);
+		}
+
+		@Override
+		public boolean isEvaluationThreadSafe()
+		{
+			return _threadSafe;
+		}
+
+		@Override
+		protected IFactorTable createTableForDomains(JointDomainIndexer domains)
+		{
+			_tablesCreated.incrementAndGet();
+			return super.createTableForDomains(domains);
+		}
+	}
+
+	/*
+	 * Same energies as Modular, but only implemented for Values.
+	 */
+	static class ModularValues extends Modular
+	{
+		ModularValues()
+		{
+			super(true);
+		}
+
+		@Override
+		public double evalEnergy(Object... arguments)
+		{
+			throw new UnsupportedOperationException("boxed evaluation");
+		}
+
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			int sum = 0;
+			for (int i = 0; i < values.length; ++i)
+				sum += (i + 1) * values[i].getInt();
+			return sum % 3 == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(sum);
+		}
+	}
+
+	@Test
+	public void testTables()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 11);
+		final JointDomainIndexer domains = JointDomainIndexer.create(domain, domain, domain, domain, domain);
+
+		IFactorTable expected = new Modular(false).getFactorTable(domains);
+		IFactorTable actual = new Modular(true).getFactorTable(domains);
+		assertFalse(expected.hasDenseRepresentation());
+		assertEquals(expected.sparseSize(), actual.sparseSize());
+		assertArrayEquals(expected.getEnergiesSparseUnsafe(), actual.getEnergiesSparseUnsafe(), 0.0);
+		for (int i = 0, end = expected.sparseSize(); i < end; ++i)
+			assertEquals(expected.sparseIndexToJointIndex(i), actual.sparseIndexToJointIndex(i));
+
+		// Energies are computed through the Value overload
+		IFactorTable fromValues = new ModularValues().getFactorTable(domains);
+		assertArrayEquals(expected.getEnergiesSparseUnsafe(), fromValues.getEnergiesSparseUnsafe(), 0.0);
+
+		// Dense and deterministic directed tables
+		final DiscreteDomain small = DiscreteDomain.range(0, 3);
+		final DiscreteDomain large = DiscreteDomain.range(0, 21);
+		IFactorTable dense = new Sum(1.0).getFactorTable(JointDomainIndexer.create(large, small, small, small, small, small));
+		assertTrue(dense.hasDenseRepresentation());
+		assertEquals(22 * 4 * 4 * 4 * 4 * 4, dense.sparseSize());
+
+		JointDomainIndexer directed = JointDomainIndexer.create(new int[] { 0 }, new DiscreteDomain[] { large, small, small, small, small, small, small, small });
+		IFactorTable deterministic = new Sum().getFactorTable(directed);
+		assertTrue(deterministic.isDeterministicDirected());
+		assertEquals(directed.getInputCardinality(), deterministic.sparseSize());
+		int[][] indices = deterministic.getIndicesSparseUnsafe();
+		for (int[] row : indices)
+		{
+			int sum = 0;
+			for (int i = 1; i < row.length; ++i)
+				sum += row[i];
+			assertEquals(sum, row[0]);
+		}
+	}
+
+	@Test
+	public void testCacheRace() throws Exception
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 9);
+		final JointDomainIndexer domains = JointDomainIndexer.create(domain, domain, domain, domain);
+		final Modular function = new Modular(true);
+		final int nThreads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+
+		ExecutorService service = Executors.newFixedThreadPool(nThreads);
+		try
+		{
+			List<Future<IFactorTable>> results = new ArrayList<Future<IFactorTable>>();
+			for (int i = 0; i < nThreads; ++i)
+			{
+				results.add(service.submit(new Callable<IFactorTable>() {
+					@Override
+					public IFactorTable call() throws Exception
+					{
+						start.await();
+						return function.getFactorTable(domains);
+					}
+				}));
+			}
+			start.countDown();
+
+			IFactorTable table = results.get(0).get();
+			for (Future<IFactorTable> result : results)
+				assertSame(table, result.get());
+			assertEquals(1, function._tablesCreated.get());
+			assertTrue(function.factorTableExists(domains));
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.FactorFunctions.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionWithConstants;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableDiskCache;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.OffHeapFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.variables.Discrete;
+
+/**
+ * Tests for {@link FactorTableDiskCache}.
+ */
+public class TestFactorTableDiskCache
+{
+	static class Versioned extends TestFactorTableBuilder.Modular
+	{
+		private final String _version;
+
+		Versioned(String version)
+		{
+			super(true);
+			_version = version;
+		}
+
+		@Override
+		public String getTableCacheVersion()
+		{
+			return _version;
+		}
+	}
+
+	@Test
+	public void test() throws Exception
+	{
+		final File directory = Files.createTempDirectory("tables").toFile();
+		final FactorTableDiskCache cache = new FactorTableDiskCache(directory);
+		try
+		{
+			final DiscreteDomain domain = DiscreteDomain.range(0, 6);
+			final JointDomainIndexer domains = JointDomainIndexer.create(domain, domain, domain);
+			final IFactorTable expected = new TestFactorTableBuilder.Modular(false).getFactorTable(domains);
+
+			// Not cached without a version
+			assertNull(cache.getFile(new TestFactorTableBuilder.Modular(true), domains));
+			assertNull(cache.getTable(new TestFactorTableBuilder.Modular(true), domains));
+
+			Versioned function = new Versioned("1");
+			File file = cache.getFile(function, domains);
+			assertEquals(directory, file.getParentFile());
+			assertFalse(file.exists());
+			assertNotEquals(file, cache.getFile(new Versioned("2"), domains));
+			assertNotEquals(file, cache.getFile(function, JointDomainIndexer.create(domain, domain, DiscreteDomain.range(0, 5))));
+			assertNotEquals(file, cache.getFile(function, JointDomainIndexer.create(new int[] { 0 }, new DiscreteDomain[] { domain, domain, domain })));
+
+			IFactorTable table = cache.getTable(function, domains);
+			assertTrue(file.exists());
+			assertTrue(table instanceof OffHeapFactorTable);
+			assertEquals(1, function._tablesCreated.get());
+			assertTablesEqual(expected, table);
+
+			// A new instance loads the table without creating it.
+			function = new Versioned("1");
+			assertEquals(file, cache.getFile(function, domains));
+			assertTablesEqual(expected, cache.getTable(function, domains));
+			assertEquals(0, function._tablesCreated.get());
+
+			// An unreadable file is replaced.
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(new byte[] { 1, 2, 3 });
+			out.close();
+			assertTablesEqual(expected, cache.getTable(function, domains));
+			assertEquals(1, function._tablesCreated.get());
+
+			// Used by getFactorTable when set as the default, including when solving.
+			FactorTableDiskCache.setDefault(cache);
+			function = new Versioned("1");
+			assertTrue(function.getFactorTable(domains) instanceof OffHeapFactorTable);
+			assertEquals(0, function._tablesCreated.get());
+
+			double[] cachedBelief = solve(function, domain);
+			FactorTableDiskCache.setDefault(null);
+			assertArrayEquals(solve(new TestFactorTableBuilder.Modular(false), domain), cachedBelief, 1e-12);
+
+			cache.clear();
+			assertFalse(file.exists());
+		}
+		finally
+		{
+			FactorTableDiskCache.setDefault(null);
+			cache.clear();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testConstants() throws Exception
+	{
+		final File directory = Files.createTempDirectory("tables").toFile();
+		final FactorTableDiskCache cache = new FactorTableDiskCache(directory);
+		try
+		{
+			final DiscreteDomain domain = DiscreteDomain.range(0, 6);
+			final JointDomainIndexer domains = JointDomainIndexer.create(domain, domain, domain);
+
+			// Constants with the same string form but different types do not collide.
+			File intFile = cache.getFile(withConstant(1), domains);
+			File longFile = cache.getFile(withConstant(1L), domains);
+			assertNotNull(intFile);
+			assertNotNull(longFile);
+			assertNotEquals(intFile, longFile);
+			assertNotEquals(intFile, cache.getFile(withConstant("1"), domains));
+			assertNotEquals(cache.getFile(withConstant(new int[] { 1, 2 }), domains),
+				cache.getFile(withConstant(new long[] { 1, 2 }), domains));
+			assertEquals(intFile, cache.getFile(withConstant(1), domains));
+
+			// Other objects are not cached at all.
+			final FactorFunctionWithConstants unsupported = withConstant(new Object());
+			assertNull(cache.getFile(unsupported, domains));
+			assertNull(cache.getTable(unsupported, domains));
+			assertNull(cache.getFile(withConstant(new Object[] { 1, new Object() }), domains));
+			assertEquals(0, directory.listFiles().length);
+		}
+		finally
+		{
+			cache.clear();
+			directory.delete();
+		}
+	}
+
+	private FactorFunctionWithConstants withConstant(Object constant)
+	{
+		return new FactorFunctionWithConstants(new Versioned("1"), new Object[] { constant }, new int[] { 3 });
+	}
+
+	private void assertTablesEqual(IFactorTable expected, IFactorTable actual)
+	{
+		assertEquals(expected.sparseSize(), actual.sparseSize());
+		assertArrayEquals(expected.getEnergiesSparseUnsafe(), actual.getEnergiesSparseUnsafe(), 0.0);
+		for (int i = 0, end = expected.sparseSize(); i < end; ++i)
+			assertEquals(expected.sparseIndexToJointIndex(i), actual.sparseIndexToJointIndex(i));
+	}
+
+	private double[] solve(TestFactorTableBuilder.Modular function, DiscreteDomain domain)
+	{
+		FactorGraph fg = new FactorGraph();
+		Discrete a = new Discrete(domain), b = new Discrete(domain), c = new Discrete(domain);
+		a.setInput(.1, .2, .3, .1, .1, .1, .1);
+		fg.addFactor(function, a, b, c);
+		fg.addFactor(function, c, a, b);
+		fg.solve();
+		return b.getBelief();
+	}
+}
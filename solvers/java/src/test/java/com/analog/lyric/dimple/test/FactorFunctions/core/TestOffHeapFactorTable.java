@@ -0,0 +1,319 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.FactorFunctions.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.collect.BitSetUtil;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTableIterator;
+import com.analog.lyric.dimple.factorfunctions.core.OffHeapFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.TableFactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.util.test.SerializationTester;
+
+public class TestOffHeapFactorTable
+{
+	final Random rand = new Random(42);
+	final DiscreteDomain domain2 = DiscreteDomain.range(0,1);
+	final DiscreteDomain domain3 = DiscreteDomain.range(0,2);
+	final DiscreteDomain domain5 = DiscreteDomain.range(0,4);
+
+	@Test
+	public void testCreate()
+	{
+		IFactorTable table = FactorTable.create(domain2, domain3, domain5);
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		table.randomizeWeights(rand);
+		for (int ji = 0; ji < table.jointSize(); ji += 3)
+		{
+			table.setWeightForJointIndex(0.0, ji);
+		}
+		table.normalize();
+		table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT);
+
+		OffHeapFactorTable offHeap = OffHeapFactorTable.create(table);
+		assertSameContents(table, offHeap);
+		assertTrue(offHeap.isNormalized());
+		offHeap.normalize(); // already normalized, so does nothing
+		assertFalse(offHeap.hasMaximumDensity());
+		assertEquals(FactorTableRepresentation.ALL_SPARSE, offHeap.getRepresentation());
+
+		// Read-only
+		offHeap.setRepresentation(FactorTableRepresentation.ALL_SPARSE);
+		offHeap.setDirected(null);
+		offHeap.copy(offHeap);
+		try
+		{
+			offHeap.setWeightForJointIndex(1.0, 1);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("read-only"));
+		}
+
+		// Derived tables are ordinary heap tables.
+		IFactorTable conditioned = offHeap.createTableConditionedOn(new int[] { 1, -1, -1 });
+		assertTrue(conditioned instanceof FactorTable);
+		assertSameContents(table.createTableConditionedOn(new int[] { 1, -1, -1 }), conditioned);
+
+		IFactorTable copy = SerializationTester.clone(offHeap);
+		assertTrue(copy instanceof FactorTable);
+		assertSameContents(table, copy);
+
+		assertSame(offHeap.getWeightsSparseUnsafe(), offHeap.getWeightsSparseUnsafe());
+		assertSameContents(table, offHeap.clone());
+	}
+
+	@Test
+	public void testDeterministic()
+	{
+		IFactorTable table = FactorTable.create(BitSetUtil.bitsetFromIndices(3, 2), domain3, domain3, domain5);
+		table.setDeterministicOutputIndices(new int[] { 0, 1, 2, 1, 2, 3, 2, 3, 4 });
+
+		OffHeapFactorTable offHeap = OffHeapFactorTable.create(table);
+		assertSameContents(table, offHeap);
+		assertTrue(offHeap.isDirected());
+		assertTrue(offHeap.isConditional());
+		assertTrue(offHeap.isDeterministicDirected());
+
+		Object[] arguments = new Object[] { 1, 2, null };
+		offHeap.evalDeterministic(arguments);
+		assertEquals(3, arguments[2]);
+	}
+
+	@Test
+	public void testMap() throws IOException
+	{
+		IFactorTable table = FactorTable.create(domain3, domain2, domain5);
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		table.randomizeWeights(rand);
+		table.setWeightForIndices(0.0, 2, 1, 4);
+
+		File file = File.createTempFile("dimple", ".dmft");
+		file.deleteOnExit();
+		try
+		{
+			OffHeapFactorTable.write(table, file);
+			OffHeapFactorTable mapped = OffHeapFactorTable.map(file, table.getDomainIndexer());
+			assertSameContents(table, mapped);
+
+			try
+			{
+				OffHeapFactorTable.map(file, JointDomainIndexer.create(domain2, domain3, domain5));
+				fail("expected DimpleException");
+			}
+			catch (DimpleException ex)
+			{
+			}
+
+			// Use as a factor shared by two graphs.
+			final Discrete[] heapVars = newVariables(), mappedVars = newVariables();
+			FactorGraph heapGraph = new FactorGraph(), mappedGraph = new FactorGraph();
+			heapGraph.addFactor(new TableFactorFunction("heap", table), heapVars);
+			mappedGraph.addFactor(new TableFactorFunction("mapped", mapped), mappedVars);
+			heapGraph.solve();
+			mappedGraph.solve();
+			for (int i = 0; i < heapVars.length; ++i)
+			{
+				assertArrayEquals(heapVars[i].getBelief(), mappedVars[i].getBelief(), 1e-12);
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReadSparse()
+	{
+		IFactorTable table = FactorTable.create(domain3, domain2, domain5);
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		table.randomizeWeights(rand);
+		table.setWeightForIndices(0.0, 2, 1, 4);
+		OffHeapFactorTable offHeap = OffHeapFactorTable.create(table);
+
+		final int size = offHeap.sparseSize();
+		final double[] weights = new double[7], energies = new double[7];
+		final int[] packedIndices = new int[7 * 3], packedIndices2 = new int[7 * 3];
+		int si = 0;
+		while (si < size)
+		{
+			final int n = offHeap.readWeightsSparse(si, weights, packedIndices);
+			assertEquals(Math.min(7, size - si), n);
+			assertEquals(n, offHeap.readEnergiesSparse(si, energies, packedIndices2));
+			assertArrayEquals(packedIndices, packedIndices2);
+			for (int i = 0; i < n; ++i)
+			{
+				assertEquals(offHeap.getWeightForSparseIndex(si + i), weights[i], 0.0);
+				assertEquals(offHeap.getEnergyForSparseIndex(si + i), energies[i], 0.0);
+				final int[] indices = offHeap.sparseIndexToIndices(si + i);
+				for (int d = 0; d < 3; ++d)
+				{
+					assertEquals(indices[d], packedIndices[d * n + i]);
+				}
+			}
+			si += n;
+		}
+		assertEquals(size, si);
+	}
+
+	/**
+	 * Tests the sum-product and min-sum message updates, which read off-heap tables in blocks, on a table
+	 * with more than {@link OffHeapFactorTable#BLOCK_SIZE} entries.
+	 */
+	@Test
+	public void testMessageUpdates()
+	{
+		final DiscreteDomain domain13 = DiscreteDomain.range(0,12), domain17 = DiscreteDomain.range(0,16);
+		IFactorTable table = FactorTable.create(domain13, domain13, domain17);
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		table.randomizeWeights(rand);
+		for (int i = 0; i < 13; ++i)
+		{
+			table.setWeightForIndices(0.0, i, 12 - i, i);
+		}
+		OffHeapFactorTable offHeap = OffHeapFactorTable.create(table);
+		assertTrue(offHeap.sparseSize() > OffHeapFactorTable.BLOCK_SIZE);
+
+		for (boolean minSum : new boolean[] { false, true })
+		{
+			final Discrete[] heapVars = newVariables(domain13, domain13, domain17);
+			final Discrete[] offHeapVars = newVariables(domain13, domain13, domain17);
+			FactorGraph heapGraph = new FactorGraph(), offHeapGraph = new FactorGraph();
+			heapGraph.addFactor(new TableFactorFunction("heap", table), heapVars);
+			offHeapGraph.addFactor(new TableFactorFunction("offHeap", offHeap), offHeapVars);
+			if (minSum)
+			{
+				heapGraph.setSolverFactory(new com.analog.lyric.dimple.solvers.minsum.Solver());
+				offHeapGraph.setSolverFactory(new com.analog.lyric.dimple.solvers.minsum.Solver());
+			}
+
+			heapGraph.solve();
+			offHeapGraph.solve();
+			for (int i = 0; i < heapVars.length; ++i)
+			{
+				assertArrayEquals(heapVars[i].getBelief(), offHeapVars[i].getBelief(), 1e-12);
+			}
+
+			// Update each edge separately.
+			for (int i = 0; i < heapVars.length; ++i)
+			{
+				heapGraph.getFactors().iterator().next().updateEdge(i);
+				offHeapGraph.getFactors().iterator().next().updateEdge(i);
+				heapVars[i].update();
+				offHeapVars[i].update();
+				assertArrayEquals(heapVars[i].getBelief(), offHeapVars[i].getBelief(), 1e-12);
+			}
+		}
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	/**
+	 * Variables with the same random inputs on every call.
+	 */
+	private Discrete[] newVariables(DiscreteDomain ... domains)
+	{
+		final Random inputRand = new Random(3);
+		Discrete[] variables = new Discrete[domains.length];
+		for (int i = 0; i < domains.length; ++i)
+		{
+			variables[i] = new Discrete(domains[i]);
+			double[] input = new double[domains[i].size()];
+			for (int j = 0; j < input.length; ++j)
+			{
+				input[j] = inputRand.nextDouble();
+			}
+			variables[i].setInput(input);
+		}
+		return variables;
+	}
+
+	private Discrete[] newVariables()
+	{
+		Discrete[] variables = new Discrete[] { new Discrete(domain3), new Discrete(domain2), new Discrete(domain5) };
+		variables[0].setInput(.2, .3, .5);
+		variables[2].setInput(.1, .1, .2, .3, .3);
+		return variables;
+	}
+
+	/**
+	 * Asserts that {@code actual} has the same domains and non-zero entries as {@code expected},
+	 * and the same values for every joint index and slice.
+	 */
+	private static void assertSameContents(IFactorTable expected, IFactorTable actual)
+	{
+		final JointDomainIndexer domains = expected.getDomainIndexer();
+		assertEquals(domains, actual.getDomainIndexer());
+		assertEquals(expected.countNonZeroWeights(), actual.countNonZeroWeights());
+
+		for (int ji = 0, n = expected.jointSize(); ji < n; ++ji)
+		{
+			assertEquals(expected.getWeightForJointIndex(ji), actual.getWeightForJointIndex(ji), 1e-12);
+			assertEquals(expected.getEnergyForJointIndex(ji), actual.getEnergyForJointIndex(ji), 1e-12);
+		}
+
+		IFactorTableIterator expectedIter = expected.iterator(), actualIter = actual.iterator();
+		while (expectedIter.advance())
+		{
+			assertTrue(actualIter.advance());
+			assertEquals(expectedIter.jointIndex(), actualIter.jointIndex());
+			assertEquals(expectedIter.weight(), actualIter.weight(), 1e-12);
+			assertArrayEquals(expectedIter.indices(), actualIter.indices());
+		}
+		assertFalse(actualIter.advance());
+
+		final int[] indices = new int[domains.size()];
+		final Value[] values = new Value[domains.size()];
+		for (int d = 0; d < values.length; ++d)
+		{
+			values[d] = Value.create(domains.get(d));
+		}
+		for (int ji = 0, n = expected.jointSize(); ji < n; ++ji)
+		{
+			domains.jointIndexToIndices(ji, indices);
+			for (int d = 0; d < indices.length; ++d)
+			{
+				values[d].setIndex(indices[d]);
+			}
+			for (int d = 0; d < indices.length; ++d)
+			{
+				assertArrayEquals(expected.getWeightSlice(d, indices), actual.getWeightSlice(d, indices), 1e-12);
+				assertArrayEquals(expected.getEnergySlice(d, indices), actual.getEnergySlice(d, indices), 1e-12);
+				assertArrayEquals(expected.getEnergySlice(d, values), actual.getEnergySlice(d, values), 1e-12);
+			}
+		}
+	}
+}
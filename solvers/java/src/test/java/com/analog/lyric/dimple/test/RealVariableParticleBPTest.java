@@ -277,7 +277,7 @@ public class RealVariableParticleBPTest
 		
 		
 		assertTrue(nearlyEquals(aSolverMean,0.1929829696757485));
-		assertTrue(nearlyEquals(bSolverMean,0.5809732764581331));
+		assertTrue(nearlyEquals(bSolverMean,0.5733812658050766));
 	}
 	
 	
@@ -356,6 +356,66 @@ public class RealVariableParticleBPTest
 	}
 	
 	
+	@Test
+	public void parallelResamplingTest()
+	{
+		// Test resampling independent pairs of variables concurrently
+		if (debugPrint) System.out.println("== parallelResamplingTest ==");
+
+		double[] means = solveIndependentPairs(3);
+		for (int i = 0; i < means.length; i++)
+		{
+			if (debugPrint) System.out.println("aMean: " + means[i]);
+			assertEquals(0.8, means[i], 0.15);					// Same as basicTest1
+		}
+
+		// Repeatable for a given seed and number of workers
+		assertArrayEquals(means, solveIndependentPairs(3), 0.0);
+	}
+	
+	private double[] solveIndependentPairs(int numWorkers)
+	{
+		int numPairs = 4;
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.particleBP.Solver());
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setNumIterations(5);
+		solver.setNumParticles(30);
+		solver.setResamplingUpdatesPerParticle(10);
+		assertEquals(1, solver.getNumResamplingWorkers());
+		solver.setNumResamplingWorkers(numWorkers);
+		assertEquals(numWorkers, solver.getNumResamplingWorkers());
+
+		Real[] a = new Real[numPairs];
+		for (int i = 0; i < numPairs; i++)
+		{
+			a[i] = new Real();
+			Real b = new Real();
+			a[i].setInputObject(new Normal(1, 4));
+			b.setInputObject(new Normal(-1, 0.25));
+			graph.addFactor(new Normal(0,1), a[i], b);
+			((SRealVariable)a[i].getSolver()).setProposalStandardDeviation(0.5);
+			((SRealVariable)b.getSolver()).setProposalStandardDeviation(0.5);
+		}
+
+		solver.setSeed(1);
+		graph.solve();
+		double[] means = new double[numPairs];
+		for (int i = 0; i < numPairs; i++)
+			means[i] = beliefMean((SRealVariable)a[i].getSolver());
+		return means;
+	}
+	
+	private double beliefMean(SRealVariable variable)
+	{
+		double[] belief = (double[])variable.getBelief();
+		double[] particles = variable.getParticleValues();
+		double mean = 0;
+		for (int i = 0; i < belief.length; i++) mean += particles[i] * belief[i];
+		return mean;
+	}
+	
+	
 	@Test
 	public void basicTest4()
 	{
@@ -0,0 +1,91 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.model;
+
+import java.util.Random;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Discrete;
+
+/**
+ * Test helper for building square grids of discrete variables connected by pairwise
+ * table factors with random weights.
+ *
+ * @since 0.05
+ */
+public class DiscreteGrids
+{
+	/**
+	 * Adds an n x n grid of variables with domain {0, ..., domainSize-1} to {@code fg} and returns
+	 * the variables in row major order.
+	 * <p>
+	 * Every variable is given a random input, and every pair of horizontal or vertical neighbors
+	 * is connected by a table factor with random weights in the range [.5, 1.5).
+	 */
+	public static Discrete[] addGrid(FactorGraph fg, int n, int domainSize, Random rand)
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, domainSize - 1);
+		final Discrete[] vars = new Discrete[n * n];
+		for (int i = 0; i < vars.length; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			double[] input = new double[domainSize];
+			for (int j = 0; j < domainSize; ++j)
+				input[j] = rand.nextDouble() + .1;
+			vars[i].setInput(input);
+		}
+
+		final int[][] indices = new int[domainSize * domainSize][];
+		for (int i = 0; i < indices.length; ++i)
+			indices[i] = new int[] { i / domainSize, i % domainSize };
+
+		for (int i = 0; i < n; ++i)
+		{
+			for (int j = 0; j < n; ++j)
+			{
+				if (j + 1 < n)
+					fg.addFactor(indices, randomWeights(indices.length, rand), vars[i*n + j], vars[i*n + j + 1]);
+				if (i + 1 < n)
+					fg.addFactor(indices, randomWeights(indices.length, rand), vars[i*n + j], vars[(i+1)*n + j]);
+			}
+		}
+		return vars;
+	}
+
+	/**
+	 * Returns {@code size} random weights in the range [.5, 1.5).
+	 */
+	public static double[] randomWeights(int size, Random rand)
+	{
+		double[] weights = new double[size];
+		for (int i = 0; i < size; ++i)
+			weights[i] = rand.nextDouble() + .5;
+		return weights;
+	}
+
+	/**
+	 * Returns a copy of the current beliefs of the variables.
+	 */
+	public static double[][] beliefs(Discrete ... vars)
+	{
+		double[][] beliefs = new double[vars.length][];
+		for (int i = 0; i < vars.length; ++i)
+			beliefs[i] = vars[i].getBelief();
+		return beliefs;
+	}
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.model;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.TableFactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+
+public class TestBinarySerialization
+{
+	@Test
+	public void testGraph() throws IOException
+	{
+		final DiscreteDomain abc = DiscreteDomain.create("a", "b", "c");
+		final Discrete boundary = new Discrete(abc);
+		boundary.setName("boundary");
+		final Discrete x = new Discrete(DiscreteDomain.range(1, 4));
+		x.setName("x");
+		x.setInput(.1, .2, .3, .4);
+		final Discrete y = new Discrete(abc);
+		final Discrete z = new Discrete(abc);
+
+		FactorGraph fg = new FactorGraph(new VariableBase[] { boundary }, "graph");
+		IFactorTable shared = FactorTable.create(new int[][] { { 0, 0 }, { 1, 2 }, { 2, 1 } }, new double[] { 1, 2, 3 }, abc, abc);
+		TableFactorFunction function = new TableFactorFunction("shared", shared);
+		Factor f1 = fg.addFactor(function, boundary, y);
+		f1.setName("f1");
+		fg.addFactor(function, y, z);
+		fg.addFactor(new TableFactorFunction("dense",
+			FactorTable.create(new int[][] { { 0, 0 }, { 3, 2 } }, new double[] { .5, .25 }, x.getDomain(), abc)), x, z);
+
+		FactorGraph fg2 = roundTrip(fg);
+
+		assertEquals(fg.getUUID(), fg2.getUUID());
+		assertEquals("graph", fg2.getName());
+		assertEquals(1, fg2.getBoundaryVariables().size());
+		assertEquals(fg.getVariableCount(), fg2.getVariableCount());
+		assertEquals(fg.getFactorCount(), fg2.getFactorCount());
+		assertSame(fg.getSolver().getClass(), fg2.getSolver().getClass());
+
+		Discrete boundary2 = (Discrete)fg2.getBoundaryVariables().getByIndex(0);
+		assertEquals(boundary.getUUID(), boundary2.getUUID());
+		assertEquals("boundary", boundary2.getName());
+		assertEquals(abc, boundary2.getDomain());
+
+		for (VariableBase variable : fg.getVariables())
+		{
+			Discrete variable2 = (Discrete)fg2.getVariableByUUID(variable.getUUID());
+			assertNotNull(variable2);
+			assertEquals(variable.getExplicitName(), variable2.getExplicitName());
+			assertEquals(variable.getDomain(), variable2.getDomain());
+			assertArrayEquals(((Discrete)variable).getInput(), variable2.getInput(), 0.0);
+		}
+
+		for (Factor factor : fg.getNonGraphFactors())
+		{
+			Factor factor2 = fg2.getFactorByUUID(factor.getUUID());
+			assertNotNull(factor2);
+			assertEquals(factor.getExplicitName(), factor2.getExplicitName());
+			assertEquals(factor.getFactorFunction().getName(), factor2.getFactorFunction().getName());
+			for (int i = 0, n = factor.getSiblingCount(); i < n; ++i)
+				assertEquals(factor.getSibling(i).getUUID(), factor2.getSibling(i).getUUID());
+			assertTablesEqual(factor.getFactorTable(), factor2.getFactorTable());
+		}
+
+		// Both factors that shared a table still share one.
+		Factor f1b = fg2.getFactorByUUID(f1.getUUID());
+		Factor f2b = fg2.getFactorByUUID(fg.getNonGraphFactors().getByIndex(1).getUUID());
+		assertSame(f1b.getFactorFunction(), f2b.getFactorFunction());
+		assertSame(f1b.getFactorTable(), f2b.getFactorTable());
+
+		fg.solve();
+		fg2.solve();
+		assertArrayEquals(z.getBelief(), ((Discrete)fg2.getVariableByUUID(z.getUUID())).getBelief(), 1e-12);
+	}
+
+	@Test
+	public void testRandomGraph() throws IOException
+	{
+		FactorGraph fg = new RandomGraphGenerator(new Random(42)).maxBranches(3).buildRandomGraph(20);
+		FactorGraph fg2 = roundTrip(fg);
+
+		assertEquals(fg.getVariableCount(), fg2.getVariableCount());
+		assertEquals(fg.getFactorCount(), fg2.getFactorCount());
+		for (Factor factor : fg.getNonGraphFactors())
+			assertTablesEqual(factor.getFactorTable(), fg2.getFactorByUUID(factor.getUUID()).getFactorTable());
+	}
+
+	@Test
+	public void testTable() throws IOException
+	{
+		final DiscreteDomain bit = DiscreteDomain.bit();
+		final DiscreteDomain range = DiscreteDomain.range(0, 4);
+
+		IFactorTable dense = FactorTable.create(bit, range);
+		dense.setEnergiesDense(new double[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, Double.POSITIVE_INFINITY });
+		assertTablesEqual(dense, roundTrip(dense));
+
+		IFactorTable sparse = FactorTable.create(new int[][] { { 1, 0 }, { 0, 4 } }, new double[] { 2, 3 }, bit, range);
+		BitSet outputs = new BitSet();
+		outputs.set(1);
+		sparse.setDirected(outputs);
+		IFactorTable sparse2 = roundTrip(sparse);
+		assertTablesEqual(sparse, sparse2);
+		assertTrue(sparse2.isDirected());
+		assertArrayEquals(new int[] { 1 }, sparse2.getDomainIndexer().getOutputDomainIndices());
+
+		// A graph cannot be read as a table.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new FactorGraph().serializeToBinary(Channels.newChannel(bytes));
+		try
+		{
+			FactorTable.deserializeFromBinary(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+
+		// Nor can random bytes.
+		try
+		{
+			FactorGraph.deserializeFromBinary(Channels.newChannel(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 })));
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	private static FactorGraph roundTrip(FactorGraph fg) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		WritableByteChannel out = Channels.newChannel(bytes);
+		fg.serializeToBinary(out);
+		return FactorGraph.deserializeFromBinary(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	private static IFactorTable roundTrip(IFactorTable table) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		table.serializeToBinary(Channels.newChannel(bytes));
+		return FactorTable.deserializeFromBinary(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	private static void assertTablesEqual(IFactorTable expected, IFactorTable actual)
+	{
+		assertEquals(expected.getDomainIndexer(), actual.getDomainIndexer());
+		assertEquals(expected.isDirected(), actual.isDirected());
+		for (int ji = 0, n = expected.jointSize(); ji < n; ++ji)
+			assertEquals(expected.getEnergyForJointIndex(ji), actual.getEnergyForJointIndex(ji), 1e-12);
+	}
+}
@@ -132,7 +132,9 @@ public class TestJointDomainIndexer
 		assertFalse(dl2x32.supportsJointIndexing());
 		assertTrue(dl2x32.supportsOutputIndexing());
 		assertFalse(dl2x32.hasCanonicalDomainOrder());
-		testInvariants(dl2x31);
+		assertTrue(dl2x32.supportsLongJointIndexing());
+		assertEquals(1L << 32, dl2x32.getLongCardinality());
+		testInvariants(dl2x32);
 
 		DiscreteDomain d46340 = DiscreteDomain.range(1,46340);
 		DiscreteDomain[] d46340x2 = new DiscreteDomain[] { d46340, d46340 };
@@ -141,6 +143,15 @@ public class TestJointDomainIndexer
 		assertTrue(dl46340x2.supportsOutputIndexing());
 		testInvariants(dl46340x2);
 		
+		assertTrue(dlshort2.supportsLongJointIndexing());
+		assertEquals(1L << 32, dlshort2.getLongCardinality());
+		
+		DiscreteDomain[] d2x64 = new DiscreteDomain[64];
+		Arrays.fill(d2x64, d2);
+		JointDomainIndexer dl2x64 = JointDomainIndexer.create(d2x64);
+		assertFalse(dl2x64.supportsLongJointIndexing());
+		testInvariants(dl2x64);
+		
 		//
 		// Test DomainList
 		//
@@ -471,6 +482,52 @@ public class TestJointDomainIndexer
 		indices[0] = indexer.getDomainSize(0);
 		expectThrow(IndexOutOfBoundsException.class, indexer, "validateIndices", indices);
 		
+		if (indexer.supportsLongJointIndexing())
+		{
+			final long longCardinality = indexer.getLongCardinality();
+			assertTrue(longCardinality > 1);
+			if (supportsJoint)
+			{
+				assertEquals(cardinality, longCardinality);
+			}
+			
+			int[] prevIndices = null;
+			long prevJoint = -1;
+			for (int n = 0; n < 20; ++n)
+			{
+				final int[] randomIndices = indexer.randomIndices(rand, null);
+				final long joint = indexer.longJointIndexFromIndices(randomIndices);
+				assertTrue(joint >= 0 && joint < longCardinality);
+				assertArrayEquals(randomIndices, indexer.longJointIndexToIndices(joint, null));
+				assertArrayEquals(indexer.elementsFromIndices(randomIndices), indexer.longJointIndexToElements(joint, null));
+				assertEquals(joint, indexer.longJointIndexFromElements(indexer.elementsFromIndices(randomIndices)));
+				if (supportsJoint)
+				{
+					assertEquals(indexer.jointIndexFromIndices(randomIndices), joint);
+				}
+				long expectedJoint = 0;
+				for (int j = 0; j < size; ++j)
+				{
+					expectedJoint += indexer.getLongStride(j) * randomIndices[j];
+				}
+				assertEquals(expectedJoint, joint);
+				
+				// Long joint index order must agree with indices comparator
+				if (prevIndices != null)
+				{
+					assertEquals(Integer.signum(indexer.getIndicesComparator().compare(prevIndices, randomIndices)),
+						Long.signum(prevJoint - joint));
+				}
+				prevIndices = randomIndices;
+				prevJoint = joint;
+			}
+		}
+		else
+		{
+			expectThrow(DimpleException.class, indexer, "getLongCardinality");
+			expectThrow(DimpleException.class, indexer, "longJointIndexFromIndices", indexer.randomIndices(rand, null));
+		}
+		
 		JointDomainIndexer domainList2 = SerializationTester.clone(indexer);
 		assertEquals(indexer, domainList2);
 		assertEquals(indexer.hashCode(), domainList2.hashCode());
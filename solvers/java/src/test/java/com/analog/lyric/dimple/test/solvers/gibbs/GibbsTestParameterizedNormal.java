@@ -96,8 +96,8 @@ public class GibbsTestParameterizedNormal
 		if (debugPrint) System.out.println("vModelMeanBest: " + (Double)svModelMean.getBestSample());
 		if (debugPrint) System.out.println("vModelInverseVarianceBest: " + (Double)svModelInverseVariance.getBestSample());
 
-		assertTrue(nearlyEquals(svModelMean.getBestSample(),27.029282787511672));
-		assertTrue(nearlyEquals(svModelInverseVariance.getBestSample(),0.005320791975254845));
+		assertTrue(nearlyEquals(svModelMean.getBestSample(),27.02004039806752));
+		assertTrue(nearlyEquals(svModelInverseVariance.getBestSample(),0.00533521133331784));
 	}
 	
 	
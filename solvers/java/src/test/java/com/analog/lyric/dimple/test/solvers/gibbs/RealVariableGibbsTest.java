@@ -102,10 +102,10 @@ public class RealVariableGibbsTest
 		if (debugPrint) System.out.println("aBest: " + (Double)sa.getBestSample());
 		if (debugPrint) System.out.println("bBest: " + (Double)sb.getBestSample());
 		
-		assertTrue(nearlyEquals(aMean,0.8050875226168582));
-		assertTrue(nearlyEquals(bMean,-0.1921312702232493));
-		assertTrue(nearlyEquals((Double)sa.getBestSample(),0.8043550661413381));
-		assertTrue(nearlyEquals((Double)sb.getBestSample(),-0.20700427734616236));
+		assertTrue(nearlyEquals(aMean,0.795354434877079));
+		assertTrue(nearlyEquals(bMean,-0.19639195978593624));
+		assertTrue(nearlyEquals((Double)sa.getBestSample(),0.8012929344919334));
+		assertTrue(nearlyEquals((Double)sb.getBestSample(),-0.1994306869337621));
 	}
 	
 	
@@ -183,9 +183,9 @@ public class RealVariableGibbsTest
 		if (debugPrint) System.out.println("aBest: " + (Double)sa.getBestSample());
 		if (debugPrint) System.out.println("bBest: " + (Integer)sb.getBestSample());
 		
-		assertTrue(nearlyEquals(aMean,0.20867216566185906));
-		assertTrue(nearlyEquals(bMean,0.6055));
-		assertTrue(nearlyEquals((Double)sa.getBestSample(),0.977986266650138));
+		assertTrue(nearlyEquals(aMean,0.19265279067169747));
+		assertTrue(nearlyEquals(bMean,0.6041));
+		assertTrue(nearlyEquals((Double)sa.getBestSample(),0.9778624419063482));
 		assertTrue((Integer)sb.getBestSample() == 1);
 	}	
 	
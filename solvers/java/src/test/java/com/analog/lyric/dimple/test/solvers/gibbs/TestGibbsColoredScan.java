@@ -0,0 +1,194 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static com.analog.lyric.dimple.test.model.DiscreteGrids.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.model.variables.VariableBase;
+import com.analog.lyric.dimple.schedulers.GibbsColoredScanScheduler;
+import com.analog.lyric.dimple.schedulers.GibbsSequentialScanScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsColoredScanSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ParallelNodesScheduleEntry;
+import com.analog.lyric.dimple.solvers.gibbs.SFactorGraph;
+
+/**
+ * Tests for {@link GibbsColoredScanSchedule}.
+ */
+public class TestGibbsColoredScan
+{
+	private static final int N = 16;
+	private static final int[][] INDICES = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+
+	@Test
+	public void test()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		Discrete[] vars = addGrid(fg, N, 2, new Random(7));
+
+		GibbsColoredScanScheduler scheduler = new GibbsColoredScanScheduler();
+		scheduler.setNumWorkers(4);
+		fg.setScheduler(scheduler);
+		GibbsColoredScanSchedule schedule = (GibbsColoredScanSchedule)fg.getSchedule();
+
+		// A grid needs two colors, and no two variables of the same color share a factor.
+		List<VariableBase[]> colors = schedule.getColorClasses();
+		assertEquals(2, colors.size());
+		int nColored = 0;
+		for (VariableBase[] color : colors)
+		{
+			Set<Factor> factors = new HashSet<Factor>();
+			for (VariableBase var : color)
+				for (int i = 0; i < var.getSiblingCount(); ++i)
+					assertTrue(factors.add(var.getSibling(i)));
+			nColored += color.length;
+		}
+		assertEquals(N * N, nColored);
+		for (IScheduleEntry entry : schedule)
+			assertEquals(4, ((ParallelNodesScheduleEntry)entry).getNumSlices());
+
+		sfg.setNumSamples(2000);
+		sfg.setBurnInScans(10);
+		sfg.setSeed(1);
+		fg.solve();
+		double[][] colored = beliefs(vars);
+
+		// Same seed gives the same result.
+		sfg.setSeed(1);
+		fg.solve();
+		assertArrayEquals(colored, beliefs(vars));
+
+		// Compare to a sequential scan.
+		fg.setScheduler(new GibbsSequentialScanScheduler());
+		fg.solve();
+		double[][] sequential = beliefs(vars);
+		double totalDifference = 0;
+		for (int i = 0; i < vars.length; ++i)
+		{
+			double difference = Math.abs(colored[i][1] - sequential[i][1]);
+			assertTrue(difference < .1);
+			totalDifference += difference;
+		}
+		assertTrue(totalDifference / vars.length < .02);
+
+		// Chains already running on their own threads update the slices in turn.
+		fg.setScheduler(scheduler);
+		sfg.setNumChains(2);
+		sfg.setNumSamples(100);
+		fg.solve();
+		assertEquals(2, sfg.getChainSampleIndices(vars[0]).length);
+	}
+
+	@Test
+	public void testDeterministic()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+
+		Bit a = new Bit(), b = new Bit(), c = new Bit(), out = new Bit();
+		a.setInput(.8);
+		b.setInput(.3);
+		c.setInput(.6);
+		fg.addFactor(new Xor(), out, a, b);
+		fg.addFactor(INDICES, new double[] { 2, 1, 1, 2 }, b, c);
+
+		fg.setScheduler(new GibbsColoredScanScheduler());
+		GibbsColoredScanSchedule schedule = (GibbsColoredScanSchedule)fg.getSchedule();
+
+		// Only c is colored; the inputs a and b are updated afterward, and the output is never updated directly.
+		List<VariableBase[]> colors = schedule.getColorClasses();
+		assertEquals(1, colors.size());
+		assertArrayEquals(new VariableBase[] { c }, colors.get(0));
+		Set<VariableBase> sequential = new HashSet<VariableBase>();
+		for (IScheduleEntry entry : schedule)
+			if (entry instanceof NodeScheduleEntry)
+				sequential.add((VariableBase)((NodeScheduleEntry)entry).getNode());
+		assertEquals(2, sequential.size());
+		assertTrue(sequential.contains(a) && sequential.contains(b));
+
+		sfg.setNumSamples(200);
+		sfg.saveAllSamples();
+		fg.solve();
+		int[] aSamples = ((com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable)a.getSolver()).getAllSampleIndices();
+		int[] bSamples = ((com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable)b.getSolver()).getAllSampleIndices();
+		int[] outSamples = ((com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable)out.getSolver()).getAllSampleIndices();
+		for (int i = 0; i < outSamples.length; ++i)
+			assertEquals(aSamples[i] ^ bSamples[i], outSamples[i]);
+	}
+
+	@Test
+	public void testNotThreadSafe()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+
+		// One function instance, which is not thread safe, is shared by the factors of variables that
+		// would otherwise be in the same color class.
+		Normal normal = new Normal(0, 1) {
+			@Override
+			public boolean isEvaluationThreadSafe()
+			{
+				return false;
+			}
+		};
+		Real[] reals = new Real[4];
+		for (int i = 0; i < reals.length; ++i)
+		{
+			reals[i] = new Real();
+			fg.addFactor(normal, reals[i]);
+		}
+		assertFalse(normal.isEvaluationThreadSafe());
+
+		Bit a = new Bit(), b = new Bit();
+		fg.addFactor(INDICES, new double[] { 2, 1, 1, 2 }, a, b);
+
+		fg.setScheduler(new GibbsColoredScanScheduler());
+		GibbsColoredScanSchedule schedule = (GibbsColoredScanSchedule)fg.getSchedule();
+
+		// Only the variables of the table factor are colored, and the others are updated one at a time.
+		Set<VariableBase> colored = new HashSet<VariableBase>();
+		for (VariableBase[] color : schedule.getColorClasses())
+			colored.addAll(Arrays.asList(color));
+		assertEquals(new HashSet<VariableBase>(Arrays.asList(a, b)), colored);
+
+		Set<VariableBase> sequential = new HashSet<VariableBase>();
+		for (IScheduleEntry entry : schedule)
+			if (entry instanceof NodeScheduleEntry)
+				sequential.add((VariableBase)((NodeScheduleEntry)entry).getNode());
+		assertEquals(new HashSet<VariableBase>(Arrays.asList(reals)), sequential);
+	}
+}
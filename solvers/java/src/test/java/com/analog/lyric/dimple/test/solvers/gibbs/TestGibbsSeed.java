@@ -0,0 +1,104 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static com.analog.lyric.dimple.test.model.DiscreteGrids.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.dimple.solvers.gibbs.SFactorGraph;
+
+/**
+ * Tests that the random numbers used to solve a graph depend only on that graph's seed.
+ */
+public class TestGibbsSeed
+{
+	@Test
+	public void test() throws InterruptedException
+	{
+		FactorGraph fg1 = new FactorGraph();
+		Discrete[] vars1 = addGrid(fg1, 4, 3, new Random(7));
+		SFactorGraph sfg1 = createSolver(fg1);
+
+		FactorGraph fg2 = new FactorGraph();
+		Discrete[] vars2 = addGrid(fg2, 4, 3, new Random(7));
+		SFactorGraph sfg2 = createSolver(fg2);
+
+		sfg1.setSeed(3);
+		fg1.solve();
+		double[][] expected = beliefs(vars1);
+
+		// Solving another graph on the same thread in between does not change the result.
+		sfg1.setSeed(3);
+		fg2.solve();
+		assertFalse(Arrays.deepEquals(expected, beliefs(vars2)));
+		fg1.solve();
+		assertArrayEquals(expected, beliefs(vars1));
+
+		// An identical graph with the same seed gets the same result.
+		sfg2.setSeed(3);
+		fg2.solve();
+		assertArrayEquals(expected, beliefs(vars2));
+
+		// Graphs without their own seed are repeatable after setting the root seed.
+		FactorGraph fg3 = new FactorGraph();
+		Discrete[] vars3 = addGrid(fg3, 4, 3, new Random(7));
+		createSolver(fg3);
+		SolverRandomGenerator.setSeed(5);
+		fg3.solve();
+		double[][] unseeded = beliefs(vars3);
+		SolverRandomGenerator.setSeed(5);
+		fg3.solve();
+		assertArrayEquals(unseeded, beliefs(vars3));
+
+		// ... whichever thread solves them.
+		SolverRandomGenerator.setSeed(5);
+		solveOnNewThread(fg3);
+		assertArrayEquals(unseeded, beliefs(vars3));
+		SolverRandomGenerator.setSeed(5);
+		solveOnNewThread(fg3);
+		assertArrayEquals(unseeded, beliefs(vars3));
+	}
+
+	private void solveOnNewThread(final FactorGraph fg) throws InterruptedException
+	{
+		Thread thread = new Thread() {
+			@Override
+			public void run()
+			{
+				fg.solve();
+			}
+		};
+		thread.start();
+		thread.join();
+	}
+
+	private SFactorGraph createSolver(FactorGraph fg)
+	{
+		SFactorGraph sfg = fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		sfg.setNumSamples(200);
+		sfg.setBurnInScans(5);
+		return sfg;
+	}
+}
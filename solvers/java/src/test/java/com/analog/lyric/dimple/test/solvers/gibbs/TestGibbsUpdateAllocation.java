@@ -0,0 +1,114 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+import static com.analog.lyric.dimple.test.model.DiscreteGrids.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.VariableList;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+
+/**
+ * Checks that Gibbs updates of discrete variables do not allocate once they are warmed up, both
+ * for table factors and for variables with a deterministic dependent, by checking that the memory
+ * allocated does not grow with the number of sweeps.
+ */
+public class TestGibbsUpdateAllocation
+{
+	private static final long ALLOCATION_SLACK = 64 * 1024;
+
+	private final Random _rand = new Random(25);
+
+	@Test
+	public void test()
+	{
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		for (FactorGraph fg : new FactorGraph[] { createGrid(), createSum() })
+		{
+			fg.initialize();
+			VariableList vars = fg.getVariablesFlat();
+			ISolverVariable[] svars = new ISolverVariable[vars.size()];
+			for (int i = 0; i < svars.length; ++i)
+				svars[i] = vars.getByIndex(i).getSolver();
+
+			// Enough sweeps for at least 100,000 updates
+			final int sweeps = Math.max(1000, 100000 / svars.length);
+			sweep(svars, 2 * sweeps);
+			final long allocatedOnce = allocatedBytes(threadBean, svars, sweeps);
+			final long allocatedTwice = allocatedBytes(threadBean, svars, 2 * sweeps);
+
+			// The JVM may allocate a little on its own while measuring, but that does not depend on the number
+			// of sweeps, whereas even one small object per update would add over a megabyte.
+			assertTrue(allocatedTwice - allocatedOnce < ALLOCATION_SLACK);
+		}
+	}
+
+	/*
+	 * The number of bytes allocated by this thread while sweeping {@code count} times.
+	 */
+	private long allocatedBytes(com.sun.management.ThreadMXBean threadBean, ISolverVariable[] svars, int count)
+	{
+		final long threadId = Thread.currentThread().getId();
+		final long before = threadBean.getThreadAllocatedBytes(threadId);
+		sweep(svars, count);
+		return threadBean.getThreadAllocatedBytes(threadId) - before;
+	}
+
+	private void sweep(ISolverVariable[] svars, int count)
+	{
+		for (int i = 0; i < count; ++i)
+			for (ISolverVariable svar : svars)
+				svar.update();
+	}
+
+	private FactorGraph createGrid()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		addGrid(fg, 8, 5, _rand);
+		return fg;
+	}
+
+	private FactorGraph createSum()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		DiscreteDomain domain = DiscreteDomain.range(0, 3);
+		Discrete a = new Discrete(domain), b = new Discrete(domain);
+		Discrete ab = new Discrete(DiscreteDomain.range(0, 6));
+		a.setInput(.1, .2, .3, .4);
+		b.setInput(.4, .3, .2, .1);
+		ab.setInput(1, 2, 3, 4, 3, 2, 1);
+		fg.addFactor(new Sum(), ab, a, b);
+		return fg;
+	}
+}
@@ -0,0 +1,377 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.RealDomain;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.schedulers.GibbsSequentialScanScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable;
+import com.analog.lyric.dimple.solvers.gibbs.SFactorGraph;
+
+/**
+ * Tests for {@link SFactorGraph#setNumChains(int)}.
+ */
+public class TestMultipleChains
+{
+	@Test
+	public void test()
+	{
+		final int numChains = 4;
+		final int numSamples = 500;
+
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+
+		Discrete a = new Discrete(0, 1, 2);
+		Discrete b = new Discrete(0, 1, 2);
+		a.setInput(.2, .3, .5);
+		fg.addFactor(new int[][] { {0,0}, {0,1}, {1,1}, {1,2}, {2,2} }, new double[] { 3, 1, 2, 1, 1 }, a, b);
+		Real r = new Real();
+		fg.addFactor(new Normal(), 1.0, 2.0, r);
+
+		assertEquals(1, sfg.getNumChains());
+		try
+		{
+			sfg.setNumChains(0);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+
+		sfg.setNumChains(numChains);
+		sfg.setNumSamples(numSamples);
+		sfg.setBurnInScans(5);
+		sfg.setSeed(42);
+		fg.solve();
+
+		int[][] aSamples = sfg.getChainSampleIndices(a);
+		assertEquals(numChains, aSamples.length);
+		for (int[] chain : aSamples)
+			assertEquals(numSamples, chain.length);
+
+		// The graph's own variables were not set to save all samples.
+		try
+		{
+			((SDiscreteVariable)a.getSolver()).getAllSampleIndices();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+
+		// Beliefs are pooled over all of the chains.
+		double[] counts = new double[3];
+		for (int[] chain : aSamples)
+			for (int index : chain)
+				counts[index] += 1.0 / (numChains * numSamples);
+		assertArrayEquals(counts, a.getBelief(), 1e-12);
+
+		double[][] rSamples = sfg.getChainSampleValues(r);
+		assertEquals(numChains, rSamples.length);
+		assertEquals(numSamples, rSamples[3].length);
+
+		// Chains are independent
+		assertFalse(java.util.Arrays.equals(aSamples[0], aSamples[1]));
+
+		// Simple model should mix well
+		assertEquals(1.0, sfg.getGelmanRubinStatistic(a), .1);
+		assertEquals(1.0, sfg.getGelmanRubinStatistic(r), .1);
+		assertTrue(sfg.getMaxGelmanRubinStatistic() >= sfg.getGelmanRubinStatistic(b));
+
+		// Results are reproducible from the seed, and the first chain's samples are those of the graph.
+		sfg.saveAllSamples();
+		sfg.setSeed(42);
+		fg.solve();
+		int[][] aSamples2 = sfg.getChainSampleIndices(a);
+		for (int chain = 0; chain < numChains; ++chain)
+			assertArrayEquals(aSamples[chain], aSamples2[chain]);
+		assertArrayEquals(aSamples[0], ((SDiscreteVariable)a.getSolver()).getAllSampleIndices());
+
+		// Inputs set between solves are used by every chain.
+		b.setFixedValue(2);
+		fg.solve();
+		for (int[] chain : sfg.getChainSampleIndices(b))
+			for (int index : chain)
+				assertEquals(2, index);
+
+		// R-hat is not supported for a domain without an order.
+		Discrete c = new Discrete("x", "y");
+		fg.addFactor(new int[][] { {0,0}, {1,1} }, new double[] { 1, 2 }, a, c);
+		fg.solve();
+		assertEquals(numChains, sfg.getChainSampleIndices(c).length);
+		try
+		{
+			sfg.getGelmanRubinStatistic(c);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+		assertTrue(sfg.getMaxGelmanRubinStatistic() >= sfg.getGelmanRubinStatistic(a));
+
+		// Back to one chain
+		sfg.setNumChains(1);
+		fg.solve();
+		assertEquals(1, sfg.getChainSampleIndices(a).length);
+		try
+		{
+			sfg.getGelmanRubinStatistic(a);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+	}
+
+	/*
+	 * Normal that records whether it was ever evaluated by more than one thread at once, and the
+	 * threads that evaluated it. Normal itself is thread safe, but this may claim not to be.
+	 */
+	static class RaceDetectingNormal extends Normal
+	{
+		private final boolean _threadSafe;
+		private final AtomicInteger _active = new AtomicInteger();
+		volatile boolean _overlapped = false;
+		final Set<Thread> _threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+		RaceDetectingNormal(boolean threadSafe)
+		{
+			_threadSafe = threadSafe;
+		}
+
+		@Override
+		public double evalEnergy(Object... arguments)
+		{
+			enter();
+			try
+			{
+				return super.evalEnergy(arguments);
+			}
+			finally
+			{
+				_active.decrementAndGet();
+			}
+		}
+
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			enter();
+			try
+			{
+				return super.evalEnergy(values);
+			}
+			finally
+			{
+				_active.decrementAndGet();
+			}
+		}
+
+		@Override
+		public boolean isEvaluationThreadSafe()
+		{
+			return _threadSafe;
+		}
+
+		private void enter()
+		{
+			_threads.add(Thread.currentThread());
+			if (_active.incrementAndGet() > 1)
+				_overlapped = true;
+		}
+	}
+
+	@Test
+	public void testVariableParameters()
+	{
+		final int numChains = 4;
+		final int numSamples = 200;
+
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+
+		// The chains share the function, which is not thread safe, so they must not run concurrently.
+		RaceDetectingNormal normal = new RaceDetectingNormal(false);
+		double dataMean = addNormalModel(fg, normal);
+		Real mean = (Real)fg.getVariables().getByIndex(0);
+		solveChains(sfg, numChains, numSamples);
+		assertFalse(normal._overlapped);
+		assertEquals(Collections.singleton(Thread.currentThread()), normal._threads);
+
+		double[][] meanSamples = sfg.getChainSampleValues(mean);
+		double total = 0;
+		for (double[] chain : meanSamples)
+			for (double sample : chain)
+				total += sample;
+		assertEquals(dataMean, total / (numChains * numSamples), .5);
+
+		// Each chain has its own random stream, so running them in turn is still reproducible.
+		sfg.setSeed(5);
+		fg.solve();
+		double[][] meanSamples2 = sfg.getChainSampleValues(mean);
+		for (int chain = 0; chain < numChains; ++chain)
+			assertArrayEquals(meanSamples[chain], meanSamples2[chain], 0.0);
+	}
+
+	@Test
+	public void testConcurrentChains()
+	{
+		final int numChains = 4;
+		final int numSamples = 200;
+
+		// Normal with variable parameters is thread safe, so the chains run concurrently, each
+		// on its own thread of the newly created pool.
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		RaceDetectingNormal normal = new RaceDetectingNormal(true);
+		assertTrue(new Normal().isEvaluationThreadSafe());
+		double dataMean = addNormalModel(fg, normal);
+		Real mean = (Real)fg.getVariables().getByIndex(0);
+		solveChains(sfg, numChains, numSamples);
+		assertEquals(numChains, normal._threads.size());
+		assertFalse(normal._threads.contains(Thread.currentThread()));
+
+		double[][] meanSamples = sfg.getChainSampleValues(mean);
+		double total = 0;
+		for (double[] chain : meanSamples)
+			for (double sample : chain)
+				total += sample;
+		assertEquals(dataMean, total / (numChains * numSamples), .5);
+
+		// The results are the same as when the chains are run in turn.
+		FactorGraph fg2 = new FactorGraph();
+		fg2.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph sfg2 = (SFactorGraph)fg2.getSolver();
+		addNormalModel(fg2, new RaceDetectingNormal(false));
+		solveChains(sfg2, numChains, numSamples);
+		double[][] meanSamples2 = sfg2.getChainSampleValues((Real)fg2.getVariables().getByIndex(0));
+		for (int chain = 0; chain < numChains; ++chain)
+			assertArrayEquals(meanSamples[chain], meanSamples2[chain], 0.0);
+	}
+
+	/*
+	 * Adds a Normal factor with variable mean and precision and twenty fixed data values to fg, and
+	 * returns the mean of the data. The mean is the first variable of fg.
+	 */
+	private double addNormalModel(FactorGraph fg, Normal normal)
+	{
+		// Bounded domains, so that the parameters are not sampled by conjugate samplers, which do not evaluate the function.
+		Real mean = new Real(RealDomain.create(-100, 100));
+		Real precision = new Real(RealDomain.create(0, 100));
+		Random rand = new Random(3);
+		Object[] arguments = new Object[22];
+		arguments[0] = mean;
+		arguments[1] = precision;
+		double dataMean = 0;
+		for (int i = 2; i < arguments.length; ++i)
+		{
+			Real x = new Real();
+			double value = 3 + rand.nextGaussian();
+			x.setFixedValue(value);
+			dataMean += value / (arguments.length - 2);
+			arguments[i] = x;
+		}
+		fg.addFactor(normal, arguments);
+		return dataMean;
+	}
+
+	private void solveChains(SFactorGraph sfg, int numChains, int numSamples)
+	{
+		sfg.setNumChains(numChains);
+		sfg.setNumSamples(numSamples);
+		sfg.setBurnInScans(200);
+		sfg.setSeed(5);
+
+		// Make sure there are enough threads for the chains to overlap if they were run concurrently.
+		ThreadPool.getThreadPool();
+		final int numThreads = ThreadPool.getNumThreads();
+		ThreadPool.setNumThreads(numChains);
+		try
+		{
+			sfg.getModel().solve();
+		}
+		finally
+		{
+			ThreadPool.setNumThreads(numThreads);
+		}
+	}
+
+	/*
+	 * Sequential scan scheduler that records the graphs it creates schedules for.
+	 */
+	static class RecordingScheduler extends GibbsSequentialScanScheduler
+	{
+		final Set<FactorGraph> _graphs = Collections.newSetFromMap(new IdentityHashMap<FactorGraph, Boolean>());
+
+		@Override
+		public ISchedule createSchedule(FactorGraph g)
+		{
+			synchronized (_graphs)
+			{
+				_graphs.add(g);
+			}
+			return super.createSchedule(g);
+		}
+	}
+
+	@Test
+	public void testScheduler()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		Discrete a = new Discrete(0, 1);
+		Discrete b = new Discrete(0, 1);
+		fg.addFactor(new int[][] { {0,0}, {1,1} }, new double[] { 1, 2 }, a, b);
+		sfg.setNumChains(3);
+		sfg.setNumSamples(10);
+
+		// Every chain uses the model's scheduler, including one set after the chains were created.
+		RecordingScheduler first = new RecordingScheduler();
+		fg.setScheduler(first);
+		fg.solve();
+		assertEquals(3, first._graphs.size());
+
+		RecordingScheduler second = new RecordingScheduler();
+		fg.setScheduler(second);
+		fg.solve();
+		assertEquals(3, second._graphs.size());
+		assertTrue(second._graphs.contains(fg));
+	}
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable;
+import com.analog.lyric.dimple.solvers.gibbs.SFactorGraph;
+import com.analog.lyric.dimple.solvers.gibbs.SRealVariable;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.ISampleAccumulator;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.SampleHistogram;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.SampleMoments;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.SampleQuantiles;
+import com.analog.lyric.dimple.solvers.gibbs.statistics.SampleReservoir;
+
+/**
+ * Tests for {@link ISampleAccumulator} implementations.
+ */
+public class TestSampleAccumulators
+{
+	@Test
+	public void testAccumulators()
+	{
+		final Random rand = new Random(42);
+		final int n = 20000;
+		final double[] samples = new double[n];
+		for (int i = 0; i < n; ++i)
+			samples[i] = rand.nextGaussian() * 2 + 1;
+
+		SampleMoments moments = new SampleMoments();
+		assertTrue(Double.isNaN(moments.getMean()));
+		SampleHistogram histogram = new SampleHistogram(-1, 3, 4);
+		SampleQuantiles quantiles = new SampleQuantiles(0, .1, .5, .9, 1);
+		SampleReservoir reservoir = new SampleReservoir(100, 3);
+
+		for (double sample : samples)
+		{
+			moments.add(sample);
+			histogram.add(sample);
+			quantiles.add(sample);
+			reservoir.add(sample);
+		}
+
+		double mean = 0, variance = 0;
+		for (double sample : samples)
+			mean += sample / n;
+		for (double sample : samples)
+			variance += (sample - mean) * (sample - mean) / (n - 1);
+		assertEquals(n, moments.getCount());
+		assertEquals(mean, moments.getMean(), 1e-10);
+		assertEquals(variance, moments.getVariance(), 1e-8);
+
+		long[] counts = new long[4];
+		long under = 0, over = 0;
+		for (double sample : samples)
+		{
+			if (sample < -1)
+				++under;
+			else if (sample >= 3)
+				++over;
+			else
+				++counts[(int)Math.floor(sample + 1)];
+		}
+		assertArrayEquals(counts, histogram.getCounts());
+		assertEquals(under, histogram.getUnderflowCount());
+		assertEquals(over, histogram.getOverflowCount());
+		assertEquals(0.0, histogram.getBinLowerBound(1), 0.0);
+
+		double[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		assertEquals(sorted[0], quantiles.getQuantile(0), 0.0);
+		assertEquals(sorted[n - 1], quantiles.getQuantile(4), 0.0);
+		assertEquals(sorted[n / 10], quantiles.getQuantile(1), .05);
+		assertEquals(sorted[n / 2], quantiles.getQuantile(2), .05);
+		assertEquals(sorted[9 * n / 10], quantiles.getQuantile(3), .05);
+
+		assertEquals(n, reservoir.getCount());
+		assertEquals(100, reservoir.size());
+		for (double sample : reservoir.getSamples())
+			assertTrue(Arrays.binarySearch(sorted, sample) >= 0);
+
+		// Exact for small numbers of samples
+		quantiles.reset();
+		quantiles.add(3);
+		quantiles.add(1);
+		quantiles.add(2);
+		assertEquals(3, quantiles.getCount());
+		assertArrayEquals(new double[] { 1, 1, 2, 3, 3 }, quantiles.getQuantiles(), 0.0);
+
+		reservoir.reset();
+		for (int i = 0; i < 10; ++i)
+			reservoir.add(i);
+		assertArrayEquals(new double[] { 0, 3, 6, 9 }, reservoir.getSamples(), 0.0);
+	}
+
+	@Test
+	public void testGibbs()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+
+		Discrete a = new Discrete(0, 1, 2);
+		Discrete b = new Discrete(0, 1, 2);
+		a.setInput(.2, .3, .5);
+		fg.addFactor(new int[][] { {0,0}, {0,1}, {1,1}, {1,2}, {2,2} }, new double[] { 3, 1, 2, 1, 1 }, a, b);
+		Real r = new Real();
+		fg.addFactor(new Normal(), 1.0, 2.0, r);
+
+		SDiscreteVariable sa = (SDiscreteVariable)a.getSolver();
+		SRealVariable sr = (SRealVariable)r.getSolver();
+
+		SampleHistogram histogram = new SampleHistogram(a.getDiscreteDomain());
+		SampleMoments aMoments = new SampleMoments();
+		SampleMoments rMoments = new SampleMoments();
+		SampleReservoir reservoir = new SampleReservoir(1000);
+		sa.addSampleAccumulator(histogram);
+		sa.addSampleAccumulator(histogram);
+		sa.addSampleAccumulator(aMoments);
+		sr.addSampleAccumulator(rMoments);
+		sr.addSampleAccumulator(reservoir);
+		assertEquals(2, sa.getSampleAccumulators().length);
+
+		sfg.saveAllSamples();
+		sfg.setNumSamples(500);
+		sfg.setSeed(42);
+		fg.solve();
+
+		int[] aSamples = sa.getAllSampleIndices();
+		long[] counts = new long[3];
+		double aMean = 0;
+		for (int index : aSamples)
+		{
+			++counts[index];
+			aMean += (double)index / aSamples.length;
+		}
+		assertArrayEquals(counts, histogram.getCounts());
+		assertEquals(aMean, aMoments.getMean(), 1e-12);
+
+		double[] rSamples = sr.getAllSamples();
+		double rMean = 0;
+		for (double sample : rSamples)
+			rMean += sample / rSamples.length;
+		assertEquals(rMean, rMoments.getMean(), 1e-12);
+		assertArrayEquals(rSamples, reservoir.getSamples(), 0.0);
+
+		// Accumulators are reset by initialization
+		assertTrue(sa.removeSampleAccumulator(aMoments));
+		assertFalse(sa.removeSampleAccumulator(aMoments));
+		fg.solve();
+		assertEquals(500, histogram.getCount());
+		assertEquals(500, aMoments.getCount());
+	}
+}
@@ -44,7 +44,7 @@ public class TrivialNonuniformBlockProposer implements IBlockProposalKernel
 	{
 		_domainSizes = domainSizes;
 		_weights = weights;
-		_random = new Random(SolverRandomGenerator.rand.nextLong());
+		_random = new Random(SolverRandomGenerator.getRand().nextLong());
 		_numDomains = _domainSizes.length;
 		
 		_domainProducts = new int[_numDomains];
@@ -130,7 +130,7 @@ public class TrivialNonuniformBlockProposer implements IBlockProposalKernel
 		int product = 2 * 5 * 3 * 6 * 4;
 		double[] weights = new double[product];
 		for (int i = 0; i < product; i++)
-			weights[i] = SolverRandomGenerator.rand.nextDouble();
+			weights[i] = SolverRandomGenerator.getRand().nextDouble();
 		TrivialNonuniformBlockProposer t = new TrivialNonuniformBlockProposer(weights, domainSizes);
 		for (int i = 0; i < product; i++)
 		{
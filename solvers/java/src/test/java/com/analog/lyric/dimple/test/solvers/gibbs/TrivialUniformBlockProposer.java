@@ -44,7 +44,7 @@ public class TrivialUniformBlockProposer implements IBlockProposalKernel
 				DiscreteDomain discreteDomain = domain.asDiscrete();
 				int domainSize = discreteDomain.size();
 				Value v = Value.create(discreteDomain);
-				v.setIndex(SolverRandomGenerator.rand.nextInt(domainSize));
+				v.setIndex(SolverRandomGenerator.getRand().nextInt(domainSize));
 				newValue[i] = v;
 			}
 			else
@@ -0,0 +1,252 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.sumproduct.CompiledSFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.CompiledSumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+
+/**
+ * Compares {@link CompiledSFactorGraph} against the standard sum-product solver.
+ */
+public class TestCompiledSFactorGraph
+{
+	@Test
+	public void test()
+	{
+		for (int seed = 1; seed <= 4; ++seed)
+		{
+			boolean zeroInputs = seed % 2 == 0;
+			assertBeliefsEqual(solve(seed, zeroInputs, false, 0, true), solve(seed, zeroInputs, false, 0, false));
+			assertBeliefsEqual(solve(seed, zeroInputs, true, 0, true), solve(seed, zeroInputs, true, 0, false));
+		}
+
+		// Damping is not compiled, so the compiled graph falls back on the standard update.
+		assertBeliefsEqual(solve(5, false, false, .4, true), solve(5, false, false, .4, false));
+
+		// Graphs with other kinds of variables are not compiled.
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new CompiledSumProductSolver());
+		CompiledSFactorGraph sfg = (CompiledSFactorGraph)fg.getSolver();
+		Discrete a = new Discrete(0, 1);
+		Discrete b = new Discrete(0, 1);
+		a.setInput(.3, .7);
+		fg.addFactor(new int[][] { {0,0}, {1,1} }, new double[] { 1, 2 }, a, b);
+		fg.solve();
+		assertTrue(sfg.isCompiled());
+		Real r = new Real();
+		fg.addFactor(new Normal(), 0.0, 1.0, r);
+		fg.solve();
+		assertFalse(sfg.isCompiled());
+	}
+
+	@Test
+	public void testIncremental()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new CompiledSumProductSolver());
+		CompiledSFactorGraph sfg = (CompiledSFactorGraph)fg.getSolver();
+		Discrete a = new Discrete(0, 1, 2);
+		Discrete b = new Discrete(0, 1, 2);
+		Discrete c = new Discrete(0, 1, 2);
+		a.setInput(.2, .3, .5);
+		fg.addFactor(new int[][] { {0,0}, {1,1}, {2,2}, {0,1} }, new double[] { 1, 2, 3, 1 }, a, b);
+		fg.addFactor(new int[][] { {0,1}, {1,2}, {2,0}, {1,1} }, new double[] { 1, 2, 3, 1 }, b, c);
+		fg.addFactor(new int[][] { {0,2}, {1,0}, {2,1} }, new double[] { 3, 2, 1 }, c, a);
+
+		FactorGraph fg2 = new FactorGraph();
+		Discrete a2 = new Discrete(0, 1, 2);
+		Discrete b2 = new Discrete(0, 1, 2);
+		Discrete c2 = new Discrete(0, 1, 2);
+		a2.setInput(.2, .3, .5);
+		fg2.addFactor(new int[][] { {0,0}, {1,1}, {2,2}, {0,1} }, new double[] { 1, 2, 3, 1 }, a2, b2);
+		fg2.addFactor(new int[][] { {0,1}, {1,2}, {2,0}, {1,1} }, new double[] { 1, 2, 3, 1 }, b2, c2);
+		fg2.addFactor(new int[][] { {0,2}, {1,0}, {2,1} }, new double[] { 3, 2, 1 }, c2, a2);
+
+		// Iterating in steps without reinitializing picks up where the last step left off.
+		fg.initialize();
+		fg2.initialize();
+		assertTrue(sfg.isCompiled());
+		for (int i = 0; i < 3; ++i)
+		{
+			fg.getSolver().iterate(2);
+			fg2.getSolver().iterate(2);
+			assertArrayEquals(a2.getBelief(), a.getBelief(), 1e-12);
+			assertArrayEquals(c2.getBelief(), c.getBelief(), 1e-12);
+		}
+
+		// Input changes are seen by the next iteration.
+		b.setInput(.6, .3, .1);
+		b2.setInput(.6, .3, .1);
+		fg.getSolver().iterate(3);
+		fg2.getSolver().iterate(3);
+		assertArrayEquals(a2.getBelief(), a.getBelief(), 1e-12);
+
+		// So are changes to the graph.
+		Discrete d = new Discrete(0, 1, 2);
+		Discrete d2 = new Discrete(0, 1, 2);
+		d.setInput(.1, .1, .8);
+		d2.setInput(.1, .1, .8);
+		fg.addFactor(new int[][] { {0,0}, {1,1}, {2,2} }, new double[] { 1, 1, 1 }, a, d);
+		fg2.addFactor(new int[][] { {0,0}, {1,1}, {2,2} }, new double[] { 1, 1, 1 }, a2, d2);
+		fg.getSolver().iterate(3);
+		fg2.getSolver().iterate(3);
+		assertTrue(sfg.isCompiled());
+		assertArrayEquals(a2.getBelief(), a.getBelief(), 1e-12);
+		assertArrayEquals(d2.getBelief(), d.getBelief(), 1e-12);
+	}
+
+	@Test
+	public void testConvergence()
+	{
+		// Convergence is checked on the compiled form, and stops after the same iteration.
+		SFactorGraph[] sgraphs = new SFactorGraph[2];
+		Discrete[][] vars = new Discrete[2][3];
+		for (int i = 0; i < 2; ++i)
+		{
+			FactorGraph fg = new FactorGraph();
+			if (i == 0)
+				fg.setSolverFactory(new CompiledSumProductSolver());
+			for (int j = 0; j < 3; ++j)
+				vars[i][j] = new Discrete(0, 1, 2);
+			vars[i][0].setInput(.2, .3, .5);
+			fg.addFactor(new int[][] { {0,0}, {1,1}, {2,2}, {0,1} }, new double[] { 1, 2, 3, 1 }, vars[i][0], vars[i][1]);
+			fg.addFactor(new int[][] { {0,1}, {1,2}, {2,0}, {1,1} }, new double[] { 1, 2, 3, 1 }, vars[i][1], vars[i][2]);
+			fg.addFactor(new int[][] { {0,2}, {1,0}, {2,1} }, new double[] { 3, 2, 1 }, vars[i][2], vars[i][0]);
+			sgraphs[i] = (SFactorGraph)fg.getSolver();
+			sgraphs[i].setNumIterations(100);
+			sgraphs[i].setConvergenceTolerance(1e-6);
+			sgraphs[i].setConvergenceCheckInterval(1);
+			fg.solve();
+		}
+		assertTrue(((CompiledSFactorGraph)sgraphs[0]).isCompiled());
+		assertTrue(sgraphs[0].hasConverged());
+		assertEquals(sgraphs[1].getNumIterationsRun(), sgraphs[0].getNumIterationsRun());
+		assertTrue(sgraphs[0].getNumIterationsRun() < 100);
+		for (int j = 0; j < 3; ++j)
+			assertArrayEquals(vars[1][j].getBelief(), vars[0][j].getBelief(), 1e-12);
+	}
+
+	@Test
+	public void testReplacedFactors()
+	{
+		// Damping replaces a parity check's custom factor with a table factor, which iterating
+		// without initializing must use.
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new CompiledSumProductSolver());
+		CompiledSFactorGraph sfg = (CompiledSFactorGraph)fg.getSolver();
+		Bit a = new Bit(), b = new Bit(), c = new Bit();
+		a.setInput(.8);
+		b.setInput(.3);
+		fg.addFactor(new Xor(), a, b, c);
+		fg.solve();
+		assertTrue(sfg.isCompiled());
+		assertEquals(.8 * .7 + .2 * .3, c.getP1(), 1e-12);
+
+		sfg.setDamping(.5);
+		sfg.setDamping(0);
+		a.setInput(.4);
+		sfg.iterate(3);
+		assertEquals(.4 * .7 + .6 * .3, c.getP1(), 1e-12);
+	}
+
+	private void assertBeliefsEqual(double[][] expected, double[][] actual)
+	{
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertArrayEquals(expected[i], actual[i], 1e-12);
+		}
+	}
+
+	private double[][] solve(long seed, boolean zeroInputs, boolean sequential, double damping, boolean compiled)
+	{
+		final Random rand = new Random(seed);
+		final int nVars = 10;
+		final int domainSize = 3;
+
+		FactorGraph fg = new FactorGraph();
+		IFactorGraphFactory<?> solver =
+			compiled ? new CompiledSumProductSolver() : new com.analog.lyric.dimple.solvers.sumproduct.Solver();
+		fg.setSolverFactory(solver);
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		sfg.setNumIterations(6);
+		if (sequential)
+			fg.setScheduler(new SequentialScheduler());
+
+		Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = new Discrete(0, 1, 2);
+			double[] input = new double[domainSize];
+			for (int j = 0; j < domainSize; ++j)
+				input[j] = rand.nextDouble();
+			if (zeroInputs)
+				input[rand.nextInt(domainSize)] = 0;
+			vars[i].setInput(input);
+		}
+
+		// Loopy graph with factors of degree 1 through 4 over full joint tables.
+		for (int degree = 1; degree <= 4; ++degree)
+		{
+			for (int n = 0; n < 3; ++n)
+			{
+				Discrete[] factorVars = new Discrete[degree];
+				int first = rand.nextInt(nVars);
+				for (int i = 0; i < degree; ++i)
+					factorVars[i] = vars[(first + 3 * i) % nVars];
+
+				int jointSize = (int)Math.pow(domainSize, degree);
+				int[][] indices = new int[jointSize][degree];
+				double[] weights = new double[jointSize];
+				for (int joint = 0; joint < jointSize; ++joint)
+				{
+					for (int i = 0, j = joint; i < degree; ++i, j /= domainSize)
+						indices[joint][i] = j % domainSize;
+					weights[joint] = rand.nextDouble() + .01;
+				}
+				fg.addFactor(indices, weights, factorVars);
+			}
+		}
+
+		sfg.setDamping(damping);
+		sfg.setOptimizedUpdate(true);
+		fg.solve();
+
+		if (compiled)
+			assertTrue(((CompiledSFactorGraph)sfg).isCompiled());
+
+		double[][] beliefs = new double[nVars][];
+		for (int i = 0; i < nVars; ++i)
+			beliefs[i] = vars[i].getBelief();
+		return beliefs;
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static com.analog.lyric.dimple.test.model.DiscreteGrids.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.core.SDiscreteVariableBase;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+
+/**
+ * Tests early termination of iteration when beliefs converge.
+ */
+public class TestConvergenceTermination
+{
+	private static final int N = 6;
+	private static final int MAX_ITERATIONS = 1000;
+
+	@Test
+	public void test()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		Discrete[] vars = addGrid(fg, N, 2, new Random(7));
+		sfg.setNumIterations(MAX_ITERATIONS);
+
+		// Disabled by default
+		assertEquals(0, sfg.getConvergenceTolerance(), 0.0);
+		fg.solve();
+		assertEquals(MAX_ITERATIONS, sfg.getNumIterationsRun());
+		assertFalse(sfg.hasConverged());
+		double[][] expected = beliefs(vars);
+
+		sfg.setConvergenceTolerance(1e-10);
+		fg.solve();
+		assertTrue(sfg.hasConverged());
+		final int iterationsRun = sfg.getNumIterationsRun();
+		assertTrue(iterationsRun > 1);
+		assertTrue(iterationsRun < MAX_ITERATIONS);
+		assertBeliefsEqual(expected, beliefs(vars), 1e-8);
+
+		// Checking less often can only run more iterations, in multiples of the interval.
+		sfg.setConvergenceCheckInterval(4);
+		fg.solve();
+		assertTrue(sfg.hasConverged());
+		assertEquals(0, sfg.getNumIterationsRun() % 4);
+		assertTrue(sfg.getNumIterationsRun() >= iterationsRun);
+		assertTrue(sfg.getNumIterationsRun() < iterationsRun + 4);
+
+		// Multithreaded iteration stops at the same point.
+		sfg.setConvergenceCheckInterval(1);
+		sfg.getMultithreadingManager().setNumWorkers(3);
+		sfg.useMultithreading(true);
+		fg.solve();
+		assertTrue(sfg.hasConverged());
+		assertEquals(iterationsRun, sfg.getNumIterationsRun());
+		assertBeliefsEqual(expected, beliefs(vars), 1e-8);
+		sfg.useMultithreading(false);
+
+		// Not converged if the limit is reached first.
+		sfg.setNumIterations(2);
+		fg.solve();
+		assertFalse(sfg.hasConverged());
+		assertEquals(2, sfg.getNumIterationsRun());
+	}
+
+	@Test
+	public void testBeliefBuffers()
+	{
+		// Convergence checks compute beliefs into reused buffers.
+		testBeliefBuffers(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		testBeliefBuffers(new com.analog.lyric.dimple.solvers.minsum.Solver());
+	}
+
+	private void testBeliefBuffers(IFactorGraphFactory<?> solver)
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(solver);
+		SFactorGraphBase sfg = (SFactorGraphBase)fg.getSolver();
+		Discrete[] vars = addGrid(fg, N, 2, new Random(11));
+		sfg.setNumIterations(MAX_ITERATIONS);
+		sfg.setConvergenceTolerance(1e-10);
+		fg.solve();
+		assertTrue(sfg.hasConverged());
+
+		for (Discrete var : vars)
+		{
+			SDiscreteVariableBase svar = (SDiscreteVariableBase)var.getSolver();
+			double[] expected = svar.getBelief();
+			double[] buffer = new double[expected.length];
+			assertSame(buffer, svar.getBelief(buffer));
+			assertArrayEquals(expected, buffer, 0.0);
+
+			double[] wrongSize = new double[expected.length + 1];
+			double[] belief = svar.getBelief(wrongSize);
+			assertNotSame(wrongSize, belief);
+			assertArrayEquals(expected, belief, 0.0);
+		}
+	}
+
+	private void assertBeliefsEqual(double[][] expected, double[][] actual, double delta)
+	{
+		for (int i = 0; i < expected.length; ++i)
+			assertArrayEquals(expected[i], actual[i], delta);
+	}
+}
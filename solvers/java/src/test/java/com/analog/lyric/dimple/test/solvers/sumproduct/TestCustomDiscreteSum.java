@@ -0,0 +1,192 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Subtract;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.STableFactor;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomDiscreteSubtract;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomDiscreteSum;
+
+/**
+ * Compares {@link CustomDiscreteSum} and {@link CustomDiscreteSubtract} against table factors
+ * for the same constraint.
+ */
+public class TestCustomDiscreteSum
+{
+	private final Random _rand = new Random(23);
+
+	@Test
+	public void test()
+	{
+		final DiscreteDomain large = DiscreteDomain.range(0, 49);
+		final DiscreteDomain small = DiscreteDomain.create(-3, 0, 2, 5);
+
+		compare(new Sum(), CustomDiscreteSum.class, DiscreteDomain.range(-10, 105), large, large, small);
+		compare(new Sum(), CustomDiscreteSum.class, DiscreteDomain.range(0, 40), DiscreteDomain.range(0, 20), DiscreteDomain.range(0, 20), small);
+		compare(new Subtract(), CustomDiscreteSubtract.class, DiscreteDomain.range(-60, 60), large, large, small);
+
+		// Not used for smoothed or non-integer functions, or small tables
+		FactorGraph fg = new FactorGraph();
+		Factor factor = fg.addFactor(new Sum(.5), new Discrete(large), new Discrete(large), new Discrete(large));
+		assertTrue(factor.getSolver() instanceof STableFactor);
+		factor = fg.addFactor(new Sum(), new Discrete(DiscreteDomain.range(0, 3, .5)), new Discrete(large), new Discrete(large));
+		assertTrue(factor.getSolver() instanceof STableFactor);
+		factor = fg.addFactor(new Sum(), new Discrete(small), new Discrete(small), new Discrete(small));
+		assertTrue(factor.getSolver() instanceof STableFactor);
+	}
+
+	@Test
+	public void testDampingAndDerivatives()
+	{
+		final DiscreteDomain in = DiscreteDomain.range(0, 20);
+		final DiscreteDomain out = DiscreteDomain.range(0, 40);
+
+		// Damping set before and after adding the factor uses a table factor.
+		FactorGraph fg = new FactorGraph();
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		Factor before = fg.addFactor(new Sum(), new Discrete(out), new Discrete(in), new Discrete(in));
+		Factor subtract = fg.addFactor(new Subtract(), new Discrete(DiscreteDomain.range(-20, 40)), new Discrete(out), new Discrete(in));
+		assertTrue(before.getSolver() instanceof CustomDiscreteSum);
+		assertTrue(subtract.getSolver() instanceof CustomDiscreteSubtract);
+		sfg.setDamping(.3);
+		Factor after = fg.addFactor(new Sum(), new Discrete(out), new Discrete(in), new Discrete(in));
+		for (Factor factor : new Factor[] { before, subtract, after })
+		{
+			assertTrue(factor.getSolver() instanceof STableFactor);
+			for (int i = 0; i < factor.getSiblingCount(); ++i)
+				assertEquals(.3, ((STableFactor)factor.getSolver()).getDamping(i), 0);
+		}
+		fg.solve();
+
+		// Computing derivatives uses table factors from then on.
+		fg = new FactorGraph();
+		sfg = (SFactorGraph)fg.getSolver();
+		Discrete a = new Discrete(in), b = new Discrete(in);
+		Factor sum = fg.addFactor(new Sum(), new Discrete(out), a, b);
+		Factor pair = fg.addFactor(new int[][] { { 0, 0 }, { 1, 1 }, { 2, 0 } }, new double[] { 1, 2, 3 }, a, b);
+		assertTrue(sum.getSolver() instanceof CustomDiscreteSum);
+		sfg.calculateDerivativeOfBetheFreeEnergyWithRespectToWeight(pair.getFactorTable(), 1);
+		assertTrue(sum.getSolver() instanceof STableFactor);
+		sum = fg.addFactor(new Sum(), new Discrete(out), new Discrete(in), new Discrete(in));
+		assertTrue(sum.getSolver() instanceof STableFactor);
+	}
+
+	private void compare(FactorFunction function, Class<?> solverClass, DiscreteDomain ... domains)
+	{
+		final long seed = _rand.nextLong();
+		double[][] expected = solve(function, solverClass, seed, false, domains);
+		double[][] actual = solve(function, solverClass, seed, true, domains);
+		for (int i = 0; i < expected.length; ++i)
+			assertArrayEquals(expected[i], actual[i], 1e-10);
+	}
+
+	/*
+	 * Solves a loop of the constraint and a random pairwise factor between the first two inputs.
+	 */
+	private double[][] solve(FactorFunction function, Class<?> solverClass, long seed, boolean useFunction, DiscreteDomain[] domains)
+	{
+		final Random rand = new Random(seed);
+		final int n = domains.length;
+		FactorGraph fg = new FactorGraph();
+		fg.getSolver().setNumIterations(4);
+
+		Discrete[] vars = new Discrete[n];
+		for (int i = 0; i < n; ++i)
+		{
+			vars[i] = new Discrete(domains[i]);
+			double[] input = new double[domains[i].size()];
+			for (int j = 0; j < input.length; ++j)
+				input[j] = rand.nextDouble() + .001;
+			vars[i].setInput(input);
+		}
+
+		Factor factor;
+		if (useFunction)
+		{
+			factor = fg.addFactor(function, vars);
+			assertSame(solverClass, factor.getSolver().getClass());
+		}
+		else
+		{
+			// Enumerate all the inputs and look for the output that satisfies the constraint.
+			List<int[]> indices = new ArrayList<int[]>();
+			Object[] elements = new Object[n];
+			int[] index = new int[n];
+			while (index[n - 1] < domains[n - 1].size())
+			{
+				for (int i = 1; i < n; ++i)
+					elements[i] = domains[i].getElement(index[i]);
+				for (int i = 0; i < domains[0].size(); ++i)
+				{
+					elements[0] = domains[0].getElement(i);
+					if (function.evalEnergy(elements) == 0)
+					{
+						index[0] = i;
+						indices.add(index.clone());
+					}
+				}
+				for (int i = 1; i < n && ++index[i] == domains[i].size() && i < n - 1; ++i)
+					index[i] = 0;
+			}
+			double[] weights = new double[indices.size()];
+			java.util.Arrays.fill(weights, 1);
+			factor = fg.addFactor(indices.toArray(new int[indices.size()][]), weights, vars);
+			assertTrue(factor.getSolver() instanceof STableFactor);
+		}
+
+		int size1 = domains[1].size(), size2 = domains[2].size();
+		int[][] pairIndices = new int[size1 * size2][];
+		double[] pairWeights = new double[pairIndices.length];
+		for (int i = 0, k = 0; i < size1; ++i)
+		{
+			for (int j = 0; j < size2; ++j, ++k)
+			{
+				pairIndices[k] = new int[] { i, j };
+				pairWeights[k] = rand.nextDouble() + .01;
+			}
+		}
+		fg.addFactor(pairIndices, pairWeights, vars[1], vars[2]);
+
+		fg.solve();
+
+		double[][] results = new double[n * 2][];
+		for (int i = 0; i < n; ++i)
+		{
+			results[i] = vars[i].getBelief();
+
+			// Single edge updates match the full update.
+			factor.getSolver().updateEdge(i);
+			results[n + i] = ((double[])factor.getSolver().getOutputMsg(i)).clone();
+		}
+		return results;
+	}
+}
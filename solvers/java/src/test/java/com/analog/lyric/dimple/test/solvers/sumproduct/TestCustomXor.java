@@ -0,0 +1,281 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.sumproduct.CompiledSFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.CompiledSumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.STableFactor;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor;
+
+/**
+ * Compares {@link CustomXor} against table factors for the same parity checks, with
+ * and without the compiled solver graph.
+ */
+public class TestCustomXor
+{
+	private final Random _rand = new Random(24);
+
+	@Test
+	public void test()
+	{
+		final long seed = _rand.nextLong();
+		final IFactorGraphFactory<?> solver = new com.analog.lyric.dimple.solvers.sumproduct.Solver();
+		double[][] expected = solveCode(solver, seed, false, 6);
+		double[][] actual = solveCode(solver, seed, true, 6);
+		double[][] compiled = solveCode(new CompiledSumProductSolver(), seed, true, 6);
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertArrayEquals(expected[i], actual[i], 1e-10);
+			assertArrayEquals(expected[i], compiled[i], 1e-10);
+		}
+
+		// Checks too large for tables
+		actual = solveCode(solver, seed, true, 24);
+		compiled = solveCode(new CompiledSumProductSolver(), seed, true, 24);
+		for (int i = 0; i < actual.length; ++i)
+			assertArrayEquals(actual[i], compiled[i], 1e-10);
+
+		// Not used for non-binary variables
+		FactorGraph fg = new FactorGraph();
+		Factor factor = fg.addFactor(new Xor(), new Discrete(0, 1), new Discrete(0, 1, 2));
+		assertTrue(factor.getSolver() instanceof STableFactor);
+		factor = fg.addFactor(new Xor(), new Discrete(0, 1), new Discrete(1, 2));
+		assertTrue(factor.getSolver() instanceof STableFactor);
+	}
+
+	@Test
+	public void testDampingAndZeroInputs()
+	{
+		// Damping uses a table factor.
+		FactorGraph fg = new FactorGraph();
+		Factor factor = fg.addFactor(new Xor(), new Discrete(0, 1), new Discrete(0, 1), new Discrete(0, 1));
+		assertTrue(factor.getSolver() instanceof CustomXor);
+		((SFactorGraph)fg.getSolver()).setDamping(.2);
+		assertTrue(factor.getSolver() instanceof STableFactor);
+		assertEquals(.2, ((STableFactor)factor.getSolver()).getDamping(0), 0);
+		assertTrue(fg.addFactor(new Xor(), new Discrete(0, 1), new Discrete(0, 1)).getSolver() instanceof STableFactor);
+
+		// Input messages with all zero probabilities fail in the same way as for a table.
+		fg = new FactorGraph();
+		Discrete[] vars = new Discrete[3];
+		for (int i = 0; i < vars.length; ++i)
+			vars[i] = new Discrete(0, 1);
+		Factor xor = fg.addFactor(new Xor(), vars);
+		Factor table = fg.addFactor(new int[][] { { 0, 0, 0 }, { 0, 1, 1 }, { 1, 0, 1 }, { 1, 1, 0 } }, new double[] { 1, 1, 1, 1 }, vars);
+		assertTrue(xor.getSolver() instanceof CustomXor);
+		assertTrue(table.getSolver() instanceof STableFactor);
+		fg.initialize();
+		for (int[] zeroPorts : new int[][] { { 0 }, { 1 }, { 2 }, { 0, 2 } })
+		{
+			for (Factor f : new Factor[] { xor, table })
+			{
+				for (int port = 0; port < vars.length; ++port)
+					Arrays.fill((double[])f.getSolver().getInputMsg(port), .5);
+				for (int port : zeroPorts)
+					Arrays.fill((double[])f.getSolver().getInputMsg(port), 0);
+			}
+			assertNotNull(failure(table, -1));
+			assertEquals(failure(table, -1), failure(xor, -1));
+			for (int port = 0; port < vars.length; ++port)
+				assertEquals(failure(table, port), failure(xor, port));
+		}
+	}
+
+	@Test
+	public void testConfidentInputs()
+	{
+		// Near-certain inputs keep their small probabilities, as they do for a table.
+		FactorGraph fg = new FactorGraph();
+		Discrete[] vars = new Discrete[4];
+		for (int i = 0; i < vars.length; ++i)
+			vars[i] = new Discrete(0, 1);
+		Factor xor = fg.addFactor(new Xor(), vars);
+		List<int[]> indices = new ArrayList<int[]>();
+		for (int joint = 0; joint < 1 << vars.length; ++joint)
+		{
+			if (Integer.bitCount(joint) % 2 == 0)
+				indices.add(new int[] { joint & 1, (joint >> 1) & 1, (joint >> 2) & 1, (joint >> 3) & 1 });
+		}
+		double[] weights = new double[indices.size()];
+		Arrays.fill(weights, 1);
+		Factor table = fg.addFactor(indices.toArray(new int[indices.size()][]), weights, vars);
+		assertTrue(xor.getSolver() instanceof CustomXor);
+		assertTrue(table.getSolver() instanceof STableFactor);
+		fg.initialize();
+
+		final double[][][] cases = new double[][][] {
+			{ { 1e-20, 1 }, { .3, .7 }, { .6, .4 }, { .5, .5 } },
+			{ { 1, 1e-20 }, { 1e-20, 1 }, { .2, .8 }, { .9, .1 } },
+			{ { 1e-20, 1 }, { 1e-15, 1 }, { 1, 1e-30 }, { 1e-12, 1 } },
+			{ { 1e-200, 1 }, { 1, 1e-200 }, { 1e-200, 1 }, { 1, 1e-200 } },
+		};
+		for (double[][] inputs : cases)
+		{
+			for (Factor f : new Factor[] { xor, table })
+			{
+				for (int port = 0; port < vars.length; ++port)
+					System.arraycopy(inputs[port], 0, (double[])f.getSolver().getInputMsg(port), 0, 2);
+			}
+
+			xor.getSolver().update();
+			table.getSolver().update();
+			assertRelativelyEqual(table, xor, vars.length);
+			for (int port = 0; port < vars.length; ++port)
+			{
+				xor.getSolver().updateEdge(port);
+				table.getSolver().updateEdge(port);
+				assertRelativelyEqual(table, xor, vars.length);
+			}
+		}
+	}
+
+	private void assertRelativelyEqual(Factor expected, Factor actual, int numPorts)
+	{
+		for (int port = 0; port < numPorts; ++port)
+		{
+			double[] expectedMsg = (double[])expected.getSolver().getOutputMsg(port);
+			double[] actualMsg = (double[])actual.getSolver().getOutputMsg(port);
+			for (int i = 0; i < expectedMsg.length; ++i)
+			{
+				assertTrue(actualMsg[i] > 0);
+				assertEquals(expectedMsg[i], actualMsg[i], expectedMsg[i] * 1e-9);
+			}
+		}
+	}
+
+	/*
+	 * The message of the exception from updating the factor's edge, or all edges if port is
+	 * negative, with the factor's label removed, or null if the update succeeds.
+	 */
+	private String failure(Factor factor, int port)
+	{
+		try
+		{
+			if (port < 0)
+				factor.getSolver().update();
+			else
+				factor.getSolver().updateEdge(port);
+			return null;
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().endsWith(factor.getLabel()));
+			return ex.getMessage().replace(factor.getLabel(), "");
+		}
+	}
+
+	/*
+	 * Solves a random code with checks of the given degree, one of which has a constant input,
+	 * and some of whose variables have the true element first. Returns the beliefs and, for the
+	 * first check, the outputs of each single edge update.
+	 */
+	private double[][] solveCode(IFactorGraphFactory<?> solver, long seed, boolean useFunction, int degree)
+	{
+		final Random rand = new Random(seed);
+		final int nVars = degree * 3, nChecks = 8;
+		final DiscreteDomain reversed = DiscreteDomain.create(true, false);
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(solver);
+		fg.getSolver().setNumIterations(6);
+
+		Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = i % 5 == 0 ? new Discrete(reversed) : new Discrete(0, 1);
+			double p = rand.nextDouble() * .8 + .1;
+			vars[i].setInput(p, 1 - p);
+		}
+
+		Factor first = null;
+		for (int c = 0; c < nChecks; ++c)
+		{
+			List<Discrete> checkVars = new ArrayList<Discrete>();
+			while (checkVars.size() < degree)
+			{
+				Discrete var = vars[rand.nextInt(nVars)];
+				if (!checkVars.contains(var))
+					checkVars.add(var);
+			}
+			final boolean constant = c == 0;
+
+			Factor factor;
+			if (useFunction)
+			{
+				List<Object> args = new ArrayList<Object>(checkVars);
+				if (constant)
+					args.add(1);
+				factor = fg.addFactor(new Xor(), args.toArray());
+				assertSame(CustomXor.class, factor.getSolver().getClass());
+			}
+			else
+			{
+				List<int[]> indices = new ArrayList<int[]>();
+				for (int joint = 0; joint < 1 << degree; ++joint)
+				{
+					boolean parity = constant;
+					int[] index = new int[degree];
+					for (int i = 0; i < degree; ++i)
+					{
+						index[i] = (joint >> i) & 1;
+						parity ^= FactorFunctionUtilities.toBoolean(checkVars.get(i).getDiscreteDomain().getElement(index[i]));
+					}
+					if (!parity)
+						indices.add(index);
+				}
+				double[] weights = new double[indices.size()];
+				Arrays.fill(weights, 1);
+				factor = fg.addFactor(indices.toArray(new int[indices.size()][]), weights, checkVars.toArray(new Discrete[degree]));
+			}
+			if (first == null)
+				first = factor;
+		}
+
+		fg.solve();
+
+		if (solver instanceof CompiledSumProductSolver)
+			assertTrue(((CompiledSFactorGraph)fg.getSolver()).isCompiled());
+
+		final int nPorts = first.getSiblingCount();
+		double[][] results = new double[nVars + nPorts][];
+		for (int i = 0; i < nVars; ++i)
+			results[i] = vars[i].getBelief();
+		for (int port = 0; port < nPorts; ++port)
+		{
+			first.getSolver().updateEdge(port);
+			results[nVars + port] = ((double[])first.getSolver().getOutputMsg(port)).clone();
+		}
+		return results;
+	}
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductKernels;
+
+/**
+ * Compares the linear and log domain sum-product discrete variable updates used by
+ * {@link com.analog.lyric.dimple.solvers.sumproduct.SDiscreteVariable#update()}.
+ */
+public class TestDiscreteVariableUpdate
+{
+	private static final int SIZE = 5;
+	private static final int PORTS = 4;
+
+	@Test
+	public void testOrdinaryMessages()
+	{
+		Random rand = new Random(42);
+		for (int trial = 0; trial < 20; ++trial)
+		{
+			double[] input = randomMessage(rand, 1.0);
+			double[][] in = randomMessages(rand, 1.0);
+			assertAgree(input, in, true);
+		}
+	}
+
+	@Test
+	public void testVerySmallMessages()
+	{
+		// The unscaled product of the input and messages, about 1e-1200, would underflow,
+		// but the linear update rescales after each port.
+		Random rand = new Random(43);
+		double[] input = randomMessage(rand, 1.0);
+		double[][] in = randomMessages(rand, 1e-300);
+		assertAgree(input, in, true);
+
+		// Here the product of the input and the first message underflows before it can be
+		// rescaled, so the log domain update must be used.
+		input = randomMessage(rand, 1e-300);
+		assertAgree(input, in, false);
+	}
+
+	@Test
+	public void testZeroAndDenormalMessages()
+	{
+		Random rand = new Random(44);
+
+		// Zero in an incoming message
+		double[] input = randomMessage(rand, 1.0);
+		double[][] in = randomMessages(rand, 1.0);
+		in[1][2] = 0;
+		assertAgree(input, in, false);
+
+		// Denormal in an incoming message
+		in = randomMessages(rand, 1.0);
+		in[3][0] = Double.MIN_VALUE;
+		assertAgree(input, in, false);
+
+		// Zero and denormal in the input
+		input[4] = 0;
+		input[1] = Double.MIN_VALUE * 10;
+		in = randomMessages(rand, 1.0);
+		assertAgree(input, in, false);
+	}
+
+	@Test
+	public void testAllZeroMessages()
+	{
+		// The log domain update substitutes a very small value for zero rather than failing,
+		// so a message that is all zero has the same effect as a uniform one.
+		Random rand = new Random(45);
+		double[] input = randomMessage(rand, 1.0);
+		double[][] in = randomMessages(rand, 1.0);
+		Arrays.fill(in[2], 0.0);
+
+		double[][] out = new double[PORTS][SIZE];
+		assertFalse(SumProductKernels.updateVariableLinear(input, 0, SIZE, PORTS, in, out, new int[PORTS], 0, new double[SIZE]));
+		for (double[] msg : out)
+			for (double value : msg)
+				assertEquals(0.0, value, 0.0);
+
+		double[][] actual = updateLog(input, in);
+		Arrays.fill(in[2], 1.0 / SIZE);
+		double[][] expected = updateLog(input, in);
+		for (int port = 0; port < PORTS; ++port)
+		{
+			assertNormalized(actual[port]);
+			assertArrayEquals(expected[port], actual[port], 1e-12);
+		}
+
+		// An input that is all zero likewise acts as a uniform input.
+		Arrays.fill(input, 0.0);
+		actual = updateLog(input, in);
+		Arrays.fill(input, 1.0);
+		expected = updateLog(input, in);
+		for (int port = 0; port < PORTS; ++port)
+		{
+			assertNormalized(actual[port]);
+			assertArrayEquals(expected[port], actual[port], 1e-12);
+		}
+	}
+
+	/*
+	 * Checks the log domain update against a direct computation, and that the linear update
+	 * either gives the same result or, if it is not expected to apply, declines without
+	 * writing the outgoing messages.
+	 */
+	private void assertAgree(double[] input, double[][] in, boolean expectLinear)
+	{
+		double[][] expected = reference(input, in);
+
+		double[][] log = updateLog(input, in);
+		for (int port = 0; port < PORTS; ++port)
+			assertArrayEquals(expected[port], log[port], 1e-12);
+
+		double[][] linear = new double[PORTS][SIZE];
+		for (double[] msg : linear)
+			Arrays.fill(msg, -1.0);
+		boolean usedLinear = SumProductKernels.updateVariableLinear(input, 0, SIZE, PORTS, in, linear, new int[PORTS], 0, new double[SIZE]);
+		assertEquals(expectLinear, usedLinear);
+		for (int port = 0; port < PORTS; ++port)
+		{
+			if (usedLinear)
+			{
+				assertArrayEquals(log[port], linear[port], 1e-12);
+			}
+			else
+			{
+				for (double value : linear[port])
+					assertEquals(-1.0, value, 0.0);
+			}
+		}
+	}
+
+	private double[][] updateLog(double[] input, double[][] in)
+	{
+		double[][] out = new double[PORTS][SIZE];
+		SumProductKernels.updateVariableLog(input, 0, SIZE, PORTS, in, out, new int[PORTS], 0, new double[SIZE], new double[SIZE * PORTS]);
+		return out;
+	}
+
+	/*
+	 * Normalized product of the input and all of the messages but the port's own, computed
+	 * in the log domain with no substitution for zero.
+	 */
+	private double[][] reference(double[] input, double[][] in)
+	{
+		double[][] out = new double[PORTS][SIZE];
+		for (int port = 0; port < PORTS; ++port)
+		{
+			double max = Double.NEGATIVE_INFINITY;
+			for (int m = 0; m < SIZE; ++m)
+			{
+				double value = Math.log(input[m]);
+				for (int other = 0; other < PORTS; ++other)
+					if (other != port)
+						value += Math.log(in[other][m]);
+				out[port][m] = value;
+				max = Math.max(max, value);
+			}
+			double sum = 0;
+			for (int m = 0; m < SIZE; ++m)
+				sum += out[port][m] = Math.exp(out[port][m] - max);
+			for (int m = 0; m < SIZE; ++m)
+				out[port][m] /= sum;
+		}
+		return out;
+	}
+
+	private static void assertNormalized(double[] msg)
+	{
+		double sum = 0;
+		for (double value : msg)
+		{
+			assertFalse(Double.isNaN(value) || Double.isInfinite(value));
+			sum += value;
+		}
+		assertEquals(1.0, sum, 1e-12);
+	}
+
+	private static double[] randomMessage(Random rand, double scale)
+	{
+		double[] msg = new double[SIZE];
+		for (int m = 0; m < SIZE; ++m)
+			msg[m] = scale * (rand.nextDouble() + .01);
+		return msg;
+	}
+
+	private static double[][] randomMessages(Random rand, double scale)
+	{
+		double[][] msgs = new double[PORTS][];
+		for (int port = 0; port < PORTS; ++port)
+			msgs[port] = randomMessage(rand, scale);
+		return msgs;
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.STableFactor;
+
+/**
+ * Compares the single pass sum-product table factor update against the
+ * original per-port computation.
+ */
+public class TestOptimizedTableFactorUpdate
+{
+	@Test
+	public void test()
+	{
+		testCompare(1, 0.0, false);
+		testCompare(2, 0.0, true);
+		testCompare(3, 0.3, false);
+		testCompare(4, 0.3, true);
+	}
+	
+	private void testCompare(long seed, double damping, boolean zeroInputs)
+	{
+		double[][] expected = solve(seed, damping, zeroInputs, false);
+		double[][] actual = solve(seed, damping, zeroInputs, true);
+		
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertArrayEquals(expected[i], actual[i], 1e-12);
+		}
+	}
+	
+	private double[][] solve(long seed, double damping, boolean zeroInputs, boolean optimized)
+	{
+		final Random rand = new Random(seed);
+		final int nVars = 8;
+		final int domainSize = 3;
+		
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		sfg.setDamping(damping);
+		sfg.setNumIterations(5);
+		
+		Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = new Discrete(0, 1, 2);
+			double[] input = new double[domainSize];
+			for (int j = 0; j < domainSize; ++j)
+				input[j] = rand.nextDouble();
+			if (zeroInputs)
+				input[rand.nextInt(domainSize)] = 0;
+			vars[i].setInput(input);
+		}
+
+		// Create a loopy graph with factors of degree 1 through 5.
+		for (int degree = 1; degree <= 5; ++degree)
+		{
+			for (int n = 0; n < 2; ++n)
+			{
+				Discrete[] factorVars = new Discrete[degree];
+				int first = rand.nextInt(nVars);
+				for (int i = 0; i < degree; ++i)
+					factorVars[i] = vars[(first + i) % nVars];
+				
+				// Use a random subset of the joint domain that includes every value of every variable
+				// so that no message will be all zero.
+				int jointSize = (int)Math.pow(domainSize, degree);
+				List<int[]> rows = new ArrayList<int[]>();
+				for (int joint = 0; joint < jointSize; ++joint)
+				{
+					int[] row = new int[degree];
+					boolean diagonal = true;
+					for (int i = 0, j = joint; i < degree; ++i, j /= domainSize)
+					{
+						row[i] = j % domainSize;
+						diagonal &= row[i] == row[0];
+					}
+					if (diagonal || rand.nextBoolean())
+						rows.add(row);
+				}
+				int[][] indices = rows.toArray(new int[rows.size()][]);
+				double[] weights = new double[indices.length];
+				for (int row = 0; row < weights.length; ++row)
+					weights[row] = rand.nextDouble() + .01;
+				
+				fg.addFactor(indices, weights, factorVars);
+			}
+		}
+		
+		if (optimized)
+		{
+			sfg.setOptimizedUpdate(true);
+			for (com.analog.lyric.dimple.model.factors.Factor factor : fg.getNonGraphFactorsFlat())
+				assertTrue(((STableFactor)factor.getSolver()).getOptimizedUpdate());
+		}
+		
+		fg.solve();
+		
+		double[][] beliefs = new double[nVars][];
+		for (int i = 0; i < nVars; ++i)
+			beliefs[i] = vars[i].getBelief();
+		return beliefs;
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static com.analog.lyric.dimple.test.model.DiscreteGrids.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingMode;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+
+/**
+ * Checks that the persistent phase multithreading mode produces the same beliefs
+ * as single threaded flooding.
+ */
+public class TestPersistentPhaseMultithreading
+{
+	private static final int[][] INDICES = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+
+	private final Random _rand = new Random(42);
+
+	@Test
+	public void test()
+	{
+		final int N = 8;
+
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		sfg.setNumIterations(5);
+
+		Discrete[] vars = addGrid(fg, N, 2, _rand);
+
+		MultiThreadingManager manager = sfg.getMultithreadingManager();
+		manager.setMode(MultithreadingMode.PersistentPhase);
+		assertEquals(MultithreadingMode.PersistentPhase, manager.getMode());
+
+		compareToSingleThreaded(fg, vars);
+
+		// Changing the graph must rebuild the phase slices.
+		fg.addFactor(INDICES, randomWeights(4, _rand), vars[0], vars[N*N - 1]);
+		compareToSingleThreaded(fg, vars);
+
+		// Helpers are recreated after a shutdown.
+		manager.shutdown();
+		compareToSingleThreaded(fg, vars);
+
+		sfg.useMultithreading(false);
+	}
+
+	/**
+	 * Helper threads of a graph that is dropped without calling shutdown must exit once
+	 * the graph has been collected.
+	 */
+	@Test
+	public void testDroppedGraphReleasesHelpers() throws InterruptedException
+	{
+		List<Thread> helpers = solveAndDrop();
+		assertFalse(helpers.isEmpty());
+
+		final long deadline = System.currentTimeMillis() + 30000;
+		for (Thread helper : helpers)
+		{
+			while (helper.isAlive() && System.currentTimeMillis() < deadline)
+			{
+				System.gc();
+				helper.join(100);
+			}
+			assertFalse(helper.isAlive());
+		}
+	}
+
+	/*
+	 * Solves a new graph with three workers and returns the helper threads that were started for it.
+	 * No reference to the graph survives the call.
+	 */
+	private List<Thread> solveAndDrop()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		Discrete a = new Discrete(0, 1);
+		Discrete b = new Discrete(0, 1);
+		Discrete c = new Discrete(0, 1);
+		fg.addFactor(INDICES, randomWeights(4, _rand), a, b);
+		fg.addFactor(INDICES, randomWeights(4, _rand), b, c);
+
+		MultiThreadingManager manager = sfg.getMultithreadingManager();
+		manager.setMode(MultithreadingMode.PersistentPhase);
+		manager.setNumWorkers(3);
+		sfg.useMultithreading(true);
+
+		List<Thread> before = phaseWorkers();
+		fg.solve();
+		List<Thread> helpers = phaseWorkers();
+		helpers.removeAll(before);
+		return helpers;
+	}
+
+	private static List<Thread> phaseWorkers()
+	{
+		List<Thread> workers = new ArrayList<Thread>();
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			if (thread.getName().startsWith("Dimple phase worker"))
+				workers.add(thread);
+		return workers;
+	}
+
+	private void compareToSingleThreaded(FactorGraph fg, Discrete[] vars)
+	{
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		MultiThreadingManager manager = sfg.getMultithreadingManager();
+
+		sfg.useMultithreading(false);
+		fg.solve();
+		double[][] expected = beliefs(vars);
+
+		sfg.useMultithreading(true);
+		for (int numWorkers : new int[] { 1, 3, 4, 1 })
+		{
+			manager.setNumWorkers(numWorkers);
+			fg.solve();
+			double[][] actual = beliefs(vars);
+			for (int i = 0; i < expected.length; ++i)
+				assertArrayEquals(expected[i], actual[i], 0.0);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.sumproduct.pseudolikelihood.PseudoLikelihood;
+
+/**
+ * Tests for sharded and mini-batch gradients of {@link PseudoLikelihood}.
+ */
+public class TestPseudoLikelihood
+{
+	private static final int NUM_VARS = 6;
+
+	@Test
+	public void testShardedGradient()
+	{
+		Random rand = new Random(7);
+		int[][] data = randomData(rand, 3000);
+
+		PseudoLikelihood serial = newLearner(new Random(3));
+		serial.setNumThreads(1);
+		serial.setData(data);
+		double[][] expected = serial.calculateGradient();
+
+		for (int numThreads : new int[] { 2, 3, 8 })
+		{
+			PseudoLikelihood parallel = newLearner(new Random(3));
+			parallel.setNumThreads(numThreads);
+			parallel.setData(data);
+			double[][] actual = parallel.calculateGradient();
+			assertEquals(expected.length, actual.length);
+			for (int i = 0; i < expected.length; ++i)
+				assertArrayEquals(expected[i], actual[i], 1e-12);
+		}
+
+		// Learning gives the same tables no matter how the work is split.
+		IFactorTable[] serialTables = new IFactorTable[2];
+		serial = newLearner(new Random(3), serialTables);
+		serial.setNumThreads(1);
+		serial.learn(data, 3, .5);
+		IFactorTable[] parallelTables = new IFactorTable[2];
+		PseudoLikelihood parallel = newLearner(new Random(3), parallelTables);
+		parallel.setNumThreads(4);
+		parallel.learn(data, 3, .5);
+		assertTablesEqual(serialTables, parallelTables);
+	}
+
+	@Test
+	public void testMiniBatch()
+	{
+		Random rand = new Random(11);
+		int[][] data = randomData(rand, 500);
+
+		// A batch as large as the data is the same as the full data set.
+		IFactorTable[] fullTables = new IFactorTable[2];
+		PseudoLikelihood full = newLearner(new Random(5), fullTables);
+		full.learn(data, 2, .5);
+		IFactorTable[] batchTables = new IFactorTable[2];
+		PseudoLikelihood batch = newLearner(new Random(5), batchTables);
+		batch.setBatchSize(data.length);
+		batch.learn(data, 2, .5);
+		assertTablesEqual(fullTables, batchTables);
+
+		for (int batchSize : new int[] { 1, 50 })
+		{
+			PseudoLikelihood learner = newLearner(new Random(5));
+			learner.setRandom(new Random(batchSize));
+			learner.setBatchSize(batchSize);
+			assertEquals(batchSize, learner.getBatchSize());
+			learner.learn(data, 5, .5);
+			for (IFactorTable table : learner.getTables())
+			{
+				double total = 0;
+				for (double w : table.getWeightsSparseUnsafe())
+				{
+					assertTrue(w > 0 && !Double.isInfinite(w));
+					total += w;
+				}
+				assertEquals(1, total, 1e-9);
+			}
+		}
+
+		try
+		{
+			newLearner(new Random(1)).setBatchSize(-1);
+			fail("expected exception");
+		}
+		catch (RuntimeException ex)
+		{
+		}
+	}
+
+	/*
+	 * A loopy chain of ternary variables whose pairwise factors share two tables.
+	 */
+	private PseudoLikelihood newLearner(Random rand)
+	{
+		return newLearner(rand, new IFactorTable[2]);
+	}
+
+	private PseudoLikelihood newLearner(Random rand, IFactorTable[] tables)
+	{
+		FactorGraph fg = new FactorGraph();
+		Discrete[] vars = new Discrete[NUM_VARS];
+		for (int i = 0; i < NUM_VARS; ++i)
+			vars[i] = new Discrete(0, 1, 2);
+
+		int[][] indices = new int[9][];
+		for (int i = 0, k = 0; i < 3; ++i)
+			for (int j = 0; j < 3; ++j, ++k)
+				indices[k] = new int[] { i, j };
+
+		for (int t = 0; t < 2; ++t)
+		{
+			double[] weights = new double[9];
+			for (int k = 0; k < 9; ++k)
+				weights[k] = rand.nextDouble() + .1;
+			tables[t] = fg.addFactor(indices, weights, vars[t], vars[t + 1]).getFactorTable();
+		}
+		for (int i = 2; i < NUM_VARS; ++i)
+			fg.addFactor(tables[i % 2], vars[i], vars[(i + 1) % NUM_VARS]);
+
+		return new PseudoLikelihood(fg, tables, vars);
+	}
+
+	private void assertTablesEqual(IFactorTable[] expected, IFactorTable[] actual)
+	{
+		for (int i = 0; i < expected.length; ++i)
+			assertArrayEquals(expected[i].getWeightsSparseUnsafe(), actual[i].getWeightsSparseUnsafe(), 1e-12);
+	}
+
+	private int[][] randomData(Random rand, int nRows)
+	{
+		int[][] data = new int[nRows][NUM_VARS];
+		for (int m = 0; m < nRows; ++m)
+		{
+			// Correlate neighboring values so that the histograms are not uniform.
+			data[m][0] = rand.nextInt(3);
+			for (int i = 1; i < NUM_VARS; ++i)
+				data[m][i] = rand.nextInt(4) == 0 ? rand.nextInt(3) : data[m][i - 1];
+		}
+		return data;
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static com.analog.lyric.dimple.test.model.DiscreteGrids.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.schedulers.ResidualScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualSchedule;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingMode;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+
+/**
+ * Tests for {@link ResidualSchedule}.
+ */
+public class TestResidualSchedule
+{
+	private static final int N = 8;
+	private static final double TOLERANCE = 1e-9;
+
+	@Test
+	public void test()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		Discrete[] vars = addGrid(fg, N, 3, new Random(42));
+		final int numEdges = 4 * 2 * N * (N - 1);
+
+		// Count the flooding iterations needed for the beliefs to stop changing.
+		fg.initialize();
+		double[][] expected = beliefs(vars);
+		int floodingIterations = 0;
+		for (double change = 1; change > TOLERANCE; ++floodingIterations)
+		{
+			sfg.iterate(1);
+			double[][] next = beliefs(vars);
+			change = maxDifference(expected, next);
+			expected = next;
+			assertTrue(floodingIterations < 1000);
+		}
+
+		ResidualScheduler scheduler = new ResidualScheduler();
+		scheduler.setTolerance(TOLERANCE);
+		fg.setScheduler(scheduler);
+		ResidualSchedule schedule = (ResidualSchedule)fg.getSchedule();
+		assertEquals(TOLERANCE, schedule.getTolerance(), 0.0);
+
+		sfg.setNumIterations(floodingIterations);
+		fg.solve();
+		assertTrue(schedule.isConverged());
+		assertEquals(0, maxDifference(expected, beliefs(vars)), 1e-6);
+		long residualUpdates = schedule.getUpdateCount();
+		assertTrue(residualUpdates < (long)floodingIterations * numEdges);
+
+		// Additional iterations do nothing once converged.
+		sfg.iterate(5);
+		assertEquals(residualUpdates, schedule.getUpdateCount());
+
+		// Solving again starts over.
+		fg.solve();
+		assertEquals(residualUpdates, schedule.getUpdateCount());
+
+		// Concurrent variant
+		sfg.getMultithreadingManager().setMode(MultithreadingMode.Residual);
+		sfg.getMultithreadingManager().setNumWorkers(4);
+		sfg.useMultithreading(true);
+		fg.solve();
+		assertTrue(schedule.isConverged());
+		assertEquals(0, maxDifference(expected, beliefs(vars)), 1e-6);
+		sfg.useMultithreading(false);
+	}
+
+	private double maxDifference(double[][] a, double[][] b)
+	{
+		double max = 0;
+		for (int i = 0; i < a.length; ++i)
+			for (int j = 0; j < a[i].length; ++j)
+				max = Math.max(max, Math.abs(a[i][j] - b[i][j]));
+		return max;
+	}
+}
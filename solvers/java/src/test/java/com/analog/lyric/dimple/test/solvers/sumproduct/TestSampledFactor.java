@@ -0,0 +1,105 @@
+/*******************************************************************************
+*   Copyright 2014 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.AdditiveNoise;
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.NormalParameters;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.sampledfactor.SampledFactor;
+
+/**
+ * Tests for {@link SampledFactor}.
+ */
+public class TestSampledFactor
+{
+	private static final int N = 8;
+
+	@Test
+	public void test()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+
+		// Independent pairs b = a + noise, for which the exact beliefs are Normal.
+		Real[] a = new Real[N], b = new Real[N];
+		for (int i = 0; i < N; ++i)
+		{
+			a[i] = new Real();
+			b[i] = new Real();
+			a[i].setInputObject(new Normal(2, 4));
+			b[i].setInputObject(new Normal(-1, 1));
+			fg.addFactor(new AdditiveNoise(1), a[i], b[i]);
+		}
+		assertTrue(fg.getFactors().getByIndex(0).getSolver() instanceof SampledFactor);
+		sfg.setSampledFactorSamplesPerUpdate(4000);
+		sfg.setSampledFactorBurnInScansPerUpdate(20);
+		assertEquals(20, ((SampledFactor)fg.getFactors().getByIndex(0).getSolver()).getBurnInScansPerUpdate());
+		assertEquals(4000, ((SampledFactor)fg.getFactors().getByIndex(0).getSolver()).getSamplesPerUpdate());
+		sfg.setNumIterations(2);
+
+		// Exact means are 15/9 and 1/3, precisions are 4.5 and 1.8
+		SolverRandomGenerator.setSeed(42);
+		fg.solve();
+		assertBeliefs(a, b, .1);
+
+		// Amortized updates use one set of samples for both edges.
+		sfg.setSampledFactorAmortizedUpdate(true);
+		assertTrue(((SampledFactor)fg.getFactors().getByIndex(0).getSolver()).isAmortizedUpdate());
+		sfg.setNumIterations(3);
+		SolverRandomGenerator.setSeed(42);
+		fg.solve();
+		assertBeliefs(a, b, .1);
+		double[] sequential = means(a);
+
+		// Concurrent updates give exactly the same result, since each factor has its own random stream.
+		sfg.setSampledFactorParallelUpdates(true);
+		sfg.getMultithreadingManager().setNumWorkers(3);
+		SolverRandomGenerator.setSeed(42);
+		fg.solve();
+		assertArrayEquals(sequential, means(a), 0.0);
+	}
+
+	private void assertBeliefs(Real[] a, Real[] b, double tolerance)
+	{
+		for (int i = 0; i < N; ++i)
+		{
+			NormalParameters aBelief = (NormalParameters)a[i].getBeliefObject();
+			NormalParameters bBelief = (NormalParameters)b[i].getBeliefObject();
+			assertEquals(15.0/9.0, aBelief.getMean(), tolerance);
+			assertEquals(1.0/3.0, bBelief.getMean(), tolerance);
+			assertEquals(4.5, aBelief.getPrecision(), 4.5 * tolerance);
+			assertEquals(1.8, bBelief.getPrecision(), 1.8 * tolerance);
+		}
+	}
+
+	private double[] means(Real[] vars)
+	{
+		double[] means = new double[vars.length];
+		for (int i = 0; i < vars.length; ++i)
+			means[i] = ((NormalParameters)vars[i].getBeliefObject()).getMean();
+		return means;
+	}
+}